@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
  *  @author Kevin Li
@@ -12,8 +14,18 @@ class Alphabet {
         int charLength = chars.length();
         this._store = chars;
         this._storeArr = new char[charLength];
+        int maxChar = 0;
         for (int i = 0; i < charLength; i++) {
             this._storeArr[i] = _store.charAt(i);
+            maxChar = Math.max(maxChar, _storeArr[i]);
+        }
+        this._index = new int[maxChar + 1];
+        Arrays.fill(_index, -1);
+        for (int i = 0; i < charLength; i++) {
+            if (_index[_storeArr[i]] != -1) {
+                throw new EnigmaException("Duplicate character in alphabet");
+            }
+            _index[_storeArr[i]] = i;
         }
     }
 
@@ -22,6 +34,11 @@ class Alphabet {
         this("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
     }
 
+    /** Returns the characters of the alphabet, in order. */
+    String chars() {
+        return _store;
+    }
+
     /** Returns the size of the alphabet. */
     int size() {
         return _store.length();
@@ -29,7 +46,13 @@ class Alphabet {
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        return _store.contains(String.valueOf(ch));
+        return indexOf(ch) >= 0;
+    }
+
+    /** Returns the index of CH in this alphabet, or -1 if it is not
+     *  present.  Unlike toInt(), never throws. */
+    int indexOf(char ch) {
+        return ch < _index.length ? _index[ch] : -1;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -45,14 +68,16 @@ class Alphabet {
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        if (!this.contains(ch)) {
+        int index = indexOf(ch);
+        if (index < 0) {
             throw new EnigmaException("Character doesn't exist");
-        } else {
-            return this._store.indexOf(ch);
         }
+        return index;
     }
     /** String store variable. */
     private String _store;
     /** Char[] store variable. */
     private char[] _storeArr;
+    /** Index of each character in _store, by character code, or -1. */
+    private int[] _index;
 }
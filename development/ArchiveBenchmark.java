@@ -0,0 +1,91 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Measures InterceptArchive queries answered through the indexes against
+ *  the same queries answered by testing every record, on an archive of
+ *  random messages with random settings.  Usage:
+ *      java enigma.ArchiveBenchmark [RECORDS]
+ *  @author Kevin Li
+ */
+class ArchiveBenchmark {
+
+    /** Queries timed. */
+    private static final String[][] QUERIES = {
+        { "reflector=R1" },
+        { "reflector=R1", "rotors=R4,R5" },
+        { "order=R2,R4,R5,R6" },
+        { "stecker=AB", "rotors=R7" },
+    };
+
+    /** Run the benchmark as described by ARGS. */
+    public static void main(String... args) throws IOException {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        Random random = new Random(42);
+        String text = ParseBenchmark.makeConfig(12, random);
+        Config config = ConfigParser.parseConfig(text);
+        Path dir = Files.createTempDirectory("enigma-archive");
+        try (InterceptArchive archive = new InterceptArchive(dir, config)) {
+            long start = System.nanoTime();
+            StringBuilder msg = new StringBuilder();
+            for (int i = 0; i < records; i += 1) {
+                msg.setLength(0);
+                for (int k = 20 + random.nextInt(60); k > 0; k -= 1) {
+                    msg.append((char) ('A' + random.nextInt(26)));
+                }
+                archive.append(settingsLine(random), msg);
+            }
+            archive.flush();
+            Bench.report("append", System.nanoTime() - start, records,
+                         "records");
+            for (String[] terms : QUERIES) {
+                InterceptArchive.Query query =
+                    InterceptArchive.Query.parse(terms);
+                for (boolean scan : new boolean[] { false, true }) {
+                    long t = Bench.best(3, 10, () -> {
+                        Bench.sink += archive.select(query, scan).length;
+                    });
+                    Bench.report((scan ? "scan  " : "index ") + query, t,
+                                 records, "records");
+                }
+                InterceptArchive.QueryStats stats =
+                    archive.query(query, false, r -> {
+                        Bench.sink += r.text().length();
+                    });
+                System.out.printf("    %s%n", stats);
+            }
+        }
+    }
+
+    /** Return a random settings line for ParseBenchmark.makeConfig's
+     *  configurations, from RANDOM: reflector R0 or R1, fixed rotor R2 or
+     *  R3, then three of the moving rotors R4 to R11. */
+    private static String settingsLine(Random random) {
+        List<Integer> moving = new ArrayList<>();
+        for (int k = 4; k < 12; k += 1) {
+            moving.add(k);
+        }
+        StringBuilder line = new StringBuilder("* R");
+        line.append(random.nextInt(2)).append(" R")
+            .append(2 + random.nextInt(2));
+        for (int k = 0; k < 3; k += 1) {
+            line.append(" R").append(moving.remove(random.nextInt(
+                moving.size())));
+        }
+        line.append(' ');
+        for (int k = 0; k < 4; k += 1) {
+            line.append((char) ('A' + random.nextInt(26)));
+        }
+        int first = random.nextInt(13);
+        for (int k = 0; k < 3; k += 1) {
+            char a = (char) ('A' + 2 * ((first + 4 * k) % 13));
+            line.append(" (").append(a).append((char) (a + 1)).append(')');
+        }
+        return line.toString();
+    }
+}
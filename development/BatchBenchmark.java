@@ -0,0 +1,68 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/** Compares a bulk job of many short messages, each with its own
+ *  settings, run through the text format that Main reads against the
+ *  same job in a binary BatchFile.  Usage:
+ *      java enigma.BatchBenchmark [MESSAGES [THREADS]]
+ *  @author Kevin Li
+ */
+class BatchBenchmark {
+
+    /** Run the benchmark as described by ARGS. */
+    public static void main(String... args) throws IOException {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+            : Runtime.getRuntime().availableProcessors();
+        Random random = new Random(42);
+        Config config =
+            ConfigParser.parseConfig(ParseBenchmark.makeConfig(12, random));
+        String[] settings =
+            ParseBenchmark.makeSettings(12, messages, random);
+        StringBuilder text = new StringBuilder();
+        Path dir = Files.createTempDirectory("enigma-batch");
+        Path in = dir.resolve("job.bin"), out = dir.resolve("job.out");
+        long chars = 0;
+        try (BatchFile.Writer writer = new BatchFile.Writer(in, config)) {
+            StringBuilder msg = new StringBuilder();
+            for (String line : settings) {
+                msg.setLength(0);
+                for (int i = 20 + random.nextInt(200); i > 0; i -= 1) {
+                    msg.append((char) ('A' + random.nextInt(26)));
+                }
+                chars += msg.length();
+                text.append(line).append('\n').append(msg).append('\n');
+                writer.add(ConfigParser.parseSettings(line, 1, config), msg);
+            }
+        }
+        String job = text.toString();
+        PrintStream sink = new PrintStream(OutputStream.nullOutputStream());
+
+        long t = Bench.best(1, 3, () -> {
+            Main.process(config, config.newMachine(),
+                         new BufferedReader(new StringReader(job)), sink);
+        });
+        Bench.report("text, 1 thread", t, chars, "chars");
+        for (int n : new int[] { 1, threads }) {
+            t = Bench.best(1, 3, () -> {
+                try {
+                    Bench.sink += BatchFile.process(config, in, out, n);
+                } catch (IOException excp) {
+                    throw new IllegalStateException(excp);
+                }
+            });
+            Bench.report("binary, " + n + " threads", t, chars, "chars");
+        }
+        Files.delete(in);
+        Files.delete(out);
+        Files.delete(dir);
+    }
+}
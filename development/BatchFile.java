@@ -0,0 +1,629 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A binary, memory-mapped file format for bulk encryption jobs, which
+ *  avoids rendering settings as text and parsing them back.  A file is a
+ *  header followed by records, all big-endian:
+ *
+ *      header:  int MAGIC, short VERSION, short numRotors,
+ *               long Config.fingerprint(), long number of records
+ *      record:  int length of the rest of the record,
+ *               short[numRotors] Config indices of the rotors,
+ *               byte[numRotors - 1] positions, byte[numRotors - 1] rings,
+ *               short k, then k pairs of bytes (c, plugboard(c)) for
+ *               the characters the plugboard moves,
+ *               int n, then byte[n] message as alphabet indices.
+ *
+ *  Positions, rings and characters are alphabet indices, so alphabets
+ *  are limited to 256 characters.  process() encrypts a whole file in
+ *  parallel into an output file with the same header and framing, in
+ *  which each record is at the same offset as its input and differs from
+ *  it only in its message bytes.
+ *  @author Kevin Li
+ */
+class BatchFile {
+
+    /** Identifies a batch file: "ENGB". */
+    static final int MAGIC = 0x454e4742;
+    /** Current format version. */
+    static final short VERSION = 1;
+    /** Size of the header in bytes. */
+    static final int HEADER = 24;
+    /** Offset of the record count in the header. */
+    private static final int COUNT_OFFSET = 16;
+    /** Size of the file regions mapped at a time. */
+    private static final int WINDOW = 1 << 26;
+    /** Target size of the record ranges processed by one task. */
+    private static final int CHUNK = 1 << 23;
+    /** Size of the Writer's buffer. */
+    private static final int BUFFER = 1 << 20;
+
+    /** Encrypt every record of batch file IN, made for CONFIG, into a new
+     *  batch file OUT using THREADS threads.  Returns the number of
+     *  records. */
+    static long process(Config config, Path in, Path out, int threads)
+        throws IOException {
+        try (FileChannel input = FileChannel.open(in);
+             FileChannel output = FileChannel.open(out,
+                 StandardOpenOption.CREATE, StandardOpenOption.READ,
+                 StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            long records = checkHeader(input, config);
+            long size = input.size();
+            ByteBuffer header = input.map(FileChannel.MapMode.READ_ONLY,
+                                          0, HEADER);
+            output.write(ByteBuffer.allocate(1), size - 1);
+            output.map(FileChannel.MapMode.READ_WRITE, 0, HEADER)
+                .put(header);
+            List<long[]> ranges = split(input, HEADER, size);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Long>> done = new ArrayList<>();
+                for (long[] range : ranges) {
+                    done.add(pool.submit(() -> encrypt(config, input, output,
+                                                       range[0], range[1])));
+                }
+                long count = 0;
+                for (Future<Long> f : done) {
+                    count += f.get();
+                }
+                if (count != records) {
+                    throw error("batch file has %d records, header says %d",
+                                count, records);
+                }
+                return count;
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw error("batch interrupted");
+            } catch (ExecutionException excp) {
+                if (excp.getCause() instanceof EnigmaException) {
+                    throw (EnigmaException) excp.getCause();
+                } else if (excp.getCause() instanceof IOException) {
+                    throw (IOException) excp.getCause();
+                }
+                throw new IllegalStateException(excp.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /** Check the header of batch file CHANNEL against CONFIG and return
+     *  its record count. */
+    private static long checkHeader(FileChannel channel, Config config)
+        throws IOException {
+        if (channel.size() < HEADER) {
+            throw error("not a batch file");
+        }
+        ByteBuffer header =
+            channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+        if (header.getInt() != MAGIC) {
+            throw error("not a batch file");
+        } else if (header.getShort() != VERSION) {
+            throw error("unsupported batch file version");
+        } else if (header.getShort() != config.numRotors()
+                   || header.getLong() != config.fingerprint()) {
+            throw error("batch file was made for another configuration");
+        }
+        return header.getLong();
+    }
+
+    /** Return [start, end) offsets of consecutive runs of whole records of
+     *  about CHUNK bytes covering the records of CHANNEL between START and
+     *  END. */
+    private static List<long[]> split(FileChannel channel, long start,
+                                      long end) throws IOException {
+        List<long[]> ranges = new ArrayList<>();
+        Window window = new Window(channel, FileChannel.MapMode.READ_ONLY,
+                                   end);
+        long first = start, pos = start;
+        while (pos < end) {
+            int length = window.at(pos, Integer.BYTES).getInt();
+            if (length < 0 || end - pos - Integer.BYTES < length) {
+                throw error("batch file truncated at offset %d", pos);
+            }
+            pos += Integer.BYTES + length;
+            if (pos - first >= CHUNK) {
+                ranges.add(new long[] { first, pos });
+                first = pos;
+            }
+        }
+        if (pos > first) {
+            ranges.add(new long[] { first, pos });
+        }
+        return ranges;
+    }
+
+    /** Encrypt the records of INPUT between START and END, with a machine
+     *  built from CONFIG, into the same range of OUTPUT.  Returns the
+     *  number of records. */
+    private static long encrypt(Config config, FileChannel input,
+                                FileChannel output, long start, long end)
+        throws IOException {
+        Reader reader = new Reader(input, config, start, end);
+        Window out = new Window(output, FileChannel.MapMode.READ_WRITE, end);
+        Machine machine = config.newMachine();
+        machine.setEngine(Engines.choose(config).engine());
+        int slots = config.numRotors(), alphaSize = config.alphabet().size();
+        int[] inserted = null, text = new int[0];
+        int[] positions = new int[slots - 1], rings = new int[slots - 1];
+        long count = 0;
+        while (reader.next()) {
+            if (inserted == null || !Arrays.equals(inserted, reader._rotors)) {
+                inserted = reader._rotors.clone();
+                machine.insertRotors(Main.validate(
+                    config, machine,
+                    new Settings(inserted, null, null, null)));
+            }
+            for (int i = 0; i < slots - 1; i += 1) {
+                positions[i] = reader.position(i);
+                rings[i] = reader.ring(i);
+            }
+            machine.setRings(rings);
+            machine.setRotors(positions);
+            machine.setPlugboard(reader.plugboard());
+            ByteBuffer src = reader._record;
+            ByteBuffer dst = out.at(reader.offset(), reader.size());
+            int base = dst.position();
+            int message = src.position() + reader._message;
+            dst.put(src.duplicate().limit(message));
+            if (text.length < reader.length()) {
+                text = new int[Math.max(reader.length(), 2 * text.length)];
+            }
+            for (int i = 0; i < reader.length(); i += 1) {
+                text[i] = src.get(message + i) & 0xff;
+                if (text[i] >= alphaSize) {
+                    throw error("offset %d: message character out of bounds",
+                                reader.offset());
+                }
+            }
+            machine.convert(text, 0, reader.length());
+            for (int i = 0; i < reader.length(); i += 1) {
+                dst.put((byte) text[i]);
+            }
+            dst.position(base);
+            count += 1;
+        }
+        return count;
+    }
+
+    /** Writes a batch file record by record, through a buffer, so that
+     *  the file holds only what has been written: after a crash it ends
+     *  with the records written so far, the last perhaps incomplete, and
+     *  its header's record count is 0. */
+    static class Writer implements Closeable {
+
+        /** A writer of a new batch file FILE for CONFIG, replacing any
+         *  existing file. */
+        Writer(Path file, Config config) throws IOException {
+            if (config.alphabet().size() > 256) {
+                throw error("alphabet too large for a batch file");
+            }
+            _config = config;
+            _channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                        StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE,
+                                        StandardOpenOption.TRUNCATE_EXISTING);
+            _buffer = ByteBuffer.allocateDirect(BUFFER);
+            _buffer.putInt(MAGIC).putShort(VERSION)
+                .putShort((short) config.numRotors())
+                .putLong(config.fingerprint()).putLong(0);
+            _message = new byte[64];
+        }
+
+        /** Add a record for the machine set up by SETTINGS (as returned by
+         *  ConfigParser.parseSettings) and the message MSG, in which
+         *  whitespace is ignored and letters may be in either case. */
+        void add(Settings settings, CharSequence msg) {
+            Alphabet alpha = _config.alphabet();
+            int slots = _config.numRotors();
+            int[] rotors = new int[slots];
+            int[] positions = new int[slots - 1], rings = new int[slots - 1];
+            for (int i = 0; i < slots; i += 1) {
+                rotors[i] = settings.rotor(i);
+            }
+            for (int i = 0; i < slots - 1; i += 1) {
+                positions[i] = alpha.toInt(settings.positions().charAt(i));
+                rings[i] = alpha.toInt(settings.rings().charAt(i));
+            }
+            int n = 0;
+            for (int i = 0; i < msg.length(); i += 1) {
+                char ch = msg.charAt(i);
+                if (Character.isWhitespace(ch)) {
+                    continue;
+                }
+                int c = alpha.indexOf(Character.toUpperCase(ch));
+                if (c < 0) {
+                    throw error("'%c' is not in the alphabet", ch);
+                }
+                if (n == _message.length) {
+                    _message = Arrays.copyOf(_message, 2 * n);
+                }
+                _message[n] = (byte) c;
+                n += 1;
+            }
+            add(rotors, positions, rings, settings.plugboard(), _message, n);
+        }
+
+        /** Add a record for rotors ROTORS (Config indices, reflector
+         *  first), POSITIONS and RINGS (alphabet indices) and plugboard
+         *  PLUGBOARD, whose message is the alphabet indices in the first
+         *  LENGTH bytes of MSG. */
+        void add(int[] rotors, int[] positions, int[] rings,
+                 Permutation plugboard, byte[] msg, int length) {
+            int slots = _config.numRotors();
+            int moved = 0;
+            for (int c = 0; c < plugboard.size(); c += 1) {
+                moved += plugboard.permute(c) == c ? 0 : 1;
+            }
+            int size = 2 * slots + 2 * (slots - 1) + 2 + 2 * moved
+                + Integer.BYTES + length;
+            try {
+                ByteBuffer buf = reserve(Integer.BYTES + size);
+                buf.putInt(size);
+                for (int i = 0; i < slots; i += 1) {
+                    buf.putShort((short) rotors[i]);
+                }
+                for (int i = 0; i < slots - 1; i += 1) {
+                    buf.put((byte) positions[i]);
+                }
+                for (int i = 0; i < slots - 1; i += 1) {
+                    buf.put((byte) rings[i]);
+                }
+                buf.putShort((short) moved);
+                for (int c = 0; c < plugboard.size(); c += 1) {
+                    if (plugboard.permute(c) != c) {
+                        buf.put((byte) c).put((byte) plugboard.permute(c));
+                    }
+                }
+                buf.putInt(length).put(msg, 0, length);
+            } catch (IOException excp) {
+                throw error("could not write batch file: %s",
+                            excp.getMessage());
+            }
+            _records += 1;
+        }
+
+        /** Return the number of records added so far. */
+        long records() {
+            return _records;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (_channel) {
+                flush();
+                ByteBuffer count = ByteBuffer.allocate(Long.BYTES);
+                count.putLong(_records).flip();
+                while (count.hasRemaining()) {
+                    _channel.write(count, COUNT_OFFSET + count.position());
+                }
+            }
+        }
+
+        /** Return _buffer with room for NEED more bytes, writing out what
+         *  it holds first if necessary. */
+        private ByteBuffer reserve(int need) throws IOException {
+            if (_buffer.remaining() < need) {
+                flush();
+                if (_buffer.capacity() < need) {
+                    _buffer = ByteBuffer.allocateDirect(need);
+                }
+            }
+            return _buffer;
+        }
+
+        /** Write out the contents of _buffer. */
+        private void flush() throws IOException {
+            _buffer.flip();
+            while (_buffer.hasRemaining()) {
+                _channel.write(_buffer);
+            }
+            _buffer.clear();
+        }
+
+        /** Configuration of the records. */
+        private final Config _config;
+        /** Output file. */
+        private final FileChannel _channel;
+        /** Records not yet written to _channel. */
+        private ByteBuffer _buffer;
+        /** Number of records written. */
+        private long _records;
+        /** Scratch buffer for messages. */
+        private byte[] _message;
+    }
+
+    /** Reads the records of a batch file one by one. */
+    static class Reader implements Closeable {
+
+        /** A reader of all the records of batch file FILE, which must
+         *  have been made for CONFIG. */
+        Reader(Path file, Config config) throws IOException {
+            _channel = FileChannel.open(file);
+            _config = config;
+            _pos = HEADER;
+            _rotors = new int[config.numRotors()];
+            _owner = true;
+            try {
+                _records = checkHeader(_channel, config);
+                _end = _channel.size();
+            } catch (IOException | RuntimeException excp) {
+                _channel.close();
+                throw excp;
+            }
+            _window = new Window(_channel, FileChannel.MapMode.READ_ONLY,
+                                 _end);
+        }
+
+        /** A reader of the records of CHANNEL, made for CONFIG, between
+         *  offsets START and END, or to the end of the file if END < 0. */
+        Reader(FileChannel channel, Config config, long start, long end)
+            throws IOException {
+            _channel = channel;
+            _config = config;
+            _pos = start;
+            _end = end < 0 ? channel.size() : end;
+            _window = new Window(channel, FileChannel.MapMode.READ_ONLY,
+                                 _end);
+            _rotors = new int[config.numRotors()];
+            _records = -1;
+        }
+
+        /** Return the record count in the header, or -1 if I read only
+         *  part of a file. */
+        long records() {
+            return _records;
+        }
+
+        /** Advance to the next record, returning false if there is none. */
+        boolean next() throws IOException {
+            if (_pos >= _end) {
+                return false;
+            }
+            int size = _window.at(_pos, Integer.BYTES).getInt();
+            if (size < 0 || _end - _pos - Integer.BYTES < size) {
+                throw error("batch file truncated at offset %d", _pos);
+            }
+            _offset = _pos;
+            _size = Integer.BYTES + size;
+            _record = _window.at(_pos, _size);
+            _pos += _size;
+            int start = _record.position();
+            ByteBuffer buf = _record.duplicate();
+            buf.position(start + Integer.BYTES);
+            int slots = _rotors.length;
+            for (int i = 0; i < slots; i += 1) {
+                _rotors[i] = buf.getShort() & 0xffff;
+                if (_rotors[i] >= _config.size()) {
+                    throw error("offset %d: no rotor numbered %d", _offset,
+                                _rotors[i]);
+                }
+            }
+            _settings = buf.position() - start;
+            for (int i = 0; i < 2 * (slots - 1); i += 1) {
+                if ((buf.get() & 0xff) >= _config.alphabet().size()) {
+                    throw error("offset %d: setting out of bounds", _offset);
+                }
+            }
+            _plugboard = buf.position() - start;
+            int moved = buf.getShort() & 0xffff;
+            buf.position(buf.position() + 2 * moved);
+            _length = buf.getInt();
+            _message = buf.position() - start;
+            if (_message + _length != _size) {
+                throw error("offset %d: malformed record", _offset);
+            }
+            return true;
+        }
+
+        /** Return the file offset of the current record. */
+        long offset() {
+            return _offset;
+        }
+
+        /** Return the size in bytes of the current record, including its
+         *  length field. */
+        int size() {
+            return _size;
+        }
+
+        /** Return the Config index of the rotor in slot K of the current
+         *  record. */
+        int rotor(int k) {
+            return _rotors[k];
+        }
+
+        /** Return the position of the non-reflector rotor K (0 is the
+         *  leftmost) of the current record. */
+        int position(int k) {
+            return _record.get(_record.position() + _settings + k) & 0xff;
+        }
+
+        /** Return the ring setting of the non-reflector rotor K of the
+         *  current record. */
+        int ring(int k) {
+            return _record.get(_record.position() + _settings
+                               + _rotors.length - 1 + k) & 0xff;
+        }
+
+        /** Return the plugboard of the current record.  Consecutive
+         *  records with the same plugboard bytes share one Permutation. */
+        Permutation plugboard() {
+            int p = _record.position() + _plugboard;
+            int moved = _record.getShort(p) & 0xffff;
+            if (_lastPlugboard != null && samePlugs(p, moved)) {
+                return _lastPlugboard;
+            }
+            _lastPlugboard = null;
+            Permutation result = readPlugboard(p, moved);
+            if (_lastPlugs.length < 2 * moved) {
+                _lastPlugs = new byte[2 * moved];
+            }
+            for (int i = 0; i < 2 * moved; i += 1) {
+                _lastPlugs[i] = _record.get(p + 2 + i);
+            }
+            _lastMoved = moved;
+            _lastPlugboard = result;
+            return result;
+        }
+
+        /** Return true iff the MOVED plugboard pairs at P in the current
+         *  record are those of _lastPlugboard. */
+        private boolean samePlugs(int p, int moved) {
+            if (moved != _lastMoved) {
+                return false;
+            }
+            for (int i = 0; i < 2 * moved; i += 1) {
+                if (_record.get(p + 2 + i) != _lastPlugs[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Return the plugboard of MOVED pairs at P in the current
+         *  record. */
+        private Permutation readPlugboard(int p, int moved) {
+            Alphabet alpha = _config.alphabet();
+            int[] forward = Permutation.identity(alpha.size());
+            StringBuilder cycles = new StringBuilder();
+            for (int i = 0; i < moved; i += 1) {
+                int c = _record.get(p + 2 + 2 * i) & 0xff;
+                int d = _record.get(p + 3 + 2 * i) & 0xff;
+                if (c >= forward.length || d >= forward.length) {
+                    throw error("offset %d: plugboard out of bounds",
+                                _offset);
+                }
+                forward[c] = d;
+            }
+            int[] inverse = new int[forward.length];
+            Arrays.fill(inverse, -1);
+            for (int c = 0; c < forward.length; c += 1) {
+                if (inverse[forward[c]] >= 0) {
+                    throw error("offset %d: plugboard is not a permutation",
+                                _offset);
+                }
+                inverse[forward[c]] = c;
+            }
+            boolean[] seen = new boolean[forward.length];
+            for (int c = 0; c < forward.length; c += 1) {
+                if (forward[c] != c && !seen[c]) {
+                    cycles.append(cycles.length() == 0 ? "(" : " (");
+                    for (int x = c; !seen[x]; x = forward[x]) {
+                        seen[x] = true;
+                        cycles.append(alpha.toChar(x));
+                    }
+                    cycles.append(')');
+                }
+            }
+            return new Permutation(alpha, cycles.toString(), forward,
+                                   inverse);
+        }
+
+        /** Return the message length of the current record. */
+        int length() {
+            return _length;
+        }
+
+        /** Return the alphabet index of character K of the message of the
+         *  current record. */
+        int message(int k) {
+            return _record.get(_record.position() + _message + k) & 0xff;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (_owner) {
+                _channel.close();
+            }
+        }
+
+        /** File read. */
+        private final FileChannel _channel;
+        /** Configuration of the records. */
+        private final Config _config;
+        /** Mapped region of _channel holding the current record. */
+        private Window _window;
+        /** Offset of the next record and end of the records read. */
+        private long _pos, _end;
+        /** Record count from the header. */
+        private long _records;
+        /** True iff I opened _channel. */
+        private boolean _owner;
+        /** Offset and size of the current record. */
+        private long _offset;
+        /** Size of the current record. */
+        private int _size;
+        /** Mapped buffer positioned at the current record. */
+        private ByteBuffer _record;
+        /** Rotors of the current record. */
+        private final int[] _rotors;
+        /** Offsets within the current record of its settings, plugboard
+         *  and message bytes. */
+        private int _settings, _plugboard, _message;
+        /** Message length of the current record. */
+        private int _length;
+        /** The plugboard last returned by plugboard(), or null. */
+        private Permutation _lastPlugboard;
+        /** Number of pairs in _lastPlugboard. */
+        private int _lastMoved;
+        /** The plugboard bytes _lastPlugboard was read from. */
+        private byte[] _lastPlugs = new byte[0];
+    }
+
+    /** A region of a file mapped on demand. */
+    private static class Window {
+
+        /** A window onto CHANNEL mapped in MODE, never extending past
+         *  END. */
+        Window(FileChannel channel, FileChannel.MapMode mode, long end) {
+            _channel = channel;
+            _mode = mode;
+            _end = end;
+        }
+
+        /** Return a buffer positioned at file offset POS with at least
+         *  NEED bytes from there mapped, remapping if necessary. */
+        ByteBuffer at(long pos, int need) throws IOException {
+            if (_buffer == null || pos < _base
+                || pos + need > _base + _buffer.capacity()) {
+                long size = Math.min(Math.max(need, WINDOW), _end - pos);
+                if (size < need) {
+                    throw error("batch file truncated at offset %d", pos);
+                }
+                _base = pos;
+                _buffer = _channel.map(_mode, pos, size);
+            }
+            _buffer.position((int) (pos - _base));
+            return _buffer;
+        }
+
+        /** Mapped file. */
+        private final FileChannel _channel;
+        /** Mapping mode. */
+        private final FileChannel.MapMode _mode;
+        /** Limit of the mapped regions. */
+        private final long _end;
+        /** File offset of _buffer. */
+        private long _base;
+        /** Currently mapped region. */
+        private ByteBuffer _buffer;
+    }
+}
@@ -0,0 +1,171 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the BatchFile class.
+ *  @author Kevin Li
+ */
+public class BatchFileTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Temporary files, deleted after each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A naval configuration. */
+    private static final String CONFIG =
+        navalConfig(5, 3, "I MQ", "III MV", "IV MJ", "Beta N", "B R");
+
+    /** Settings lines for the records written. */
+    private static final String[] SETTINGS = {
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "* B Beta I IV III ZZZZ BCDE",
+        "* B Beta III IV I AXLE (YF) (ZH)",
+    };
+
+    /** Messages of the records written. */
+    private static final String[] MESSAGES = {
+        "From his shoulder Hiawatha",
+        "",
+        "Took the camera of rosewood",
+    };
+
+    /** Return the text of the current record of READER in CONFIG. */
+    private static String message(BatchFile.Reader reader, Config config) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < reader.length(); i += 1) {
+            text.append(config.alphabet().toChar(reader.message(i)));
+        }
+        return text.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testProcess() throws IOException {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        Path dir = tmp.newFolder("batch").toPath();
+        Path in = dir.resolve("in"), out = dir.resolve("out");
+        try (BatchFile.Writer writer = new BatchFile.Writer(in, config)) {
+            for (int k = 0; k < SETTINGS.length; k += 1) {
+                writer.add(ConfigParser.parseSettings(SETTINGS[k], 1, config),
+                           MESSAGES[k]);
+            }
+        }
+        assertEquals(3, BatchFile.process(config, in, out, 2));
+        assertEquals(Files.size(in), Files.size(out));
+        try (BatchFile.Reader reader = new BatchFile.Reader(out, config)) {
+            assertEquals(3, reader.records());
+            for (int k = 0; k < SETTINGS.length; k += 1) {
+                assertTrue(reader.next());
+                Machine machine = config.newMachine();
+                new SettingsCache(config, 1).apply(machine, SETTINGS[k], 1);
+                assertEquals(machine.convert(MESSAGES[k].replace(" ", "")),
+                             message(reader, config));
+                assertEquals(reader.offset() == BatchFile.HEADER, k == 0);
+                if (k == 0) {
+                    assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                                 message(reader, config));
+                }
+            }
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testOtherConfig() throws IOException {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        Path file = tmp.newFile("batch").toPath();
+        try (BatchFile.Writer writer = new BatchFile.Writer(file, config)) {
+            writer.add(ConfigParser.parseSettings(SETTINGS[0], 1, config),
+                       MESSAGES[0]);
+        }
+        Config other = ConfigParser.parseConfig(CONFIG.replace("MQ", "MR"));
+        BatchFile.process(other, file, file.resolveSibling("out"), 1);
+    }
+
+    @Test
+    public void testRejectsMessageOutsideAlphabet() throws IOException {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        Path dir = tmp.newFolder("batch").toPath();
+        Path in = dir.resolve("in"), out = dir.resolve("out");
+        Settings settings =
+            ConfigParser.parseSettings(SETTINGS[0], 1, config);
+        int[] rotors = new int[5], positions = new int[4], rings = new int[4];
+        for (int i = 0; i < 5; i += 1) {
+            rotors[i] = settings.rotor(i);
+        }
+        try (BatchFile.Writer writer = new BatchFile.Writer(in, config)) {
+            writer.add(rotors, positions, rings, settings.plugboard(),
+                       new byte[] { 0, 25, 26, 1 }, 4);
+        }
+        try {
+            BatchFile.process(config, in, out, 1);
+            fail("encrypted a character outside the alphabet");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("out of bounds"));
+        }
+    }
+
+    @Test
+    public void testWriterGrowsFileOnlyAsWritten() throws IOException {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        Path dir = tmp.newFolder("batch").toPath();
+        Path whole = dir.resolve("whole"), partial = dir.resolve("partial");
+        String msg = "HIAWATHA".repeat(1000);
+        Settings settings =
+            ConfigParser.parseSettings(SETTINGS[0], 1, config);
+        try (BatchFile.Writer writer = new BatchFile.Writer(whole, config)) {
+            for (int k = 0; k < 300; k += 1) {
+                writer.add(settings, msg);
+            }
+        }
+        long size = Files.size(whole);
+        BatchFile.Writer writer = new BatchFile.Writer(partial, config);
+        for (int k = 0; k < 300; k += 1) {
+            writer.add(settings, msg);
+            assertTrue(Files.size(partial) <= size);
+        }
+        assertTrue(Files.size(partial) > BatchFile.HEADER);
+        writer.close();
+        assertEquals(size, Files.size(partial));
+        try (BatchFile.Reader reader = new BatchFile.Reader(partial, config)) {
+            assertEquals(300, reader.records());
+        }
+    }
+
+    @Test
+    public void testReaderSharesRepeatedPlugboards() throws IOException {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        Path file = tmp.newFile("batch").toPath();
+        try (BatchFile.Writer writer = new BatchFile.Writer(file, config)) {
+            for (int k : new int[] { 0, 0, 2 }) {
+                writer.add(ConfigParser.parseSettings(SETTINGS[k], 1, config),
+                           MESSAGES[k]);
+            }
+        }
+        try (BatchFile.Reader reader = new BatchFile.Reader(file, config)) {
+            assertTrue(reader.next());
+            Permutation first = reader.plugboard();
+            assertTrue(reader.next());
+            assertSame(first, reader.plugboard());
+            assertTrue(reader.next());
+            assertEquals("(FY) (HZ)", reader.plugboard().cycles());
+        }
+    }
+}
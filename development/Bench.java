@@ -0,0 +1,39 @@
+package enigma;
+
+/** Minimal timing support for the benchmark drivers in this package.
+ *  Each benchmark is a main program; none of them is run by the unit
+ *  tests.
+ *  @author Kevin Li
+ */
+class Bench {
+
+    /** Not instantiable. */
+    private Bench() {
+    }
+
+    /** Run BODY WARMUP times untimed and then REPS times, returning the
+     *  fastest of the timed runs in nanoseconds. */
+    static long best(int warmup, int reps, Runnable body) {
+        for (int i = 0; i < warmup; i += 1) {
+            body.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < reps; i += 1) {
+            long start = System.nanoTime();
+            body.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    /** Print one result line: NAME, the time NANOS, and the rate of UNITS
+     *  items of kind WHAT per second. */
+    static void report(String name, long nanos, long units, String what) {
+        System.out.printf("%-32s %10.3f ms %14.0f %s/s%n", name,
+                          nanos / 1e6, units * 1e9 / nanos, what);
+    }
+
+    /** A sink for benchmark results, so that the JIT cannot discard the
+     *  computations producing them. */
+    static volatile long sink;
+}
@@ -0,0 +1,92 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/** Measures, for a large rotor catalog in which many rotors share a few
+ *  wirings, the heap held by the parsed Config and by a Machine over it,
+ *  and the time from configuration text to the first encrypted message,
+ *  with rotors built on first use (as Config.newMachine does) and with
+ *  every rotor built up front.  Usage:
+ *      java enigma.CatalogBenchmark [ROTORS [WIRINGS]]
+ *  @author Kevin Li
+ */
+class CatalogBenchmark {
+
+    /** Run the benchmark as described by ARGS. */
+    public static void main(String... args) {
+        int rotors = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int wirings = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        String text = makeCatalog(rotors, wirings, new Random(42));
+        String settings = "* R0 R2 R4 R5 R6 AXLE QEVJ (AB)";
+        StringBuilder msg = new StringBuilder();
+        Random random = new Random(7);
+        for (int i = 0; i < 100; i += 1) {
+            msg.append((char) ('A' + random.nextInt(26)));
+        }
+
+        long before = TablesBenchmark.usedMemory();
+        Config config = ConfigParser.parseConfig(text);
+        long configBytes = TablesBenchmark.usedMemory() - before;
+        System.out.printf("catalog: %d rotors, %d wirings, %.1f KB%n",
+                          config.size(), config.wirings(),
+                          configBytes / 1024.0);
+        for (boolean eager : new boolean[] { false, true }) {
+            String name = eager ? "eager" : "lazy";
+            before = TablesBenchmark.usedMemory();
+            Machine machine = newMachine(config, eager);
+            new SettingsCache(config, 1).apply(machine, settings, 1);
+            machine.convert(msg.toString());
+            System.out.printf("%-5s machine: %.1f KB%n", name,
+                              (TablesBenchmark.usedMemory() - before)
+                              / 1024.0);
+            Bench.sink += machine.rotor(1).setting();
+        }
+        for (boolean eager : new boolean[] { false, true, false, true }) {
+            long t = Bench.best(2, 5, () -> {
+                Config c = ConfigParser.parseConfig(text);
+                Machine machine = newMachine(c, eager);
+                new SettingsCache(c, 1).apply(machine, settings, 1);
+                Bench.sink += machine.convert(msg.toString()).charAt(0);
+            });
+            Bench.report((eager ? "eager" : "lazy") + " first message", t,
+                         rotors, "rotors");
+        }
+    }
+
+    /** Return a new Machine for CONFIG, with all its rotors built at once
+     *  if EAGER. */
+    static Machine newMachine(Config config, boolean eager) {
+        if (!eager) {
+            return config.newMachine();
+        }
+        ArrayList<Rotor> all = new ArrayList<>(config.size());
+        for (int k = 0; k < config.size(); k += 1) {
+            all.add(config.newRotor(k));
+        }
+        return new Machine(config.alphabet(), config.numRotors(),
+                           config.numPawls(), all);
+    }
+
+    /** Return a configuration text with NUMROTORS rotors (named as by
+     *  ParseBenchmark.makeConfig) over the upper-case alphabet, whose
+     *  non-reflector wirings are drawn from NUMWIRINGS random ones, using
+     *  RANDOM. */
+    static String makeCatalog(int numRotors, int numWirings, Random random) {
+        String base = ParseBenchmark.makeConfig(numWirings + 2, random);
+        String[] lines = base.split("\n");
+        StringBuilder text = new StringBuilder(lines[0]).append("\n5 3\n");
+        text.append(lines[2]).append('\n').append(lines[3]).append('\n');
+        for (int k = 2; k < numRotors; k += 1) {
+            String line = lines[4 + random.nextInt(numWirings)];
+            String cycles = line.substring(line.indexOf('('));
+            char kind = k < 4 ? 'N' : 'M';
+            text.append('R').append(k).append(' ').append(kind);
+            if (kind == 'M') {
+                text.append((char) ('A' + random.nextInt(26)));
+            }
+            text.append(' ').append(cycles).append('\n');
+        }
+        return text.toString();
+    }
+}
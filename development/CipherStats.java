@@ -0,0 +1,363 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** Letter and bigram counts over a stream of alphabet indices, from which
+ *  frequencies and the index of coincidence follow.  Counting touches
+ *  only primitive arrays.  A CipherStats is not thread-safe; concurrent
+ *  counting uses one per thread and merges them afterwards, so there is no
+ *  contention while counting.
+ *
+ *  As a program, counts a text file in parallel over shards of BLOCKMB
+ *  megabytes (default 64) of the memory-mapped file:
+ *      java enigma.CipherStats ALPHABET FILE [BLOCKMB]
+ *  Characters outside ALPHABET (after upper-casing) and whitespace are
+ *  skipped, as are settings lines, whose first non-blank character is
+ *  '*' as for Main.  Each message (the lines following a settings line,
+ *  or any lines before the first) is reported separately, followed by
+ *  the totals.  Bigrams run on across the lines of a message but not
+ *  from one message to the next.
+ *  @author Kevin Li
+ */
+class CipherStats {
+
+    /** Empty statistics for an alphabet of SIZE characters. */
+    CipherStats(int size) {
+        _size = size;
+        _counts = new long[size];
+        _bigrams = new long[size * size];
+        _first = _prev = -1;
+    }
+
+    /** Count the character with index C, which follows the previously
+     *  counted character unless endBlock() intervened. */
+    void accept(int c) {
+        _counts[c] += 1;
+        if (_prev >= 0) {
+            _bigrams[_prev * _size + c] += 1;
+        } else if (_first < 0) {
+            _first = c;
+        }
+        _prev = c;
+    }
+
+    /** Count the characters of TEXT, all of which must be in ALPHABET
+     *  after upper-casing, as for Machine.convert. */
+    void accept(CharSequence text, Alphabet alphabet) {
+        for (int i = 0; i < text.length(); i += 1) {
+            accept(alphabet.toInt(Character.toUpperCase(text.charAt(i))));
+        }
+    }
+
+    /** Start a new block: the next character counted does not form a bigram
+     *  with the last one. */
+    void endBlock() {
+        _prev = -1;
+    }
+
+    /** Add the counts in OTHER, which must be for an alphabet of the same
+     *  size, to mine. */
+    void merge(CipherStats other) {
+        if (other._size != _size) {
+            throw error("merging statistics of different alphabets");
+        }
+        for (int i = 0; i < _size; i += 1) {
+            _counts[i] += other._counts[i];
+        }
+        for (int i = 0; i < _bigrams.length; i += 1) {
+            _bigrams[i] += other._bigrams[i];
+        }
+    }
+
+    /** Add the counts in NEXT, which must be for an alphabet of the same
+     *  size and count the text following mine, to mine, with the bigram
+     *  joining my last character to its first. */
+    void join(CipherStats next) {
+        merge(next);
+        if (_prev >= 0 && next._first >= 0) {
+            _bigrams[_prev * _size + next._first] += 1;
+        }
+        if (_first < 0) {
+            _first = next._first;
+        }
+        if (next._prev >= 0) {
+            _prev = next._prev;
+        }
+    }
+
+    /** Return the size of my alphabet. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of characters counted. */
+    long total() {
+        long total = 0;
+        for (long count : _counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /** Return the number of occurrences of the character with index C. */
+    long count(int c) {
+        return _counts[c];
+    }
+
+    /** Return the number of times index A was immediately followed by B. */
+    long bigram(int a, int b) {
+        return _bigrams[a * _size + b];
+    }
+
+    /** Return the relative frequency of the character with index C. */
+    double frequency(int c) {
+        long total = total();
+        return total == 0 ? 0.0 : (double) _counts[c] / total;
+    }
+
+    /** Return the index of coincidence: the probability that two characters
+     *  drawn without replacement are equal. */
+    double indexOfCoincidence() {
+        long total = total();
+        if (total < 2) {
+            return 0.0;
+        }
+        double sum = 0;
+        for (long count : _counts) {
+            sum += (double) count * (count - 1);
+        }
+        return sum / ((double) total * (total - 1));
+    }
+
+    /** Print a summary on OUT, naming characters from ALPHABET and listing
+     *  the TOPBIGRAMS most frequent bigrams. */
+    void print(PrintStream out, Alphabet alphabet, int topBigrams) {
+        out.printf("characters %d  IoC %.5f  (x%d = %.3f)%n", total(),
+                   indexOfCoincidence(), _size,
+                   indexOfCoincidence() * _size);
+        for (int c = 0; c < _size; c += 1) {
+            out.printf("  %c %12d %8.5f%n", alphabet.toChar(c), _counts[c],
+                       frequency(c));
+        }
+        int[] order = IntStream.range(0, _bigrams.length).boxed()
+            .sorted((a, b) -> Long.compare(_bigrams[b], _bigrams[a]))
+            .mapToInt(Integer::intValue).limit(topBigrams).toArray();
+        out.print("  top bigrams:");
+        for (int k : order) {
+            out.printf(" %c%c:%d", alphabet.toChar(k / _size),
+                       alphabet.toChar(k % _size), _bigrams[k]);
+        }
+        out.println();
+    }
+
+    /** Return the statistics of the text in FILE over ALPHABET, counting
+     *  shards of BLOCKBYTES bytes in parallel.  The statistics of each
+     *  message, in order, are added to MESSAGES if it is not null.
+     *  Shards are cut at line boundaries, and the pieces of a message
+     *  that spans shards are joined afterwards, bigram included. */
+    static CipherStats ofFile(Path file, Alphabet alphabet, long blockBytes,
+                              List<CipherStats> messages)
+        throws IOException {
+        byte[] table = byteTable(alphabet);
+        try (FileChannel channel = FileChannel.open(file,
+                                                    StandardOpenOption.READ)) {
+            long size = channel.size();
+            int numBlocks = (int) Math.max(1, (size + blockBytes - 1)
+                                              / blockBytes);
+            long[] starts = new long[numBlocks + 1];
+            for (int b = 1; b < numBlocks; b += 1) {
+                starts[b] = nextLine(channel, b * blockBytes, size);
+            }
+            starts[numBlocks] = size;
+            List<List<CipherStats>> results = new ArrayList<>();
+            for (int b = 0; b < numBlocks; b += 1) {
+                results.add(null);
+            }
+            IntStream.range(0, numBlocks).parallel().forEach(b -> {
+                List<CipherStats> pieces = new ArrayList<>();
+                pieces.add(new CipherStats(alphabet.size()));
+                if (starts[b] < starts[b + 1]) {
+                    countBytes(map(channel, starts[b], starts[b + 1]),
+                               table, pieces);
+                }
+                results.set(b, pieces);
+            });
+            List<CipherStats> all = new ArrayList<>();
+            CipherStats current = new CipherStats(alphabet.size());
+            all.add(current);
+            for (List<CipherStats> pieces : results) {
+                current.join(pieces.get(0));
+                for (int k = 1; k < pieces.size(); k += 1) {
+                    current = pieces.get(k);
+                    all.add(current);
+                }
+            }
+            if (all.get(0).total() == 0) {
+                all.remove(0);
+            }
+            CipherStats total = new CipherStats(alphabet.size());
+            for (CipherStats message : all) {
+                total.merge(message);
+            }
+            if (messages != null) {
+                messages.addAll(all);
+            }
+            return total;
+        }
+    }
+
+    /** Count the characters in BUFFER, translating bytes to indices by
+     *  TABLE (-1 for bytes to skip) and skipping settings lines.  Counts
+     *  go to the last element of PIECES, and each settings line adds a
+     *  new element for the message that follows it. */
+    private static void countBytes(MappedByteBuffer buffer, byte[] table,
+                                   List<CipherStats> pieces) {
+        CipherStats piece = pieces.get(pieces.size() - 1);
+        long[] counts = piece._counts, bigrams = piece._bigrams;
+        int size = piece._size, prev = piece._prev, first = piece._first;
+        boolean lineStart = true, skipping = false;
+        byte[] chunk = new byte[1 << 16];
+        while (buffer.hasRemaining()) {
+            int n = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, n);
+            for (int i = 0; i < n; i += 1) {
+                byte b = chunk[i];
+                int c = table[b & 0xff];
+                if (c >= 0 && !skipping) {
+                    counts[c] += 1;
+                    if (prev >= 0) {
+                        bigrams[prev * size + c] += 1;
+                    } else if (first < 0) {
+                        first = c;
+                    }
+                    prev = c;
+                } else if (b == '\n') {
+                    lineStart = true;
+                    skipping = false;
+                    continue;
+                } else if (lineStart && b == '*') {
+                    piece._first = first;
+                    piece._prev = prev;
+                    piece = new CipherStats(size);
+                    pieces.add(piece);
+                    counts = piece._counts;
+                    bigrams = piece._bigrams;
+                    first = prev = -1;
+                    skipping = true;
+                } else if (Character.isWhitespace((char) (b & 0xff))) {
+                    continue;
+                }
+                lineStart = false;
+            }
+        }
+        piece._first = first;
+        piece._prev = prev;
+    }
+
+    /** Return a table giving the index in ALPHABET of each byte value, or
+     *  of its upper-case equivalent, or -1. */
+    private static byte[] byteTable(Alphabet alphabet) {
+        if (alphabet.size() > Byte.MAX_VALUE) {
+            throw error("alphabet too large for byte-level counting");
+        }
+        byte[] table = new byte[256];
+        for (int b = 0; b < 256; b += 1) {
+            int c = alphabet.indexOf((char) b);
+            if (c < 0) {
+                c = alphabet.indexOf(Character.toUpperCase((char) b));
+            }
+            table[b] = Character.isWhitespace((char) b) ? -1 : (byte) c;
+        }
+        return table;
+    }
+
+    /** Return the position just after the first newline at or after POS
+     *  in CHANNEL, whose size is SIZE, or SIZE if there is none. */
+    private static long nextLine(FileChannel channel, long pos, long size) {
+        MappedByteBuffer buffer = map(channel, pos,
+                                      Math.min(size, pos + (1 << 16)));
+        for (int i = 0; i < buffer.limit(); i += 1) {
+            if (buffer.get(i) == '\n') {
+                return pos + i + 1;
+            }
+        }
+        return buffer.limit() == 0 || pos + buffer.limit() >= size ? size
+            : nextLine(channel, pos + buffer.limit(), size);
+    }
+
+    /** Return a read-only mapping of CHANNEL between START and END. */
+    private static MappedByteBuffer map(FileChannel channel, long start,
+                                        long end) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, start,
+                               end - start);
+        } catch (IOException excp) {
+            throw error("could not map input: %s", excp.getMessage());
+        }
+    }
+
+    /** Count the file named by ARGS as described in the class comment. */
+    public static void main(String... args) {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: java enigma.CipherStats ALPHABET FILE"
+                               + " [BLOCKMB]");
+            System.exit(1);
+        }
+        List<CipherStats> messages = new ArrayList<>();
+        Alphabet alphabet;
+        CipherStats total;
+        long start;
+        try {
+            alphabet = new Alphabet(args[0]);
+            long blockMB;
+            try {
+                blockMB = args.length > 2 ? Long.parseLong(args[2]) : 64;
+            } catch (NumberFormatException excp) {
+                blockMB = 0;
+            }
+            if (blockMB <= 0) {
+                throw error("bad block size: %s", args[2]);
+            }
+            long blockBytes = Math.min(Integer.MAX_VALUE,
+                                       Math.min(blockMB, 1 << 20) << 20);
+            start = System.nanoTime();
+            total = ofFile(Paths.get(args[1]), alphabet, blockBytes,
+                           messages);
+        } catch (IOException | EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        for (int m = 0; m < messages.size(); m += 1) {
+            System.out.printf("message %d: characters %d  IoC %.5f%n", m,
+                              messages.get(m).total(),
+                              messages.get(m).indexOfCoincidence());
+        }
+        total.print(System.out, alphabet, 10);
+        System.out.printf("%.1f MB/s%n", Paths.get(args[1]).toFile().length()
+                          / 1e6 / (nanos / 1e9));
+    }
+
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Occurrences of each character. */
+    private final long[] _counts;
+    /** Occurrences of each pair, indexed by first * _size + second. */
+    private final long[] _bigrams;
+    /** Index of the first character counted, or -1. */
+    private int _first;
+    /** Index of the last character counted in this block, or -1. */
+    private int _prev;
+}
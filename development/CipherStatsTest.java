@@ -0,0 +1,166 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CipherStats class.
+ *  @author Kevin Li
+ */
+public class CipherStatsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Temporary files, deleted after each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the statistics of each message in TEXT over ALPHABET,
+     *  counted a character at a time, as for CipherStats.ofFile. */
+    private static List<CipherStats> naive(String text, Alphabet alphabet) {
+        List<CipherStats> result = new ArrayList<>();
+        CipherStats current = new CipherStats(alphabet.size());
+        result.add(current);
+        for (String line : text.split("\n", -1)) {
+            if (Main.isSettingsLine(line)) {
+                current = new CipherStats(alphabet.size());
+                result.add(current);
+                continue;
+            }
+            for (int i = 0; i < line.length(); i += 1) {
+                char ch = Character.toUpperCase(line.charAt(i));
+                if (!Character.isWhitespace(ch) && alphabet.contains(ch)) {
+                    current.accept(alphabet.toInt(ch));
+                }
+            }
+        }
+        if (result.get(0).total() == 0) {
+            result.remove(0);
+        }
+        return result;
+    }
+
+    /** Return random text of about LINES lines from RANDOM, with settings
+     *  lines (some indented), blank lines, lower case and characters
+     *  outside the upper-case alphabet. */
+    private static String randomText(int lines, Random random) {
+        StringBuilder text = new StringBuilder();
+        String[] settings = {
+            "* B Beta I II III AXLE", " \t* B Gamma IV V I ZZZZ (AQ)",
+            "*X Y Z", "  *",
+        };
+        String noise = "abcxyz .,;-\t\r0123456789";
+        for (int k = 0; k < lines; k += 1) {
+            int kind = random.nextInt(10);
+            if (kind == 0) {
+                text.append(settings[random.nextInt(settings.length)]);
+            } else if (kind > 1) {
+                for (int i = random.nextInt(70); i > 0; i -= 1) {
+                    if (random.nextInt(5) == 0) {
+                        text.append(noise.charAt(
+                            random.nextInt(noise.length())));
+                    } else {
+                        text.append((char) ('A' + random.nextInt(26)));
+                    }
+                }
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    /** Assert that EXPECTED and ACTUAL hold the same counts. */
+    private static void assertSameStats(String msg, CipherStats expected,
+                                        CipherStats actual) {
+        assertEquals(msg, expected.total(), actual.total());
+        for (int a = 0; a < expected.size(); a += 1) {
+            assertEquals(msg, expected.count(a), actual.count(a));
+            for (int b = 0; b < expected.size(); b += 1) {
+                assertEquals(msg, expected.bigram(a, b), actual.bigram(a, b));
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testCountsAndIndexOfCoincidence() {
+        Alphabet alphabet = new Alphabet(UPPER_STRING);
+        CipherStats stats = new CipherStats(alphabet.size());
+        stats.accept("AABa", alphabet);
+        stats.endBlock();
+        stats.accept("B", alphabet);
+        assertEquals(5, stats.total());
+        assertEquals(3, stats.count(0));
+        assertEquals(2, stats.count(1));
+        assertEquals(1, stats.bigram(0, 0));
+        assertEquals(1, stats.bigram(0, 1));
+        assertEquals(1, stats.bigram(1, 0));
+        assertEquals(0, stats.bigram(1, 1));
+        assertEquals((3.0 * 2 + 2 * 1) / (5 * 4),
+                     stats.indexOfCoincidence(), 1e-12);
+        assertEquals(0.6, stats.frequency(0), 1e-12);
+    }
+
+    @Test
+    public void testJoinCountsConnectingBigram() {
+        Alphabet alphabet = new Alphabet(UPPER_STRING);
+        CipherStats whole = new CipherStats(alphabet.size());
+        whole.accept("ABCDE", alphabet);
+        CipherStats left = new CipherStats(alphabet.size()),
+            empty = new CipherStats(alphabet.size()),
+            right = new CipherStats(alphabet.size());
+        left.accept("AB", alphabet);
+        right.accept("CDE", alphabet);
+        left.join(empty);
+        left.join(right);
+        assertSameStats("joined", whole, left);
+        empty.join(whole);
+        assertSameStats("into empty", whole, empty);
+    }
+
+    @Test
+    public void testFileMatchesNaiveCounting() throws IOException {
+        Alphabet alphabet = new Alphabet(UPPER_STRING);
+        Random random = new Random(7);
+        Path file = tmp.newFile("stats.txt").toPath();
+        for (int trial = 0; trial < 4; trial += 1) {
+            String text = (trial == 0 ? "" : "LEADING TEXT\n")
+                + randomText(400, random);
+            Files.writeString(file, text);
+            List<CipherStats> expected = naive(text, alphabet);
+            CipherStats expectedTotal = new CipherStats(alphabet.size());
+            for (CipherStats message : expected) {
+                expectedTotal.merge(message);
+            }
+            for (long blockBytes : new long[] { 37, 500, 1 << 20 }) {
+                List<CipherStats> messages = new ArrayList<>();
+                CipherStats total =
+                    CipherStats.ofFile(file, alphabet, blockBytes, messages);
+                String msg = trial + "/" + blockBytes;
+                assertSameStats(msg, expectedTotal, total);
+                assertEquals(msg, expected.size(), messages.size());
+                for (int m = 0; m < expected.size(); m += 1) {
+                    assertSameStats(msg + " message " + m, expected.get(m),
+                                    messages.get(m));
+                }
+            }
+        }
+        Files.delete(file);
+    }
+}
@@ -0,0 +1,48 @@
+package enigma;
+
+/** An engine that composes the reflector and every rotor but the
+ *  rightmost into a single table, rebuilt only when one of those rotors
+ *  moves, so that most characters take three table lookups plus the
+ *  plugboard.  It suits small alphabets and many rotors, where a
+ *  rebuild costs little next to the characters converted between
+ *  rebuilds.
+ *  @author Kevin Li
+ */
+class ComposedEngine implements EncryptionEngine {
+
+    @Override
+    public String name() {
+        return "composed";
+    }
+
+    @Override
+    public boolean supports(Machine M) {
+        return M.numRotors() > 2;
+    }
+
+    @Override
+    public void convert(Machine M, int[] text, int from, int to) {
+        int slots = M.numRotors(), last = slots - 1;
+        int[] inner = new int[M.alphabet().size()];
+        boolean stale = true;
+        Rotor right = M.rotor(last);
+        Permutation plugboard = M.plugboard();
+        for (int k = from; k < to; k += 1) {
+            if (M.step() || stale) {
+                for (int x = 0; x < inner.length; x += 1) {
+                    int y = x;
+                    for (int i = last - 1; i >= 0; i -= 1) {
+                        y = M.rotor(i).convertForward(y);
+                    }
+                    for (int i = 1; i < last; i += 1) {
+                        y = M.rotor(i).convertBackward(y);
+                    }
+                    inner[x] = y;
+                }
+                stale = false;
+            }
+            int x = right.convertForward(plugboard.permute(text[k]));
+            text[k] = plugboard.permute(right.convertBackward(inner[x]));
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static enigma.EnigmaException.*;
+
+/** A compiled machine configuration: the alphabet, the numbers of rotor
+ *  slots and pawls, and the description of every available rotor, with
+ *  its permutation already compiled.  A Config is immutable once built
+ *  and can produce any number of independent Machines, all sharing the
+ *  same compiled permutations.  Attaching RotorTables (see setTables)
+ *  changes only where those Machines' rotors find their tables.
+ *
+ *  Catalogs may define thousands of rotors, many of them the same wiring
+ *  under other names or notches.  A rotor is kept here only as a compact
+ *  descriptor (name, kind, notches and permutation), and rotors with the
+ *  same wiring share one interned Permutation, which a parser meeting
+ *  the cycles of an earlier rotor again reuses without building another
+ *  (see withCycles).  Machines build a Rotor, with its conversion
+ *  tables, only for the rotors they actually insert.
+ *  @author Kevin Li
+ */
+class Config {
+
+    /** A configuration over ALPHABET for machines with NUMROTORS slots and
+     *  PAWLS pawls. */
+    Config(Alphabet alphabet, int numRotors, int pawls) {
+        _alphabet = alphabet;
+        _numRotors = numRotors;
+        _pawls = pawls;
+    }
+
+    /** Add a rotor named NAME of kind KIND ('M', 'N' or 'R') with the given
+     *  NOTCHES (empty unless KIND is 'M') and permutation PERM. */
+    void addRotor(String name, char kind, String notches, Permutation perm) {
+        if (kind != 'M' && kind != 'N' && kind != 'R') {
+            throw error("Invalid rotor identifier");
+        }
+        if (indexOf(name, 0, name.length()) >= 0) {
+            throw error("Duplicate rotor name %s", name);
+        }
+        _names.add(name);
+        _kinds.append(kind);
+        _notches.add(notches);
+        Permutation shared = intern(perm);
+        _perms.add(shared);
+        _cycles.putIfAbsent(perm.cycles(), shared);
+        _fingerprint = null;
+        if (_names.size() * 2 >= _nameTable.length) {
+            growNameTable();
+        }
+        insertName(_names.size());
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls. */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /** Return the number of available rotors. */
+    int size() {
+        return _names.size();
+    }
+
+    /** Return the name of rotor #K. */
+    String name(int k) {
+        return _names.get(k);
+    }
+
+    /** Return the kind ('M', 'N' or 'R') of rotor #K. */
+    char kind(int k) {
+        return _kinds.charAt(k);
+    }
+
+    /** Return the notches of rotor #K. */
+    String notches(int k) {
+        return _notches.get(k);
+    }
+
+    /** Return the permutation of rotor #K. */
+    Permutation permutation(int k) {
+        return _perms.get(k);
+    }
+
+    /** Return the permutation of my rotors added with a permutation whose
+     *  cycles() is CYCLES, or null if there is none.  This lets a parser
+     *  reuse a wiring without compiling it again. */
+    Permutation withCycles(String cycles) {
+        return _cycles.get(cycles);
+    }
+
+    /** Return the number of distinct wirings among my rotors. */
+    int wirings() {
+        return _wirings.size();
+    }
+
+    /** Return the index of the rotor whose name, ignoring case, is the
+     *  text of NAME between START and END, or -1 if there is none. */
+    int indexOf(CharSequence name, int start, int end) {
+        int slot = slot(hashName(name, start, end));
+        while (_nameTable[slot] != 0) {
+            int k = _nameTable[slot] - 1;
+            if (nameEquals(_names.get(k), name, start, end)) {
+                return k;
+            }
+            slot = (slot + 1) & (_nameTable.length - 1);
+        }
+        return -1;
+    }
+
+    /** Return a 64-bit FNV-1a hash of everything that determines the
+     *  output of my machines: the alphabet, the numbers of slots and pawls
+     *  and each rotor's name, kind, notches and wiring.  Binary files
+     *  record it so that they are not processed with another
+     *  configuration.  It is computed once, until the next addRotor. */
+    long fingerprint() {
+        Long cached = _fingerprint;
+        if (cached == null) {
+            cached = computeFingerprint();
+            _fingerprint = cached;
+        }
+        return cached;
+    }
+
+    /** Return my fingerprint, computed afresh. */
+    private long computeFingerprint() {
+        long h = FNV_BASIS;
+        h = fnv(h, _alphabet.chars());
+        h = fnv(fnv(h, _numRotors), _pawls);
+        for (int k = 0; k < size(); k += 1) {
+            h = fnv(fnv(h, name(k)), kind(k));
+            h = fnv(h, notches(k));
+            Permutation perm = permutation(k);
+            for (int x = 0; x < perm.size(); x += 1) {
+                h = fnv(h, perm.permute(x));
+            }
+        }
+        return h;
+    }
+
+    /** Have the rotors of Machines made from now on read their conversion
+     *  tables from TABLES, which must have been made for me, or compile
+     *  their own if TABLES is null. */
+    void setTables(RotorTables tables) {
+        if (tables != null && tables.fingerprint() != fingerprint()) {
+            throw error("rotor tables were made for another configuration");
+        }
+        _tables = tables;
+    }
+
+    /** Return the tables set by setTables, or null. */
+    RotorTables tables() {
+        return _tables;
+    }
+
+    /** Return a new, independent rotor #K in its 0 setting. */
+    Rotor newRotor(int k) {
+        RotorTables t = _tables;
+        switch (kind(k)) {
+        case 'M':
+            return t == null
+                ? new MovingRotor(name(k), permutation(k), notches(k))
+                : new MovingRotor(name(k), permutation(k), notches(k), t, k);
+        case 'R':
+            return t == null ? new Reflector(name(k), permutation(k))
+                : new Reflector(name(k), permutation(k), t, k);
+        default:
+            return t == null ? new FixedRotor(name(k), permutation(k))
+                : new FixedRotor(name(k), permutation(k), t, k);
+        }
+    }
+
+    /** Return a new Machine with its own rotors built from this
+     *  configuration.  No rotors are inserted yet, and each is built the
+     *  first time it is. */
+    Machine newMachine() {
+        return new Machine(this);
+    }
+
+    /** Return the permutation already interned that maps as PERM does,
+     *  interning PERM if there is none. */
+    private Permutation intern(Permutation perm) {
+        Wiring key = new Wiring(perm);
+        Permutation shared = _wirings.putIfAbsent(key, perm);
+        return shared == null ? perm : shared;
+    }
+
+    /** A Permutation compared by its mapping. */
+    private static final class Wiring {
+
+        /** The wiring of PERM. */
+        Wiring(Permutation perm) {
+            _perm = perm;
+            _hash = perm.mappingHash();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Wiring
+                && ((Wiring) obj)._perm.sameMapping(_perm);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** The permutation. */
+        private final Permutation _perm;
+        /** Its mapping's hash code. */
+        private final int _hash;
+    }
+
+    /** Return the slot of _nameTable at which a search for a name with
+     *  hash code HASH starts. */
+    private int slot(int hash) {
+        return hash & (_nameTable.length - 1);
+    }
+
+    /** Record ENTRY (1 + a rotor index) in the first free slot of
+     *  _nameTable for that rotor's name. */
+    private void insertName(int entry) {
+        String name = _names.get(entry - 1);
+        int s = slot(hashName(name, 0, name.length()));
+        while (_nameTable[s] != 0) {
+            s = (s + 1) & (_nameTable.length - 1);
+        }
+        _nameTable[s] = entry;
+    }
+
+    /** Double the size of _nameTable. */
+    private void growNameTable() {
+        int[] old = _nameTable;
+        _nameTable = new int[old.length * 2];
+        for (int entry : old) {
+            if (entry != 0) {
+                insertName(entry);
+            }
+        }
+    }
+
+    /** Return hash H extended by the characters of TEXT and a separator. */
+    private static long fnv(long h, String text) {
+        for (int i = 0; i < text.length(); i += 1) {
+            h = fnv(h, text.charAt(i));
+        }
+        return fnv(h, -1);
+    }
+
+    /** Return hash H extended by V. */
+    private static long fnv(long h, int v) {
+        return (h ^ v) * FNV_PRIME;
+    }
+
+    /** Return a case-insensitive hash of TEXT between START and END. */
+    private static int hashName(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i += 1) {
+            h = 31 * h + Character.toUpperCase(text.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /** Return true iff NAME equals the text of TEXT between START and END,
+     *  ignoring case. */
+    private static boolean nameEquals(String name, CharSequence text,
+                                      int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i += 1) {
+            if (Character.toUpperCase(text.charAt(i))
+                != Character.toUpperCase(name.charAt(i - start))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** FNV-1a 64-bit offset basis and prime. */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L,
+        FNV_PRIME = 0x100000001b3L;
+
+    /** Common alphabet. */
+    private final Alphabet _alphabet;
+    /** Number of rotor slots. */
+    private final int _numRotors;
+    /** Number of pawls. */
+    private final int _pawls;
+    /** Rotor names, in order of definition. */
+    private final ArrayList<String> _names = new ArrayList<>();
+    /** Rotor kinds, one character per rotor. */
+    private final StringBuilder _kinds = new StringBuilder();
+    /** Rotor notches. */
+    private final ArrayList<String> _notches = new ArrayList<>();
+    /** Rotor permutations, interned. */
+    private final ArrayList<Permutation> _perms = new ArrayList<>();
+    /** Interned permutations, by the cycles() of any permutation added
+     *  with that wiring. */
+    private final HashMap<String, Permutation> _cycles = new HashMap<>();
+    /** Interned permutations, by wiring. */
+    private final HashMap<Wiring, Permutation> _wirings = new HashMap<>();
+    /** Open-addressed table of 1 + rotor index, keyed by name; 0 is
+     *  empty. */
+    private int[] _nameTable = new int[16];
+    /** Shared tables for my rotors, or null. */
+    private volatile RotorTables _tables;
+    /** My fingerprint, or null if it has not been computed since the last
+     *  rotor was added. */
+    private volatile Long _fingerprint;
+}
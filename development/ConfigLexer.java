@@ -0,0 +1,199 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A single-pass, character-level tokenizer for configuration files,
+ *  settings lines and cycle strings.  There are only two kinds of token:
+ *  words (maximal runs of characters other than whitespace and
+ *  parentheses) and cycles (the characters between a matching pair of
+ *  parentheses, with any whitespace inside ignored).  A token is
+ *  described by its position in the source text, so scanning allocates
+ *  nothing; callers that need a token as a String ask for it explicitly.
+ *  @author Kevin Li
+ */
+class ConfigLexer {
+
+    /** Token kind returned at the end of the input. */
+    static final int EOF = 0;
+    /** Token kind of a word. */
+    static final int WORD = 1;
+    /** Token kind of a parenthesized cycle. */
+    static final int CYCLE = 2;
+
+    /** A lexer over SOURCE whose first line is numbered FIRSTLINE. */
+    ConfigLexer(CharSequence source, int firstLine) {
+        _source = source;
+        _end = source.length();
+        _line = firstLine;
+    }
+
+    /** A lexer over SOURCE, starting at line 1. */
+    ConfigLexer(CharSequence source) {
+        this(source, 1);
+    }
+
+    /** Advance to the next token and return its kind. */
+    int next() {
+        skipWhitespace();
+        _tokLine = _line;
+        _tokColumn = _pos - _lineStart + 1;
+        if (_pos >= _end) {
+            _kind = EOF;
+            _tokStart = _tokEnd = _pos;
+        } else if (_source.charAt(_pos) == '(') {
+            scanCycle();
+        } else if (_source.charAt(_pos) == ')') {
+            throw error("unmatched ')'");
+        } else {
+            _tokStart = _pos;
+            while (_pos < _end && !isDelimiter(_source.charAt(_pos))) {
+                _pos += 1;
+            }
+            _tokEnd = _pos;
+            _kind = WORD;
+        }
+        return _kind;
+    }
+
+    /** Return the kind of the next token without consuming it. */
+    int peek() {
+        skipWhitespace();
+        if (_pos >= _end) {
+            return EOF;
+        }
+        return _source.charAt(_pos) == '(' ? CYCLE : WORD;
+    }
+
+    /** Return the kind of the current token. */
+    int kind() {
+        return _kind;
+    }
+
+    /** Return the index in the source of the current token's first
+     *  character (for cycles, the first character after '('). */
+    int start() {
+        return _tokStart;
+    }
+
+    /** Return the index in the source just past the current token (for
+     *  cycles, the index of the closing ')'). */
+    int end() {
+        return _tokEnd;
+    }
+
+    /** Return the number of characters in the current token. */
+    int length() {
+        return _tokEnd - _tokStart;
+    }
+
+    /** Return character K of the current token. */
+    char charAt(int k) {
+        return _source.charAt(_tokStart + k);
+    }
+
+    /** Return the source text. */
+    CharSequence source() {
+        return _source;
+    }
+
+    /** Return the line on which the current token starts. */
+    int line() {
+        return _tokLine;
+    }
+
+    /** Return the column at which the current token starts. */
+    int column() {
+        return _tokColumn;
+    }
+
+    /** Return the current token as a String. */
+    String text() {
+        return _source.subSequence(_tokStart, _tokEnd).toString();
+    }
+
+    /** Return true iff the current token is a word consisting of
+     *  exactly the character CH. */
+    boolean isWord(char ch) {
+        return _kind == WORD && length() == 1 && charAt(0) == ch;
+    }
+
+    /** Return the current token as a non-negative decimal integer. */
+    int intValue() {
+        if (_kind != WORD || length() == 0 || length() > 9) {
+            throw error("expected a number");
+        }
+        int value = 0;
+        for (int i = _tokStart; i < _tokEnd; i += 1) {
+            char ch = _source.charAt(i);
+            if (ch < '0' || ch > '9') {
+                throw error("expected a number");
+            }
+            value = value * 10 + (ch - '0');
+        }
+        return value;
+    }
+
+    /** Return an exception whose message locates the current token and
+     *  then gives MSGFORMAT formatted with ARGUMENTS. */
+    EnigmaException error(String msgFormat, Object... arguments) {
+        return EnigmaException.error("%d:%d: %s", _tokLine, _tokColumn,
+                                     String.format(msgFormat, arguments));
+    }
+
+    /** Scan a cycle whose '(' is at the current position. */
+    private void scanCycle() {
+        _pos += 1;
+        _tokStart = _pos;
+        while (_pos < _end) {
+            char ch = _source.charAt(_pos);
+            if (ch == ')') {
+                _tokEnd = _pos;
+                _pos += 1;
+                _kind = CYCLE;
+                return;
+            } else if (ch == '(') {
+                throw error("nested '(' in cycle");
+            } else if (ch == '\n') {
+                throw error("cycle not closed on its line");
+            }
+            _pos += 1;
+        }
+        throw error("incomplete ()");
+    }
+
+    /** Skip whitespace, keeping track of line numbers. */
+    private void skipWhitespace() {
+        while (_pos < _end) {
+            char ch = _source.charAt(_pos);
+            if (ch == '\n') {
+                _line += 1;
+                _lineStart = _pos + 1;
+            } else if (!Character.isWhitespace(ch)) {
+                return;
+            }
+            _pos += 1;
+        }
+    }
+
+    /** Return true iff CH ends a word. */
+    static boolean isDelimiter(char ch) {
+        return ch == '(' || ch == ')' || Character.isWhitespace(ch);
+    }
+
+    /** Text being scanned. */
+    private final CharSequence _source;
+    /** Length of _source. */
+    private final int _end;
+    /** Current scanning position. */
+    private int _pos;
+    /** Current line number. */
+    private int _line;
+    /** Index of the first character of the current line. */
+    private int _lineStart;
+    /** Kind of the current token. */
+    private int _kind;
+    /** Bounds of the current token. */
+    private int _tokStart, _tokEnd;
+    /** Location of the current token. */
+    private int _tokLine, _tokColumn;
+}
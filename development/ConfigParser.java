@@ -0,0 +1,219 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Recursive-descent parsers for the configuration-file and settings-line
+ *  grammars, built on ConfigLexer.  Both work in a single pass over the
+ *  text and produce compiled structures directly: cycles are compiled
+ *  straight into permutation tables and rotor names are resolved against
+ *  the Config without first being copied into Strings.  Errors are
+ *  reported as EnigmaExceptions prefixed with LINE:COLUMN.
+ *  @author Kevin Li
+ */
+class ConfigParser {
+
+    /** Not instantiable. */
+    private ConfigParser() {
+    }
+
+    /** Return the configuration described by TEXT, which has the form
+     *      ALPHABET NUMROTORS NUMPAWLS { NAME TYPE CYCLE* }*
+     *  where TYPE is M followed by the notches, N or R. */
+    static Config parseConfig(CharSequence text) {
+        ConfigLexer lexer = new ConfigLexer(text);
+        Alphabet alphabet = parseAlphabet(lexer);
+        expect(lexer, ConfigLexer.WORD, "number of rotors");
+        int numRotors = lexer.intValue();
+        expect(lexer, ConfigLexer.WORD, "number of pawls");
+        int pawls = lexer.intValue();
+        Config config = new Config(alphabet, numRotors, pawls);
+        int[] forward = Permutation.identity(alphabet.size());
+        int[] inverse = Permutation.identity(alphabet.size());
+        lexer.next();
+        while (lexer.kind() != ConfigLexer.EOF) {
+            parseRotor(lexer, config, forward, inverse);
+        }
+        return config;
+    }
+
+    /** Return the settings described by LINE, which is line number
+     *  LINENUMBER of its input, for a machine built from CONFIG.  LINE
+     *  has the form
+     *      * NAME{numRotors} POSITIONS [RINGS] CYCLE*
+     *  Every rotor named must exist in CONFIG, and POSITIONS and RINGS must
+     *  each have one character of the alphabet per non-reflector slot.
+     *  RINGS defaults to the first character of the alphabet for every
+     *  rotor. */
+    static Settings parseSettings(CharSequence line, int lineNumber,
+                                  Config config) {
+        ConfigLexer lexer = new ConfigLexer(line, lineNumber);
+        Alphabet alphabet = config.alphabet();
+        lexer.next();
+        if (!lexer.isWord('*')) {
+            throw lexer.error("settings line must start with *");
+        }
+        int[] rotors = new int[config.numRotors()];
+        for (int k = 0; k < rotors.length; k += 1) {
+            expect(lexer, ConfigLexer.WORD, "rotor name");
+            rotors[k] = config.indexOf(line, lexer.start(), lexer.end());
+            if (rotors[k] < 0) {
+                throw lexer.error("No such rotor exist: %s", lexer.text());
+            }
+        }
+        expect(lexer, ConfigLexer.WORD, "rotor positions");
+        if (lexer.length() != rotors.length - 1) {
+            throw lexer.error("Wrong setting length");
+        }
+        String positions = parseRotorChars(lexer, alphabet, "Setting");
+        String rings;
+        if (lexer.next() == ConfigLexer.WORD) {
+            if (lexer.length() != rotors.length - 1) {
+                throw lexer.error("Wrong ring setting length");
+            }
+            rings = parseRotorChars(lexer, alphabet, "Ring setting");
+            lexer.next();
+        } else {
+            rings = defaultRings(alphabet, rotors.length - 1);
+        }
+        Permutation plugboard = parsePermutation(lexer, alphabet);
+        if (lexer.kind() != ConfigLexer.EOF) {
+            throw lexer.error("unexpected '%s' in settings", lexer.text());
+        }
+        return new Settings(rotors, positions, rings, plugboard);
+    }
+
+    /** Return the current token of LEXER, whose characters must all be in
+     *  ALPHABET; WHAT describes it in error messages. */
+    private static String parseRotorChars(ConfigLexer lexer,
+                                          Alphabet alphabet, String what) {
+        for (int k = 0; k < lexer.length(); k += 1) {
+            if (!alphabet.contains(lexer.charAt(k))) {
+                throw lexer.error("%s out of bounds", what);
+            }
+        }
+        return lexer.text();
+    }
+
+    /** Return the ring settings for N rotors all at the first character
+     *  of ALPHABET. */
+    static String defaultRings(Alphabet alphabet, int n) {
+        return String.valueOf(alphabet.toChar(0)).repeat(n);
+    }
+
+    /** Parse the alphabet, which is LEXER's next token. */
+    private static Alphabet parseAlphabet(ConfigLexer lexer) {
+        expect(lexer, ConfigLexer.WORD, "alphabet");
+        for (int k = 0; k < lexer.length(); k += 1) {
+            if (lexer.charAt(k) == '*') {
+                throw lexer.error("Wrong config in readAlphabet");
+            }
+        }
+        try {
+            return new Alphabet(lexer.text());
+        } catch (EnigmaException excp) {
+            throw lexer.error("%s", excp.getMessage());
+        }
+    }
+
+    /** Parse one rotor description starting at LEXER's current token and
+     *  add it to CONFIG, using FORWARD and INVERSE, identity tables over
+     *  CONFIG's alphabet, as scratch space.  Leaves LEXER at the token
+     *  following the description. */
+    private static void parseRotor(ConfigLexer lexer, Config config,
+                                   int[] forward, int[] inverse) {
+        if (lexer.kind() != ConfigLexer.WORD) {
+            throw lexer.error("expected a rotor name");
+        }
+        String name = lexer.text().toUpperCase();
+        int line = lexer.line(), column = lexer.column();
+        expect(lexer, ConfigLexer.WORD, "rotor type");
+        char kind = Character.toUpperCase(lexer.charAt(0));
+        String notches = "";
+        if (kind == 'M') {
+            for (int k = 1; k < lexer.length(); k += 1) {
+                char ch = Character.toUpperCase(lexer.charAt(k));
+                if (!config.alphabet().contains(ch)) {
+                    throw lexer.error("notch '%c' is not in the alphabet",
+                                      ch);
+                }
+            }
+            notches = lexer.text().substring(1).toUpperCase();
+        } else if (kind != 'N' && kind != 'R') {
+            throw lexer.error("Invalid rotor identifier");
+        }
+        lexer.next();
+        Permutation perm = parseWiring(lexer, config, forward, inverse);
+        try {
+            config.addRotor(name, kind, notches, perm);
+        } catch (EnigmaException excp) {
+            throw error("%d:%d: %s", line, column, excp.getMessage());
+        }
+    }
+
+    /** Return the permutation given by the cycles starting at LEXER's
+     *  current token for a rotor of CONFIG, leaving LEXER at the first
+     *  token that is not a cycle.  The cycles are checked by compiling
+     *  them into FORWARD and INVERSE, identity tables that are restored
+     *  afterwards, and their text, with whitespace inside cycles removed
+     *  and single spaces between them, is looked up in CONFIG.  A new
+     *  Permutation, with that text as its cycles, is built only if no
+     *  earlier rotor has the same text. */
+    private static Permutation parseWiring(ConfigLexer lexer, Config config,
+                                           int[] forward, int[] inverse) {
+        Alphabet alphabet = config.alphabet();
+        StringBuilder text = new StringBuilder();
+        try {
+            while (lexer.kind() == ConfigLexer.CYCLE) {
+                Permutation.addCycle(lexer, alphabet, forward, inverse);
+                text.append(text.length() == 0 ? "(" : " (");
+                for (int k = 0; k < lexer.length(); k += 1) {
+                    if (!Character.isWhitespace(lexer.charAt(k))) {
+                        text.append(lexer.charAt(k));
+                    }
+                }
+                text.append(')');
+                lexer.next();
+            }
+            String cycles = text.toString();
+            Permutation perm = config.withCycles(cycles);
+            return perm != null ? perm
+                : new Permutation(alphabet, cycles, forward.clone(),
+                                  inverse.clone());
+        } finally {
+            for (int x = 0; x < forward.length; x += 1) {
+                forward[x] = inverse[x] = x;
+            }
+        }
+    }
+
+    /** Compile the cycles starting at LEXER's current token, over
+     *  ALPHABET, into a Permutation.  Leaves LEXER at the first token that
+     *  is not a cycle. */
+    private static Permutation parsePermutation(ConfigLexer lexer,
+                                                Alphabet alphabet) {
+        int[] forward = Permutation.identity(alphabet.size());
+        int[] inverse = Permutation.identity(alphabet.size());
+        int first = lexer.start() - 1, last = first;
+        while (lexer.kind() == ConfigLexer.CYCLE) {
+            Permutation.addCycle(lexer, alphabet, forward, inverse);
+            last = lexer.end() + 1;
+            lexer.next();
+        }
+        String cycles =
+            last > first ? lexer.source().subSequence(first, last).toString()
+            : "";
+        return new Permutation(alphabet, cycles, forward, inverse);
+    }
+
+    /** Advance LEXER, requiring a token of kind KIND, described as WHAT
+     *  in error messages. */
+    private static void expect(ConfigLexer lexer, int kind, String what) {
+        if (lexer.next() != kind) {
+            if (lexer.kind() == ConfigLexer.EOF) {
+                throw lexer.error("configuration truncated: expected %s",
+                                  what);
+            }
+            throw lexer.error("expected %s", what);
+        }
+    }
+}
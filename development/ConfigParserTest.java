@@ -0,0 +1,159 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for ConfigLexer and ConfigParser.
+ *  @author Kevin Li
+ */
+public class ConfigParserTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A small configuration in the format of the assignment. */
+    private static final String CONFIG =
+        UPPER_STRING + "\n 5 3\n"
+        + "I MQ " + NAVALA.get("I") + "\n"
+        + "III MV " + NAVALA.get("III") + "\n"
+        + "IV MJ " + NAVALA.get("IV") + "\n"
+        + "Beta N " + NAVALA.get("Beta") + "\n"
+        + "B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "     (RX) (SZ) (TV)\n";
+
+    /** Return the message of the EnigmaException thrown by BODY, or fail
+     *  if there is none. */
+    private String errorOf(Runnable body) {
+        try {
+            body.run();
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        }
+        fail("expected an EnigmaException");
+        return null;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testLexerTokens() {
+        ConfigLexer lexer = new ConfigLexer("* B\n  (AB)(C D) 12");
+        assertEquals(ConfigLexer.WORD, lexer.next());
+        assertTrue(lexer.isWord('*'));
+        assertEquals(ConfigLexer.WORD, lexer.next());
+        assertEquals("B", lexer.text());
+        assertEquals(ConfigLexer.CYCLE, lexer.next());
+        assertEquals("AB", lexer.text());
+        assertEquals(2, lexer.line());
+        assertEquals(3, lexer.column());
+        assertEquals(ConfigLexer.CYCLE, lexer.next());
+        assertEquals("C D", lexer.text());
+        assertEquals(ConfigLexer.WORD, lexer.next());
+        assertEquals(12, lexer.intValue());
+        assertEquals(ConfigLexer.EOF, lexer.next());
+    }
+
+    @Test
+    public void testParseConfig() {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        assertEquals(26, config.alphabet().size());
+        assertEquals(5, config.numRotors());
+        assertEquals(3, config.numPawls());
+        assertEquals(5, config.size());
+        int beta = config.indexOf("beta", 0, 4);
+        assertEquals("BETA", config.name(beta));
+        assertEquals('N', config.kind(beta));
+        assertEquals("V", config.notches(config.indexOf("III", 0, 3)));
+        Permutation b = config.permutation(config.indexOf("B", 0, 1));
+        assertTrue(b.derangement());
+        assertEquals('X', b.permute('R'));
+        Permutation one = config.permutation(config.indexOf("I", 0, 1));
+        for (int i = 0; i < 26; i += 1) {
+            assertEquals(NAVALA_MAP.get("I").charAt(i),
+                         one.permute(UPPER_STRING.charAt(i)));
+        }
+    }
+
+    @Test
+    public void testParseSettings() {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        Settings set = ConfigParser.parseSettings(
+            "* B Beta III IV I AXLE (YF) (ZH)", 1, config);
+        assertEquals(5, set.numRotors());
+        assertEquals("BETA", config.name(set.rotor(1)));
+        assertEquals("I", config.name(set.rotor(4)));
+        assertEquals("AXLE", set.positions());
+        assertEquals('F', set.plugboard().permute('Y'));
+        assertEquals('A', set.plugboard().permute('A'));
+    }
+
+    @Test
+    public void testErrorLocations() {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        assertEquals("3:14: No such rotor exist: X",
+                     errorOf(() -> ConfigParser.parseSettings(
+                         "* B Beta III X I AXLE", 3, config)));
+        assertEquals("1:19: Wrong setting length",
+                     errorOf(() -> ConfigParser.parseSettings(
+                         "* B Beta III IV I AXL", 1, config)));
+        assertEquals("2:3: expected a number",
+                     errorOf(() -> ConfigParser.parseConfig("ABC\n3 x")));
+        assertEquals("3:5: cycle not closed on its line",
+                     errorOf(() -> ConfigParser.parseConfig(
+                         "ABC\n3 2\nA R (AB\nB R (C)")));
+    }
+
+    @Test
+    public void testCatalogSharesWirings() {
+        Config config = ConfigParser.parseConfig(
+            CONFIG + "Ia MZ " + NAVALA.get("I") + "\n"
+            + "Ib N (BKNW) (AELTPHQXRU) (CMOY) (S) (DFG) (JZ) (IV)\n");
+        assertEquals(7, config.size());
+        assertEquals(5, config.wirings());
+        int i = config.indexOf("I", 0, 1), ia = config.indexOf("IA", 0, 2),
+            ib = config.indexOf("ib", 0, 2);
+        assertSame(config.permutation(i), config.permutation(ia));
+        assertSame(config.permutation(i), config.permutation(ib));
+        assertEquals("Z", config.notches(ia));
+        assertEquals('N', config.kind(ib));
+
+        Machine machine = config.newMachine();
+        assertTrue(machine.rotorStore().isEmpty());
+        assertTrue(machine.containsKey("IB"));
+        assertFalse(machine.containsKey("II"));
+        machine.insertRotors(new String[] {"B", "Beta", "IA", "IB", "I"});
+        assertEquals(5, machine.rotorStore().size());
+        assertFalse(machine.rotorStore().containsKey("III"));
+        assertTrue(machine.rotor(2).rotates());
+        assertFalse(machine.rotor(3).rotates());
+        assertTrue(machine.rotor(2) != machine.rotor(4));
+    }
+
+    @Test
+    public void testReusesCyclesBeforeCompiling() {
+        Config config = ConfigParser.parseConfig(
+            "ABCDE 3 1\nX N (A B)(CD)\nY N (AB) (C D)\nZ R (AB)\t(CD)\n"
+            + "W N (BA) (CD)\nV N\nU N (E)\n");
+        Permutation x = config.permutation(config.indexOf("X", 0, 1));
+        assertEquals("(AB) (CD)", x.cycles());
+        assertSame(x, config.permutation(config.indexOf("Y", 0, 1)));
+        assertSame(x, config.permutation(config.indexOf("Z", 0, 1)));
+        assertSame(x, config.permutation(config.indexOf("W", 0, 1)));
+        assertSame(x, config.withCycles("(AB) (CD)"));
+        assertNull(config.withCycles("(A B) (CD)"));
+        Permutation v = config.permutation(config.indexOf("V", 0, 1));
+        assertEquals("", v.cycles());
+        assertSame(v, config.permutation(config.indexOf("U", 0, 1)));
+        assertEquals(2, config.wirings());
+        assertEquals("3:10: 'A' appears in more than one cycle",
+                     errorOf(() -> ConfigParser.parseConfig(
+                         "ABC 2 1\nX N (AB)\nY N (AB) (A)")));
+    }
+}
@@ -0,0 +1,209 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** The compiled configurations in a set of configuration files, kept up
+ *  to date as the files change.  Each file's directory is watched with a
+ *  WatchService.  When a file changes, a background thread recompiles it,
+ *  has Engines choose an engine for the result, and only then publishes
+ *  it by swapping an AtomicReference, so callers never wait for a
+ *  compilation.  A caller that has fetched a Config keeps using it for
+ *  as long as it likes (a message in flight finishes on the definition it
+ *  started with), and the next call of get returns the new one.  Looking
+ *  up a Config takes one ConcurrentHashMap get and one volatile read.  A
+ *  file that no longer compiles leaves the previous Config in place, and
+ *  is counted and reported to the failure handler, if any.
+ *  Editing a file in place can expose a partly written file; replacing
+ *  it by renaming a complete file over it cannot.
+ *  @author Kevin Li
+ */
+class ConfigWatcher implements Closeable {
+
+    /** Time allowed, in milliseconds, for further changes to a file to
+     *  arrive before it is recompiled, so that a file written in pieces
+     *  is compiled once. */
+    static final long SETTLE_MILLIS = 10;
+
+    /** A watcher with no files yet that reports nothing. */
+    ConfigWatcher() {
+        this(message -> { });
+    }
+
+    /** A watcher with no files yet that passes ON_FAILURE a message for
+     *  each changed file it fails to reload.  ON_FAILURE is called on the
+     *  watching thread and must not throw. */
+    ConfigWatcher(Consumer<String> onFailure) {
+        _onFailure = onFailure;
+        try {
+            _watch = FileSystems.getDefault().newWatchService();
+        } catch (IOException excp) {
+            throw error("could not watch configurations: %s",
+                        excp.getMessage());
+        }
+        Thread thread = new Thread(this::run, "enigma-config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Return the current Config in the file named NAME, compiling it and
+     *  starting to watch it on first use. */
+    Config get(String name) {
+        AtomicReference<Config> ref = _byName.get(name);
+        if (ref == null) {
+            Path file = Paths.get(name).toAbsolutePath().normalize();
+            ref = _byName.computeIfAbsent(name, n ->
+                _byFile.computeIfAbsent(file, this::load));
+        }
+        return ref.get();
+    }
+
+    /** Return the number of times a changed file has been published. */
+    long reloads() {
+        return _reloads.get();
+    }
+
+    /** Return the number of times a changed file failed to reload. */
+    long failures() {
+        return _failures.get();
+    }
+
+    /** Return the time, in nanoseconds, the last reload took from noticing
+     *  the change to publishing its result, or 0 if there has been
+     *  none. */
+    long lastReloadNanos() {
+        return _lastReloadNanos;
+    }
+
+    /** Stop watching.  The Configs already returned remain usable. */
+    @Override
+    public void close() throws IOException {
+        _watch.close();
+    }
+
+    /** Return a reference to a newly compiled Config from FILE, after
+     *  starting to watch FILE's directory, so that no change made after
+     *  the file was read is missed. */
+    private AtomicReference<Config> load(Path file) {
+        Path dir = file.getParent();
+        synchronized (_dirs) {
+            if (!_dirs.contains(dir)) {
+                try {
+                    dir.register(_watch,
+                                 StandardWatchEventKinds.ENTRY_CREATE,
+                                 StandardWatchEventKinds.ENTRY_MODIFY);
+                } catch (IOException excp) {
+                    throw error("could not watch %s: %s", dir,
+                                excp.getMessage());
+                }
+                _dirs.add(dir);
+            }
+        }
+        return new AtomicReference<>(compile(file));
+    }
+
+    /** Return the Config compiled from FILE. */
+    private static Config compile(Path file) {
+        return Main.parseConfig(Main.readFile(file.toString()));
+    }
+
+    /** Wait for changes and reload the files changed, until closed. */
+    private void run() {
+        try {
+            while (true) {
+                Set<Path> changed = new HashSet<>();
+                WatchKey key = _watch.take();
+                long noticed = System.nanoTime();
+                do {
+                    collect(key, changed);
+                    key = _watch.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+                for (Path file : changed) {
+                    reload(file, noticed);
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** Add to CHANGED the watched files that the events of KEY report as
+     *  changed, and make KEY ready for more events. */
+    private void collect(WatchKey key, Set<Path> changed) {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                for (Path file : _byFile.keySet()) {
+                    if (file.getParent().equals(dir)) {
+                        changed.add(file);
+                    }
+                }
+            } else {
+                Path file = dir.resolve((Path) event.context());
+                if (_byFile.containsKey(file)) {
+                    changed.add(file);
+                }
+            }
+        }
+        key.reset();
+    }
+
+    /** Recompile FILE, whose change was noticed at time NOTICED (from
+     *  System.nanoTime), and publish the result if it differs from the
+     *  current Config. */
+    private void reload(Path file, long noticed) {
+        AtomicReference<Config> ref = _byFile.get(file);
+        Config config;
+        try {
+            config = compile(file);
+            if (config.fingerprint() == ref.get().fingerprint()) {
+                return;
+            }
+            Engines.choose(config);
+        } catch (RuntimeException excp) {
+            _failures.incrementAndGet();
+            _onFailure.accept(String.format("keeping previous %s: %s",
+                                            file, excp.getMessage()));
+            return;
+        }
+        ref.set(config);
+        _lastReloadNanos = System.nanoTime() - noticed;
+        _reloads.incrementAndGet();
+    }
+
+    /** Watches the directories of my files. */
+    private final WatchService _watch;
+    /** Directories registered with _watch. */
+    private final Set<Path> _dirs = new HashSet<>();
+    /** Current Config of each file, by absolute path. */
+    private final Map<Path, AtomicReference<Config>> _byFile =
+        new ConcurrentHashMap<>();
+    /** The same references, by the names passed to get. */
+    private final Map<String, AtomicReference<Config>> _byName =
+        new ConcurrentHashMap<>();
+    /** Number of reloads and of failed ones. */
+    private final AtomicLong _reloads = new AtomicLong(),
+        _failures = new AtomicLong();
+    /** Duration of the last reload. */
+    private volatile long _lastReloadNanos;
+    /** Receives a message for each failed reload. */
+    private final Consumer<String> _onFailure;
+}
@@ -0,0 +1,100 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigWatcher class.
+ *  @author Kevin Li
+ */
+public class ConfigWatcherTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Temporary files, deleted after each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A naval configuration with one moving rotor. */
+    private static final String CONFIG =
+        navalConfig(3, 1, "I MQ", "Beta N", "B R");
+
+    /** Wait until DONE is true, failing after a while. */
+    private static void await(BooleanSupplier done) {
+        long deadline = System.nanoTime() + 15_000_000_000L;
+        while (!done.getAsBoolean()) {
+            assertTrue("timed out", System.nanoTime() < deadline);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException excp) {
+                fail("interrupted");
+            }
+        }
+    }
+
+    /** Replace FILE by one holding TEXT, written elsewhere and renamed. */
+    private static void replace(Path file, String text) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".new");
+        Files.writeString(temp, text);
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+                   StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testReloads() throws IOException {
+        Path file = tmp.newFolder("watch").toPath().resolve("n.conf");
+        Files.writeString(file, CONFIG);
+        try (ConfigWatcher watcher = new ConfigWatcher()) {
+            Config old = watcher.get(file.toString());
+            assertEquals(3, old.size());
+            assertSame(old, watcher.get(file.toString()));
+            Machine inFlight = old.newMachine();
+            inFlight.insertRotors(new String[] {"B", "BETA", "I"});
+            inFlight.setPlugboard(new Permutation("", UPPER));
+
+            replace(file, CONFIG + "II ME " + NAVALA.get("II") + "\n");
+            await(() -> watcher.get(file.toString()) != old);
+            assertEquals(4, watcher.get(file.toString()).size());
+            assertEquals(1, watcher.reloads());
+            assertTrue(watcher.lastReloadNanos() > 0);
+            assertEquals(3, old.size());
+            inFlight.setRotors("AA");
+            assertEquals(26, inFlight.convert("ABCDEFGHIJKLMNOPQRSTUVWXYZ")
+                         .length());
+        }
+    }
+
+    @Test
+    public void testKeepsConfigThatCompiled() throws IOException {
+        Path file = tmp.newFolder("watch").toPath().resolve("n.conf");
+        Files.writeString(file, CONFIG);
+        List<String> messages = new CopyOnWriteArrayList<>();
+        try (ConfigWatcher watcher = new ConfigWatcher(messages::add)) {
+            Config old = watcher.get(file.toString());
+            replace(file, CONFIG + "II MX (AB\n");
+            await(() -> watcher.failures() > 0);
+            assertSame(old, watcher.get(file.toString()));
+            assertEquals(0, watcher.reloads());
+            assertFalse(messages.isEmpty());
+            assertTrue(messages.get(0).contains(file.getFileName() + ": "));
+        }
+    }
+}
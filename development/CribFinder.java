@@ -0,0 +1,208 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** Finds where known plaintext fragments (cribs) can lie in a
+ *  ciphertext.  A machine whose leftmost rotor is a reflector never
+ *  converts a character to itself, so a crib cannot lie at an offset
+ *  where any of its characters faces the same ciphertext character.
+ *
+ *  The ciphertext is held as one bitset (a long[]) per alphabet character
+ *  marking where that character occurs.  The offsets a crib can take are
+ *  then found 64 at a time: for each crib character c at crib index j,
+ *  the word of the bitset for c starting at bit j is complemented and
+ *  ANDed into the word of candidates.  Cribs are tested over shards of
+ *  the ciphertext in parallel.
+ *
+ *  As a program, prints the candidate offsets of cribs in a text file:
+ *      java enigma.CribFinder ALPHABET FILE CRIB...
+ *  @author Kevin Li
+ */
+class CribFinder {
+
+    /** Number of 64-offset words in a shard. */
+    private static final int SHARD_WORDS = 1 << 12;
+
+    /** A finder for cribs in CIPHERTEXT, whose characters are in ALPHABET.
+     *  Characters not in ALPHABET after upper-casing, such as whitespace,
+     *  are skipped; offsets count only the characters kept. */
+    CribFinder(Alphabet alphabet, CharSequence ciphertext) {
+        _alphabet = alphabet;
+        int length = 0;
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            if (index(ciphertext.charAt(i)) >= 0) {
+                length += 1;
+            }
+        }
+        _length = length;
+        _bits = new long[alphabet.size()][(length + 63) >>> 6];
+        int k = 0;
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            int c = index(ciphertext.charAt(i));
+            if (c >= 0) {
+                _bits[c][k >>> 6] |= 1L << k;
+                k += 1;
+            }
+        }
+    }
+
+    /** Return the number of ciphertext characters. */
+    int length() {
+        return _length;
+    }
+
+    /** Return the offsets, in increasing order, at which CRIB could lie. */
+    int[] find(String crib) {
+        return find(List.of(crib))[0];
+    }
+
+    /** Return, for each of CRIBS, the offsets in increasing order at which
+     *  it could lie. */
+    int[][] find(List<String> cribs) {
+        int[][] cribIndices = new int[cribs.size()][];
+        for (int k = 0; k < cribIndices.length; k += 1) {
+            cribIndices[k] = indices(cribs.get(k));
+        }
+        int words = (_length + 63) >>> 6;
+        int shards = (words + SHARD_WORDS - 1) / SHARD_WORDS;
+        int[][][] found = IntStream.range(0, shards).parallel()
+            .mapToObj(s -> findInShard(cribIndices, s * SHARD_WORDS,
+                                       Math.min(words,
+                                                (s + 1) * SHARD_WORDS)))
+            .toArray(int[][][]::new);
+        int[][] result = new int[cribIndices.length][];
+        for (int k = 0; k < result.length; k += 1) {
+            int total = 0;
+            for (int[][] shard : found) {
+                total += shard[k].length;
+            }
+            result[k] = new int[total];
+            int pos = 0;
+            for (int[][] shard : found) {
+                System.arraycopy(shard[k], 0, result[k], pos,
+                                 shard[k].length);
+                pos += shard[k].length;
+            }
+        }
+        return result;
+    }
+
+    /** Return, for each crib in CRIBS (as alphabet indices), the offsets
+     *  in words FROM (inclusive) to TO (exclusive) of the ciphertext at
+     *  which it could lie. */
+    private int[][] findInShard(int[][] cribs, int from, int to) {
+        int[][] result = new int[cribs.length][];
+        int[] offsets = new int[64];
+        for (int k = 0; k < cribs.length; k += 1) {
+            int[] crib = cribs[k];
+            int last = _length - crib.length;
+            int n = 0;
+            for (int w = from; w < to; w += 1) {
+                int base = w << 6;
+                if (base > last) {
+                    break;
+                }
+                long candidates = base + 63 <= last ? -1L
+                    : (1L << (last - base + 1)) - 1;
+                for (int j = 0; j < crib.length && candidates != 0; j += 1) {
+                    candidates &= ~word(_bits[crib[j]], base + j);
+                }
+                while (candidates != 0) {
+                    if (n == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, 2 * n);
+                    }
+                    offsets[n] = base + Long.numberOfTrailingZeros(candidates);
+                    n += 1;
+                    candidates &= candidates - 1;
+                }
+            }
+            result[k] = Arrays.copyOf(offsets, n);
+        }
+        return result;
+    }
+
+    /** Return the 64 bits of BITS starting at bit START. */
+    private static long word(long[] bits, int start) {
+        int k = start >>> 6, s = start & 63;
+        long lo = k < bits.length ? bits[k] : 0;
+        if (s == 0) {
+            return lo;
+        }
+        long hi = k + 1 < bits.length ? bits[k + 1] : 0;
+        return (lo >>> s) | (hi << (64 - s));
+    }
+
+    /** Return the alphabet index of CH after upper-casing, or -1. */
+    private int index(char ch) {
+        return _alphabet.indexOf(Character.toUpperCase(ch));
+    }
+
+    /** Return the alphabet indices of the characters of CRIB, ignoring
+     *  whitespace. */
+    private int[] indices(String crib) {
+        int[] result = new int[crib.length()];
+        int n = 0;
+        for (int i = 0; i < crib.length(); i += 1) {
+            char ch = crib.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                continue;
+            }
+            result[n] = index(ch);
+            if (result[n] < 0) {
+                throw error("'%c' is not in the alphabet", ch);
+            }
+            n += 1;
+        }
+        if (n == 0) {
+            throw error("empty crib");
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Print the candidate offsets of cribs in a file, as described in the
+     *  class comment, according to ARGS. */
+    public static void main(String... args) {
+        if (args.length < 3) {
+            System.err.println("Usage: java enigma.CribFinder ALPHABET FILE"
+                               + " CRIB...");
+            System.exit(1);
+        }
+        List<String> cribs = Arrays.asList(args).subList(2, args.length);
+        try {
+            CribFinder finder =
+                new CribFinder(new Alphabet(args[0]),
+                               Files.readString(Paths.get(args[1])));
+            long start = System.nanoTime();
+            int[][] found = finder.find(cribs);
+            long nanos = System.nanoTime() - start;
+            for (int k = 0; k < found.length; k += 1) {
+                System.out.printf("%s: %d of %d offsets possible:",
+                                  cribs.get(k), found[k].length,
+                                  finder.length());
+                for (int i = 0; i < Math.min(20, found[k].length); i += 1) {
+                    System.out.printf(" %d", found[k][i]);
+                }
+                System.out.println(found[k].length > 20 ? " ..." : "");
+            }
+            System.out.printf("%.1f M offsets/s%n", (double) finder.length()
+                              * cribs.size() / 1e6 / (nanos / 1e9));
+        } catch (IOException | EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Alphabet of the ciphertext. */
+    private final Alphabet _alphabet;
+    /** Number of ciphertext characters. */
+    private final int _length;
+    /** _bits[c] has bit k set iff ciphertext character k has index c. */
+    private final long[][] _bits;
+}
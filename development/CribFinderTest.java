@@ -0,0 +1,72 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CribFinder class.
+ *  @author Kevin Li
+ */
+public class CribFinderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the offsets at which CRIB could lie in TEXT, found by
+     *  comparing characters. */
+    private static int[] naive(String text, String crib) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int o = 0; o + crib.length() <= text.length(); o += 1) {
+            boolean ok = true;
+            for (int j = 0; j < crib.length() && ok; j += 1) {
+                ok = text.charAt(o + j) != crib.charAt(j);
+            }
+            if (ok) {
+                result[n] = o;
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesNaive() {
+        Random random = new Random(11);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 70000; i += 1) {
+            text.append((char) ('A' + random.nextInt(26)));
+        }
+        String cipher = text.toString();
+        List<String> cribs = List.of("WETTERVORHERSAGE",
+                                     "KEINEBESONDERENEREIGNISSE", "A",
+                                     cipher.substring(100, 164));
+        CribFinder finder = new CribFinder(UPPER, cipher);
+        assertEquals(cipher.length(), finder.length());
+        int[][] found = finder.find(cribs);
+        for (int k = 0; k < cribs.size(); k += 1) {
+            assertArrayEquals(naive(cipher, cribs.get(k)), found[k]);
+        }
+    }
+
+    @Test
+    public void testSmall() {
+        CribFinder finder = new CribFinder(UPPER, "ab ca\nb");
+        assertEquals(5, finder.length());
+        assertArrayEquals(new int[] { 1, 2, 4 }, finder.find("A"));
+        assertArrayEquals(new int[] { 0, 1, 3 }, finder.find("ca"));
+        assertArrayEquals(new int[0], finder.find("BCDEFG"));
+    }
+}
@@ -0,0 +1,272 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running Enigma service listening on a Unix domain socket, so that
+ *  many small jobs share one JVM: configurations stay compiled and the JIT
+ *  stays warm.
+ *
+ *  Each connection carries a sequence of requests, each answered before
+ *  the next is read.  A request is three length-prefixed UTF-8 strings:
+ *  the path of a configuration file relative to the daemon's
+ *  configuration directory (the "config id"), a settings line (possibly
+ *  empty) and a payload.  The payload is processed exactly as Main
+ *  processes an input file, after the settings line if there is one.
+ *  A response is a status (0 for success, 1 for an error) followed by a
+ *  length-prefixed UTF-8 string holding the output or the error message.
+ *  A request with a string longer than the frame limit fails without the
+ *  string being read into memory, and a config id naming a file outside
+ *  the configuration directory fails, so a client can neither exhaust
+ *  the daemon's memory nor make it read arbitrary files.
+ *  Connections are served concurrently on a fixed pool of threads.
+ *  Configuration files are watched (see ConfigWatcher): a request uses
+ *  the configuration current when it starts, so a file can be edited
+ *  without restarting the daemon or pausing requests in progress.
+ *  @author Kevin Li
+ */
+class Daemon {
+
+    /** Status of a successful response. */
+    static final int OK = 0;
+    /** Status of a failed response. */
+    static final int FAILED = 1;
+    /** Default limit on the length in bytes of a string in a request. */
+    static final int MAX_FRAME = 1 << 26;
+
+    /** A daemon that will listen at SOCKET, serve up to THREADS
+     *  connections at once, and read the configuration files under
+     *  CONFIGDIR. */
+    Daemon(Path socket, Path configDir, int threads) {
+        this(socket, configDir, threads, MAX_FRAME);
+    }
+
+    /** A daemon as for Daemon(SOCKET, CONFIGDIR, THREADS) that fails
+     *  requests holding a string longer than MAXFRAME bytes. */
+    Daemon(Path socket, Path configDir, int threads, int maxFrame) {
+        _socket = socket;
+        _configDir = configDir.toAbsolutePath().normalize();
+        _maxFrame = maxFrame;
+        _pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "enigma-daemon");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Accept and serve connections until the listening channel is closed
+     *  by close(). */
+    void serve() throws IOException {
+        Files.deleteIfExists(_socket);
+        _server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        _server.bind(UnixDomainSocketAddress.of(_socket));
+        try {
+            while (_server.isOpen()) {
+                SocketChannel channel;
+                try {
+                    channel = _server.accept();
+                } catch (IOException excp) {
+                    if (!_server.isOpen()) {
+                        break;
+                    }
+                    throw excp;
+                }
+                _pool.execute(() -> serve(channel));
+            }
+        } finally {
+            _pool.shutdown();
+            Files.deleteIfExists(_socket);
+        }
+    }
+
+    /** Stop accepting connections and watching configurations. */
+    void close() throws IOException {
+        if (_server != null) {
+            _server.close();
+        }
+        _configs.close();
+    }
+
+    /** Return the number of requests served so far. */
+    long requests() {
+        return _requests.get();
+    }
+
+    /** Return the watcher of my configuration files. */
+    ConfigWatcher configs() {
+        return _configs;
+    }
+
+    /** Serve the requests arriving on CHANNEL until the client closes it. */
+    private void serve(SocketChannel channel) {
+        try (channel) {
+            serve(new DataInputStream(new BufferedInputStream(
+                      Channels.newInputStream(channel))),
+                  new DataOutputStream(new BufferedOutputStream(
+                      Channels.newOutputStream(channel))));
+        } catch (IOException excp) {
+            System.err.printf("enigma daemon: %s%n", excp.getMessage());
+        }
+    }
+
+    /** Serve the requests read from IN, writing the responses to OUT,
+     *  until IN ends. */
+    void serve(DataInputStream in, DataOutputStream out) throws IOException {
+        while (true) {
+            String configId;
+            try {
+                configId = readString(in, _maxFrame);
+            } catch (EOFException excp) {
+                return;
+            }
+            String settings = readString(in, _maxFrame);
+            String payload = readString(in, _maxFrame);
+            String result;
+            int status = FAILED;
+            if (configId == null || settings == null || payload == null) {
+                result = String.format("request string longer than %d"
+                                       + " bytes", _maxFrame);
+            } else {
+                try {
+                    result = run(configId, settings, payload);
+                    status = OK;
+                } catch (EnigmaException excp) {
+                    result = excp.getMessage();
+                } catch (RuntimeException excp) {
+                    result = "internal error: " + excp;
+                }
+            }
+            out.writeInt(status);
+            writeString(out, result);
+            out.flush();
+            _requests.incrementAndGet();
+        }
+    }
+
+    /** Return the output of processing PAYLOAD, preceded by SETTINGS if it
+     *  is not empty, on a machine built from the configuration file
+     *  CONFIGID. */
+    String run(String configId, String settings, String payload) {
+        Config config = config(configId);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream output = new PrintStream(bytes, false,
+                                             StandardCharsets.UTF_8);
+        String input = settings.isEmpty() ? payload
+            : settings + "\n" + payload;
+        Main.process(config, config.newMachine(),
+                     new BufferedReader(new StringReader(input)), output);
+        output.flush();
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Return the current compiled configuration in the file CONFIGID
+     *  under my configuration directory, compiling it on first use. */
+    Config config(String configId) {
+        String file = _files.get(configId);
+        if (file == null) {
+            Path path = _configDir.resolve(configId).normalize();
+            if (!path.startsWith(_configDir) || path.equals(_configDir)) {
+                throw error("config id %s is not a file under %s",
+                            configId, _configDir);
+            }
+            file = path.toString();
+            Config result = _configs.get(file);
+            _files.put(configId, file);
+            return result;
+        }
+        return _configs.get(file);
+    }
+
+    /** Send one request (CONFIGID, SETTINGS, PAYLOAD) on the connection
+     *  whose streams are IN and OUT, returning the output.  Throws an
+     *  EnigmaException carrying the daemon's message if it reports an
+     *  error. */
+    static String request(DataInputStream in, DataOutputStream out,
+                          String configId, String settings, String payload)
+        throws IOException {
+        writeString(out, configId);
+        writeString(out, settings);
+        writeString(out, payload);
+        out.flush();
+        int status = in.readInt();
+        String result = readString(in, Integer.MAX_VALUE);
+        if (status != OK) {
+            throw new EnigmaException(result);
+        }
+        return result;
+    }
+
+    /** Open a connection to the daemon listening at SOCKET. */
+    static SocketChannel connect(Path socket) {
+        try {
+            return SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException excp) {
+            throw error("could not connect to %s", socket);
+        }
+    }
+
+    /** Read a length-prefixed UTF-8 string from IN.  If it is longer than
+     *  MAXFRAME bytes, skip it and return null. */
+    static String readString(DataInputStream in, int maxFrame)
+        throws IOException {
+        int len = in.readInt();
+        if (len < 0) {
+            throw new IOException("bad frame length");
+        } else if (len > maxFrame) {
+            in.skipNBytes(len);
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Write S to OUT as a length-prefixed UTF-8 string. */
+    static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Path of the listening socket. */
+    private final Path _socket;
+    /** Directory against which config ids are resolved. */
+    private final Path _configDir;
+    /** Limit on the length in bytes of a string in a request. */
+    private final int _maxFrame;
+    /** Resolved configuration file names by config id. */
+    private final ConcurrentHashMap<String, String> _files =
+        new ConcurrentHashMap<>();
+    /** Threads serving connections. */
+    private final ExecutorService _pool;
+    /** Compiled configurations by config id. */
+    private final ConfigWatcher _configs = new ConfigWatcher(
+        message -> System.err.printf("enigma daemon: %s%n", message));
+    /** Listening channel. */
+    private ServerSocketChannel _server;
+    /** Number of requests served. */
+    private final AtomicLong _requests = new AtomicLong();
+}
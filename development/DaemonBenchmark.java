@@ -0,0 +1,115 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/** Compares the latency of 1 KB jobs run by starting a new JVM per job
+ *  (as batch tooling invoking "java enigma.Main" does) with the same jobs
+ *  sent to a Daemon, both over one long-lived connection and over a new
+ *  connection per job.  Usage:
+ *      java enigma.DaemonBenchmark [JOBS]
+ *  @author Kevin Li
+ */
+class DaemonBenchmark {
+
+    /** Run the benchmark as described by ARGS. */
+    public static void main(String... args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        Path dir = Files.createTempDirectory("enigma-daemon");
+        Random random = new Random(42);
+        Path config = dir.resolve("bench.conf");
+        Files.writeString(config, ParseBenchmark.makeConfig(12, random));
+        StringBuilder job = new StringBuilder("* R0 R2 R4 R5 R6 AAAA (AB)\n");
+        while (job.length() < 1024) {
+            for (int i = 0; i < 60; i += 1) {
+                job.append((char) ('A' + random.nextInt(26)));
+            }
+            job.append('\n');
+        }
+        Path input = dir.resolve("job.in");
+        Files.writeString(input, job);
+
+        long[] cold = new long[jobs];
+        for (int i = 0; i < jobs; i += 1) {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java")
+                    .toString(),
+                "-cp", System.getProperty("java.class.path"), "enigma.Main",
+                config.toString(), input.toString(),
+                dir.resolve("job.out").toString())
+                .inheritIO().start();
+            if (process.waitFor() != 0) {
+                throw new IOException("CLI run failed");
+            }
+            cold[i] = System.nanoTime() - start;
+        }
+        report("cold CLI", cold);
+
+        Path socket = dir.resolve("enigma.sock");
+        Daemon daemon = new Daemon(socket, dir, 2);
+        Thread server = new Thread(() -> {
+            try {
+                daemon.serve();
+            } catch (IOException excp) {
+                throw new RuntimeException(excp);
+            }
+        });
+        server.start();
+        while (!Files.exists(socket)) {
+            Thread.sleep(10);
+        }
+        String configId = "bench.conf", payload = job.toString();
+        long[] warm = new long[jobs * 10];
+        try (SocketChannel channel = Daemon.connect(socket)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+            for (int i = 0; i < 1000; i += 1) {
+                Daemon.request(in, out, configId, "", payload);
+            }
+            for (int i = 0; i < warm.length; i += 1) {
+                long start = System.nanoTime();
+                Daemon.request(in, out, configId, "", payload);
+                warm[i] = System.nanoTime() - start;
+            }
+        }
+        report("daemon, shared connection", warm);
+        long[] perJob = new long[jobs * 10];
+        for (int i = 0; i < perJob.length; i += 1) {
+            long start = System.nanoTime();
+            try (SocketChannel channel = Daemon.connect(socket)) {
+                Daemon.request(new DataInputStream(
+                                   Channels.newInputStream(channel)),
+                               new DataOutputStream(new BufferedOutputStream(
+                                   Channels.newOutputStream(channel))),
+                               configId, "", payload);
+            }
+            perJob[i] = System.nanoTime() - start;
+        }
+        report("daemon, connection per job", perJob);
+        daemon.close();
+        server.join();
+    }
+
+    /** Print the median and 99th-percentile of LATENCIES, in nanoseconds,
+     *  labelled NAME. */
+    private static void report(String name, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-28s p50 %10.3f ms  p99 %10.3f ms  (%d jobs)%n",
+                          name, sorted[sorted.length / 2] / 1e6,
+                          sorted[(int) (sorted.length * 0.99)] / 1e6,
+                          sorted.length);
+    }
+}
@@ -0,0 +1,178 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Daemon class.
+ *  @author Kevin Li
+ */
+public class DaemonTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Temporary files, deleted after each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings used throughout. */
+    private static final String SETTINGS =
+        "* B Beta III II I AXLE (HQ) (EX)";
+
+    /** Limit on request strings in these tests. */
+    private static final int MAX_FRAME = 100;
+
+    /** Return the output Main gives for INPUT. */
+    private static String expected(String input) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream output = new PrintStream(bytes, false,
+                                             StandardCharsets.UTF_8);
+        Config config = ConfigParser.parseConfig(NAVAL_CONFIG);
+        Main.process(config, config.newMachine(),
+                     new BufferedReader(new StringReader(input)), output);
+        output.flush();
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Return a daemon reading configurations in a new directory holding
+     *  NAVAL_CONFIG as "naval.conf". */
+    private Daemon daemon() throws IOException {
+        Path dir = tmp.newFolder().toPath();
+        Files.writeString(dir.resolve("naval.conf"), NAVAL_CONFIG);
+        return new Daemon(dir.resolve("enigma.sock"), dir, 1, MAX_FRAME);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRun() throws IOException {
+        Daemon daemon = daemon();
+        try {
+            String payload = "HELLO WORLD\n\nFROM HIS SHOULDER\n";
+            assertEquals(expected(SETTINGS + "\n" + payload),
+                         daemon.run("naval.conf", SETTINGS, payload));
+            assertEquals(expected(SETTINGS + "\n" + payload),
+                         daemon.run("./naval.conf", "",
+                                    SETTINGS + "\n" + payload));
+            try {
+                daemon.run("naval.conf", "", payload);
+                fail("ran without settings");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("*"));
+            }
+        } finally {
+            daemon.close();
+        }
+    }
+
+    @Test
+    public void testRejectsConfigsOutsideDirectory() throws IOException {
+        Daemon daemon = daemon();
+        Path outside = tmp.newFile("outside.conf").toPath();
+        Files.writeString(outside, NAVAL_CONFIG);
+        try {
+            for (String id : new String[] {
+                    outside.toString(), "../" + outside.getFileName(),
+                    "sub/../../" + outside.getFileName(), "", "." }) {
+                try {
+                    daemon.run(id, SETTINGS, "HELLO");
+                    fail("read " + id);
+                } catch (EnigmaException excp) {
+                    assertTrue(excp.getMessage().contains("not a file"));
+                }
+            }
+        } finally {
+            daemon.close();
+        }
+    }
+
+    @Test
+    public void testFraming() throws IOException {
+        ByteArrayOutputStream requests = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(requests);
+        Daemon.writeString(out, "naval.conf");
+        Daemon.writeString(out, SETTINGS);
+        Daemon.writeString(out, "HELLO WORLD");
+        Daemon.writeString(out, "naval.conf");
+        Daemon.writeString(out, "* B Beta III II X AXLE");
+        Daemon.writeString(out, "HELLO");
+        Daemon.writeString(out, "naval.conf");
+        Daemon.writeString(out, SETTINGS);
+        Daemon.writeString(out, "A".repeat(MAX_FRAME + 1));
+        Daemon.writeString(out, "missing.conf");
+        Daemon.writeString(out, SETTINGS);
+        Daemon.writeString(out, "HELLO");
+        Daemon.writeString(out, "naval.conf");
+        Daemon.writeString(out, "");
+        Daemon.writeString(out, SETTINGS + "\nFROM HIS SHOULDER");
+        out.flush();
+
+        Daemon daemon = daemon();
+        ByteArrayOutputStream responses = new ByteArrayOutputStream();
+        try {
+            DataOutputStream replies = new DataOutputStream(responses);
+            daemon.serve(new DataInputStream(
+                             new ByteArrayInputStream(
+                                 requests.toByteArray())),
+                         replies);
+            replies.flush();
+        } finally {
+            daemon.close();
+        }
+        assertEquals(5, daemon.requests());
+
+        DataInputStream in = new DataInputStream(
+            new ByteArrayInputStream(responses.toByteArray()));
+        assertEquals(Daemon.OK, in.readInt());
+        assertEquals(expected(SETTINGS + "\nHELLO WORLD"),
+                     Daemon.readString(in, Integer.MAX_VALUE));
+        assertEquals(Daemon.FAILED, in.readInt());
+        assertTrue(Daemon.readString(in, Integer.MAX_VALUE)
+                   .contains("No such rotor"));
+        assertEquals(Daemon.FAILED, in.readInt());
+        assertTrue(Daemon.readString(in, Integer.MAX_VALUE)
+                   .contains("longer than " + MAX_FRAME));
+        assertEquals(Daemon.FAILED, in.readInt());
+        Daemon.readString(in, Integer.MAX_VALUE);
+        assertEquals(Daemon.OK, in.readInt());
+        assertEquals(expected(SETTINGS + "\nFROM HIS SHOULDER"),
+                     Daemon.readString(in, Integer.MAX_VALUE));
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testSkipsLongFrames() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Daemon.writeString(out, "0123456789");
+        Daemon.writeString(out, "\u00e9t\u00e9");
+        Daemon.writeString(out, "");
+        out.flush();
+        DataInputStream in = new DataInputStream(
+            new ByteArrayInputStream(bytes.toByteArray()));
+        assertNull(Daemon.readString(in, 9));
+        assertEquals("\u00e9t\u00e9", Daemon.readString(in, 5));
+        assertEquals("", Daemon.readString(in, 0));
+        assertEquals(-1, in.read());
+    }
+}
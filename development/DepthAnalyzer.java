@@ -0,0 +1,448 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** Solves messages in depth: ciphertexts encrypted from the same
+ *  settings line.  The machine applies the same permutation at a given
+ *  offset of every such message, and because its leftmost rotor is a
+ *  reflector, that permutation is an involution without fixed points.
+ *  Aligned by offset, the messages therefore form columns, each a simple
+ *  substitution by one unknown involution, which is solved on its own from
+ *  the letter counts of its column: the involution chosen maximizes the
+ *  log-likelihood of the plaintext letters it yields under given letter
+ *  frequencies, starting from a greedy pairing and improved by exchanging
+ *  partners between pairs until no exchange helps.  Known plaintext
+ *  (see constrain) fixes pairs in advance.
+ *
+ *  The ciphertexts are held column-major in one char[] of alphabet
+ *  indices, with messages sorted by decreasing length, so column j is
+ *  the first depth(j) messages and lies contiguously.  Columns are solved
+ *  in parallel over shards of consecutive columns.  Alphabets must have
+ *  an even number of characters.
+ *
+ *  As a program, solves the groups of two or more messages with the same
+ *  settings line in an input file in the format read by Main, printing
+ *  each group's settings line and the plaintexts found, in groups of
+ *  five:
+ *      java enigma.DepthAnalyzer CONFIG INPUT [OUTPUT]
+ *  @author Kevin Li
+ */
+class DepthAnalyzer {
+
+    /** Number of columns in a shard. */
+    private static final int SHARD_COLUMNS = 256;
+    /** Number of messages transposed together. */
+    private static final int BLOCK_ROWS = 256;
+    /** Frequencies of A .. Z in English text, in percent. */
+    private static final double[] ENGLISH = {
+        8.2, 1.5, 2.8, 4.3, 12.7, 2.2, 2.0, 6.1, 7.0, 0.15, 0.77, 4.0, 2.4,
+        6.7, 7.5, 1.9, 0.095, 6.0, 6.3, 9.1, 2.8, 0.98, 2.4, 0.15, 2.0,
+        0.074,
+    };
+
+    /** An analyzer for MESSAGES, ciphertexts in ALPHABET encrypted from
+     *  the same settings.  Characters not in ALPHABET after upper-casing,
+     *  such as whitespace, are skipped; offsets count only the characters
+     *  kept. */
+    DepthAnalyzer(Alphabet alphabet, List<? extends CharSequence> messages) {
+        _alphabet = alphabet;
+        _n = alphabet.size();
+        if (_n % 2 != 0) {
+            throw error("depth analysis needs an alphabet of even size");
+        }
+        int count = messages.size();
+        char[][] rows = new char[count][];
+        for (int m = 0; m < count; m += 1) {
+            rows[m] = indices(messages.get(m));
+        }
+        Integer[] order = new Integer[count];
+        for (int m = 0; m < count; m += 1) {
+            order[m] = m;
+        }
+        Arrays.sort(order, (a, b) -> rows[b].length - rows[a].length);
+        _order = new int[count];
+        _rank = new int[count];
+        for (int r = 0; r < count; r += 1) {
+            _order[r] = order[r];
+            _rank[order[r]] = r;
+        }
+        _length = count == 0 ? 0 : rows[_order[0]].length;
+        _depth = new int[_length];
+        _start = new int[_length + 1];
+        int r = 0;
+        for (int j = _length - 1; j >= 0; j -= 1) {
+            while (r < count && rows[_order[r]].length > j) {
+                r += 1;
+            }
+            _depth[j] = r;
+        }
+        for (int j = 0; j < _length; j += 1) {
+            _start[j + 1] = _start[j] + _depth[j];
+        }
+        _text = new char[_start[_length]];
+        for (int r0 = 0; r0 < count; r0 += BLOCK_ROWS) {
+            int r1 = Math.min(count, r0 + BLOCK_ROWS);
+            for (int j = 0; j < _length; j += 1) {
+                int base = _start[j];
+                for (int q = r0; q < r1 && q < _depth[j]; q += 1) {
+                    _text[base + q] = rows[_order[q]][j];
+                }
+            }
+        }
+        _fixed = new int[_length * _n];
+        Arrays.fill(_fixed, -1);
+    }
+
+    /** Return the number of messages. */
+    int messages() {
+        return _order.length;
+    }
+
+    /** Return the number of columns: the length of the longest
+     *  message. */
+    int length() {
+        return _length;
+    }
+
+    /** Return the number of messages at least J + 1 characters long. */
+    int depth(int j) {
+        return _depth[j];
+    }
+
+    /** Return the number of characters of message M. */
+    int length(int m) {
+        int r = _rank[m];
+        int lo = 0, hi = _length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_depth[mid] > r) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Record that message M decrypts to the plaintext CRIB (whitespace
+     *  ignored) starting at OFFSET.  Throws an EnigmaException if that
+     *  contradicts what is known already: a character at an offset
+     *  decrypting to itself, or two decryptions of one character at an
+     *  offset. */
+    void constrain(int m, int offset, String crib) {
+        int j = offset;
+        for (int i = 0; i < crib.length(); i += 1) {
+            char ch = crib.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                continue;
+            }
+            int p = _alphabet.indexOf(Character.toUpperCase(ch));
+            if (p < 0) {
+                throw error("'%c' is not in the alphabet", ch);
+            } else if (j >= _length || _depth[j] <= _rank[m]) {
+                throw error("crib runs past the end of message %d", m);
+            }
+            int c = _text[_start[j] + _rank[m]];
+            int base = j * _n;
+            if (c == p || _fixed[base + c] >= 0 && _fixed[base + c] != p
+                || _fixed[base + p] >= 0 && _fixed[base + p] != c) {
+                throw error("crib contradicts offset %d", j);
+            }
+            _fixed[base + c] = p;
+            _fixed[base + p] = c;
+            j += 1;
+        }
+    }
+
+    /** Return the solution of every column with letter frequencies
+     *  FREQUENCIES, indexed like my alphabet (see frequencies). */
+    Solution solve(double[] frequencies) {
+        double[] logf = new double[_n];
+        double total = 0;
+        for (double f : frequencies) {
+            total += f;
+        }
+        for (int x = 0; x < _n; x += 1) {
+            logf[x] = Math.log(Math.max(frequencies[x], 1e-9) / total);
+        }
+        int[] perms = new int[_length * _n];
+        double[] scores = new double[_length];
+        int shards = (_length + SHARD_COLUMNS - 1) / SHARD_COLUMNS;
+        IntStream.range(0, shards).parallel().forEach(s -> {
+            int[] counts = new int[_n];
+            int[] mate = new int[_n];
+            boolean[] free = new boolean[_n];
+            for (int j = s * SHARD_COLUMNS;
+                 j < Math.min(_length, (s + 1) * SHARD_COLUMNS); j += 1) {
+                scores[j] = solveColumn(j, logf, counts, mate, free);
+                System.arraycopy(mate, 0, perms, j * _n, _n);
+            }
+        });
+        return new Solution(perms, scores);
+    }
+
+    /** Return letter frequencies for ALPHABET: English frequencies for A
+     *  to Z and a small frequency for anything else. */
+    static double[] frequencies(Alphabet alphabet) {
+        double[] result = new double[alphabet.size()];
+        for (int x = 0; x < result.length; x += 1) {
+            char ch = Character.toUpperCase(alphabet.toChar(x));
+            result[x] = ch >= 'A' && ch <= 'Z' ? ENGLISH[ch - 'A'] : 0.01;
+        }
+        return result;
+    }
+
+    /** The involutions found for every column. */
+    class Solution {
+
+        /** A solution whose involution for column j maps x to
+         *  PERMS[j * n + x], where n is the alphabet size, and whose
+         *  column j has mean log-likelihood per character SCORES[j]. */
+        Solution(int[] perms, double[] scores) {
+            _perms = perms;
+            _scores = scores;
+        }
+
+        /** Return the decryption of ciphertext index C at column J. */
+        int decrypt(int j, int c) {
+            return _perms[j * _n + c];
+        }
+
+        /** Return the mean log-likelihood per character of the plaintext
+         *  of column J: the higher, the more plausible. */
+        double score(int j) {
+            return _scores[j];
+        }
+
+        /** Return the plaintext of message M. */
+        String plaintext(int m) {
+            int r = _rank[m];
+            int len = length(m);
+            StringBuilder result = new StringBuilder(len);
+            for (int j = 0; j < len; j += 1) {
+                int c = _text[_start[j] + r];
+                result.append(_alphabet.toChar(_perms[j * _n + c]));
+            }
+            return result.toString();
+        }
+
+        /** Involution of each column, column-major. */
+        private final int[] _perms;
+        /** Score of each column. */
+        private final double[] _scores;
+    }
+
+    /** Solve column J with the log frequencies LOGF, leaving its involution
+     *  in MATE and returning its mean log-likelihood per character.  COUNTS
+     *  and FREE are working storage. */
+    private double solveColumn(int j, double[] logf, int[] counts,
+                               int[] mate, boolean[] free) {
+        Arrays.fill(counts, 0);
+        for (int k = _start[j]; k < _start[j + 1]; k += 1) {
+            counts[_text[k]] += 1;
+        }
+        System.arraycopy(_fixed, j * _n, mate, 0, _n);
+        for (int x = 0; x < _n; x += 1) {
+            free[x] = mate[x] < 0;
+        }
+        while (true) {
+            int bestA = -1, bestB = -1;
+            double best = Double.NEGATIVE_INFINITY;
+            for (int a = 0; a < _n; a += 1) {
+                if (mate[a] >= 0) {
+                    continue;
+                }
+                for (int b = a + 1; b < _n; b += 1) {
+                    if (mate[b] < 0) {
+                        double w = weight(a, b, counts, logf);
+                        if (w > best) {
+                            best = w;
+                            bestA = a;
+                            bestB = b;
+                        }
+                    }
+                }
+            }
+            if (bestA < 0) {
+                break;
+            }
+            mate[bestA] = bestB;
+            mate[bestB] = bestA;
+        }
+        for (boolean improved = true; improved;) {
+            improved = false;
+            for (int a = 0; a < _n; a += 1) {
+                int b = mate[a];
+                if (!free[a] || b < a) {
+                    continue;
+                }
+                for (int c = a + 1; c < _n; c += 1) {
+                    int d = mate[c];
+                    if (!free[c] || d < c || c == b) {
+                        continue;
+                    }
+                    double now = weight(a, b, counts, logf)
+                        + weight(c, d, counts, logf);
+                    double ac = weight(a, c, counts, logf)
+                        + weight(b, d, counts, logf);
+                    double ad = weight(a, d, counts, logf)
+                        + weight(b, c, counts, logf);
+                    if (ac > now + 1e-9 && ac >= ad) {
+                        mate[a] = c;
+                        mate[c] = a;
+                        mate[b] = d;
+                        mate[d] = b;
+                        improved = true;
+                    } else if (ad > now + 1e-9) {
+                        mate[a] = d;
+                        mate[d] = a;
+                        mate[b] = c;
+                        mate[c] = b;
+                        improved = true;
+                    }
+                    b = mate[a];
+                }
+            }
+        }
+        double total = 0;
+        for (int x = 0; x < _n; x += 1) {
+            total += counts[x] * logf[mate[x]];
+        }
+        return total / _depth[j];
+    }
+
+    /** Return the log-likelihood of pairing ciphertext indices A and B,
+     *  which have COUNTS in their column, under log frequencies LOGF. */
+    private static double weight(int a, int b, int[] counts, double[] logf) {
+        return counts[a] * logf[b] + counts[b] * logf[a];
+    }
+
+    /** Return the alphabet indices of the characters of TEXT in my
+     *  alphabet, after upper-casing. */
+    private char[] indices(CharSequence text) {
+        char[] result = new char[text.length()];
+        int k = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            int c = _alphabet.indexOf(Character.toUpperCase(text.charAt(i)));
+            if (c >= 0) {
+                result[k] = (char) c;
+                k += 1;
+            }
+        }
+        return Arrays.copyOf(result, k);
+    }
+
+    /** Return the messages of INPUT, in the format read by Main, grouped
+     *  by settings line, in order of first appearance.  Settings lines
+     *  that differ only in whitespace are the same.  The lines following
+     *  a settings line, up to the next, form one message. */
+    static Map<String, List<String>> groups(BufferedReader input)
+        throws IOException {
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        StringBuilder message = null;
+        List<String> group = null;
+        for (String line = input.readLine(); line != null;
+             line = input.readLine()) {
+            if (Main.isSettingsLine(line)) {
+                if (message != null) {
+                    group.add(message.toString());
+                }
+                String key = line.trim().replaceAll("\\s+", " ");
+                group = result.computeIfAbsent(key, k -> new ArrayList<>());
+                message = new StringBuilder();
+            } else if (message == null) {
+                throw error("Need an * at the first line");
+            } else {
+                message.append(line);
+            }
+        }
+        if (message != null) {
+            group.add(message.toString());
+        }
+        return result;
+    }
+
+    /** Throw an EnigmaException if a reflector of CONFIG has fixed points,
+     *  so that the permutation at an offset of its messages may not be an
+     *  involution without fixed points, as solve assumes. */
+    static void checkReflectors(Config config) {
+        for (int k = 0; k < config.size(); k += 1) {
+            if (config.kind(k) == 'R'
+                && !config.permutation(k).derangement()) {
+                throw error("reflector %s has fixed points, which depth"
+                            + " analysis does not allow", config.name(k));
+            }
+        }
+    }
+
+    /** Solve the messages in depth in a file, as described in the class
+     *  comment, according to ARGS.  Configurations with a reflector that
+     *  has fixed points are refused (see checkReflectors). */
+    public static void main(String... args) {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: java enigma.DepthAnalyzer CONFIG"
+                               + " INPUT [OUTPUT]");
+            System.exit(1);
+        }
+        try {
+            Config config = Main.parseConfig(Main.readFile(args[0]));
+            checkReflectors(config);
+            Map<String, List<String>> groups = groups(
+                new BufferedReader(new StringReader(Main.readFile(args[1]))));
+            PrintStream output = args.length > 2 ? Main.getOutput(args[2])
+                : System.out;
+            double[] frequencies = frequencies(config.alphabet());
+            long chars = 0, start = System.nanoTime();
+            for (Map.Entry<String, List<String>> e : groups.entrySet()) {
+                if (e.getValue().size() < 2) {
+                    continue;
+                }
+                DepthAnalyzer depth =
+                    new DepthAnalyzer(config.alphabet(), e.getValue());
+                Solution solution = depth.solve(frequencies);
+                output.println(e.getKey());
+                for (int m = 0; m < depth.messages(); m += 1) {
+                    Main.printMessageLine(solution.plaintext(m), output);
+                    chars += depth.length(m);
+                }
+            }
+            output.flush();
+            System.err.printf("%d characters solved in %.1f ms%n", chars,
+                              (System.nanoTime() - start) / 1e6);
+        } catch (IOException | EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+    /** Its size. */
+    private final int _n;
+    /** Message indices in order of decreasing length. */
+    private final int[] _order;
+    /** Position of each message in _order. */
+    private final int[] _rank;
+    /** Number of columns. */
+    private final int _length;
+    /** Number of messages in each column. */
+    private final int[] _depth;
+    /** Index in _text of the start of each column, and of its end. */
+    private final int[] _start;
+    /** All ciphertexts, as alphabet indices, column-major. */
+    private final char[] _text;
+    /** Known decryptions: _fixed[j * n + c] is the decryption of c at
+     *  column j, or -1. */
+    private final int[] _fixed;
+}
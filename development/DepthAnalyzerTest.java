@@ -0,0 +1,161 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the DepthAnalyzer class.
+ *  @author Kevin Li
+ */
+public class DepthAnalyzerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings shared by all messages. */
+    private static final String SETTINGS = "* B Beta III II I AXLE (YF) (ZH)";
+
+    /** Return COUNT random plaintexts of lengths between MINLENGTH and
+     *  MAXLENGTH, with letters drawn independently with English
+     *  frequencies, using RANDOM. */
+    private static List<String> plaintexts(int count, int minLength,
+                                           int maxLength, Random random) {
+        double[] freq = DepthAnalyzer.frequencies(UPPER);
+        double total = 0;
+        for (double f : freq) {
+            total += f;
+        }
+        List<String> result = new ArrayList<>();
+        for (int m = 0; m < count; m += 1) {
+            StringBuilder text = new StringBuilder();
+            int len = minLength
+                + random.nextInt(maxLength - minLength + 1);
+            for (int i = 0; i < len; i += 1) {
+                double u = random.nextDouble() * total;
+                int x = 0;
+                while (x < freq.length - 1 && u >= freq[x]) {
+                    u -= freq[x];
+                    x += 1;
+                }
+                text.append(UPPER.toChar(x));
+            }
+            result.add(text.toString());
+        }
+        return result;
+    }
+
+    /** Return PLAIN encrypted, message by message, under SETTINGS. */
+    private static List<String> encrypt(List<String> plain) {
+        Config config = ConfigParser.parseConfig(NAVAL_CONFIG);
+        Machine machine = config.newMachine();
+        SettingsCache cache = new SettingsCache(config, 1);
+        List<String> result = new ArrayList<>();
+        for (String text : plain) {
+            cache.apply(machine, SETTINGS, 1);
+            result.add(machine.convert(text));
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testLayout() {
+        List<String> msgs = List.of("ABCD", "EF", "GHIJKL", "M N");
+        DepthAnalyzer depth = new DepthAnalyzer(UPPER, msgs);
+        assertEquals(4, depth.messages());
+        assertEquals(6, depth.length());
+        assertEquals(4, depth.depth(0));
+        assertEquals(4, depth.depth(1));
+        assertEquals(2, depth.depth(2));
+        assertEquals(1, depth.depth(5));
+        assertEquals(4, depth.length(0));
+        assertEquals(2, depth.length(1));
+        assertEquals(6, depth.length(2));
+        assertEquals(2, depth.length(3));
+    }
+
+    @Test
+    public void testSolvesDeepColumns() {
+        Random random = new Random(44);
+        List<String> plain = plaintexts(3000, 20, 24, random);
+        List<String> cipher = encrypt(plain);
+        DepthAnalyzer depth = new DepthAnalyzer(UPPER, cipher);
+        DepthAnalyzer.Solution solution =
+            depth.solve(DepthAnalyzer.frequencies(UPPER));
+        for (int j = 0; j < depth.length(); j += 1) {
+            for (int c = 0; c < 26; c += 1) {
+                int p = solution.decrypt(j, c);
+                assertNotEquals(c, p);
+                assertEquals(c, solution.decrypt(j, p));
+            }
+        }
+        long right = 0, total = 0;
+        for (int m = 0; m < plain.size(); m += 1) {
+            String guess = solution.plaintext(m);
+            assertEquals(plain.get(m).length(), guess.length());
+            for (int i = 0; i < guess.length(); i += 1) {
+                right += guess.charAt(i) == plain.get(m).charAt(i) ? 1 : 0;
+            }
+            total += guess.length();
+        }
+        assertTrue("only " + right + " of " + total, right > 0.85 * total);
+    }
+
+    @Test
+    public void testConstraints() {
+        Random random = new Random(45);
+        List<String> plain = plaintexts(3, 20, 30, random);
+        List<String> cipher = encrypt(plain);
+        DepthAnalyzer depth = new DepthAnalyzer(UPPER, cipher);
+        String crib = plain.get(1);
+        depth.constrain(1, 0, crib);
+        String guess = depth.solve(DepthAnalyzer.frequencies(UPPER))
+            .plaintext(1);
+        assertEquals(crib, guess);
+        try {
+            depth.constrain(1, 0, cipher.get(1).substring(0, 1));
+            fail("accepted a character decrypting to itself");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("contradicts"));
+        }
+    }
+
+    @Test
+    public void testGroups() throws IOException {
+        Map<String, List<String>> groups = DepthAnalyzer.groups(
+            new BufferedReader(new StringReader(
+                "* B Beta III II I AXLE\nABC\nDE\n"
+                + "*  B Beta III II  I AXLE\nFGH\n* B Beta I II III AAAA\n")));
+        assertEquals(2, groups.size());
+        assertEquals(List.of("ABCDE", "FGH"),
+                     groups.get("* B Beta III II I AXLE"));
+        assertEquals(List.of(""), groups.get("* B Beta I II III AAAA"));
+    }
+
+    @Test
+    public void testRefusesReflectorsWithFixedPoints() {
+        DepthAnalyzer.checkReflectors(ConfigParser.parseConfig(NAVAL_CONFIG));
+        try {
+            DepthAnalyzer.checkReflectors(ConfigParser.parseConfig(
+                "ABCD 2 1\nI M (ABCD)\nR R (AB)\n"));
+            fail("accepted a reflector with fixed points");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("reflector R"));
+        }
+    }
+}
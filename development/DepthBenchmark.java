@@ -0,0 +1,55 @@
+package enigma;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Random;
+
+/** Measures DepthAnalyzer on MESSAGES ciphertexts of LENGTH random
+ *  characters each: the time to lay them out column-major and the time to
+ *  solve every column.  Usage:
+ *      java enigma.DepthBenchmark [MESSAGES [LENGTH]]
+ *  The largest sizes need a heap of a few gigabytes.
+ *  @author Kevin Li
+ */
+class DepthBenchmark {
+
+    /** Run the benchmark as described by ARGS. */
+    public static void main(String... args) {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int length = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        Alphabet alphabet = new Alphabet("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        Random random = new Random(42);
+        String[] texts = new String[messages];
+        char[] chars = new char[length];
+        for (int m = 0; m < messages; m += 1) {
+            for (int i = 0; i < length; i += 1) {
+                chars[i] = (char) ('A' + random.nextInt(26));
+            }
+            texts[m] = new String(chars);
+        }
+        List<String> list = new AbstractList<String>() {
+            @Override
+            public String get(int m) {
+                return texts[m];
+            }
+
+            @Override
+            public int size() {
+                return texts.length;
+            }
+        };
+        long total = (long) messages * length;
+        double[] frequencies = DepthAnalyzer.frequencies(alphabet);
+        for (int rep = 0; rep < 3; rep += 1) {
+            long t = System.nanoTime();
+            DepthAnalyzer depth = new DepthAnalyzer(alphabet, list);
+            t = System.nanoTime() - t;
+            Bench.report("layout", t, total, "chars");
+            t = System.nanoTime();
+            DepthAnalyzer.Solution solution = depth.solve(frequencies);
+            t = System.nanoTime() - t;
+            Bench.report("solve", t, total, "chars");
+            Bench.sink += solution.decrypt(0, 0);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static enigma.EnigmaException.*;
+
+/** Processes every file in a directory tree as Main processes one input
+ *  file, writing each result to the same relative path in an output
+ *  tree, in one JVM with one parsed Config.
+ *
+ *  The input tree is walked lazily with Files.walk and its files handed
+ *  to a fixed number of workers through a bounded queue, so the walk
+ *  stays at most QUEUE files ahead of the work.  Each worker keeps its
+ *  own Machine and SettingsCache for all its files, made when it takes
+ *  its first, so that a failure making them fails that file rather than
+ *  the worker.  Workers take two permits from a semaphore before opening
+ *  a file and its output, which bounds the file handles in use (by
+ *  default OPEN_FILES) however many workers there are.  Each output is
+ *  written under a temporary name (with suffix PART) and renamed into
+ *  place when complete, so a run can be resumed after a crash: files
+ *  whose output exists are skipped.  A file that fails leaves no output
+ *  and does not stop the run.
+ *  @author Kevin Li
+ */
+class DirectoryBatch {
+
+    /** Maximum number of files waiting for a worker. */
+    static final int QUEUE = 1024;
+    /** Default maximum number of files open at once. */
+    static final int OPEN_FILES = 256;
+    /** Suffix of outputs being written. */
+    static final String PART = ".part";
+    /** Maximum number of failures whose messages are kept. */
+    static final int MAX_MESSAGES = 20;
+
+    /** The outcome of a run. */
+    static final class Summary {
+
+        /** Return the number of files processed. */
+        long files() {
+            return _files;
+        }
+
+        /** Return the number of files skipped because their output
+         *  existed. */
+        long skipped() {
+            return _skipped;
+        }
+
+        /** Return the number of files that failed. */
+        long failed() {
+            return _failed;
+        }
+
+        /** Return the number of input bytes processed. */
+        long bytes() {
+            return _bytes;
+        }
+
+        /** Return the most file handles workers held at once. */
+        int peakOpen() {
+            return _peakOpen;
+        }
+
+        /** Return the messages of the first MAX_MESSAGES failures. */
+        List<String> failures() {
+            return _failures;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = _nanos / 1e9;
+            StringBuilder result = new StringBuilder(String.format(
+                "%d files (%.1f MB) in %.2f s: %.0f files/s, %.1f MB/s;"
+                + " %d skipped, %d failed", _files, _bytes / 1e6, seconds,
+                _files / seconds, _bytes / 1e6 / seconds, _skipped,
+                _failed));
+            for (String failure : _failures) {
+                result.append(String.format("%n  %s", failure));
+            }
+            return result.toString();
+        }
+
+        /** Add the counts of OTHER to mine. */
+        private void add(Summary other) {
+            _files += other._files;
+            _failed += other._failed;
+            _bytes += other._bytes;
+            for (String failure : other._failures) {
+                if (_failures.size() < MAX_MESSAGES) {
+                    _failures.add(failure);
+                }
+            }
+        }
+
+        /** Record a failure with message MESSAGE. */
+        private void fail(String message) {
+            _failed += 1;
+            if (_failures.size() < MAX_MESSAGES) {
+                _failures.add(message);
+            }
+        }
+
+        /** Numbers of files processed, skipped and failed. */
+        private long _files, _skipped, _failed;
+        /** Input bytes processed. */
+        private long _bytes;
+        /** Elapsed time. */
+        private long _nanos;
+        /** Most file handles held at once. */
+        private int _peakOpen;
+        /** Messages of the first failures. */
+        private final List<String> _failures = new ArrayList<>();
+    }
+
+    /** Process every regular file under IN with CONFIG into the same
+     *  relative path under OUT, with THREADS workers and at most
+     *  OPEN_FILES files open, as described in the class comment.  OUT
+     *  must not lie within IN. */
+    static Summary process(Config config, Path in, Path out, int threads)
+        throws IOException {
+        return process(config, in, out, threads, OPEN_FILES);
+    }
+
+    /** Process every regular file under IN with CONFIG into the same
+     *  relative path under OUT, with THREADS workers and at most
+     *  OPENFILES files open, as described in the class comment.  Since
+     *  each file in progress holds two, OPENFILES below twice THREADS
+     *  limits the files in progress to OPENFILES / 2.  OUT must not lie
+     *  within IN. */
+    static Summary process(Config config, Path in, Path out, int threads,
+                           int openFiles) throws IOException {
+        if (threads < 1) {
+            throw error("bad number of threads: %d", threads);
+        } else if (openFiles < 2) {
+            throw error("need at least 2 open files, not %d", openFiles);
+        }
+        Path inDir = in.toAbsolutePath().normalize();
+        Path outDir = out.toAbsolutePath().normalize();
+        if (!Files.isDirectory(inDir)) {
+            throw error("%s is not a directory", in);
+        } else if (outDir.startsWith(inDir)) {
+            throw error("output directory lies within the input directory");
+        }
+        long start = System.nanoTime();
+        Summary summary = new Summary();
+        BlockingQueue<Path> queue = new ArrayBlockingQueue<>(QUEUE);
+        Handles handles = new Handles(openFiles);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Summary>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t += 1) {
+            workers.add(pool.submit(() -> work(config, inDir, outDir, queue,
+                                               handles)));
+        }
+        try (Stream<Path> files = Files.walk(inDir)) {
+            Iterator<Path> it = files.iterator();
+            while (it.hasNext()) {
+                Path file = it.next();
+                if (!Files.isRegularFile(file)) {
+                    continue;
+                } else if (Files.exists(outDir.resolve(
+                               inDir.relativize(file)))) {
+                    summary._skipped += 1;
+                    continue;
+                }
+                put(queue, file);
+            }
+        } finally {
+            for (int t = 0; t < threads; t += 1) {
+                put(queue, END);
+            }
+            pool.shutdown();
+        }
+        try {
+            for (Future<Summary> worker : workers) {
+                summary.add(worker.get());
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            throw error("batch worker failed: %s", excp.getCause());
+        }
+        summary._nanos = System.nanoTime() - start;
+        summary._peakOpen = handles.peak();
+        return summary;
+    }
+
+    /** Process the files taken from QUEUE, which are under IN, into the
+     *  same relative paths under OUT with CONFIG, holding two of HANDLES
+     *  for each, until taking END.  Returns the counts of the
+     *  files processed. */
+    private static Summary work(Config config, Path in, Path out,
+                                BlockingQueue<Path> queue, Handles handles)
+        throws InterruptedException {
+        Summary summary = new Summary();
+        Machine machine = null;
+        SettingsCache cache = null;
+        while (true) {
+            Path file = queue.take();
+            if (file == END) {
+                return summary;
+            }
+            Path target = out.resolve(in.relativize(file));
+            Path part = target.resolveSibling(target.getFileName() + PART);
+            handles.acquire(2);
+            try {
+                if (cache == null) {
+                    machine = config.newMachine();
+                    machine.setEngine(Engines.choose(config).engine());
+                    cache = new SettingsCache(config,
+                                              SettingsCache.DEFAULT_CAPACITY);
+                }
+                Files.createDirectories(target.getParent());
+                long size = Files.size(file);
+                try (BufferedReader input = Files.newBufferedReader(file);
+                     PrintStream output = new PrintStream(
+                         new BufferedOutputStream(
+                             Files.newOutputStream(part)), false)) {
+                    Main.process(cache, machine, input, output);
+                    output.flush();
+                    if (output.checkError()) {
+                        throw new IOException("write failed");
+                    }
+                }
+                Files.move(part, target, StandardCopyOption.ATOMIC_MOVE,
+                           StandardCopyOption.REPLACE_EXISTING);
+                summary._files += 1;
+                summary._bytes += size;
+            } catch (IOException | RuntimeException excp) {
+                /* Any failure on one file, even a bug, must not stop the
+                 * worker, or the walk would block on a full queue. */
+                summary.fail(in.relativize(file) + ": " + excp.getMessage());
+                try {
+                    Files.deleteIfExists(part);
+                } catch (IOException ignored) {
+                    /* Reported by the failure already. */
+                }
+            } finally {
+                handles.release(2);
+            }
+        }
+    }
+
+    /** Put FILE on QUEUE, waiting for room. */
+    private static void put(BlockingQueue<Path> queue, Path file) {
+        try {
+            queue.put(file);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+    }
+
+    /** The file handles workers may hold, counting the most held at
+     *  once. */
+    private static final class Handles {
+
+        /** Handles of which at most LIMIT may be held. */
+        Handles(int limit) {
+            _permits = new Semaphore(limit);
+        }
+
+        /** Wait for N handles and hold them. */
+        void acquire(int n) throws InterruptedException {
+            _permits.acquire(n);
+            _peak.accumulateAndGet(_held.addAndGet(n), Math::max);
+        }
+
+        /** Give back N handles. */
+        void release(int n) {
+            _held.addAndGet(-n);
+            _permits.release(n);
+        }
+
+        /** Return the most handles held at once. */
+        int peak() {
+            return _peak.get();
+        }
+
+        /** Handles not held. */
+        private final Semaphore _permits;
+        /** Handles held now, and the most held at once. */
+        private final AtomicInteger _held = new AtomicInteger(),
+            _peak = new AtomicInteger();
+    }
+
+    /** Marks the end of the files on a queue. */
+    private static final Path END = Path.of("");
+}
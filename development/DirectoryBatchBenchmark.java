@@ -0,0 +1,79 @@
+package enigma;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** Compares processing a tree of FILES small input files (about 1 KB
+ *  each) with DirectoryBatch, for several numbers of threads, against
+ *  starting a JVM running Main per file, which is timed on a sample of
+ *  files and extrapolated.  Usage:
+ *      java enigma.DirectoryBatchBenchmark [FILES [THREADS...]]
+ *  @author Kevin Li
+ */
+class DirectoryBatchBenchmark {
+
+    /** Number of files run through a JVM each. */
+    private static final int SAMPLE = 10;
+
+    /** Run the benchmark as described by ARGS. */
+    public static void main(String... args) throws Exception {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int[] threads = { 1, 2, 4 };
+        if (args.length > 1) {
+            threads = new int[args.length - 1];
+            for (int i = 1; i < args.length; i += 1) {
+                threads[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        Random random = new Random(42);
+        String configText = ParseBenchmark.makeConfig(12, random);
+        Path dir = Files.createTempDirectory("enigma-tree");
+        Path configFile = dir.resolve("bench.conf");
+        Files.writeString(configFile, configText);
+        Path in = dir.resolve("in");
+        for (int k = 0; k < files; k += 1) {
+            StringBuilder text = new StringBuilder("* R0 R2 R4 R5 R6 AAAA ");
+            text.append((char) ('A' + random.nextInt(26))).append("XLE\n");
+            while (text.length() < 1024) {
+                for (int i = 0; i < 60; i += 1) {
+                    text.append((char) ('A' + random.nextInt(26)));
+                }
+                text.append('\n');
+            }
+            Path file = in.resolve(String.format("%02d/%03d/f%d", k % 97,
+                                                 k % 113, k));
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, text);
+        }
+        Config config = ConfigParser.parseConfig(configText);
+        for (int t : threads) {
+            Path out = dir.resolve("out" + t);
+            DirectoryBatch.Summary summary =
+                DirectoryBatch.process(config, in, out, t);
+            System.out.printf("%d threads: %s%n", t, summary);
+        }
+        long start = System.nanoTime();
+        try (Stream<Path> sample = Files.walk(in)
+                 .filter(Files::isRegularFile).limit(SAMPLE)) {
+            Iterator<Path> it = sample.iterator();
+            while (it.hasNext()) {
+                Path file = it.next();
+                Process process = new ProcessBuilder(
+                    Path.of(System.getProperty("java.home"), "bin", "java")
+                        .toString(),
+                    "-cp", System.getProperty("java.class.path"),
+                    "enigma.Main", configFile.toString(), file.toString(),
+                    dir.resolve("cli.out").toString())
+                    .inheritIO().start();
+                process.waitFor();
+            }
+        }
+        double perFile = (System.nanoTime() - start) / 1e9 / SAMPLE;
+        System.out.printf("JVM per file: %.0f files/s (%.0f s for %d"
+                          + " files)%n", 1 / perFile, perFile * files,
+                          files);
+    }
+}
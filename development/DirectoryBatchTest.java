@@ -0,0 +1,145 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the DirectoryBatch class.
+ *  @author Kevin Li
+ */
+public class DirectoryBatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Temporary files, deleted after each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the output of Main on INPUT with NAVAL_CONFIG. */
+    private static String expected(Config config, String input) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream output = new PrintStream(bytes, true,
+                                             StandardCharsets.UTF_8);
+        Main.process(config, config.newMachine(),
+                     new BufferedReader(new StringReader(input)), output);
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Return the input of file number K. */
+    private static String input(int k) {
+        return "* B Beta III II I A" + (char) ('A' + k % 26) + "LE (YF)\n"
+            + "FROM HIS SHOULDER HIAWATHA\n"
+            + "* B Beta I II III AAAA\nTOOK THE CAMERA OF ROSEWOOD\n";
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testTreeAndResume() throws IOException {
+        Config config = ConfigParser.parseConfig(NAVAL_CONFIG);
+        Path dir = tmp.newFolder("tree").toPath();
+        Path in = dir.resolve("in"), out = dir.resolve("out");
+        int count = 60;
+        for (int k = 0; k < count; k += 1) {
+            Path file = in.resolve("d" + k % 4).resolve("s" + k % 3)
+                .resolve("m" + k + ".txt");
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, input(k));
+        }
+        Files.writeString(in.resolve("bad.txt"), "NO SETTINGS\n");
+
+        DirectoryBatch.Summary summary =
+            DirectoryBatch.process(config, in, out, 3);
+        assertEquals(count, summary.files());
+        assertEquals(0, summary.skipped());
+        assertEquals(1, summary.failed());
+        assertTrue(summary.failures().get(0).startsWith("bad.txt: "));
+        assertFalse(Files.exists(out.resolve("bad.txt")));
+        assertFalse(Files.exists(out.resolve("bad.txt"
+                                             + DirectoryBatch.PART)));
+        for (int k = 0; k < count; k += 1) {
+            Path file = out.resolve("d" + k % 4).resolve("s" + k % 3)
+                .resolve("m" + k + ".txt");
+            assertEquals(expected(config, input(k)), Files.readString(file));
+        }
+
+        Files.delete(out.resolve("d1").resolve("s2").resolve("m5.txt"));
+        summary = DirectoryBatch.process(config, in, out, 2);
+        assertEquals(1, summary.files());
+        assertEquals(count - 1, summary.skipped());
+        assertEquals(1, summary.failed());
+        assertTrue(Files.exists(out.resolve("d1").resolve("s2")
+                                .resolve("m5.txt")));
+    }
+
+    @Test
+    public void testBoundsOpenFiles() throws IOException {
+        Config config = ConfigParser.parseConfig(NAVAL_CONFIG);
+        Path dir = tmp.newFolder("tree").toPath();
+        Path in = dir.resolve("in");
+        Files.createDirectories(in);
+        for (int k = 0; k < 40; k += 1) {
+            Files.writeString(in.resolve("m" + k + ".txt"), input(k));
+        }
+        DirectoryBatch.Summary summary =
+            DirectoryBatch.process(config, in, dir.resolve("one"), 4, 2);
+        assertEquals(40, summary.files());
+        assertEquals(2, summary.peakOpen());
+        summary = DirectoryBatch.process(config, in, dir.resolve("all"), 4);
+        assertEquals(40, summary.files());
+        assertTrue(summary.peakOpen() >= 2 && summary.peakOpen() <= 8);
+        try {
+            DirectoryBatch.process(config, in, dir.resolve("none"), 4, 1);
+            fail("ran with fewer than 2 open files");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("open files"));
+        }
+    }
+
+    @Test
+    public void testWorkerSetupFailureFailsFiles() throws IOException {
+        Config config = ConfigParser.parseConfig(
+            NAVAL_CONFIG.replaceFirst("\n", "\nIX N (AB)\n"));
+        Path dir = tmp.newFolder("tree").toPath();
+        Path in = dir.resolve("in");
+        Files.createDirectories(in);
+        for (int k = 0; k < 5; k += 1) {
+            Files.writeString(in.resolve("m" + k + ".txt"), input(k));
+        }
+        System.setProperty(Engines.PROPERTY, "no-such-engine");
+        DirectoryBatch.Summary summary;
+        try {
+            summary = DirectoryBatch.process(config, in, dir.resolve("out"),
+                                             2);
+        } finally {
+            System.clearProperty(Engines.PROPERTY);
+        }
+        assertEquals(0, summary.files());
+        assertEquals(5, summary.failed());
+        assertTrue(summary.failures().get(0).contains("no-such-engine"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testOutputInsideInput() throws IOException {
+        Path dir = tmp.newFolder("tree").toPath();
+        DirectoryBatch.process(ConfigParser.parseConfig(NAVAL_CONFIG), dir,
+                               dir.resolve("out"), 1);
+    }
+}
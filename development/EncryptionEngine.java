@@ -0,0 +1,32 @@
+package enigma;
+
+/** A way of carrying out a Machine's conversions in bulk.  Engines hold
+ *  no state of their own between calls, so one engine may serve any
+ *  number of machines and threads.  Besides the built-in engines listed
+ *  by Engines, implementations are found with ServiceLoader: a public
+ *  class with a public no-argument constructor named in a
+ *  META-INF/services/enigma.EncryptionEngine file on the class path.
+ *  @author Kevin Li
+ */
+interface EncryptionEngine {
+
+    /** Return my name, as accepted by the enigma.engine property. */
+    String name();
+
+    /** Return true iff I can convert for M, whose rotors are inserted. */
+    default boolean supports(Machine M) {
+        return true;
+    }
+
+    /** Return true iff Engines may pick me by calibration.  An engine
+     *  whose steady state a short sample does not show returns false, and
+     *  is used only when enigma.engine names it.  By default, true. */
+    default boolean calibrated() {
+        return true;
+    }
+
+    /** Replace the alphabet indices TEXT[FROM .. TO-1] by their
+     *  conversions on M, in order, leaving M in the state that calling
+     *  M.convert(int) on each would. */
+    void convert(Machine M, int[] text, int from, int to);
+}
@@ -0,0 +1,35 @@
+package enigma;
+
+import java.util.Random;
+
+/** Measures the throughput of each available engine once warmed up, and
+ *  shows the engine that calibration picks.  Usage:
+ *      java enigma.EngineBenchmark [CHARS]
+ *  @author Kevin Li
+ */
+class EngineBenchmark {
+
+    /** Run the benchmark as described by ARGS. */
+    public static void main(String... args) {
+        int chars = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 22;
+        Random random = new Random(42);
+        Config config =
+            ConfigParser.parseConfig(ParseBenchmark.makeConfig(12, random));
+        System.out.println(Engines.choose(config));
+        int[] text = new int[chars];
+        for (int i = 0; i < chars; i += 1) {
+            text[i] = random.nextInt(26);
+        }
+        for (EncryptionEngine engine : Engines.available()) {
+            Machine machine = config.newMachine();
+            SettingsCache cache = new SettingsCache(config, 1);
+            cache.apply(machine, "* R0 R2 R4 R5 R6 AAAA (AB)", 1);
+            machine.setEngine(engine);
+            long t = Bench.best(3, 5, () -> {
+                machine.convert(text, 0, text.length);
+                Bench.sink += text[0];
+            });
+            Bench.report(engine.name(), t, chars, "chars");
+        }
+    }
+}
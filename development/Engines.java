@@ -0,0 +1,258 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.ServiceLoader;
+
+import static enigma.EnigmaException.*;
+
+/** Finds the available EncryptionEngines and picks one for a Config.
+ *  Unless the system property enigma.engine names an engine, the choice
+ *  is made by a short calibration: each calibrated engine (see
+ *  EncryptionEngine.calibrated) that supports the configuration converts
+ *  the same sample text on the same machine, any engine whose output
+ *  differs from the reference engine's is dropped, and the fastest of
+ *  the rest wins.  Choices are remembered per
+ *  Config.fingerprint() and power-of-two range of sample lengths, for the
+ *  LIMIT most recently used pairs; calibrations run one at a time so that
+ *  they do not disturb each other's timings.  A run too short to repay a
+ *  calibration uses chosen(), which takes a remembered choice or the
+ *  fixed standard().
+ *  @author Kevin Li
+ */
+class Engines {
+
+    /** Name of the system property that forces an engine. */
+    static final String PROPERTY = "enigma.engine";
+    /** Default length of the calibration sample, in characters. */
+    static final int SAMPLE = 4096;
+    /** Longest calibration sample, in characters. */
+    static final int MAX_SAMPLE = 1 << 16;
+    /** Number of choices remembered. */
+    static final int LIMIT = 64;
+    /** Number of timed runs per engine; the best counts. */
+    private static final int RUNS = 5;
+
+    /** Return the built-in engines followed by any found by
+     *  ServiceLoader. */
+    static List<EncryptionEngine> available() {
+        List<EncryptionEngine> engines = new ArrayList<>();
+        engines.add(RotorEngine.INSTANCE);
+        engines.add(new FlatEngine());
+        engines.add(new ComposedEngine());
+        engines.add(new SegmentTreeEngine());
+        engines.add(new SpecializingEngine());
+        for (EncryptionEngine engine
+                 : ServiceLoader.load(EncryptionEngine.class)) {
+            engines.add(engine);
+        }
+        return engines;
+    }
+
+    /** Return the engine choice for machines built from CONFIG, calibrating
+     *  with a SAMPLE-character message if it has not been made yet. */
+    static Choice choose(Config config) {
+        return choose(config, SAMPLE);
+    }
+
+    /** Return the engine choice for machines built from CONFIG, calibrating
+     *  with a message of LENGTH characters, the typical message length of
+     *  the workload, if it has not been made yet. */
+    static Choice choose(Config config, int length) {
+        int sample = Math.max(1, Math.min(length, MAX_SAMPLE));
+        return CHOICES.computeIfAbsent(key(config, sample),
+                                       k -> calibrate(config, sample));
+    }
+
+    /** Return the choice made by choose(CONFIG) if it has been made, and
+     *  otherwise standard(CONFIG), without calibrating. */
+    static Choice chosen(Config config) {
+        Choice choice = CHOICES.get(key(config, SAMPLE));
+        return choice != null ? choice : standard(config);
+    }
+
+    /** Return the engine named by enigma.engine if it is set, and
+     *  otherwise FlatEngine, without calibrating. */
+    static Choice standard(Config config) {
+        Choice forced = forced(config);
+        return forced != null ? forced
+            : new Choice(new FlatEngine(), "default: not calibrated",
+                         new LinkedHashMap<>());
+    }
+
+    /** Return the key in CHOICES of CONFIG calibrated with a sample of
+     *  LENGTH characters. */
+    private static List<Long> key(Config config, int length) {
+        return List.of(config.fingerprint(),
+                       (long) Integer.numberOfLeadingZeros(length));
+    }
+
+    /** Return the choice of the engine named by enigma.engine for CONFIG,
+     *  or null if it is not set. */
+    private static Choice forced(Config config) {
+        String forced = System.getProperty(PROPERTY);
+        if (forced == null) {
+            return null;
+        }
+        for (EncryptionEngine engine : available()) {
+            if (engine.name().equals(forced)) {
+                if (!engine.supports(config.newMachine())) {
+                    throw error("engine %s does not support this"
+                                + " configuration", forced);
+                }
+                return new Choice(engine, "set by " + PROPERTY,
+                                  new LinkedHashMap<>());
+            }
+        }
+        throw error("no engine named %s", forced);
+    }
+
+    /** Return a new choice for CONFIG made as described in the class
+     *  comment, with a sample of LENGTH characters. */
+    static Choice calibrate(Config config, int length) {
+        Choice forced = forced(config);
+        if (forced != null) {
+            return forced;
+        }
+        List<EncryptionEngine> engines = available();
+        Machine machine = config.newMachine();
+        int[] positions = new int[config.numRotors() - 1];
+        if (!arrange(config, machine)) {
+            return new Choice(RotorEngine.INSTANCE,
+                              "default: no legal rotor arrangement",
+                              new LinkedHashMap<>());
+        }
+        machine.setPlugboard(new Permutation("", config.alphabet()));
+        Random random = new Random(length);
+        int[] sample = new int[length];
+        for (int i = 0; i < length; i += 1) {
+            sample[i] = random.nextInt(config.alphabet().size());
+        }
+        int[] expected = run(RotorEngine.INSTANCE, machine, positions, sample);
+        Map<String, Double> timings = new LinkedHashMap<>();
+        EncryptionEngine best = RotorEngine.INSTANCE;
+        double bestTime = Double.MAX_VALUE;
+        for (EncryptionEngine engine : engines) {
+            if (!engine.calibrated() || !engine.supports(machine)) {
+                continue;
+            }
+            if (!Arrays.equals(expected,
+                                  run(engine, machine, positions, sample))) {
+                continue;
+            }
+            long t = Long.MAX_VALUE;
+            for (int r = 0; r < RUNS; r += 1) {
+                long start = System.nanoTime();
+                run(engine, machine, positions, sample);
+                t = Math.min(t, System.nanoTime() - start);
+            }
+            double perChar = (double) t / Math.max(1, length);
+            timings.put(engine.name(), perChar);
+            if (perChar < bestTime) {
+                best = engine;
+                bestTime = perChar;
+            }
+        }
+        return new Choice(best, "calibrated", timings);
+    }
+
+    /** Insert into M, built from CONFIG, a legal arrangement of rotors:
+     *  the first reflector, then fixed rotors, then as many moving rotors
+     *  as there are pawls, or fewer if there are not enough fixed rotors
+     *  to fill the other slots.  Returns false if there is none. */
+    private static boolean arrange(Config config, Machine M) {
+        List<String> reflectors = new ArrayList<>(), fixed = new ArrayList<>(),
+            moving = new ArrayList<>();
+        for (int k = 0; k < config.size(); k += 1) {
+            (config.kind(k) == 'R' ? reflectors
+             : config.kind(k) == 'M' ? moving : fixed).add(config.name(k));
+        }
+        int slots = config.numRotors() - 1;
+        int numMoving = Math.min(Math.min(config.numPawls(), moving.size()),
+                                 slots);
+        if (reflectors.isEmpty() || fixed.size() < slots - numMoving) {
+            return false;
+        }
+        List<String> names = new ArrayList<>();
+        names.add(reflectors.get(0));
+        names.addAll(fixed.subList(0, slots - numMoving));
+        names.addAll(moving.subList(0, numMoving));
+        M.insertRotors(names.toArray(new String[0]));
+        return true;
+    }
+
+    /** Return the conversion of SAMPLE by ENGINE on M after setting M's
+     *  rotors to POSITIONS. */
+    private static int[] run(EncryptionEngine engine, Machine M,
+                             int[] positions, int[] sample) {
+        int[] text = sample.clone();
+        M.setRotors(positions);
+        engine.convert(M, text, 0, text.length);
+        return text;
+    }
+
+    /** An engine chosen for a configuration, with how and why. */
+    static class Choice {
+
+        /** A choice of ENGINE for REASON, with calibration TIMINGS in
+         *  nanoseconds per character by engine name. */
+        Choice(EncryptionEngine engine, String reason,
+               Map<String, Double> timings) {
+            _engine = engine;
+            _reason = reason;
+            _timings = timings;
+        }
+
+        /** Return the engine chosen. */
+        EncryptionEngine engine() {
+            return _engine;
+        }
+
+        /** Return how the engine was chosen. */
+        String reason() {
+            return _reason;
+        }
+
+        /** Return the calibration time per character, in nanoseconds, of
+         *  each engine timed. */
+        Map<String, Double> timings() {
+            return _timings;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder();
+            result.append(String.format("engine: %s (%s)", _engine.name(),
+                                        _reason));
+            for (Map.Entry<String, Double> e : _timings.entrySet()) {
+                result.append(String.format(", %s %.1f ns/char", e.getKey(),
+                                            e.getValue()));
+            }
+            return result.toString();
+        }
+
+        /** The engine chosen. */
+        private final EncryptionEngine _engine;
+        /** How it was chosen. */
+        private final String _reason;
+        /** Calibration results. */
+        private final Map<String, Double> _timings;
+    }
+
+    /** Choices made so far, by configuration fingerprint and sample
+     *  length range, least recently used first. */
+    private static final Map<List<Long>, Choice> CHOICES =
+        Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                    Map.Entry<List<Long>, Choice> e) {
+                    return size() > LIMIT;
+                }
+            });
+}
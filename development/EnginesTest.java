@@ -0,0 +1,194 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import javax.tools.ToolProvider;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Engines class and the built-in
+ *  EncryptionEngines.
+ *  @author Kevin Li
+ */
+public class EnginesTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A naval configuration with notches placed so that double steps
+     *  happen often. */
+    private static final String CONFIG =
+        navalConfig(5, 3, "I MQ", "II MEV", "III MVZ", "IV MACEGIKMO",
+                    "Beta N", "B R");
+
+    /** Return a machine for CONFIG set up by SETTINGS. */
+    private static Machine machine(Config config, String settings) {
+        Machine machine = config.newMachine();
+        new SettingsCache(config, 1).apply(machine, settings, 1);
+        return machine;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testEnginesAgree() {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        String settings = "* B Beta I II III QDUY HCMX (AQ) (EPZ) (TX)";
+        int[] text = new int[3000];
+        Random random = new Random(3);
+        for (int i = 0; i < text.length; i += 1) {
+            text[i] = random.nextInt(26);
+        }
+        Machine reference = machine(config, settings);
+        int[] expected = new int[text.length];
+        for (int i = 0; i < text.length; i += 1) {
+            expected[i] = reference.convert(text[i]);
+        }
+        for (EncryptionEngine engine : Engines.available()) {
+            Machine machine = machine(config, settings);
+            machine.setEngine(engine);
+            int[] actual = text.clone();
+            machine.convert(actual, 0, 1000);
+            machine.convert(actual, 1000, 1001);
+            machine.convert(actual, 1001, actual.length);
+            assertArrayEquals(expected, actual);
+            for (int i = 1; i < 5; i += 1) {
+                assertEquals(engine.name(), reference.rotor(i).setting(),
+                             machine.rotor(i).setting());
+            }
+        }
+    }
+
+    @Test
+    public void testManyRotors() {
+        WorkloadGenerator gen =
+            new WorkloadGenerator("slots=40,pawls=30,alphabet=6,plugs=2,"
+                                  + "naval=false,messages=2");
+        Config config = ConfigParser.parseConfig(gen.config());
+        String[] input = gen.input().split("\\n");
+        int[] text = new int[20000];
+        for (int i = 0; i < text.length; i += 1) {
+            text[i] = i * 7 % 6;
+        }
+        int[] expected = new int[text.length + 100];
+        Machine reference = machine(config, input[0]);
+        for (int i = 0; i < text.length; i += 1) {
+            expected[i] = reference.convert(text[i]);
+        }
+        reference = machine(config, input[2]);
+        for (int i = 0; i < 100; i += 1) {
+            expected[text.length + i] = reference.convert(text[i]);
+        }
+        for (EncryptionEngine engine : Engines.available()) {
+            Machine machine = machine(config, input[0]);
+            machine.setEngine(engine);
+            int[] actual = new int[expected.length];
+            System.arraycopy(text, 0, actual, 0, text.length);
+            System.arraycopy(text, 0, actual, text.length, 100);
+            machine.convert(actual, 0, 7000);
+            machine.convert(actual, 7000, text.length);
+            new SettingsCache(config, 1).apply(machine, input[2], 1);
+            machine.convert(actual, text.length, actual.length);
+            assertArrayEquals(engine.name(), expected, actual);
+        }
+    }
+
+    @Test
+    public void testSpecializedKernel() {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        int length = (int) SpecializingEngine.THRESHOLD + 5000;
+        int[] text = new int[length];
+        Random random = new Random(5);
+        for (int i = 0; i < text.length; i += 1) {
+            text[i] = random.nextInt(26);
+        }
+        for (String settings : new String[] {
+                "* B Beta I II III QDUY HCMX (AQ) (EPZ) (TX)",
+                "* B Beta III IV II AQDU XYZA (BC)" }) {
+            Machine reference = machine(config, settings);
+            int[] expected = new int[length];
+            for (int i = 0; i < length; i += 1) {
+                expected[i] = reference.convert(text[i]);
+            }
+            Machine machine = machine(config, settings);
+            machine.setEngine(new SpecializingEngine());
+            int[] actual = text.clone();
+            for (int k = 0; k < length; k += 1000) {
+                machine.convert(actual, k, Math.min(length, k + 1000));
+            }
+            assertArrayEquals(settings, expected, actual);
+        }
+        if (ToolProvider.getSystemJavaCompiler() != null) {
+            assertTrue(SpecializingEngine.compiled() >= 2);
+        }
+    }
+
+    @Test
+    public void testSpecializedIsNotCalibrated() {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        int before = SpecializingEngine.compiled();
+        Engines.Choice choice = Engines.calibrate(config, 500);
+        assertFalse(choice.timings().containsKey("specialized"));
+        assertEquals(before, SpecializingEngine.compiled());
+        System.setProperty(Engines.PROPERTY, "specialized");
+        try {
+            choice = Engines.calibrate(config, 500);
+            assertEquals("specialized", choice.engine().name());
+        } finally {
+            System.clearProperty(Engines.PROPERTY);
+        }
+    }
+
+    @Test
+    public void testChoice() {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        Engines.Choice choice = Engines.calibrate(config, 500);
+        assertEquals("calibrated", choice.reason());
+        assertTrue(choice.timings().containsKey("rotor"));
+        assertTrue(choice.timings().containsKey(choice.engine().name()));
+        System.setProperty(Engines.PROPERTY, "flat");
+        try {
+            choice = Engines.calibrate(config, 500);
+            assertEquals("flat", choice.engine().name());
+            assertTrue(choice.timings().isEmpty());
+        } finally {
+            System.clearProperty(Engines.PROPERTY);
+        }
+    }
+
+    @Test
+    public void testChosenDoesNotCalibrate() {
+        Config config = ConfigParser.parseConfig(
+            CONFIG + "V MZ " + NAVALA.get("V") + "\n");
+        Engines.Choice standard = Engines.chosen(config);
+        assertEquals("default: not calibrated", standard.reason());
+        Engines.Choice choice = Engines.choose(config);
+        assertSame(choice, Engines.chosen(config));
+        assertSame(choice, Engines.choose(config, Engines.SAMPLE + 1));
+        assertFalse(choice == Engines.choose(config, 100));
+    }
+
+    @Test
+    public void testForcedEngineMustSupportConfig() {
+        Config config = ConfigParser.parseConfig(
+            navalConfig(2, 1, "I MQ", "B R"));
+        System.setProperty(Engines.PROPERTY, "composed");
+        try {
+            Engines.calibrate(config, 500);
+            fail("forced an engine that cannot run the configuration");
+        } catch (EnigmaException excp) {
+            assertEquals("engine composed does not support this"
+                         + " configuration", excp.getMessage());
+        } finally {
+            System.clearProperty(Engines.PROPERTY);
+        }
+    }
+}
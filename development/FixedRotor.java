@@ -12,4 +12,10 @@ class FixedRotor extends Rotor {
     FixedRotor(String name, Permutation perm) {
         super(name, perm);
     }
+
+    /** A non-moving rotor named NAME with permutation PERM, reading its
+     *  conversions from entry K of TABLES. */
+    FixedRotor(String name, Permutation perm, RotorTables tables, int k) {
+        super(name, perm, tables, k);
+    }
 }
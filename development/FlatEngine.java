@@ -0,0 +1,70 @@
+package enigma;
+
+/** An engine that copies the rotors' ring-shifted tables, notch tables
+ *  and settings into local arrays for the length of a call and steps and
+ *  converts with plain array arithmetic, writing the settings back at
+ *  the end.  This avoids a virtual call per rotor per character.
+ *  @author Kevin Li
+ */
+class FlatEngine implements EncryptionEngine {
+
+    @Override
+    public String name() {
+        return "flat";
+    }
+
+    @Override
+    public void convert(Machine M, int[] text, int from, int to) {
+        int slots = M.numRotors(), last = slots - 1;
+        int n = M.alphabet().size();
+        int[][] forward = new int[slots][], backward = new int[slots][];
+        boolean[][] notch = new boolean[slots][];
+        boolean[] rotates = new boolean[slots], advance = new boolean[slots];
+        int[] pos = new int[slots];
+        for (int i = 0; i < slots; i += 1) {
+            Rotor r = M.rotor(i);
+            forward[i] = r.forwardTable();
+            backward[i] = r.backwardTable();
+            notch[i] = r.notchTable();
+            rotates[i] = r.rotates();
+            pos[i] = r.setting();
+        }
+        Permutation plugboard = M.plugboard();
+        for (int k = from; k < to; k += 1) {
+            boolean others = false;
+            for (int i = last; i > 1; i -= 1) {
+                if (notch[i] != null && notch[i][pos[i]] && rotates[i - 1]) {
+                    advance[i] = advance[i - 1] = others = true;
+                }
+            }
+            if (rotates[last]) {
+                pos[last] = pos[last] + 1 == n ? 0 : pos[last] + 1;
+            }
+            if (others) {
+                for (int i = 0; i < last; i += 1) {
+                    if (advance[i] && rotates[i]) {
+                        pos[i] = pos[i] + 1 == n ? 0 : pos[i] + 1;
+                    }
+                    advance[i] = false;
+                }
+                advance[last] = false;
+            }
+            int x = plugboard.permute(text[k]);
+            for (int i = last; i >= 0; i -= 1) {
+                x = wrap(forward[i][wrap(x + pos[i], n)] - pos[i], n);
+            }
+            for (int i = 1; i <= last; i += 1) {
+                x = wrap(backward[i][wrap(x + pos[i], n)] - pos[i], n);
+            }
+            text[k] = plugboard.permute(x);
+        }
+        for (int i = 0; i < slots; i += 1) {
+            M.rotor(i).set(pos[i]);
+        }
+    }
+
+    /** Return P modulo N, for -N < P < 2N. */
+    private static int wrap(int p, int n) {
+        return p < 0 ? p + n : p >= n ? p - n : p;
+    }
+}
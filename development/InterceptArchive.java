@@ -0,0 +1,974 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** An append-only store of intercepted messages with their settings, in
+ *  which the messages whose settings match a query can be found without
+ *  reading the others and decrypted in parallel.  The store is a
+ *  directory of column files, each holding one fixed-size entry per
+ *  record except payloads, all big-endian:
+ *
+ *      archive     int MAGIC, short VERSION, short numRotors,
+ *                  long Config.fingerprint()
+ *      keys        byte[numRotors] Config indices of the rotors
+ *                  (reflector first), byte[numRotors - 1] positions,
+ *                  byte[numRotors - 1] rings
+ *      plugboards  byte[alphabet size]: the plugboard's image of each
+ *                  character
+ *      ends        long offset in payloads of the end of the message
+ *      payloads    the messages, one byte per character
+ *
+ *  Positions, rings and characters are alphabet indices, so alphabets
+ *  and the number of rotors in the Config are limited to 256.  Each
+ *  column is appended through its own buffer, which may reach the file
+ *  before or after the others, so after a crash the columns may hold
+ *  different numbers of entries.  On opening, the records are the
+ *  longest prefix with an entry in every column (the minimum over the
+ *  columns) whose end lies within the payloads, and the columns are cut
+ *  back to them, dropping any record a crash left incomplete.
+ *
+ *  The keys and plugboards columns are held in memory, as are three
+ *  secondary indexes built from them on opening and kept up to date by
+ *  append: the records with each reflector, with each order of the
+ *  other rotors, and with each stecker pair.  A Query is answered by
+ *  intersecting the lists of records of its terms, shortest first (the
+ *  list for its rotor terms being the union, through a bitmap, of those
+ *  of the orders they allow), or, on request, by testing the settings
+ *  of every record, for comparison.  The payloads of the records
+ *  selected are then read and decrypted in parallel, each query keeping
+ *  a pool of Machines and buffers, one for each task running at once.
+ *
+ *  As a program, adds the messages of an input file in the format Main
+ *  reads (a settings line followed by the lines of its message) to an
+ *  archive, or prints the decryptions of those matching a query:
+ *      java enigma.InterceptArchive DIR CONFIG add [INPUT]
+ *      java enigma.InterceptArchive DIR CONFIG query [--scan] TERM...
+ *  @author Kevin Li
+ */
+class InterceptArchive implements Closeable {
+
+    /** Identifies an intercept archive: "ENGA". */
+    static final int MAGIC = 0x454e4741;
+    /** Current format version. */
+    static final short VERSION = 1;
+    /** Records decrypted by one parallel task. */
+    static final int SHARD = 256;
+
+    /** The settings a record must have to be selected: every term given
+     *  must hold. */
+    static final class Query {
+
+        /** A query for records with reflector REFLECTOR (any if null),
+         *  whose other rotors include all of ROTORS, which are in the
+         *  slots after the reflector in the order ORDER (any if null),
+         *  and whose plugboards stecker together the two characters of
+         *  each of STECKERS. */
+        Query(String reflector, List<String> rotors, List<String> order,
+              List<String> steckers) {
+            _reflector = reflector;
+            _rotors = rotors;
+            _order = order;
+            _steckers = steckers;
+        }
+
+        /** Return the query described by TERMS, each of which is one of
+         *      reflector=NAME  rotors=NAME,...  order=NAME,...
+         *      stecker=XY,...
+         *  as for the arguments of the constructor. */
+        static Query parse(String... terms) {
+            String reflector = null;
+            List<String> rotors = new ArrayList<>(), steckers =
+                new ArrayList<>();
+            List<String> order = null;
+            for (String term : terms) {
+                int eq = term.indexOf('=');
+                if (eq <= 0 || eq == term.length() - 1) {
+                    throw error("bad query term: %s", term);
+                }
+                List<String> values =
+                    Arrays.asList(term.substring(eq + 1).split(","));
+                switch (term.substring(0, eq)) {
+                case "reflector":
+                    if (values.size() != 1) {
+                        throw error("bad query term: %s", term);
+                    }
+                    reflector = values.get(0);
+                    break;
+                case "rotors":
+                    rotors.addAll(values);
+                    break;
+                case "order":
+                    order = values;
+                    break;
+                case "stecker":
+                    steckers.addAll(values);
+                    break;
+                default:
+                    throw error("bad query term: %s", term);
+                }
+            }
+            return new Query(reflector, rotors, order, steckers);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder();
+            if (_reflector != null) {
+                result.append(" reflector=").append(_reflector);
+            }
+            if (!_rotors.isEmpty()) {
+                result.append(" rotors=").append(String.join(",", _rotors));
+            }
+            if (_order != null) {
+                result.append(" order=").append(String.join(",", _order));
+            }
+            if (!_steckers.isEmpty()) {
+                result.append(" stecker=")
+                    .append(String.join(",", _steckers));
+            }
+            return result.toString().trim();
+        }
+
+        /** Name of the reflector, or null. */
+        private final String _reflector;
+        /** Names of rotors that must be present. */
+        private final List<String> _rotors;
+        /** Names of the non-reflector rotors in order, or null. */
+        private final List<String> _order;
+        /** Pairs of characters that must be steckered. */
+        private final List<String> _steckers;
+    }
+
+    /** A decrypted record. */
+    static final class Intercept {
+
+        /** The decryption TEXT of record ID, whose settings line is
+         *  SETTINGS. */
+        Intercept(int id, String settings, String text) {
+            _id = id;
+            _settings = settings;
+            _text = text;
+        }
+
+        /** Return the number of my record, counting from 0 in order of
+         *  appending. */
+        int id() {
+            return _id;
+        }
+
+        /** Return my settings line. */
+        String settings() {
+            return _settings;
+        }
+
+        /** Return my decryption. */
+        String text() {
+            return _text;
+        }
+
+        /** Record number. */
+        private final int _id;
+        /** Settings line. */
+        private final String _settings;
+        /** Decryption. */
+        private final String _text;
+    }
+
+    /** How a query was answered. */
+    static final class QueryStats {
+
+        /** Return true iff the records were selected through the
+         *  indexes rather than by testing every record. */
+        boolean indexed() {
+            return _indexed;
+        }
+
+        /** Return the number of records matching. */
+        int matched() {
+            return _matched;
+        }
+
+        /** Return the number of records in the archive. */
+        int records() {
+            return _records;
+        }
+
+        /** Return the time taken to select the records, in
+         *  nanoseconds. */
+        long selectNanos() {
+            return _selectNanos;
+        }
+
+        /** Return the time taken to decrypt them, in nanoseconds. */
+        long decryptNanos() {
+            return _decryptNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d of %d records selected in %.3f ms,"
+                                 + " decrypted in %.3f ms",
+                                 _indexed ? "index" : "scan", _matched,
+                                 _records, _selectNanos / 1e6,
+                                 _decryptNanos / 1e6);
+        }
+
+        /** True iff the indexes were used. */
+        private boolean _indexed;
+        /** Numbers of records matching and in the archive. */
+        private int _matched, _records;
+        /** Times taken to select and decrypt. */
+        private long _selectNanos, _decryptNanos;
+    }
+
+    /** The archive in directory DIR, for messages encrypted by machines
+     *  built from CONFIG, created if DIR does not hold one. */
+    InterceptArchive(Path dir, Config config) throws IOException {
+        if (config.alphabet().size() > 256 || config.size() > 256) {
+            throw error("configuration too large for an intercept archive");
+        }
+        _config = config;
+        _slots = config.numRotors();
+        _n = config.alphabet().size();
+        _width = 3 * _slots - 2;
+        Files.createDirectories(dir);
+        checkHeader(dir.resolve("archive"));
+        Path keysFile = dir.resolve("keys"),
+            plugsFile = dir.resolve("plugboards"),
+            endsFile = dir.resolve("ends"),
+            payloadsFile = dir.resolve("payloads");
+        byte[] keys = readColumn(keysFile), plugs = readColumn(plugsFile),
+            ends = readColumn(endsFile);
+        long payloadBytes = Files.exists(payloadsFile)
+            ? Files.size(payloadsFile) : 0;
+        int count = Math.min(ends.length / Long.BYTES,
+                             Math.min(keys.length / _width,
+                                      plugs.length / _n));
+        _ends = new long[Math.max(count, 16)];
+        ByteBuffer endsBuffer = ByteBuffer.wrap(ends);
+        for (int i = 0; i < count; i += 1) {
+            _ends[i] = endsBuffer.getLong();
+        }
+        while (count > 0 && _ends[count - 1] > payloadBytes) {
+            count -= 1;
+        }
+        _keys = Arrays.copyOf(keys, Math.max(count, 16) * _width);
+        _plugs = Arrays.copyOf(plugs, Math.max(count, 16) * _n);
+        _count = count;
+        _byReflector = new Postings[config.size()];
+        _byPair = new Postings[_n * _n];
+        for (int id = 0; id < count; id += 1) {
+            index(id);
+        }
+        _payloads = FileChannel.open(payloadsFile, StandardOpenOption.CREATE,
+                                     StandardOpenOption.READ,
+                                     StandardOpenOption.WRITE);
+        _payloads.truncate(end(count));
+        _payloads.position(end(count));
+        _keysOut = append(keysFile, (long) count * _width);
+        _plugsOut = append(plugsFile, (long) count * _n);
+        _endsOut = append(endsFile, (long) count * Long.BYTES);
+        _payloadsOut = new DataOutputStream(new BufferedOutputStream(
+            Channels.newOutputStream(_payloads)));
+        _validator = config.newMachine();
+        /* Calibrate now rather than in the first query's latency. */
+        Engines.choose(config);
+    }
+
+    /** Return the number of records. */
+    synchronized int size() {
+        return _count;
+    }
+
+    /** Append a record of the message MSG (in which whitespace is ignored
+     *  and letters may be in either case) encrypted with the settings
+     *  line SETTINGS, and return its number. */
+    synchronized int append(String settings, CharSequence msg) {
+        Settings set = ConfigParser.parseSettings(settings, 1, _config);
+        Main.validate(_config, _validator, set);
+        Alphabet alpha = _config.alphabet();
+        byte[] payload = new byte[msg.length()];
+        int length = 0;
+        for (int i = 0; i < msg.length(); i += 1) {
+            char ch = msg.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                continue;
+            }
+            int c = alpha.indexOf(Character.toUpperCase(ch));
+            if (c < 0) {
+                throw error("'%c' is not in the alphabet", ch);
+            }
+            payload[length] = (byte) c;
+            length += 1;
+        }
+        int id = _count;
+        if (id == _ends.length) {
+            _ends = Arrays.copyOf(_ends, 2 * id);
+            _keys = Arrays.copyOf(_keys, 2 * id * _width);
+            _plugs = Arrays.copyOf(_plugs, 2 * id * _n);
+        }
+        int k = id * _width;
+        for (int i = 0; i < _slots; i += 1) {
+            _keys[k++] = (byte) set.rotor(i);
+        }
+        for (int i = 0; i < _slots - 1; i += 1) {
+            _keys[k++] = (byte) alpha.toInt(set.positions().charAt(i));
+        }
+        for (int i = 0; i < _slots - 1; i += 1) {
+            _keys[k++] = (byte) alpha.toInt(set.rings().charAt(i));
+        }
+        for (int c = 0; c < _n; c += 1) {
+            _plugs[id * _n + c] = (byte) set.plugboard().permute(c);
+        }
+        _ends[id] = end(id) + length;
+        try {
+            _payloadsOut.write(payload, 0, length);
+            _keysOut.write(_keys, id * _width, _width);
+            _plugsOut.write(_plugs, id * _n, _n);
+            _endsOut.writeLong(_ends[id]);
+        } catch (IOException excp) {
+            throw error("could not append to archive: %s",
+                        excp.getMessage());
+        }
+        index(id);
+        _count += 1;
+        _dirty = true;
+        return id;
+    }
+
+    /** Write all records appended so far to my files. */
+    synchronized void flush() throws IOException {
+        if (_dirty) {
+            _payloadsOut.flush();
+            _keysOut.flush();
+            _plugsOut.flush();
+            _endsOut.flush();
+            _dirty = false;
+        }
+    }
+
+    /** Return the numbers, in increasing order, of the records matching
+     *  QUERY, selected through my indexes unless SCAN, in which case the
+     *  settings of every record are tested. */
+    synchronized int[] select(Query query, boolean scan) {
+        Terms terms = new Terms(query);
+        return scan ? scan(terms) : lookUp(terms);
+    }
+
+    /** Decrypt the records matching QUERY (selected as for select), in
+     *  parallel, passing each to SINK as soon as it is done.  SINK is
+     *  called from several threads, with the records in no particular
+     *  order.  Returns how the query went. */
+    QueryStats query(Query query, boolean scan, Consumer<Intercept> sink)
+        throws IOException {
+        QueryStats stats = new QueryStats();
+        long start = System.nanoTime();
+        int[] ids;
+        byte[] keys, plugs;
+        long[] ends;
+        synchronized (this) {
+            flush();
+            ids = select(query, scan);
+            keys = _keys;
+            plugs = _plugs;
+            ends = _ends;
+            stats._records = _count;
+        }
+        long selected = System.nanoTime();
+        int shards = (ids.length + SHARD - 1) / SHARD;
+        Queue<Decrypter> pool = new ConcurrentLinkedQueue<>();
+        IntStream.range(0, shards).parallel().forEach(s -> {
+            Decrypter decrypter = pool.poll();
+            if (decrypter == null) {
+                decrypter = new Decrypter();
+            }
+            for (int i = s * SHARD; i < Math.min(ids.length, (s + 1) * SHARD);
+                 i += 1) {
+                int id = ids[i];
+                long from = id == 0 ? 0 : ends[id - 1];
+                sink.accept(decrypt(id, keys, plugs, from,
+                                    (int) (ends[id] - from), decrypter));
+            }
+            pool.add(decrypter);
+        });
+        stats._indexed = !scan;
+        stats._matched = ids.length;
+        stats._selectNanos = selected - start;
+        stats._decryptNanos = System.nanoTime() - selected;
+        return stats;
+    }
+
+    /** Return the decryption of record ID. */
+    Intercept get(int id) throws IOException {
+        long from, to;
+        byte[] keys, plugs;
+        synchronized (this) {
+            if (id < 0 || id >= _count) {
+                throw error("no record %d", id);
+            }
+            flush();
+            from = end(id);
+            to = _ends[id];
+            keys = _keys;
+            plugs = _plugs;
+        }
+        return decrypt(id, keys, plugs, from, (int) (to - from),
+                       new Decrypter());
+    }
+
+    /** Write all records and close my files. */
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        _keysOut.close();
+        _plugsOut.close();
+        _endsOut.close();
+        _payloadsOut.close();
+    }
+
+    /** Return the decryption of record ID, whose settings are in KEYS and
+     *  PLUGS and whose LENGTH characters start at FROM in the payloads,
+     *  using the machine and buffers of D. */
+    private Intercept decrypt(int id, byte[] keys, byte[] plugs, long from,
+                              int length, Decrypter d) {
+        int k = id * _width;
+        int[] rotors = d._rotors, positions = d._positions, rings = d._rings;
+        for (int i = 0; i < _slots; i += 1) {
+            rotors[i] = keys[k++] & 0xff;
+        }
+        for (int i = 0; i < _slots - 1; i += 1) {
+            positions[i] = keys[k++] & 0xff;
+        }
+        for (int i = 0; i < _slots - 1; i += 1) {
+            rings[i] = keys[k++] & 0xff;
+        }
+        Permutation plugboard = d.plugboard(plugs, id * _n);
+        Machine M = d._machine;
+        M.insertRotors(rotors);
+        M.setRings(rings);
+        M.setRotors(positions);
+        M.setPlugboard(plugboard);
+        d.reserve(length);
+        ByteBuffer payload = d._payload;
+        try {
+            while (payload.hasRemaining()) {
+                if (_payloads.read(payload, from + payload.position()) < 0) {
+                    throw error("archive payloads truncated at record %d",
+                                id);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read record %d: %s", id,
+                        excp.getMessage());
+        }
+        int[] text = d._text;
+        for (int i = 0; i < length; i += 1) {
+            text[i] = payload.get(i) & 0xff;
+        }
+        M.convert(text, 0, length);
+        Alphabet alpha = _config.alphabet();
+        StringBuilder plain = d._plain;
+        plain.setLength(0);
+        for (int i = 0; i < length; i += 1) {
+            plain.append(alpha.toChar(text[i]));
+        }
+        StringBuilder settings = d._settings;
+        settings.setLength(0);
+        settings.append('*');
+        for (int r : rotors) {
+            settings.append(' ').append(_config.name(r));
+        }
+        settings.append(' ');
+        for (int p : positions) {
+            settings.append(alpha.toChar(p));
+        }
+        settings.append(' ');
+        for (int r : rings) {
+            settings.append(alpha.toChar(r));
+        }
+        if (!plugboard.cycles().isEmpty()) {
+            settings.append(' ').append(plugboard.cycles());
+        }
+        return new Intercept(id, settings.toString(), plain.toString());
+    }
+
+    /** Return the plugboard whose image of each character c is
+     *  PLUGS[BASE + c]. */
+    private Permutation plugboard(byte[] plugs, int base) {
+        Alphabet alpha = _config.alphabet();
+        int[] forward = new int[_n];
+        for (int c = 0; c < _n; c += 1) {
+            forward[c] = plugs[base + c] & 0xff;
+        }
+        StringBuilder cycles = new StringBuilder();
+        boolean[] seen = new boolean[_n];
+        for (int c = 0; c < _n; c += 1) {
+            if (forward[c] != c && !seen[c]) {
+                cycles.append(cycles.length() == 0 ? "(" : " (");
+                for (int x = c; !seen[x]; x = forward[x]) {
+                    seen[x] = true;
+                    cycles.append(alpha.toChar(x));
+                }
+                cycles.append(')');
+            }
+        }
+        return new Permutation(alpha, cycles.toString(), forward);
+    }
+
+    /** The terms of a Query, as Config indices and alphabet indices. */
+    private final class Terms {
+
+        /** The terms of QUERY. */
+        Terms(Query query) {
+            _reflector = query._reflector == null ? -1
+                : rotor(query._reflector);
+            _rotors = new int[query._rotors.size()];
+            for (int i = 0; i < _rotors.length; i += 1) {
+                _rotors[i] = rotor(query._rotors.get(i));
+            }
+            if (query._order != null) {
+                if (query._order.size() != _slots - 1) {
+                    throw error("order must name %d rotors", _slots - 1);
+                }
+                _order = new int[_slots - 1];
+                for (int i = 0; i < _order.length; i += 1) {
+                    _order[i] = rotor(query._order.get(i));
+                }
+            } else {
+                _order = null;
+            }
+            _pairs = new int[query._steckers.size()];
+            Alphabet alpha = _config.alphabet();
+            for (int i = 0; i < _pairs.length; i += 1) {
+                String pair = query._steckers.get(i).toUpperCase();
+                if (pair.length() != 2 || !alpha.contains(pair.charAt(0))
+                    || !alpha.contains(pair.charAt(1))
+                    || pair.charAt(0) == pair.charAt(1)) {
+                    throw error("bad stecker pair: %s", pair);
+                }
+                int a = alpha.toInt(pair.charAt(0)),
+                    b = alpha.toInt(pair.charAt(1));
+                _pairs[i] = Math.min(a, b) * _n + Math.max(a, b);
+            }
+        }
+
+        /** Return true iff record ID matches. */
+        boolean matches(int id) {
+            int k = id * _width;
+            if (_reflector >= 0 && (_keys[k] & 0xff) != _reflector) {
+                return false;
+            } else if (_order != null) {
+                for (int i = 0; i < _order.length; i += 1) {
+                    if ((_keys[k + 1 + i] & 0xff) != _order[i]) {
+                        return false;
+                    }
+                }
+            }
+            for (int r : _rotors) {
+                if (!contains(_keys, k + 1, k + _slots, r)) {
+                    return false;
+                }
+            }
+            for (int pair : _pairs) {
+                if ((_plugs[id * _n + pair / _n] & 0xff) != pair % _n) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Return true iff the rotor order ORDER (as a key of _byOrder)
+         *  satisfies my rotor terms. */
+        boolean matchesOrder(String order) {
+            if (_order != null) {
+                for (int i = 0; i < _order.length; i += 1) {
+                    if (order.charAt(i) != _order[i]) {
+                        return false;
+                    }
+                }
+            }
+            for (int r : _rotors) {
+                if (order.indexOf(r) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Return the Config index of the rotor named NAME. */
+        private int rotor(String name) {
+            int k = _config.indexOf(name.toUpperCase(), 0, name.length());
+            if (k < 0) {
+                throw error("no rotor named %s", name);
+            }
+            return k;
+        }
+
+        /** Config index of the reflector required, or -1. */
+        private final int _reflector;
+        /** Config indices of rotors required. */
+        private final int[] _rotors;
+        /** Config indices of the rotors required in order, or null. */
+        private final int[] _order;
+        /** Stecker pairs required, as a * n + b with a < b. */
+        private final int[] _pairs;
+    }
+
+    /** Return the numbers of the records matching TERMS, testing every
+     *  record. */
+    private int[] scan(Terms terms) {
+        int[] result = new int[_count];
+        int n = 0;
+        for (int id = 0; id < _count; id += 1) {
+            if (terms.matches(id)) {
+                result[n] = id;
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Return the numbers of the records matching TERMS, using my
+     *  indexes. */
+    private int[] lookUp(Terms terms) {
+        List<int[]> lists = new ArrayList<>();
+        if (terms._reflector >= 0) {
+            lists.add(ids(_byReflector[terms._reflector]));
+        }
+        if (terms._order != null || terms._rotors.length > 0) {
+            long[] union = new long[(_count + 63) >>> 6];
+            int total = 0;
+            for (Map.Entry<String, Postings> e : _byOrder.entrySet()) {
+                if (terms.matchesOrder(e.getKey())) {
+                    Postings postings = e.getValue();
+                    for (int i = 0; i < postings._size; i += 1) {
+                        int id = postings._ids[i];
+                        union[id >>> 6] |= 1L << id;
+                    }
+                    total += postings._size;
+                }
+            }
+            int[] ids = new int[total];
+            int n = 0;
+            for (int w = 0; w < union.length; w += 1) {
+                for (long bits = union[w]; bits != 0; bits &= bits - 1) {
+                    ids[n] = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    n += 1;
+                }
+            }
+            lists.add(ids);
+        }
+        for (int pair : terms._pairs) {
+            lists.add(ids(_byPair[pair]));
+        }
+        if (lists.isEmpty()) {
+            return IntStream.range(0, _count).toArray();
+        }
+        lists.sort(Comparator.comparingInt(ids -> ids.length));
+        int[] result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.length > 0; i += 1) {
+            result = intersect(result, lists.get(i));
+        }
+        return result;
+    }
+
+    /** Add record ID to my indexes. */
+    private void index(int id) {
+        int k = id * _width;
+        int reflector = _keys[k] & 0xff;
+        if (_byReflector[reflector] == null) {
+            _byReflector[reflector] = new Postings();
+        }
+        _byReflector[reflector].add(id);
+        char[] order = new char[_slots - 1];
+        for (int i = 0; i < order.length; i += 1) {
+            order[i] = (char) (_keys[k + 1 + i] & 0xff);
+        }
+        _byOrder.computeIfAbsent(new String(order), o -> new Postings())
+            .add(id);
+        int base = id * _n;
+        for (int c = 0; c < _n; c += 1) {
+            int d = _plugs[base + c] & 0xff;
+            if (d > c) {
+                int pair = c * _n + d;
+                if (_byPair[pair] == null) {
+                    _byPair[pair] = new Postings();
+                }
+                _byPair[pair].add(id);
+            }
+        }
+    }
+
+    /** A growing list of record numbers, in increasing order. */
+    private static final class Postings {
+
+        /** Add ID, which is greater than all my elements. */
+        void add(int id) {
+            if (_size == _ids.length) {
+                _ids = Arrays.copyOf(_ids, 2 * _size);
+            }
+            _ids[_size] = id;
+            _size += 1;
+        }
+
+        /** Record numbers. */
+        private int[] _ids = new int[4];
+        /** Number of record numbers. */
+        private int _size;
+    }
+
+    /** Return the elements of POSTINGS (none if null). */
+    private static int[] ids(Postings postings) {
+        return postings == null ? new int[0]
+            : Arrays.copyOf(postings._ids, postings._size);
+    }
+
+    /** Return the elements common to the increasing arrays A and B. */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length;) {
+            if (a[i] < b[j]) {
+                i += 1;
+            } else if (a[i] > b[j]) {
+                j += 1;
+            } else {
+                result[n] = a[i];
+                n += 1;
+                i += 1;
+                j += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Return true iff one of A[FROM .. TO-1] is X. */
+    private static boolean contains(byte[] a, int from, int to, int x) {
+        for (int i = from; i < to; i += 1) {
+            if ((a[i] & 0xff) == x) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the offset in the payloads of the end of record ID - 1. */
+    private long end(int id) {
+        return id == 0 ? 0 : _ends[id - 1];
+    }
+
+    /** Write the header to FILE if it does not exist, and otherwise check
+     *  that it is for my Config. */
+    private void checkHeader(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            ByteBuffer header = ByteBuffer.allocate(16).putInt(MAGIC)
+                .putShort(VERSION).putShort((short) _slots)
+                .putLong(_config.fingerprint());
+            Files.write(file, header.array());
+            return;
+        }
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (header.remaining() != 16 || header.getInt() != MAGIC) {
+            throw error("%s is not an intercept archive", file.getParent());
+        } else if (header.getShort() != VERSION) {
+            throw error("unsupported intercept archive version");
+        } else if (header.getShort() != _slots
+                   || header.getLong() != _config.fingerprint()) {
+            throw error("archive was made for another configuration");
+        }
+    }
+
+    /** Return the contents of FILE, or nothing if it does not exist. */
+    private static byte[] readColumn(Path file) throws IOException {
+        return Files.exists(file) ? Files.readAllBytes(file) : new byte[0];
+    }
+
+    /** Return a stream appending to FILE, after cutting it to LENGTH
+     *  bytes. */
+    private static DataOutputStream append(Path file, long length)
+        throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+        return new DataOutputStream(new BufferedOutputStream(
+            Files.newOutputStream(file, StandardOpenOption.APPEND)));
+    }
+
+    /** Run the program as described in the class comment, with
+     *  ARGS. */
+    public static void main(String... args) {
+        if (args.length < 3
+            || !(args[2].equals("add") && args.length <= 4
+                 || args[2].equals("query"))) {
+            System.err.println("Usage: java enigma.InterceptArchive DIR"
+                               + " CONFIG add [INPUT]");
+            System.err.println("       java enigma.InterceptArchive DIR"
+                               + " CONFIG query [--scan] TERM...");
+            System.exit(1);
+        }
+        try (InterceptArchive archive = new InterceptArchive(
+                 Paths.get(args[0]),
+                 Main.parseConfig(Main.readFile(args[1])))) {
+            if (args[2].equals("add")) {
+                BufferedReader input = args.length > 3
+                    ? Files.newBufferedReader(Paths.get(args[3]))
+                    : new BufferedReader(new InputStreamReader(System.in));
+                int added = add(archive, input);
+                System.err.printf("%d records added, %d in archive%n",
+                                  added, archive.size());
+            } else {
+                boolean scan = args.length > 3 && args[3].equals("--scan");
+                Query query = Query.parse(Arrays.copyOfRange(
+                    args, scan ? 4 : 3, args.length));
+                PrintStream output = System.out;
+                QueryStats stats = archive.query(query, scan, r -> {
+                    synchronized (output) {
+                        output.println(r.settings());
+                        Main.printMessageLine(r.text(), output);
+                    }
+                });
+                output.flush();
+                System.err.println(stats);
+            }
+        } catch (IOException | EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Append to ARCHIVE each message read from INPUT, in the format Main
+     *  reads, with its settings line.  Returns the number of messages. */
+    static int add(InterceptArchive archive, BufferedReader input)
+        throws IOException {
+        String settings = null;
+        StringBuilder msg = new StringBuilder();
+        int added = 0, lineNumber = 0;
+        for (String line = input.readLine(); ; line = input.readLine()) {
+            lineNumber += 1;
+            if (line == null || Main.isSettingsLine(line)) {
+                if (settings != null) {
+                    archive.append(settings, msg);
+                    added += 1;
+                }
+                if (line == null) {
+                    return added;
+                }
+                settings = line;
+                msg.setLength(0);
+            } else if (settings == null) {
+                throw error("Need an * at the first line");
+            } else {
+                msg.append(line);
+            }
+        }
+    }
+
+    /** The configuration of the machines. */
+    private final Config _config;
+    /** Number of slots, size of the alphabet, bytes per key. */
+    private final int _slots, _n, _width;
+    /** Number of records. */
+    private int _count;
+    /** The keys column, in memory. */
+    private byte[] _keys;
+    /** The plugboards column, in memory. */
+    private byte[] _plugs;
+    /** The ends column, in memory. */
+    private long[] _ends;
+    /** Records with each reflector, by Config index. */
+    private final Postings[] _byReflector;
+    /** Records with each order of the non-reflector rotors, by the string
+     *  of their Config indices. */
+    private final Map<String, Postings> _byOrder = new HashMap<>();
+    /** Records steckering each pair of characters a < b, at a * n + b. */
+    private final Postings[] _byPair;
+    /** The payloads file, read at explicit positions by any thread. */
+    private final FileChannel _payloads;
+    /** Streams appending to the columns. */
+    private final DataOutputStream _keysOut, _plugsOut, _endsOut,
+        _payloadsOut;
+    /** True iff records have been appended since the last flush. */
+    private boolean _dirty;
+    /** Machine used to check settings. */
+    private final Machine _validator;
+
+    /** A Machine for my Config, with the engine Engines chooses, and
+     *  buffers for decrypting records, used by one thread at a time.
+     *  Consecutive records with the same plugboard share one
+     *  Permutation, whose cycles() is also the plugboard's text in their
+     *  settings lines. */
+    private final class Decrypter {
+
+        /** A new machine with empty buffers. */
+        Decrypter() {
+            _machine = _config.newMachine();
+            _machine.setEngine(Engines.choose(_config).engine());
+        }
+
+        /** Make my buffers hold at least LENGTH characters, and leave
+         *  _payload cleared with LENGTH bytes remaining. */
+        void reserve(int length) {
+            if (_text.length < length) {
+                int size = Math.max(length, 2 * _text.length);
+                _text = new int[size];
+                _payload = ByteBuffer.allocate(size);
+            }
+            _payload.clear().limit(length);
+        }
+
+        /** Return the plugboard whose image of each character c is
+         *  PLUGS[BASE + c], the one returned last if it is the same. */
+        Permutation plugboard(byte[] plugs, int base) {
+            if (_plugboard == null
+                || !Arrays.equals(plugs, base, base + _n, _plugs, 0, _n)) {
+                System.arraycopy(plugs, base, _plugs, 0, _n);
+                _plugboard = InterceptArchive.this.plugboard(plugs, base);
+            }
+            return _plugboard;
+        }
+
+        /** The machine. */
+        private final Machine _machine;
+        /** Rotors, positions and ring settings of the record being
+         *  decrypted. */
+        private final int[] _rotors = new int[_slots],
+            _positions = new int[_slots - 1], _rings = new int[_slots - 1];
+        /** The plugboard last returned by plugboard(), or null. */
+        private Permutation _plugboard;
+        /** The plugboard bytes _plugboard was made from. */
+        private final byte[] _plugs = new byte[_n];
+        /** Text of the settings line and plaintext being built. */
+        private final StringBuilder _settings = new StringBuilder(),
+            _plain = new StringBuilder();
+        /** Decrypted characters. */
+        private int[] _text = new int[0];
+        /** Payload bytes read. */
+        private ByteBuffer _payload = ByteBuffer.allocate(0);
+    }
+}
@@ -0,0 +1,213 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the InterceptArchive class.
+ *  @author Kevin Li
+ */
+public class InterceptArchiveTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Temporary files, deleted after each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A naval configuration with two reflectors and two fixed rotors. */
+    private static final String CONFIG =
+        navalConfig(5, 3, "I MQ", "II ME", "III MV", "IV MJ", "V MZ", "Beta N",
+                    "Gamma N", "B R", "C R");
+
+    /** Moving rotors. */
+    private static final String[] MOVING = { "I", "II", "III", "IV", "V" };
+    /** Stecker pairs drawn from. */
+    private static final String[] PAIRS = { "AQ", "EP", "KZ", "MN" };
+
+    /** The settings lines of the records added by fill. */
+    private final List<String> _settings = new ArrayList<>();
+    /** The plaintexts of the records added by fill. */
+    private final List<String> _plain = new ArrayList<>();
+
+    /** Add COUNT random messages to ARCHIVE, encrypted with random
+     *  settings from RANDOM, recording them in _settings and _plain. */
+    private void fill(InterceptArchive archive, int count, Random random) {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        Machine M = config.newMachine();
+        SettingsCache cache = new SettingsCache(config, 1);
+        for (int i = 0; i < count; i += 1) {
+            List<String> moving = new ArrayList<>(Arrays.asList(MOVING));
+            StringBuilder line = new StringBuilder("* ");
+            line.append(random.nextBoolean() ? "B" : "C").append(' ')
+                .append(random.nextBoolean() ? "Beta" : "Gamma");
+            for (int k = 0; k < 3; k += 1) {
+                line.append(' ')
+                    .append(moving.remove(random.nextInt(moving.size())));
+            }
+            line.append(' ');
+            for (int k = 0; k < 8; k += 1) {
+                line.append((char) ('A' + random.nextInt(26)));
+                if (k == 3) {
+                    line.append(' ');
+                }
+            }
+            for (String pair : PAIRS) {
+                if (random.nextBoolean()) {
+                    line.append(" (").append(pair).append(')');
+                }
+            }
+            StringBuilder plain = new StringBuilder();
+            for (int k = random.nextInt(40); k > 0; k -= 1) {
+                plain.append((char) ('A' + random.nextInt(26)));
+            }
+            cache.apply(M, line.toString(), 1);
+            assertEquals(_plain.size(),
+                         archive.append(line.toString(),
+                                        M.convert(plain.toString())));
+            _settings.add(line.toString());
+            _plain.add(plain.toString());
+        }
+    }
+
+    /** Return the numbers of the records added by fill whose settings
+     *  lines contain all of PARTS. */
+    private int[] expected(String... parts) {
+        List<Integer> result = new ArrayList<>();
+        for (int id = 0; id < _settings.size(); id += 1) {
+            String words = _settings.get(id) + " ";
+            boolean match = true;
+            for (String part : parts) {
+                match &= words.contains(part);
+            }
+            if (match) {
+                result.add(id);
+            }
+        }
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testIndexesMatchScan() throws IOException {
+        Path dir = tmp.newFolder("archive").toPath();
+        try (InterceptArchive archive = new InterceptArchive(
+                 dir, ConfigParser.parseConfig(CONFIG))) {
+            fill(archive, 2000, new Random(1));
+            String[][] queries = {
+                { "reflector=B" },
+                { "reflector=C", "rotors=III,IV" },
+                { "order=Gamma,V,I,II" },
+                { "stecker=QA,EP", "rotors=ii" },
+                { "reflector=B", "order=Beta,III,IV,V", "stecker=KZ" },
+            };
+            String[][] parts = {
+                { "* B " },
+                { "* C ", " III ", " IV " },
+                { " Gamma V I II " },
+                { "(AQ)", "(EP)", " II " },
+                { "* B Beta III IV V ", "(KZ)" },
+            };
+            for (int q = 0; q < queries.length; q += 1) {
+                InterceptArchive.Query query =
+                    InterceptArchive.Query.parse(queries[q]);
+                int[] indexed = archive.select(query, false);
+                assertArrayEquals(query.toString(), expected(parts[q]),
+                                  indexed);
+                assertArrayEquals(query.toString(), indexed,
+                                  archive.select(query, true));
+            }
+            assertEquals(2000,
+                         archive.select(InterceptArchive.Query.parse(),
+                                        false).length);
+        }
+    }
+
+    @Test
+    public void testDecryptsMatches() throws IOException {
+        Path dir = tmp.newFolder("archive").toPath();
+        try (InterceptArchive archive = new InterceptArchive(
+                 dir, ConfigParser.parseConfig(CONFIG))) {
+            fill(archive, 3000, new Random(2));
+            Map<Integer, InterceptArchive.Intercept> found =
+                new ConcurrentHashMap<>();
+            InterceptArchive.QueryStats stats = archive.query(
+                InterceptArchive.Query.parse("reflector=B", "rotors=III,IV"),
+                false, r -> found.put(r.id(), r));
+            int[] ids = expected("* B ", " III ", " IV ");
+            assertTrue(stats.indexed());
+            assertEquals(ids.length, stats.matched());
+            assertEquals(3000, stats.records());
+            assertEquals(ids.length, found.size());
+            for (int id : ids) {
+                assertEquals(_plain.get(id), found.get(id).text());
+                Settings expected = ConfigParser.parseSettings(
+                    _settings.get(id), 1, ConfigParser.parseConfig(CONFIG));
+                Settings actual = ConfigParser.parseSettings(
+                    found.get(id).settings(), 1,
+                    ConfigParser.parseConfig(CONFIG));
+                assertEquals(expected.positions(), actual.positions());
+                assertEquals(expected.rings(), actual.rings());
+                assertEquals(expected.plugboard().cycles(),
+                             actual.plugboard().cycles());
+            }
+        }
+    }
+
+    @Test
+    public void testReopenDropsIncompleteRecord() throws IOException {
+        Path dir = tmp.newFolder("archive").toPath();
+        Config config = ConfigParser.parseConfig(CONFIG);
+        try (InterceptArchive archive = new InterceptArchive(dir, config)) {
+            fill(archive, 50, new Random(3));
+        }
+        Files.write(dir.resolve("payloads"), new byte[] { 1, 2, 3 },
+                    StandardOpenOption.APPEND);
+        Files.write(dir.resolve("keys"), new byte[] { 4, 5 },
+                    StandardOpenOption.APPEND);
+        try (InterceptArchive archive = new InterceptArchive(dir, config)) {
+            assertEquals(50, archive.size());
+            for (int id = 0; id < 50; id += 1) {
+                assertEquals(_plain.get(id), archive.get(id).text());
+            }
+            fill(archive, 10, new Random(4));
+        }
+        try (InterceptArchive archive = new InterceptArchive(dir, config)) {
+            assertEquals(60, archive.size());
+            assertEquals(_plain.get(55), archive.get(55).text());
+        }
+    }
+
+    @Test
+    public void testRejectsOtherConfig() throws IOException {
+        Path dir = tmp.newFolder("archive").toPath();
+        new InterceptArchive(dir, ConfigParser.parseConfig(CONFIG)).close();
+        try {
+            new InterceptArchive(dir, ConfigParser.parseConfig(
+                CONFIG.replace("V MZ", "V MA")));
+            fail("opened with another configuration");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("another"));
+        }
+    }
+}
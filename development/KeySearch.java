@@ -0,0 +1,558 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import static enigma.EnigmaException.*;
+
+/** An exhaustive key search, over the KeySpace of a configuration, for
+ *  the keys under which a ciphertext decrypts to text with the highest
+ *  index of coincidence.  Ring settings are taken as all first-letter and
+ *  the plugboard as empty.  The search lives in a directory shared by any
+ *  number of worker processes on one host:
+ *
+ *      job             the search parameters (a Properties file)
+ *      config          the configuration file
+ *      ciphertext      the ciphertext, alphabet characters only
+ *      todo/UNIT       one empty file per unclaimed work unit
+ *      claimed/UNIT.W  units claimed by worker W
+ *      checkpoint/UNIT progress of a partly searched unit
+ *      done/UNIT       the best keys of a searched unit
+ *
+ *  Unit UNIT (eight digits) covers keys UNIT * unitKeys up to the next
+ *  unit's.  A worker claims a unit by renaming it from todo to claimed,
+ *  which only one worker can do, and touches the claim whenever it
+ *  checkpoints, so claims of workers that died show up as stale and can
+ *  be returned to todo, to be resumed from their checkpoints.  Result
+ *  and checkpoint files are written under temporary names and renamed
+ *  into place, so they are always complete.  They hold, big-endian, an
+ *  int MAGIC, a long next key (for checkpoints; for results, the end of
+ *  the unit), an int count, and that many (long key, double score)
+ *  pairs, best first.
+ *
+ *  As a program:
+ *      java enigma.KeySearch plan DIR CONFIG CIPHERTEXT [UNITKEYS [TOPK]]
+ *      java enigma.KeySearch work DIR [WORKERS]
+ *      java enigma.KeySearch recover DIR [STALESECONDS]
+ *      java enigma.KeySearch merge DIR [COUNT]
+ *  work with WORKERS > 1 starts that many worker processes and waits for
+ *  them.
+ *  @author Kevin Li
+ */
+class KeySearch {
+
+    /** Identifies result and checkpoint files: "ENGK". */
+    static final int MAGIC = 0x454e474b;
+    /** Default keys per unit. */
+    static final long UNIT_KEYS = 1 << 20;
+    /** Default number of best keys kept. */
+    static final int TOP_K = 20;
+    /** Time between checkpoints, in milliseconds. */
+    static final long CHECKPOINT_MILLIS = 2000;
+    /** Age, in milliseconds, after which a claim is stale by default. */
+    static final long STALE_MILLIS = 15 * CHECKPOINT_MILLIS;
+
+    /** A candidate key and its score. */
+    static final class Candidate {
+
+        /** A candidate KEY with SCORE. */
+        Candidate(long key, double score) {
+            _key = key;
+            _score = score;
+        }
+
+        /** Return my key. */
+        long key() {
+            return _key;
+        }
+
+        /** Return my score. */
+        double score() {
+            return _score;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d %.5f", _key, _score);
+        }
+
+        /** Key number in the KeySpace. */
+        private final long _key;
+        /** Index of coincidence of the decryption. */
+        private final double _score;
+    }
+
+    /** Orders candidates best first: by decreasing score, then by
+     *  increasing key. */
+    static final Comparator<Candidate> BEST_FIRST =
+        Comparator.comparingDouble(Candidate::score).reversed()
+        .thenComparingLong(Candidate::key);
+
+    /** Set up in DIR, which must not hold a search already, a search with
+     *  the configuration text CONFIG for keys decrypting CIPHERTEXT
+     *  (characters not in the alphabet after upper-casing are dropped),
+     *  in units of UNITKEYS keys, keeping the TOPK best.  Returns the
+     *  number of units. */
+    static long plan(Path dir, String config, CharSequence ciphertext,
+                     long unitKeys, int topK) throws IOException {
+        Config parsed = ConfigParser.parseConfig(config);
+        KeySpace keys = new KeySpace(parsed);
+        if (Files.exists(dir.resolve(JOB))) {
+            throw error("%s already holds a search", dir);
+        } else if (unitKeys < 1 || topK < 1) {
+            throw error("bad unit size or result count");
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            char ch = Character.toUpperCase(ciphertext.charAt(i));
+            if (parsed.alphabet().contains(ch)) {
+                text.append(ch);
+            }
+        }
+        if (text.length() == 0) {
+            throw error("empty ciphertext");
+        }
+        long units = (keys.count() + unitKeys - 1) / unitKeys;
+        for (String sub : SUBDIRS) {
+            Files.createDirectories(dir.resolve(sub));
+        }
+        Files.writeString(dir.resolve(CONFIG), config);
+        Files.writeString(dir.resolve(CIPHERTEXT), text);
+        for (long u = 0; u < units; u += 1) {
+            Files.createFile(dir.resolve(TODO).resolve(unitName(u)));
+        }
+        Properties job = new Properties();
+        job.setProperty("keys", Long.toString(keys.count()));
+        job.setProperty("unitKeys", Long.toString(unitKeys));
+        job.setProperty("units", Long.toString(units));
+        job.setProperty("topK", Integer.toString(topK));
+        job.setProperty("fingerprint", Long.toString(parsed.fingerprint()));
+        Path temp = dir.resolve(JOB + ".tmp");
+        try (Writer out = Files.newBufferedWriter(temp)) {
+            job.store(out, "enigma key search");
+        }
+        Files.move(temp, dir.resolve(JOB), StandardCopyOption.ATOMIC_MOVE);
+        return units;
+    }
+
+    /** The search in DIR, as set up by plan. */
+    KeySearch(Path dir) throws IOException {
+        _dir = dir;
+        Properties job = new Properties();
+        try (Reader in = Files.newBufferedReader(dir.resolve(JOB))) {
+            job.load(in);
+        } catch (NoSuchFileException excp) {
+            throw error("%s holds no search", dir);
+        }
+        _config = ConfigParser.parseConfig(
+            Files.readString(dir.resolve(CONFIG)));
+        if (_config.fingerprint()
+            != Long.parseLong(job.getProperty("fingerprint"))) {
+            throw error("configuration of %s has changed", dir);
+        }
+        _keys = new KeySpace(_config);
+        _unitKeys = Long.parseLong(job.getProperty("unitKeys"));
+        _units = Long.parseLong(job.getProperty("units"));
+        _topK = Integer.parseInt(job.getProperty("topK"));
+        String text = Files.readString(dir.resolve(CIPHERTEXT));
+        _ciphertext = new int[text.length()];
+        for (int i = 0; i < text.length(); i += 1) {
+            _ciphertext[i] = _config.alphabet().toInt(text.charAt(i));
+        }
+    }
+
+    /** Return the KeySpace searched. */
+    KeySpace keySpace() {
+        return _keys;
+    }
+
+    /** Return the number of units. */
+    long units() {
+        return _units;
+    }
+
+    /** Claim and search units as worker WORKER until none is left,
+     *  returning the number searched.  When no unclaimed unit is left,
+     *  claims older than STALE_MILLIS are recovered once. */
+    long work(String worker) throws IOException {
+        long done = 0;
+        boolean recovered = false;
+        while (true) {
+            if (workOne(worker, Long.MAX_VALUE)) {
+                done += 1;
+            } else if (!recovered && recover(STALE_MILLIS) > 0) {
+                recovered = true;
+            } else {
+                return done;
+            }
+        }
+    }
+
+    /** Claim one unit as worker WORKER and search it, resuming from its
+     *  checkpoint if it has one, but stop, leaving the unit claimed and
+     *  checkpointed as if the worker had died, after BUDGET keys.
+     *  Returns false iff there was no unit to claim. */
+    boolean workOne(String worker, long budget) throws IOException {
+        Path todo = _dir.resolve(TODO);
+        List<Path> units;
+        try (Stream<Path> files = Files.list(todo)) {
+            units = new ArrayList<>(files.sorted().toList());
+        }
+        if (units.size() > 1) {
+            Collections.rotate(units, (int) (ProcessHandle.current().pid()
+                                              % units.size()));
+        }
+        for (Path unit : units) {
+            String name = unit.getFileName().toString();
+            Path claim = _dir.resolve(CLAIMED).resolve(name + "." + worker);
+            try {
+                Files.move(unit, claim, StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException | FileAlreadyExistsException excp) {
+                continue;
+            }
+            if (!touch(claim)) {
+                continue;
+            }
+            if (Files.exists(_dir.resolve(DONE).resolve(name))) {
+                Files.delete(claim);
+                continue;
+            }
+            search(Long.parseLong(name), claim, budget);
+            return true;
+        }
+        return false;
+    }
+
+    /** Return to todo every claim not touched for STALEMILLIS
+     *  milliseconds, returning how many there were. */
+    int recover(long staleMillis) throws IOException {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        List<Path> claims;
+        try (Stream<Path> files = Files.list(_dir.resolve(CLAIMED))) {
+            claims = files.toList();
+        }
+        for (Path claim : claims) {
+            String name = claim.getFileName().toString();
+            String unit = name.substring(0, name.indexOf('.'));
+            try {
+                if (now - Files.getLastModifiedTime(claim).toMillis()
+                    < staleMillis) {
+                    continue;
+                }
+                Files.move(claim, _dir.resolve(TODO).resolve(unit),
+                           StandardCopyOption.ATOMIC_MOVE);
+                count += 1;
+            } catch (NoSuchFileException excp) {
+                continue;
+            }
+        }
+        return count;
+    }
+
+    /** Return the best keys over all searched units, best first, at most
+     *  the job's topK of them. */
+    List<Candidate> merge() throws IOException {
+        PriorityQueue<Candidate> best = new PriorityQueue<>(
+            BEST_FIRST.reversed());
+        for (long u = 0; u < _units; u += 1) {
+            Path file = _dir.resolve(DONE).resolve(unitName(u));
+            if (!Files.exists(file)) {
+                continue;
+            }
+            for (Candidate c : read(file, new long[1])) {
+                offer(best, c);
+            }
+        }
+        return sorted(best);
+    }
+
+    /** Return the number of units with results. */
+    long unitsDone() throws IOException {
+        try (Stream<Path> files = Files.list(_dir.resolve(DONE))) {
+            return files.count();
+        }
+    }
+
+    /** Search unit UNIT, claimed by CLAIM, for at most BUDGET keys (see
+     *  workOne). */
+    private void search(long unit, Path claim, long budget)
+        throws IOException {
+        String name = unitName(unit);
+        Path checkpoint = _dir.resolve(CHECKPOINT).resolve(name);
+        long from = unit * _unitKeys;
+        long to = Math.min(_keys.count(), from + _unitKeys);
+        PriorityQueue<Candidate> best = new PriorityQueue<>(
+            BEST_FIRST.reversed());
+        long next = from;
+        if (Files.exists(checkpoint)) {
+            long[] saved = new long[1];
+            for (Candidate c : read(checkpoint, saved)) {
+                offer(best, c);
+            }
+            next = saved[0];
+        }
+        Machine machine = _config.newMachine();
+        machine.setPlugboard(new Permutation("", _config.alphabet()));
+        machine.setEngine(Engines.choose(_config, _ciphertext.length)
+                          .engine());
+        int[] rotors = new int[_keys.numRotors()];
+        int[] positions = new int[_keys.numRotors() - 1];
+        int[] text = new int[_ciphertext.length];
+        int[] counts = new int[_config.alphabet().size()];
+        double pairs = (double) text.length * (text.length - 1);
+        long lastCheckpoint = System.currentTimeMillis();
+        for (long key = next; key < to; key += 1) {
+            if (key - next >= budget) {
+                write(checkpoint, key, sorted(best));
+                return;
+            }
+            _keys.apply(key, machine, rotors, positions);
+            System.arraycopy(_ciphertext, 0, text, 0, text.length);
+            machine.convert(text, 0, text.length);
+            Arrays.fill(counts, 0);
+            for (int c : text) {
+                counts[c] += 1;
+            }
+            long sum = 0;
+            for (int count : counts) {
+                sum += (long) count * (count - 1);
+            }
+            double score = pairs == 0 ? 0 : sum / pairs;
+            if (best.size() < _topK || score > best.peek().score()) {
+                offer(best, new Candidate(key, score));
+            }
+            if ((key & 255) == 0
+                && System.currentTimeMillis() - lastCheckpoint
+                   >= CHECKPOINT_MILLIS) {
+                if (!touch(claim)) {
+                    return;
+                }
+                write(checkpoint, key + 1, sorted(best));
+                lastCheckpoint = System.currentTimeMillis();
+            }
+        }
+        write(_dir.resolve(DONE).resolve(name), to, sorted(best));
+        Files.deleteIfExists(checkpoint);
+        Files.deleteIfExists(claim);
+    }
+
+    /** Mark CLAIM as in use now, so that recover leaves it alone.  A claim
+     *  keeps the modification time of its todo file when renamed, so this
+     *  is done as soon as it is made.  Returns false if CLAIM is gone,
+     *  having been recovered as stale, in which case the unit is no
+     *  longer mine. */
+    private static boolean touch(Path claim) throws IOException {
+        try {
+            Files.setLastModifiedTime(claim, FileTime.fromMillis(
+                System.currentTimeMillis()));
+            return true;
+        } catch (NoSuchFileException excp) {
+            return false;
+        }
+    }
+
+    /** Add C to BEST, dropping its worst element if it then holds more
+     *  than my topK. */
+    private void offer(PriorityQueue<Candidate> best, Candidate c) {
+        best.add(c);
+        if (best.size() > _topK) {
+            best.poll();
+        }
+    }
+
+    /** Return the elements of BEST, best first. */
+    private static List<Candidate> sorted(PriorityQueue<Candidate> best) {
+        List<Candidate> result = new ArrayList<>(best);
+        result.sort(BEST_FIRST);
+        return result;
+    }
+
+    /** Write a result or checkpoint file FILE with next key NEXT and
+     *  candidates BEST, under a temporary name renamed into place. */
+    private static void write(Path file, long next, List<Candidate> best)
+        throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(next);
+            out.writeInt(best.size());
+            for (Candidate c : best) {
+                out.writeLong(c.key());
+                out.writeDouble(c.score());
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+                   StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Return the candidates in result or checkpoint file FILE, storing
+     *  its next key in NEXT[0]. */
+    private static List<Candidate> read(Path file, long[] next)
+        throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw error("%s is not a key search file", file);
+            }
+            next[0] = in.readLong();
+            int count = in.readInt();
+            List<Candidate> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i += 1) {
+                result.add(new Candidate(in.readLong(), in.readDouble()));
+            }
+            return result;
+        }
+    }
+
+    /** Return the file name of unit U. */
+    private static String unitName(long u) {
+        return String.format("%08d", u);
+    }
+
+    /** Run the command described in the class comment, according to
+     *  ARGS. */
+    public static void main(String... args) {
+        try {
+            if (args.length >= 4 && args[0].equals("plan")) {
+                long units = plan(Paths.get(args[1]), Main.readFile(args[2]),
+                                  Main.readFile(args[3]),
+                                  number(args, 4, UNIT_KEYS, 1, Long.MAX_VALUE,
+                                         "unit size"),
+                                  (int) number(args, 5, TOP_K, 1,
+                                               Integer.MAX_VALUE,
+                                               "number of candidates"));
+                System.out.printf("%d units%n", units);
+            } else if (args.length >= 2 && args[0].equals("work")) {
+                int workers = (int) number(args, 2, 1, 1, Integer.MAX_VALUE,
+                                           "number of workers");
+                long start = System.nanoTime();
+                KeySearch search = new KeySearch(Paths.get(args[1]));
+                if (workers == 1) {
+                    search.work(Long.toString(ProcessHandle.current().pid()));
+                } else {
+                    spawn(args[1], workers);
+                }
+                System.out.printf("%d of %d units done in %.1f s%n",
+                                  search.unitsDone(), search.units(),
+                                  (System.nanoTime() - start) / 1e9);
+            } else if (args.length >= 2 && args[0].equals("recover")) {
+                long stale = args.length > 2
+                    ? 1000 * number(args, 2, 0, 0, Long.MAX_VALUE / 1000,
+                                    "number of seconds")
+                    : STALE_MILLIS;
+                System.out.printf("%d units recovered%n",
+                                  new KeySearch(Paths.get(args[1]))
+                                  .recover(stale));
+            } else if (args.length >= 2 && args[0].equals("merge")) {
+                KeySearch search = new KeySearch(Paths.get(args[1]));
+                int count = (int) number(args, 2, Integer.MAX_VALUE, 0,
+                                         Integer.MAX_VALUE,
+                                         "number of candidates");
+                List<Candidate> best = search.merge();
+                System.out.printf("%d of %d units done%n",
+                                  search.unitsDone(), search.units());
+                for (int r = 0; r < Math.min(count, best.size()); r += 1) {
+                    Candidate c = best.get(r);
+                    System.out.printf("%3d %.5f %s%n", r + 1, c.score(),
+                                      search.keySpace()
+                                      .settingsLine(c.key()));
+                }
+            } else {
+                System.err.println("Usage: java enigma.KeySearch plan DIR"
+                                   + " CONFIG CIPHERTEXT [UNITKEYS [TOPK]]"
+                                   + " | work DIR [WORKERS]"
+                                   + " | recover DIR [STALESECONDS]"
+                                   + " | merge DIR [COUNT]");
+                System.exit(1);
+            }
+        } catch (IOException | EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return the number, from MIN to MAX, in ARGS[K], or DFLT if ARGS
+     *  has no element K.  WHAT describes the number in errors. */
+    private static long number(String[] args, int k, long dflt, long min,
+                               long max, String what) {
+        if (args.length <= k) {
+            return dflt;
+        }
+        long value;
+        try {
+            value = Long.parseLong(args[k]);
+        } catch (NumberFormatException excp) {
+            throw error("bad %s: %s", what, args[k]);
+        }
+        if (value < min || value > max) {
+            throw error("bad %s: %s", what, args[k]);
+        }
+        return value;
+    }
+
+    /** Run WORKERS worker processes on the search in directory DIR and
+     *  wait for them. */
+    static void spawn(String dir, int workers) throws IOException {
+        List<Process> procs = new ArrayList<>();
+        for (int w = 0; w < workers; w += 1) {
+            procs.add(new ProcessBuilder(
+                Paths.get(System.getProperty("java.home"), "bin", "java")
+                .toString(), "-cp", System.getProperty("java.class.path"),
+                "enigma.KeySearch", "work", dir).inheritIO().start());
+        }
+        try {
+            for (Process proc : procs) {
+                proc.waitFor();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted waiting for workers");
+        }
+    }
+
+    /** Names of the files and directories of a search. */
+    private static final String JOB = "job", CONFIG = "config",
+        CIPHERTEXT = "ciphertext", TODO = "todo", CLAIMED = "claimed",
+        CHECKPOINT = "checkpoint", DONE = "done";
+    /** Subdirectories of a search. */
+    private static final String[] SUBDIRS = {
+        TODO, CLAIMED, CHECKPOINT, DONE,
+    };
+
+    /** Directory of the search. */
+    private final Path _dir;
+    /** Configuration searched. */
+    private final Config _config;
+    /** Its key space. */
+    private final KeySpace _keys;
+    /** Keys per unit. */
+    private final long _unitKeys;
+    /** Number of units. */
+    private final long _units;
+    /** Number of best keys kept. */
+    private final int _topK;
+    /** Ciphertext as alphabet indices. */
+    private final int[] _ciphertext;
+}
@@ -0,0 +1,47 @@
+package enigma;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/** Measures KeySearch throughput, in keys per second, for increasing
+ *  numbers of worker processes searching the same key space, each run
+ *  in a fresh search directory.  Usage:
+ *      java enigma.KeySearchBenchmark [WORKERS...]
+ *  @author Kevin Li
+ */
+class KeySearchBenchmark {
+
+    /** Run the benchmark with the worker counts in ARGS (default 1, 2,
+     *  4). */
+    public static void main(String... args) throws Exception {
+        Random random = new Random(42);
+        String config = ParseBenchmark.makeConfig(7, random)
+            .replace("\n5 3\n", "\n4 3\n");
+        Machine machine = ConfigParser.parseConfig(config).newMachine();
+        new SettingsCache(ConfigParser.parseConfig(config), 1)
+            .apply(machine, "* R0 R4 R5 R6 QEV", 1);
+        StringBuilder plain = new StringBuilder();
+        for (int i = 0; i < 250; i += 1) {
+            plain.append((char) ('A' + random.nextInt(6)));
+        }
+        String ciphertext = machine.convert(plain.toString());
+        int[] workers = args.length == 0 ? new int[] { 1, 2, 4 }
+            : new int[args.length];
+        for (int i = 0; i < args.length; i += 1) {
+            workers[i] = Integer.parseInt(args[i]);
+        }
+        for (int w : workers) {
+            Path dir = Files.createTempDirectory("enigma-search");
+            KeySearch.plan(dir, config, ciphertext, 1 << 16, KeySearch.TOP_K);
+            KeySearch search = new KeySearch(dir);
+            long start = System.nanoTime();
+            KeySearch.spawn(dir.toString(), w);
+            long t = System.nanoTime() - start;
+            Bench.report(w + " workers", t, search.keySpace().count(),
+                         "keys");
+            System.out.printf("    best: %s%n", search.keySpace()
+                              .settingsLine(search.merge().get(0).key()));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySearch class.
+ *  @author Kevin Li
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Temporary files, deleted after each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A small naval configuration, for machines with 3 slots and 2
+     *  pawls.  All its rotors move, so no key leaves the rotors still,
+     *  which would make the decryption a simple substitution with the
+     *  same index of coincidence as the ciphertext. */
+    private static final String CONFIG =
+        navalConfig(3, 2, "I MQ", "II ME", "III MV", "B R", "C R");
+
+    /** A plaintext long enough for its index of coincidence to stand
+     *  out. */
+    private static final String PLAIN =
+        "IT WAS THE BEST OF TIMES IT WAS THE WORST OF TIMES IT WAS THE AGE"
+        + " OF WISDOM IT WAS THE AGE OF FOOLISHNESS IT WAS THE EPOCH OF"
+        + " BELIEF IT WAS THE EPOCH OF INCREDULITY IT WAS THE SEASON OF"
+        + " LIGHT IT WAS THE SEASON OF DARKNESS IT WAS THE SPRING OF HOPE"
+        + " IT WAS THE WINTER OF DESPAIR";
+
+    /** Return PLAIN encrypted under KEY of KEYS, with no plugboard. */
+    private static String encrypt(KeySpace keys, long key) {
+        Config config = keys.config();
+        Machine M = config.newMachine();
+        M.setPlugboard(new Permutation("", config.alphabet()));
+        keys.apply(key, M, new int[keys.numRotors()],
+                   new int[keys.numRotors() - 1]);
+        return M.convert(PLAIN.replace(" ", ""));
+    }
+
+    /** Return a new search for KEY of CONFIG in a fresh directory. */
+    private KeySearch plan(long key) throws IOException {
+        KeySpace keys = new KeySpace(ConfigParser.parseConfig(CONFIG));
+        Path dir = tmp.newFolder().toPath();
+        KeySearch.plan(dir, CONFIG, encrypt(keys, key).toLowerCase(),
+                       1000, 5);
+        return new KeySearch(dir);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testFindsKey() throws IOException {
+        long key = 4321;
+        KeySearch search = plan(key);
+        assertEquals((search.keySpace().count() + 999) / 1000,
+                     search.units());
+        assertEquals(search.units(), search.work("w"));
+        assertEquals(search.units(), search.unitsDone());
+        List<KeySearch.Candidate> best = search.merge();
+        assertEquals(5, best.size());
+        assertEquals(key, best.get(0).key());
+        for (int i = 1; i < best.size(); i += 1) {
+            assertTrue(best.get(i - 1).score() >= best.get(i).score());
+        }
+        assertEquals(0, search.work("w"));
+    }
+
+    @Test
+    public void testResumesAbandonedUnit() throws IOException {
+        long key = 777;
+        KeySearch whole = plan(key), resumed = plan(key);
+        whole.work("w");
+        assertTrue(resumed.workOne("dead", 50));
+        assertEquals(0, resumed.recover(60000));
+        assertEquals(1, resumed.recover(0));
+        assertEquals(resumed.units(), resumed.work("w"));
+        List<KeySearch.Candidate> expected = whole.merge(),
+            actual = resumed.merge();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i += 1) {
+            assertEquals(expected.get(i).key(), actual.get(i).key());
+            assertEquals(expected.get(i).score(), actual.get(i).score(),
+                         0);
+        }
+        assertEquals(key, actual.get(0).key());
+    }
+
+    @Test
+    public void testFreshClaimIsNotStale() throws IOException {
+        KeySpace keys = new KeySpace(ConfigParser.parseConfig(CONFIG));
+        Path dir = tmp.newFolder().toPath();
+        KeySearch.plan(dir, CONFIG, encrypt(keys, 5), 1000, 5);
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis()
+                                           - 2 * KeySearch.STALE_MILLIS);
+        try (Stream<Path> files = Files.list(dir.resolve("todo"))) {
+            for (Path unit : files.toList()) {
+                Files.setLastModifiedTime(unit, old);
+            }
+        }
+        KeySearch search = new KeySearch(dir);
+        assertTrue(search.workOne("w", 50));
+        assertEquals(0, search.recover(KeySearch.STALE_MILLIS));
+        assertEquals(1, search.recover(0));
+    }
+
+    @Test
+    public void testRefusesSecondPlan() throws IOException {
+        Path dir = tmp.newFolder().toPath();
+        KeySearch.plan(dir, CONFIG, "ABC", 10, 1);
+        try {
+            KeySearch.plan(dir, CONFIG, "ABC", 10, 1);
+            fail("planned twice");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("already"));
+        }
+    }
+}
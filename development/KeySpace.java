@@ -0,0 +1,335 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+import static enigma.EnigmaException.*;
+
+/** The space of machine keys for a Config: a reflector, an ordered choice
+ *  of distinct rotors for the other slots with no more moving rotors than
+ *  there are pawls (the checks Main applies to settings lines), and the
+ *  starting positions of those rotors.  The plugboard is not part of the
+ *  key space.
+ *
+ *  Keys are numbered densely from 0 to count() - 1 and are handed out as
+ *  those numbers, packed in a long.  The number of a key is, in mixed
+ *  radix, (reflector, rotor order, positions), with the positions of the
+ *  rightmost rotor varying fastest; decode() turns it back into rotor
+ *  indices and positions without enumerating its predecessors, so any
+ *  range of keys can be visited independently.  stream() returns a
+ *  LongStream whose spliterator splits a range exactly in half, so
+ *  parallel streams and ForkJoin tasks divide the space evenly.
+ *  @author Kevin Li
+ */
+class KeySpace {
+
+    /** The key space of machines built from CONFIG.  Decoding uses
+     *  working storage kept in the KeySpace, so decode, apply, and
+     *  settingsLine must not be called on one KeySpace by several threads
+     *  at once; give each thread its own. */
+    KeySpace(Config config) {
+        _config = config;
+        _slots = config.numRotors() - 1;
+        _alphaSize = config.alphabet().size();
+        ArrayList<Integer> reflectors = new ArrayList<>(),
+            moving = new ArrayList<>(), fixed = new ArrayList<>();
+        for (int k = 0; k < config.size(); k += 1) {
+            switch (config.kind(k)) {
+            case 'R':
+                reflectors.add(k);
+                break;
+            case 'M':
+                moving.add(k);
+                break;
+            default:
+                fixed.add(k);
+                break;
+            }
+        }
+        _reflectors = toArray(reflectors);
+        _moving = toArray(moving);
+        _fixed = toArray(fixed);
+        int maxMoving = Math.min(config.numPawls(), _slots);
+        _ordersWithMoving = new long[maxMoving + 2];
+        long numPositions = 1;
+        try {
+            for (int m = 0; m <= maxMoving; m += 1) {
+                _ordersWithMoving[m + 1] = Math.addExact(
+                    _ordersWithMoving[m],
+                    Math.multiplyExact(binomial(_slots, m),
+                        Math.multiplyExact(arrangements(_moving.length, m),
+                            arrangements(_fixed.length, _slots - m))));
+            }
+            for (int i = 0; i < _slots; i += 1) {
+                numPositions = Math.multiplyExact(numPositions, _alphaSize);
+            }
+            _count = Math.multiplyExact(
+                _reflectors.length,
+                Math.multiplyExact(_ordersWithMoving[maxMoving + 1],
+                                   numPositions));
+        } catch (ArithmeticException excp) {
+            throw error("key space too large");
+        }
+        _numOrders = _ordersWithMoving[maxMoving + 1];
+        _numPositions = numPositions;
+        _isMoving = new boolean[_slots];
+        _movingPick = new int[_slots];
+        _fixedPick = new int[_slots];
+        _used = new boolean[Math.max(_moving.length, _fixed.length)];
+    }
+
+    /** Return the number of keys. */
+    long count() {
+        return _count;
+    }
+
+    /** Return the number of legal rotor orders (excluding the reflector). */
+    long orders() {
+        return _numOrders;
+    }
+
+    /** Return the number of rotor slots in each key, including the
+     *  reflector's. */
+    int numRotors() {
+        return _slots + 1;
+    }
+
+    /** Return my Config. */
+    Config config() {
+        return _config;
+    }
+
+    /** Return the keys from FROM (inclusive) to the end, in order.  The
+     *  stream may be made parallel. */
+    LongStream stream(long from) {
+        return stream(from, _count);
+    }
+
+    /** Return the keys from FROM (inclusive) to TO (exclusive), in order. */
+    LongStream stream(long from, long to) {
+        if (from < 0 || from > to || to > _count) {
+            throw error("key range [%d, %d) out of bounds", from, to);
+        }
+        return StreamSupport.longStream(new KeySpliterator(from, to), false);
+    }
+
+    /** Decode KEY, storing the Config indices of its rotors (reflector
+     *  first) in ROTORS and the alphabet indices of their positions
+     *  (excluding the reflector's) in POSITIONS. */
+    void decode(long key, int[] rotors, int[] positions) {
+        if (key < 0 || key >= _count) {
+            throw error("key %d out of bounds", key);
+        }
+        long posIndex = key % _numPositions;
+        long rest = key / _numPositions;
+        for (int i = _slots - 1; i >= 0; i -= 1) {
+            positions[i] = (int) (posIndex % _alphaSize);
+            posIndex /= _alphaSize;
+        }
+        rotors[0] = _reflectors[(int) (rest / _numOrders)];
+        decodeOrder(rest % _numOrders, rotors);
+    }
+
+    /** Set M, built from my Config, to the rotors and positions of KEY,
+     *  leaving its plugboard as it is.  ROTORS (of length numRotors()) and
+     *  POSITIONS (of length numRotors() - 1) are working storage, and
+     *  receive the decoded key; nothing else is allocated. */
+    void apply(long key, Machine M, int[] rotors, int[] positions) {
+        decode(key, rotors, positions);
+        M.insertRotors(rotors);
+        M.setRotors(positions);
+    }
+
+    /** Return the settings line (without plugboard) for KEY. */
+    String settingsLine(long key) {
+        int[] rotors = new int[_slots + 1], positions = new int[_slots];
+        decode(key, rotors, positions);
+        StringBuilder line = new StringBuilder("*");
+        for (int r : rotors) {
+            line.append(' ').append(_config.name(r));
+        }
+        line.append(' ');
+        for (int p : positions) {
+            line.append(_config.alphabet().toChar(p));
+        }
+        return line.toString();
+    }
+
+    /** Store in ROTORS[1 ..] the rotor order numbered ORDER.  Orders are
+     *  grouped by their number m of moving rotors; within a group, the
+     *  number is, in mixed radix, (which slots hold the moving rotors,
+     *  arrangement of moving rotors, arrangement of fixed rotors). */
+    private void decodeOrder(long order, int[] rotors) {
+        int m = 0;
+        while (order >= _ordersWithMoving[m + 1]) {
+            m += 1;
+        }
+        order -= _ordersWithMoving[m];
+        long fixedCount = arrangements(_fixed.length, _slots - m);
+        long movingCount = arrangements(_moving.length, m);
+        long fixedIndex = order % fixedCount;
+        order /= fixedCount;
+        long movingIndex = order % movingCount;
+        long slotsIndex = order / movingCount;
+        Arrays.fill(_isMoving, false);
+        unrankCombination(slotsIndex, _slots, m, _isMoving);
+        unrankArrangement(movingIndex, _moving, _movingPick, m);
+        unrankArrangement(fixedIndex, _fixed, _fixedPick, _slots - m);
+        for (int i = 0, mi = 0, fi = 0; i < _slots; i += 1) {
+            rotors[i + 1] =
+                _isMoving[i] ? _movingPick[mi++] : _fixedPick[fi++];
+        }
+    }
+
+    /** Mark in CHOSEN the INDEX'th (in lexicographic order) way of choosing
+     *  K of the N slots. */
+    private static void unrankCombination(long index, int n, int k,
+                                          boolean[] chosen) {
+        for (int i = 0; i < n && k > 0; i += 1) {
+            long withI = binomial(n - i - 1, k - 1);
+            if (index < withI) {
+                chosen[i] = true;
+                k -= 1;
+            } else {
+                index -= withI;
+            }
+        }
+    }
+
+    /** Fill PICK[0 .. K-1] with the INDEX'th arrangement of K distinct
+     *  elements of FROM, numbering arrangements in lexicographic order of
+     *  positions in FROM. */
+    private void unrankArrangement(long index, int[] from, int[] pick,
+                                   int k) {
+        int n = from.length;
+        boolean[] used = _used;
+        Arrays.fill(used, false);
+        for (int i = 0; i < k; i += 1) {
+            long block = arrangements(n - i - 1, k - i - 1);
+            int skip = (int) (index / block);
+            index %= block;
+            for (int j = 0; j < n; j += 1) {
+                if (!used[j] && skip-- == 0) {
+                    used[j] = true;
+                    pick[i] = from[j];
+                    break;
+                }
+            }
+        }
+    }
+
+    /** Return the number of ways to choose K of N things, ignoring order. */
+    private static long binomial(int n, int k) {
+        if (k < 0 || k > n) {
+            return 0;
+        }
+        long result = 1;
+        for (int i = 1; i <= k; i += 1) {
+            result = Math.multiplyExact(result, n - k + i) / i;
+        }
+        return result;
+    }
+
+    /** Return the number of ordered arrangements of K of N distinct
+     *  things. */
+    private static long arrangements(int n, int k) {
+        if (k < 0 || k > n) {
+            return 0;
+        }
+        long result = 1;
+        for (int i = 0; i < k; i += 1) {
+            result = Math.multiplyExact(result, n - i);
+        }
+        return result;
+    }
+
+    /** Return the elements of LIST as an array. */
+    private static int[] toArray(ArrayList<Integer> list) {
+        return list.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** A spliterator over a range of key numbers that splits in half. */
+    private static class KeySpliterator implements Spliterator.OfLong {
+
+        /** A spliterator over the keys from FROM to TO (exclusive). */
+        KeySpliterator(long from, long to) {
+            _next = from;
+            _end = to;
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (_next >= _end) {
+                return false;
+            }
+            action.accept(_next);
+            _next += 1;
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            long end = _end;
+            for (long key = _next; key < end; key += 1) {
+                action.accept(key);
+            }
+            _next = end;
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            long mid = _next + (_end - _next) / 2;
+            if (mid <= _next) {
+                return null;
+            }
+            KeySpliterator prefix = new KeySpliterator(_next, mid);
+            _next = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return _end - _next;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | SIZED | SUBSIZED | IMMUTABLE
+                | NONNULL;
+        }
+
+        /** Next key to deliver. */
+        private long _next;
+        /** End of my range (exclusive). */
+        private final long _end;
+    }
+
+    /** Configuration whose keys I enumerate. */
+    private final Config _config;
+    /** Number of non-reflector slots. */
+    private final int _slots;
+    /** Size of the alphabet. */
+    private final int _alphaSize;
+    /** Config indices of reflectors, moving rotors and fixed rotors. */
+    private final int[] _reflectors, _moving, _fixed;
+    /** _ordersWithMoving[m] is the number of orders with fewer than m
+     *  moving rotors. */
+    private final long[] _ordersWithMoving;
+    /** Number of rotor orders. */
+    private final long _numOrders;
+    /** Number of combinations of positions. */
+    private final long _numPositions;
+    /** Number of keys. */
+    private final long _count;
+    /** Working storage for decodeOrder: which slots hold moving rotors,
+     *  and the moving and fixed rotors chosen for them. */
+    private final boolean[] _isMoving;
+    /** Working storage for decodeOrder. */
+    private final int[] _movingPick, _fixedPick;
+    /** Working storage for unrankArrangement. */
+    private final boolean[] _used;
+}
@@ -0,0 +1,101 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySpace class.
+ *  @author Kevin Li
+ */
+public class KeySpaceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A naval configuration with 3 moving rotors (of 4), 1 fixed rotor and
+     *  2 reflectors, for machines with 4 slots and 2 pawls. */
+    private static final String CONFIG =
+        navalConfig(4, 2, "I MQ", "II ME", "III MV", "Beta N", "B R",
+                    "C R");
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testCount() {
+        KeySpace keys = new KeySpace(ConfigParser.parseConfig(CONFIG));
+        assertEquals(18, keys.orders());
+        assertEquals(2 * 18 * 26 * 26 * 26, keys.count());
+        assertEquals(keys.count(), keys.stream(0).parallel().count());
+        assertEquals(100, keys.stream(keys.count() - 100).count());
+    }
+
+    @Test
+    public void testOrdersAreLegal() {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        KeySpace keys = new KeySpace(config);
+        HashSet<String> seen = new HashSet<>();
+        int[] rotors = new int[4], positions = new int[3];
+        for (long order = 0; order < keys.count(); order += 26 * 26 * 26) {
+            keys.decode(order, rotors, positions);
+            assertEquals('R', config.kind(rotors[0]));
+            int moving = 0;
+            for (int i = 1; i < 4; i += 1) {
+                assertNotEquals('R', config.kind(rotors[i]));
+                moving += config.kind(rotors[i]) == 'M' ? 1 : 0;
+                for (int j = 1; j < i; j += 1) {
+                    assertNotEquals(rotors[i], rotors[j]);
+                }
+            }
+            assertTrue(moving <= 2);
+            assertTrue(seen.add(keys.settingsLine(order)));
+        }
+        assertEquals(2 * 18, seen.size());
+    }
+
+    @Test
+    public void testPositions() {
+        KeySpace keys = new KeySpace(ConfigParser.parseConfig(CONFIG));
+        assertTrue(keys.settingsLine(0).endsWith(" AAA"));
+        assertTrue(keys.settingsLine(1).endsWith(" AAB"));
+        assertTrue(keys.settingsLine(26).endsWith(" ABA"));
+        assertTrue(keys.settingsLine(keys.count() - 1).endsWith(" ZZZ"));
+    }
+
+    @Test
+    public void testApplyMatchesSettingsLine() {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        KeySpace keys = new KeySpace(config);
+        Machine M = config.newMachine(), N = config.newMachine();
+        M.setPlugboard(new Permutation("", config.alphabet()));
+        int[] rotors = new int[4], positions = new int[3];
+        for (long key = 0; key < keys.count(); key += 9973) {
+            keys.apply(key, M, rotors, positions);
+            new SettingsCache(config, 1).apply(N, keys.settingsLine(key), 1);
+            assertEquals(N.convert("HELLOWORLD"), M.convert("HELLOWORLD"));
+        }
+    }
+
+    @Test
+    public void testRejectsHugeSpaces() {
+        StringBuilder text = new StringBuilder(UPPER_STRING + " 15 14\n");
+        text.append("B R ").append(NAVALA.get("B")).append('\n');
+        for (int k = 0; k < 14; k += 1) {
+            text.append("M").append(k).append(" MQ ")
+                .append(NAVALA.get("I")).append('\n');
+        }
+        try {
+            new KeySpace(ConfigParser.parseConfig(text));
+            fail("counted more keys than a long holds");
+        } catch (EnigmaException excp) {
+            assertEquals("key space too large", excp.getMessage());
+        }
+    }
+}
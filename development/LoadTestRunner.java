@@ -0,0 +1,217 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+/** Drives Main in-process over workloads from WorkloadGenerator and
+ *  reports, per scenario, characters and messages per second, garbage
+ *  collection time and per-message latency percentiles.  The latency of
+ *  a message runs from reading its line to writing the newline of its
+ *  output.  The report has one JSON object per line, one line per
+ *  scenario.  Usage:
+ *      java enigma.LoadTestRunner [RUNS] [SPEC...]
+ *  Each scenario is converted once to warm up and then RUNS (default 3)
+ *  times with fresh inputs; the figures are from the fastest run.
+ *  Without SPECs, a built-in mix of scenarios is run.
+ *  @author Kevin Li
+ */
+class LoadTestRunner {
+
+    /** The scenarios run by default. */
+    static final List<String> SCENARIOS = List.of(
+        "name=naval",
+        "name=short,length=20,messages=50000",
+        "name=long,length=5000,every=10,messages=500",
+        "name=oneSettings,every=100000,messages=20000",
+        "name=noPlugs,plugs=0",
+        "name=alpha60,alphabet=60,plugs=25",
+        "name=slots12,slots=12,pawls=8,naval=false"
+    );
+
+    /** Run the load test as described by ARGS. */
+    public static void main(String... args) {
+        int runs = 3;
+        int first = 0;
+        if (args.length > 0 && args[0].matches("\\d+")) {
+            runs = Integer.parseInt(args[0]);
+            first = 1;
+        }
+        List<String> specs = args.length > first
+            ? Arrays.asList(args).subList(first, args.length) : SCENARIOS;
+        for (String spec : specs) {
+            System.out.println(run(new WorkloadGenerator(spec), runs));
+        }
+    }
+
+    /** Return the JSON report line of RUNS timed runs of the scenario of
+     *  GEN. */
+    static String run(WorkloadGenerator gen, int runs) {
+        Result best = null;
+        once(gen.config(), gen.input());
+        for (int r = 0; r < runs; r += 1) {
+            Result result = once(gen.config(), gen.input());
+            if (best == null || result._nanos < best._nanos) {
+                best = result;
+            }
+        }
+        long[] lat = best._latencies;
+        Arrays.sort(lat, 0, best._messages);
+        return String.format("{\"scenario\": \"%s\", \"messages\": %d,"
+                             + " \"chars\": %d, \"seconds\": %.4f,"
+                             + " \"charsPerSec\": %.0f,"
+                             + " \"messagesPerSec\": %.0f,"
+                             + " \"gcMillis\": %d, \"gcCount\": %d,"
+                             + " \"latencyMicros\": {\"p50\": %.1f,"
+                             + " \"p90\": %.1f, \"p99\": %.1f,"
+                             + " \"p999\": %.1f, \"max\": %.1f}}",
+                             gen.name(), best._messages, best._chars,
+                             best._nanos / 1e9,
+                             best._chars / (best._nanos / 1e9),
+                             best._messages / (best._nanos / 1e9),
+                             best._gcMillis, best._gcCount,
+                             percentile(lat, best._messages, 0.5),
+                             percentile(lat, best._messages, 0.9),
+                             percentile(lat, best._messages, 0.99),
+                             percentile(lat, best._messages, 0.999),
+                             percentile(lat, best._messages, 1.0));
+    }
+
+    /** Return the result of running Main on configuration CONFIG and
+     *  input INPUT. */
+    private static Result once(String config, String input) {
+        Result result = new Result(input);
+        LineTimer reader = new LineTimer(input, result);
+        PrintStream output = new PrintStream(new NewlineTimer(result));
+        long gcMillis = gcMillis(), gcCount = gcCount();
+        long start = System.nanoTime();
+        Config conf = ConfigParser.parseConfig(config);
+        Main.process(conf, conf.newMachine(), reader, output);
+        output.flush();
+        result._nanos = System.nanoTime() - start;
+        result._gcMillis = gcMillis() - gcMillis;
+        result._gcCount = gcCount() - gcCount;
+        return result;
+    }
+
+    /** Return the P quantile, in microseconds, of the first N of the
+     *  sorted LATENCIES. */
+    private static double percentile(long[] latencies, int n, double p) {
+        if (n == 0) {
+            return 0;
+        }
+        int k = (int) Math.min(n - 1, Math.ceil(p * n) - 1);
+        return latencies[Math.max(0, k)] / 1e3;
+    }
+
+    /** Return the total collection time so far of all collectors. */
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc
+                 : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    /** Return the total number of collections so far. */
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc
+                 : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    /** Measurements of one run. */
+    private static class Result {
+        /** Measurements of a run on INPUT. */
+        Result(String input) {
+            long lines = input.chars().filter(c -> c == '\n').count();
+            _latencies = new long[(int) lines];
+        }
+
+        /** Elapsed time. */
+        private long _nanos;
+        /** Collection time and count during the run. */
+        private long _gcMillis, _gcCount;
+        /** Message characters read, excluding whitespace. */
+        private long _chars;
+        /** Messages converted. */
+        private int _messages;
+        /** Latency of each message, in nanoseconds. */
+        private final long[] _latencies;
+        /** Time at which the pending message was read, or -1. */
+        private long _pending = -1;
+    }
+
+    /** A reader that notes when each message line is read. */
+    private static class LineTimer extends BufferedReader {
+        /** A reader of INPUT recording into RESULT. */
+        LineTimer(String input, Result result) {
+            super(new StringReader(input));
+            _result = result;
+        }
+
+        @Override
+        public String readLine() throws IOException {
+            String line = super.readLine();
+            if (line != null && !Main.isSettingsLine(line)) {
+                _result._pending = System.nanoTime();
+                for (int i = 0; i < line.length(); i += 1) {
+                    if (!Character.isWhitespace(line.charAt(i))) {
+                        _result._chars += 1;
+                    }
+                }
+            }
+            return line;
+        }
+
+        /** Where measurements go. */
+        private final Result _result;
+    }
+
+    /** An output sink that notes when each message's output ends. */
+    private static class NewlineTimer extends OutputStream {
+        /** A sink recording into RESULT. */
+        NewlineTimer(Result result) {
+            _result = result;
+        }
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                newline();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i += 1) {
+                if (b[i] == '\n') {
+                    newline();
+                }
+            }
+        }
+
+        /** Record the end of the pending message. */
+        private void newline() {
+            if (_result._pending >= 0) {
+                _result._latencies[_result._messages] =
+                    System.nanoTime() - _result._pending;
+                _result._messages += 1;
+                _result._pending = -1;
+            }
+        }
+
+        /** Where measurements go. */
+        private final Result _result;
+    }
+}
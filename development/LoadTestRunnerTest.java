@@ -0,0 +1,62 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** The suite of all JUnit tests for the LoadTestRunner class.
+ *  @author Kevin Li
+ */
+public class LoadTestRunnerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Return the number following "KEY": in the JSON REPORT. */
+    private static double field(String report, String key) {
+        Matcher m = Pattern.compile("\"" + key + "\": ([0-9.]+)")
+            .matcher(report);
+        assertTrue(key + " in " + report, m.find());
+        return Double.parseDouble(m.group(1));
+    }
+
+    @Test
+    public void testReportsEveryMessage() {
+        String[] specs = {
+            "name=a,messages=40",
+            "name=b,messages=60,every=7,length=3,naval=false",
+        };
+        for (String spec : specs) {
+            WorkloadGenerator gen = new WorkloadGenerator(spec);
+            String report = LoadTestRunner.run(gen, 2);
+            assertFalse(report, report.contains("\n"));
+            assertTrue(report, report.startsWith("{\"scenario\": \""
+                                                 + gen.name() + "\""));
+            assertTrue(report, report.endsWith("}}"));
+            assertEquals(report, spec.contains("40") ? 40 : 60,
+                         field(report, "messages"), 0);
+            assertTrue(report, field(report, "chars") > 0);
+            assertTrue(report, field(report, "seconds") > 0);
+            double p50 = field(report, "p50"), p90 = field(report, "p90"),
+                p99 = field(report, "p99"), p999 = field(report, "p999"),
+                max = field(report, "max");
+            assertTrue(report, p50 > 0);
+            assertTrue(report, p50 <= p90 && p90 <= p99 && p99 <= p999
+                       && p999 <= max);
+        }
+    }
+
+    @Test
+    public void testCountsMessageCharacters() {
+        WorkloadGenerator gen =
+            new WorkloadGenerator("name=c,messages=30,length=50");
+        String report = LoadTestRunner.run(gen, 1);
+        double chars = field(report, "chars");
+        assertTrue(report, chars > 30 * 10 && chars < 30 * 200);
+    }
+}
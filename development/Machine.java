@@ -2,6 +2,7 @@ package enigma;
 
 import java.util.HashMap;
 import java.util.Collection;
+import java.util.List;
 
 import static enigma.EnigmaException.*;
 
@@ -25,12 +26,21 @@ class Machine {
         _pawls = pawls;
         _allRotors = allRotors;
         _activeRotors = new Rotor[numRotors];
+        _advance = new boolean[numRotors];
         _rotorStore = new HashMap<String, Rotor>();
         for (Rotor i : _allRotors) {
             _rotorStore.put(i.name(), i);
         }
     }
 
+    /** A new Enigma machine for CONFIG, which builds each of CONFIG's
+     *  rotors the first time insertRotors names it. */
+    Machine(Config config) {
+        this(config.alphabet(), config.numRotors(), config.numPawls(),
+             List.of());
+        _config = config;
+    }
+
     /** Return the number of rotor slots I have. */
     int numRotors() {
         return _numRotors;
@@ -45,21 +55,63 @@ class Machine {
      *  @return boolean _rotorStore.containsKey(name).
      * */
     boolean containsKey(String name) {
-        return _rotorStore.containsKey(name);
+        return _rotorStore.containsKey(name)
+            || _config != null
+               && _config.indexOf(name, 0, name.length()) >= 0;
     }
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
+        _frozen = null;
         int len = rotors.length;
         for (int i = 0; i < len; i++) {
             String key = rotors[i].toUpperCase();
-            if (_rotorStore.containsKey(key)) {
-                if (i == 0 && !_rotorStore.get(key).reflecting()) {
+            Rotor rotor = _rotorStore.get(key);
+            if (rotor == null && _config != null) {
+                int k = _config.indexOf(key, 0, key.length());
+                if (k >= 0) {
+                    rotor = _config.newRotor(k);
+                    _rotorStore.put(key, rotor);
+                }
+            }
+            if (rotor != null) {
+                if (i == 0 && !rotor.reflecting()) {
                     throw new EnigmaException("Leftmost should be Reflector");
                 }
-                _activeRotors[i] = _rotorStore.get(key);
+                _activeRotors[i] = rotor;
+            }
+        }
+    }
+
+    /** Set my rotor slots to the rotors with indices ROTORS in the Config
+     *  I was built from (ROTORS[0] is the reflector's), without looking
+     *  up or allocating names. */
+    void insertRotors(int[] rotors) {
+        _frozen = null;
+        for (int i = 0; i < rotors.length; i += 1) {
+            String name = _config.name(rotors[i]);
+            Rotor rotor = _rotorStore.get(name);
+            if (rotor == null) {
+                rotor = _config.newRotor(rotors[i]);
+                _rotorStore.put(name, rotor);
+            }
+            if (i == 0 && !rotor.reflecting()) {
+                throw new EnigmaException("Leftmost should be Reflector");
             }
+            _activeRotors[i] = rotor;
+        }
+    }
+
+    /** As for insertRotors(ROTORS), where ROTORS is frozen: the caller
+     *  never modifies it after the first call.  If ROTORS is the frozen
+     *  array inserted last, my slots already hold its rotors and the
+     *  names are not looked up again.  SettingsCache inserts its entries'
+     *  arrays this way. */
+    void insertFrozenRotors(String[] rotors) {
+        if (rotors != _frozen) {
+            insertRotors(rotors);
+            _frozen = rotors;
         }
     }
 
@@ -76,28 +128,141 @@ class Machine {
         }
     }
 
+    /** Set my rotors to the alphabet indices in SETTING, which has
+     *  numRotors()-1 elements, leftmost rotor first. */
+    void setRotors(int[] setting) {
+        int len = _activeRotors.length;
+        if (setting.length != len - 1) {
+            throw new EnigmaException(
+                "Fewer number of settings than expected");
+        }
+        for (int i = 1; i < len; i++) {
+            _activeRotors[i].set(setting[i - 1]);
+        }
+    }
+
+    /** Set the ring settings of my rotors according to RINGS, which must be
+     *  a string of numRotors()-1 characters in my alphabet, leftmost
+     *  rotor first.  The reflector has no ring.  Ring settings are
+     *  compiled into the rotors' tables, so convert costs the same
+     *  whatever they are. */
+    void setRings(String rings) {
+        int len = _activeRotors.length;
+        if (rings.length() != len - 1) {
+            throw new EnigmaException("Wrong number of ring settings");
+        }
+        for (int i = 1; i < len; i++) {
+            _activeRotors[i].setRing(rings.charAt(i - 1));
+        }
+    }
+
+    /** Set the ring settings of my rotors to the alphabet indices in RINGS,
+     *  which has numRotors()-1 elements, leftmost rotor first. */
+    void setRings(int[] rings) {
+        int len = _activeRotors.length;
+        if (rings.length != len - 1) {
+            throw new EnigmaException("Wrong number of ring settings");
+        }
+        for (int i = 1; i < len; i++) {
+            _activeRotors[i].setRing(rings[i - 1]);
+        }
+    }
+
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugboard = plugboard;
     }
 
-    /** Returns the result of converting the input character C (as an
-     *  index in the range 0..alphabet size - 1), after first advancing
-     *  the machine. */
-    int convert(int c) {
-        boolean[] advanceable = new boolean[_activeRotors.length];
-        advanceable[_activeRotors.length - 1] = true;
-        for (int i = advanceable.length - 1; i > 1; i--) {
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Return the rotor in slot K (0 is the reflector). */
+    Rotor rotor(int k) {
+        return _activeRotors[k];
+    }
+
+    /** Return the engine that does my bulk conversions. */
+    EncryptionEngine engine() {
+        return _engine;
+    }
+
+    /** Have ENGINE do my bulk conversions from now on. */
+    void setEngine(EncryptionEngine engine) {
+        _engine = engine;
+        _engineState = null;
+    }
+
+    /** Return the state my engine keeps with me between calls, or null.
+     *  Such state is a cache: the engine must check it against my rotors
+     *  before use, since they may have been changed since. */
+    Object engineState() {
+        return _engineState;
+    }
+
+    /** Set engineState() to STATE. */
+    void setEngineState(Object state) {
+        _engineState = state;
+    }
+
+    /** Return the Trace recording my conversions, or null. */
+    Trace trace() {
+        return _trace;
+    }
+
+    /** Record my conversions in TRACE, which must have been made for me,
+     *  from now on, or stop recording them if TRACE is null. */
+    void setTrace(Trace trace) {
+        if (trace != null && trace.machine() != this) {
+            throw error("trace was made for another machine");
+        }
+        _trace = trace;
+    }
+
+    /** Advance my rotors as for one keypress: the rightmost rotor always
+     *  advances, and a rotor at a notch advances together with its left
+     *  neighbor if that neighbor rotates.  Returns true iff a rotor other
+     *  than the rightmost moved. */
+    boolean step() {
+        int last = _activeRotors.length - 1;
+        boolean others = false;
+        for (int i = last; i > 1; i--) {
             if (_activeRotors[i].atNotch() && _activeRotors[i - 1].rotates()) {
-                advanceable[i] = true;
-                advanceable[i - 1] = true;
+                _advance[i] = true;
+                _advance[i - 1] = true;
+                others = true;
             }
         }
-        for (int j = 0; j < _activeRotors.length; j++) {
-            if (advanceable[j]) {
-                _activeRotors[j].advance();
+        _activeRotors[last].advance();
+        if (others) {
+            for (int j = 0; j < last; j++) {
+                if (_advance[j]) {
+                    _activeRotors[j].advance();
+                    _advance[j] = false;
+                }
             }
+            _advance[last] = false;
         }
+        return others;
+    }
+
+    /** Advance my rotors as STEPS calls of step() would, in time that does
+     *  not depend on STEPS (see Odometer).  On the rare machines whose
+     *  notches Odometer cannot count, STEPS may be at most
+     *  Odometer.MAX_STEPPED. */
+    void skip(long steps) {
+        new Odometer(this).advance(steps);
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  the machine. */
+    int convert(int c) {
+        if (_trace != null) {
+            return _trace.convert(c);
+        }
+        step();
         int input = _plugboard.permute(c);
         for (int i = _numRotors - 1; i > 0; i -= 1) {
             input = _activeRotors[i].convertForward(input);
@@ -109,11 +274,22 @@ class Machine {
         return _plugboard.permute(output);
     }
 
+    /** Replace the alphabet indices TEXT[FROM .. TO-1] by their
+     *  conversions, in order, using my engine.  The effect is the same as
+     *  calling convert(int) on each.  While I have a Trace, the reference
+     *  engine is used instead, so that the Trace sees every character. */
+    void convert(int[] text, int from, int to) {
+        if (_trace != null) {
+            RotorEngine.INSTANCE.convert(this, text, from, to);
+        } else {
+            _engine.convert(this, text, from, to);
+        }
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly.
      *  1. Forward prop: Char in -> plugboard -> enter motor (advance setting
-     *  if the motor is movable -> char + setti@Rule
-     *     public Timeout globalTimeout = Timeout.seconds(5);ng -> permute
+     *  if the motor is movable -> char + setting -> permute
      *  -> char - setting -> final output
      *  2. Reflector: reflects
      *  3. Back prop: Same processes as forward prop
@@ -123,18 +299,36 @@ class Machine {
      *  @return buffer
      *  */
     String convert(String msg) {
-        msg = msg.toUpperCase();
-        String buffer = "";
+        StringBuilder buffer = new StringBuilder(msg.length());
+        convert(msg, buffer);
+        return buffer.toString();
+    }
+
+    /** Append the encoding/decoding of MSG to OUT, updating the state of
+     *  the rotors accordingly.  Lower-case letters are converted as their
+     *  upper-case equivalents, as in convert(String). */
+    void convert(CharSequence msg, StringBuilder out) {
         int len = msg.length();
-        for (int i = 0; i < len; i += 1) {
-            int index = _alphabet.toInt(msg.charAt(i));
-            char convertedChar = _alphabet.toChar(convert(index));
-            buffer += String.valueOf(convertedChar);
+        for (int start = 0; start < len; start += _block.length) {
+            int end = Math.min(len, start + _block.length);
+            for (int i = start; i < end; i += 1) {
+                char ch = Character.toUpperCase(msg.charAt(i));
+                _block[i - start] = _alphabet.toInt(ch);
+            }
+            convert(_block, 0, end - start);
+            for (int i = 0; i < end - start; i += 1) {
+                out.append(_alphabet.toChar(_block[i]));
+            }
         }
-        return buffer;
     }
 
-    /** Helper for Hashmap Getter.
+    /** Return the common alphabet of my rotors. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Helper for Hashmap Getter.  For a Machine built from a Config,
+     *  only the rotors inserted so far are there.
      * @return _rotorStore */
     public HashMap<String, Rotor> rotorStore() {
         return _rotorStore;
@@ -151,6 +345,22 @@ class Machine {
     private Collection<Rotor> _allRotors;
     /** Currently active running rotors. */
     private Rotor[] _activeRotors;
+    /** The array last passed to insertFrozenRotors, or null if
+     *  insertRotors has been called since. */
+    private String[] _frozen;
+    /** Configuration from which rotors are built on first use, or
+     *  null. */
+    private Config _config;
     /** Hashmap for rotors. */
     private HashMap<String, Rotor> _rotorStore;
+    /** Engine doing bulk conversions. */
+    private EncryptionEngine _engine = RotorEngine.INSTANCE;
+    /** State kept by _engine. */
+    private Object _engineState;
+    /** Records my conversions, or null. */
+    private Trace _trace;
+    /** Scratch flags for step(), all false between calls. */
+    private final boolean[] _advance;
+    /** Scratch buffer for convert(CharSequence, StringBuilder). */
+    private final int[] _block = new int[1024];
 }
@@ -0,0 +1,141 @@
+package enigma;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+
+/** A reactive stage that encrypts (or decrypts) a stream of character
+ *  chunks on a single Machine.  The machine is a stateful cursor, so
+ *  chunks are converted strictly in arrival order and each output chunk
+ *  continues exactly where the previous one stopped.  Whitespace in the
+ *  input is skipped, as Main does for message lines.  ByteBuffer sources
+ *  can be attached by decoding them into CharBuffers, which are
+ *  CharSequences.
+ *
+ *  Small input chunks are gathered into batches of at least BATCHCHARS
+ *  characters before being converted and published, which amortizes the
+ *  per-item cost of the publisher.  Demand is honored in both
+ *  directions: one upstream item is requested at a time, and publishing
+ *  blocks while a subscriber's buffer of MAXBUFFER batches is full, so a
+ *  slow consumer bounds the amount of buffered text instead of letting it
+ *  grow.
+ *  @author Kevin Li
+ */
+class MachineProcessor extends SubmissionPublisher<String>
+    implements Flow.Processor<CharSequence, String> {
+
+    /** Default minimum number of characters per published batch. */
+    static final int DEFAULT_BATCH = 4096;
+
+    /** A processor converting on MACHINE, publishing through EXECUTOR,
+     *  buffering at most MAXBUFFER batches per subscriber and batching
+     *  input into chunks of at least BATCHCHARS characters. */
+    MachineProcessor(Machine machine, Executor executor, int maxBuffer,
+                     int batchChars) {
+        super(executor, maxBuffer);
+        if (batchChars <= 0) {
+            throw new EnigmaException("Batch size must be positive");
+        }
+        _machine = machine;
+        _batchChars = batchChars;
+        _pending = new StringBuilder(batchChars);
+        _converted = new StringBuilder(batchChars);
+    }
+
+    /** A processor converting on MACHINE with the default executor, buffer
+     *  capacity and batch size. */
+    MachineProcessor(Machine machine) {
+        this(machine, ForkJoinPool.commonPool(), Flow.defaultBufferSize(),
+             DEFAULT_BATCH);
+    }
+
+    /** Attach STATS to count the characters entering the machine and
+     *  CIPHERSTATS to count those leaving it; either may be null.  Must be
+     *  called before the first item arrives.  The statistics are updated
+     *  on the thread delivering items, one batch at a time. */
+    void attachStats(CipherStats stats, CipherStats cipherStats) {
+        _inStats = stats;
+        _outStats = cipherStats;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (_subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        _subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(CharSequence chunk) {
+        int len = chunk.length();
+        for (int i = 0; i < len; i += 1) {
+            char ch = chunk.charAt(i);
+            if (!Character.isWhitespace(ch)) {
+                _pending.append(ch);
+            }
+        }
+        try {
+            if (_pending.length() >= _batchChars) {
+                flush();
+            }
+        } catch (EnigmaException excp) {
+            _subscription.cancel();
+            closeExceptionally(excp);
+            return;
+        }
+        _subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        closeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        try {
+            flush();
+        } catch (EnigmaException excp) {
+            closeExceptionally(excp);
+            return;
+        }
+        close();
+    }
+
+    /** Convert and publish whatever input is pending.  Blocks while any
+     *  subscriber's buffer is full. */
+    private void flush() {
+        if (_pending.length() == 0) {
+            return;
+        }
+        _converted.setLength(0);
+        _machine.convert(_pending, _converted);
+        if (_inStats != null) {
+            _inStats.accept(_pending, _machine.alphabet());
+        }
+        if (_outStats != null) {
+            _outStats.accept(_converted, _machine.alphabet());
+        }
+        _pending.setLength(0);
+        submit(_converted.toString());
+    }
+
+    /** The machine holding the cipher state. */
+    private final Machine _machine;
+    /** Minimum characters per published batch. */
+    private final int _batchChars;
+    /** Input waiting to be converted. */
+    private final StringBuilder _pending;
+    /** Scratch buffer for converted text. */
+    private final StringBuilder _converted;
+    /** Upstream subscription. */
+    private Flow.Subscription _subscription;
+    /** Statistics of the input, or null. */
+    private CipherStats _inStats;
+    /** Statistics of the output, or null. */
+    private CipherStats _outStats;
+}
@@ -0,0 +1,235 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MachineProcessor class.
+ *  @author Kevin Li
+ */
+public class MachineProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings used throughout. */
+    private static final String SETTINGS =
+        "* B Beta I II III AXLE (AQ) (EP)";
+
+    /** Return a machine for NAVAL_CONFIG set up by SETTINGS. */
+    private static Machine machine() {
+        Config config = ConfigParser.parseConfig(NAVAL_CONFIG);
+        Machine machine = config.newMachine();
+        new SettingsCache(config, 1).apply(machine, SETTINGS, 1);
+        return machine;
+    }
+
+    /** Return the Ith test chunk, of LEN characters with a space. */
+    private static String chunk(int i, int len) {
+        StringBuilder result = new StringBuilder(len + 1);
+        for (int k = 0; k < len; k += 1) {
+            result.append((char) ('A' + (i * 7 + k) % 26));
+            if (k == len / 2) {
+                result.append(' ');
+            }
+        }
+        return result.toString();
+    }
+
+    /** A subscriber that collects what it receives, requesting INITIAL
+     *  items on subscribing and more only when asked to. */
+    private static class Collector implements Flow.Subscriber<String> {
+
+        /** A collector requesting INITIAL items at first. */
+        Collector(long initial) {
+            _initial = initial;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+            _subscribed.countDown();
+            if (_initial > 0) {
+                subscription.request(_initial);
+            }
+        }
+
+        @Override
+        public synchronized void onNext(String item) {
+            _text.append(item);
+            _items.incrementAndGet();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            _error = throwable;
+            _done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            _completed = true;
+            _done.countDown();
+        }
+
+        /** Request N more items. */
+        void request(long n) throws InterruptedException {
+            _subscribed.await();
+            _subscription.request(n);
+        }
+
+        /** Wait for the end of the stream. */
+        void await() throws InterruptedException {
+            assertTrue("stream did not end",
+                       _done.await(5, TimeUnit.SECONDS));
+        }
+
+        /** Return the text received so far. */
+        synchronized String text() {
+            return _text.toString();
+        }
+
+        /** Items requested on subscribing. */
+        private final long _initial;
+        /** The subscription. */
+        private volatile Flow.Subscription _subscription;
+        /** Counts down on subscribing and on the end of the stream. */
+        private final CountDownLatch _subscribed = new CountDownLatch(1),
+            _done = new CountDownLatch(1);
+        /** Text received. */
+        private final StringBuilder _text = new StringBuilder();
+        /** Number of items received. */
+        private final AtomicInteger _items = new AtomicInteger();
+        /** Error received, or null. */
+        private volatile Throwable _error;
+        /** True iff completed normally. */
+        private volatile boolean _completed;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testKeepsOrderAcrossChunks() throws InterruptedException {
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try {
+            SubmissionPublisher<CharSequence> source =
+                new SubmissionPublisher<>(pool, 4);
+            MachineProcessor processor =
+                new MachineProcessor(machine(), pool, 4, 17);
+            Collector sink = new Collector(Long.MAX_VALUE);
+            source.subscribe(processor);
+            processor.subscribe(sink);
+            StringBuilder whole = new StringBuilder();
+            for (int i = 0; i < 500; i += 1) {
+                String chunk = chunk(i, 1 + i % 13);
+                source.submit(chunk);
+                whole.append(chunk.replace(" ", ""));
+            }
+            source.close();
+            sink.await();
+            assertTrue(sink._completed);
+            assertEquals(machine().convert(whole.toString()), sink.text());
+            assertTrue(sink._items.get() > 1);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testHonorsDemandAndBoundsBuffer()
+        throws InterruptedException {
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try {
+            SubmissionPublisher<CharSequence> source =
+                new SubmissionPublisher<>(pool, 2);
+            MachineProcessor processor =
+                new MachineProcessor(machine(), pool, 2, 10);
+            Collector sink = new Collector(1);
+            source.subscribe(processor);
+            processor.subscribe(sink);
+            StringBuilder whole = new StringBuilder();
+            AtomicInteger submitted = new AtomicInteger();
+            Thread feeder = new Thread(() -> {
+                for (int i = 0; i < 100; i += 1) {
+                    source.submit(chunk(i, 10));
+                    submitted.incrementAndGet();
+                }
+                source.close();
+            });
+            for (int i = 0; i < 100; i += 1) {
+                whole.append(chunk(i, 10).replace(" ", ""));
+            }
+            feeder.start();
+            Thread.sleep(300);
+            assertEquals(1, sink._items.get());
+            assertTrue("feeder ran ahead of demand", feeder.isAlive());
+            assertTrue("buffered " + submitted.get() + " chunks",
+                       submitted.get() <= 10);
+            sink.request(Long.MAX_VALUE);
+            sink.await();
+            feeder.join();
+            assertEquals(machine().convert(whole.toString()), sink.text());
+            assertEquals(100, sink._items.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPropagatesCompletionAndErrors()
+        throws InterruptedException {
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try {
+            SubmissionPublisher<CharSequence> source =
+                new SubmissionPublisher<>(pool, 4);
+            MachineProcessor processor =
+                new MachineProcessor(machine(), pool, 4, 1000);
+            Collector sink = new Collector(Long.MAX_VALUE);
+            source.subscribe(processor);
+            processor.subscribe(sink);
+            source.submit("HELLO WORLD");
+            source.close();
+            sink.await();
+            assertTrue(sink._completed);
+            assertEquals(machine().convert("HELLOWORLD"), sink.text());
+
+            source = new SubmissionPublisher<>(pool, 4);
+            processor = new MachineProcessor(machine(), pool, 4, 1000);
+            sink = new Collector(Long.MAX_VALUE);
+            source.subscribe(processor);
+            processor.subscribe(sink);
+            IllegalStateException failure = new IllegalStateException();
+            source.submit("HELLO");
+            source.closeExceptionally(failure);
+            sink.await();
+            assertFalse(sink._completed);
+            assertTrue(sink._error == failure);
+
+            source = new SubmissionPublisher<>(pool, 4);
+            processor = new MachineProcessor(machine(), pool, 4, 1);
+            sink = new Collector(Long.MAX_VALUE);
+            source.subscribe(processor);
+            processor.subscribe(sink);
+            source.submit("HELLO 3");
+            sink.await();
+            assertTrue(sink._error instanceof EnigmaException);
+            source.close();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
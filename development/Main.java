@@ -1,12 +1,19 @@
 package enigma;
 
-import java.io.File;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
 
-import java.util.ArrayList;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import static enigma.EnigmaException.*;
 
@@ -15,6 +22,12 @@ import static enigma.EnigmaException.*;
  */
 public final class Main {
 
+    /** System property naming a directory of shared rotor table files. */
+    static final String TABLES_PROPERTY = "enigma.tables";
+    /** System property naming a file to which to dump a Trace of the last
+     *  characters converted. */
+    static final String TRACE_PROPERTY = "enigma.trace";
+
     /** Process a sequence of encryptions and decryptions, as
      *  specified by ARGS, where 1 <= ARGS.length <= 3.
      *  ARGS[0] is the name of a configuration file.
@@ -23,10 +36,49 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *
+     *  Alternatively, ARGS[0] may name a mode:
+     *      --daemon SOCKET CONFIGDIR [THREADS]
+     *          serve requests on the Unix domain socket SOCKET, using the
+     *          configuration files under CONFIGDIR (see Daemon).
+     *      --client SOCKET CONFIG [INPUT [OUTPUT]]
+     *          as for the arguments CONFIG INPUT OUTPUT above, but have the
+     *          daemon listening at SOCKET do the work; CONFIG is relative
+     *          to the daemon's CONFIGDIR.
+     *      --binary CONFIG INPUT OUTPUT [THREADS]
+     *          encrypt the binary batch file INPUT into OUTPUT (see
+     *          BatchFile).
+     *      --range CONFIG SETTINGS START END INPUT [OUTPUT]
+     *          convert characters START to END-1 of the unbroken message in
+     *          INPUT, encrypted with the settings line SETTINGS, without
+     *          converting those before (see RangeDecoder).
+     *      --batch CONFIG INDIR OUTDIR [THREADS]
+     *          process every file under INDIR as an input file, writing
+     *          its output to the same relative path under OUTDIR, skipping
+     *          files whose output exists (see DirectoryBatch).
+     *
+     *  If the system property enigma.tables names a directory, compiled
+     *  rotor tables are shared through a file there (see RotorTables and
+     *  parseConfig).  If the system property enigma.trace names a file,
+     *  the plain mode dumps a Trace of the last Trace.DEFAULT_CAPACITY
+     *  characters converted there on finishing, even with an error (see
+     *  TraceViewer). */
     public static void main(String... args) {
         try {
-            new Main(args).process();
+            if (args.length > 0 && args[0].equals("--daemon")) {
+                daemon(args);
+            } else if (args.length > 0 && args[0].equals("--client")) {
+                client(args);
+            } else if (args.length > 0 && args[0].equals("--binary")) {
+                binary(args);
+            } else if (args.length > 0 && args[0].equals("--range")) {
+                range(args);
+            } else if (args.length > 0 && args[0].equals("--batch")) {
+                batch(args);
+            } else {
+                new Main(args).process();
+            }
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -34,18 +86,139 @@ public final class Main {
         System.exit(1);
     }
 
+    /** Run a daemon as specified by ARGS (see comment on main). */
+    private static void daemon(String[] args) {
+        if (args.length < 3 || args.length > 4) {
+            throw error("usage: --daemon SOCKET CONFIGDIR [THREADS]");
+        }
+        int threads = threads(args, 3);
+        try {
+            new Daemon(Paths.get(args[1]), Paths.get(args[2]), threads)
+                .serve();
+        } catch (IOException excp) {
+            throw error("daemon failed: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the number of threads given by ARGS[K], or the number of
+     *  processors if ARGS is too short to have it. */
+    private static int threads(String[] args, int k) {
+        if (args.length <= k) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        int threads;
+        try {
+            threads = Integer.parseInt(args[k]);
+        } catch (NumberFormatException excp) {
+            threads = 0;
+        }
+        if (threads <= 0) {
+            throw error("bad number of threads: %s", args[k]);
+        }
+        return threads;
+    }
+
+    /** Run one job through a daemon as specified by ARGS (see comment on
+     *  main). */
+    private static void client(String[] args) {
+        if (args.length < 3 || args.length > 5) {
+            throw error("usage: --client SOCKET CONFIG [INPUT [OUTPUT]]");
+        }
+        String config = args[2];
+        try (SocketChannel channel = Daemon.connect(Paths.get(args[1]))) {
+            String payload = args.length > 3 ? readFile(args[3])
+                : new String(System.in.readAllBytes());
+            String result = Daemon.request(
+                new DataInputStream(Channels.newInputStream(channel)),
+                new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(channel))),
+                config, "", payload);
+            PrintStream output = args.length > 4 ? getOutput(args[4])
+                : System.out;
+            output.print(result);
+            output.flush();
+        } catch (IOException excp) {
+            throw error("daemon request failed: %s", excp.getMessage());
+        }
+    }
+
+    /** Encrypt a binary batch file as specified by ARGS (see comment on
+     *  main). */
+    private static void binary(String[] args) {
+        if (args.length < 4 || args.length > 5) {
+            throw error("usage: --binary CONFIG INPUT OUTPUT [THREADS]");
+        }
+        int threads = threads(args, 4);
+        Config config = parseConfig(readFile(args[1]));
+        try {
+            BatchFile.process(config, Paths.get(args[2]), Paths.get(args[3]),
+                              threads);
+        } catch (IOException excp) {
+            throw error("batch failed: %s", excp.getMessage());
+        }
+    }
+
+    /** Process a directory tree as specified by ARGS (see comment on
+     *  main), printing a summary on the standard error. */
+    private static void batch(String[] args) {
+        if (args.length < 4 || args.length > 5) {
+            throw error("usage: --batch CONFIG INDIR OUTDIR [THREADS]");
+        }
+        int threads = threads(args, 4);
+        Config config = parseConfig(readFile(args[1]));
+        DirectoryBatch.Summary summary;
+        try {
+            summary = DirectoryBatch.process(config, Paths.get(args[2]),
+                                             Paths.get(args[3]), threads);
+        } catch (IOException excp) {
+            throw error("batch failed: %s", excp.getMessage());
+        }
+        System.err.println(summary);
+        if (summary.failed() > 0) {
+            throw error("%d files failed", summary.failed());
+        }
+    }
+
+    /** Convert a range of a message as specified by ARGS (see comment on
+     *  main). */
+    private static void range(String[] args) {
+        if (args.length < 6 || args.length > 7) {
+            throw error("usage: --range CONFIG SETTINGS START END INPUT"
+                        + " [OUTPUT]");
+        }
+        Config config = parseConfig(readFile(args[1]));
+        long start, end;
+        try {
+            start = Long.parseLong(args[3]);
+            end = Long.parseLong(args[4]);
+        } catch (NumberFormatException excp) {
+            throw error("bad range: %s %s", args[3], args[4]);
+        }
+        try {
+            String result = RangeDecoder.convert(config, args[2],
+                                                 Paths.get(args[5]),
+                                                 start, end);
+            PrintStream output = args.length > 6 ? getOutput(args[6])
+                : System.out;
+            printMessageLine(result, output);
+            output.flush();
+        } catch (IOException excp) {
+            throw error("could not read %s: %s", args[5], excp.getMessage());
+        }
+    }
+
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _config = readFile(args[0]);
 
         if (args.length > 1) {
             _input = getInput(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _input = new BufferedReader(new InputStreamReader(System.in));
         }
 
         if (args.length > 2) {
@@ -55,11 +228,40 @@ public final class Main {
         }
     }
 
-    /** Return a Scanner reading from the file named NAME.
+    /** Return the contents of the file named NAME. */
+    static String readFile(String name) {
+        try {
+            return Files.readString(Paths.get(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return the Config described by TEXT.  If the system property
+     *  TABLES_PROPERTY names a directory, its machines read their rotor
+     *  tables from the file there named after the Config's fingerprint,
+     *  which is written first if no other process has done so. */
+    static Config parseConfig(String text) {
+        Config config = ConfigParser.parseConfig(text);
+        String dir = System.getProperty(TABLES_PROPERTY);
+        if (dir != null) {
+            Path file = Paths.get(dir, String.format("%016x.tables",
+                                                     config.fingerprint()));
+            try {
+                config.setTables(RotorTables.map(config, file));
+            } catch (IOException excp) {
+                throw error("could not map rotor tables %s: %s", file,
+                            excp.getMessage());
+            }
+        }
+        return config;
+    }
+
+    /** Return a reader for the file named NAME.
      * @param name vs _name instance variable. */
-    private Scanner getInput(String name) {
+    private BufferedReader getInput(String name) {
         try {
-            return new Scanner(new File(name));
+            return Files.newBufferedReader(Paths.get(name));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -67,9 +269,10 @@ public final class Main {
 
     /** Return a PrintStream writing to the file named NAME.
      * @param name vs _name instance variable. */
-    private PrintStream getOutput(String name) {
+    static PrintStream getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            return new PrintStream(new BufferedOutputStream(
+                new FileOutputStream(name)), false);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -78,220 +281,178 @@ public final class Main {
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
-    private void process() {
-        Machine enig = readConfig();
-        String intake;
-        while (_input.hasNext()) {
-            String nextLine = _input.nextLine();
-            checkFirstLine(nextLine);
-            if (!nextLine.isEmpty()) {
-                intake = nextLine;
-            } else {
-                _output.println();
-                intake = "";
-            }
-            while (_input.hasNext("\\*")) {
-                intake += _input.nextLine();
-            }
-            setUp(enig, intake);
-            while (!_input.hasNext("\\*") && _input.hasNextLine()) {
-                String msg = _input.nextLine().replaceAll("\\s", "");
-                if (msg.equals("")) {
-                    _output.print("\n");
-                } else {
-                    printMessageLine(enig.convert(msg));
-                }
-            }
+    void process() {
+        Config config = parseConfig(_config);
+        Machine machine = config.newMachine();
+        String traceFile = System.getProperty(TRACE_PROPERTY);
+        if (traceFile != null) {
+            machine.setTrace(new Trace(machine, Trace.DEFAULT_CAPACITY));
         }
-    }
-    /** Helper. Check if the first line is a valid setting with an asterick.
-     *  isFirst is an instance variable initially assigned true.
-     *  @param nextLine is the first line of input
-     *  */
-    private void checkFirstLine(String nextLine) {
-        if (isFirst) {
-            isFirst = false;
-            if (!nextLine.contains("*")) {
-                throw new EnigmaException("Need an * at the first line");
+        try {
+            process(config, machine, _input, _output);
+        } finally {
+            _output.flush();
+            if (traceFile != null) {
+                dumpTrace(machine.trace(), traceFile);
             }
         }
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+    /** Dump TRACE to the file named NAME, reporting any failure on the
+     *  standard error rather than hiding the error being traced. */
+    private static void dumpTrace(Trace trace, String name) {
         try {
-            _alphabet = readAlphabet(_config.next());
-            for (int i = 0; i < 2 && !_config.hasNextInt(); i += 1) {
-                throw new EnigmaException("Wrong number of rotors or pawls");
-            }
-            int rotorNum = _config.nextInt();
-            int pawlNum = _config.nextInt();
-            _name = (_config.next()).toUpperCase();
-            while (_config.hasNext()) {
-                _name = (_placeHolder == null) ? _name : _placeHolder;
-                _notches = (_config.next()).toUpperCase();
-                rotorBuffer.add(readRotor());
-            }
-            return new Machine(_alphabet, rotorNum, pawlNum, rotorBuffer);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+            trace.dump(Paths.get(name));
+        } catch (IOException excp) {
+            System.err.printf("enigma: could not write trace %s: %s%n", name,
+                              excp.getMessage());
         }
     }
 
-    /** Helper verifyClause. */
-    private void verifyClause() {
-        if (_placeHolder.contains("(") && !_placeHolder.contains(")")) {
-            throw new EnigmaException("Incomplete ()");
+    /** Apply ENIG, built from CONFIG, to the settings lines and messages
+     *  read from INPUT, printing the results on OUTPUT.  The first line
+     *  must be a settings line, i.e. one whose first non-blank character
+     *  is '*'.  Each settings line stands alone: of consecutive settings
+     *  lines, the last applies.  ENIG gets the engine Engines has chosen
+     *  for CONFIG, or its default: a single run is too short to repay a
+     *  calibration. */
+    static void process(Config config, Machine enig, BufferedReader input,
+                        PrintStream output) {
+        SettingsCache cache =
+            new SettingsCache(config, SettingsCache.DEFAULT_CAPACITY);
+        Engines.Choice engine = Engines.chosen(config);
+        enig.setEngine(engine.engine());
+        process(cache, enig, input, output);
+        if (Boolean.getBoolean("enigma.cacheStats")) {
+            System.err.println(cache);
+            System.err.println(engine);
         }
     }
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
+
+    /** Apply ENIG to the settings lines and messages read from INPUT,
+     *  printing the results on OUTPUT and setting ENIG up through CACHE,
+     *  which must be for the Config ENIG was built from. */
+    static void process(SettingsCache cache, Machine enig,
+                        BufferedReader input, PrintStream output) {
+        StringBuilder converted = new StringBuilder();
+        int lineNumber = 0;
         try {
-            String cycles = "";
-            _placeHolder = (_config.next()).toUpperCase();
-            verifyClause();
-            while (_placeHolder.contains("(") && _config.hasNext()) {
-                cycles = cycles.concat(_placeHolder + " ");
-                _placeHolder = (_config.next()).toUpperCase();
-                verifyClause();
-            }
-            if (!_config.hasNext()) {
-                cycles += cycles.concat(_placeHolder + " ");
-            }
-            char identifier = _notches.charAt(0);
-            if (identifier == 'M') {
-                return new MovingRotor(_name,
-                        new Permutation(cycles, _alphabet),
-                        _notches.substring(1));
-            } else if (identifier == 'R') {
-                return new Reflector(_name, new Permutation(cycles, _alphabet));
-            } else if (identifier == 'N') {
-                return new FixedRotor(_name,
-                        new Permutation(cycles, _alphabet));
-            } else {
-                throw new EnigmaException("Invalid rotor identifier");
+            for (String line = input.readLine(); line != null;
+                 line = input.readLine()) {
+                lineNumber += 1;
+                if (isSettingsLine(line)) {
+                    cache.apply(enig, line, lineNumber);
+                } else if (lineNumber == 1) {
+                    throw error("Need an * at the first line");
+                } else {
+                    converted.setLength(0);
+                    enig.convert(stripWhitespace(line), converted);
+                    printMessageLine(converted, output);
+                }
             }
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
+        } catch (IOException excp) {
+            throw error("error reading input: %s", excp.getMessage());
         }
     }
 
-    /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-        String[] set = settings.split(" ");
-        if (set.length - 1 < M.numRotors()) {
-            throw new EnigmaException("Not enough arguments in setting");
-        }
-        if (countMovingRotor(M, set) > M.numPawls()) {
-            throw new EnigmaException("Too many MovingRotors");
-        }
-        String[] rotors = new String[M.numRotors()];
-        if (M.numRotors() >= 0) {
-            System.arraycopy(set, 1, rotors, 0, M.numRotors());
-        }
-        checkRepeatRotors(rotors);
-        if (1 + M.numRotors() >= set.length) {
-            throw new EnigmaException("Setting message length does not match");
+    /** Return true iff the first non-blank character of LINE is '*'. */
+    static boolean isSettingsLine(String line) {
+        for (int i = 0; i < line.length(); i += 1) {
+            char ch = line.charAt(i);
+            if (ch == '*') {
+                return true;
+            } else if (!Character.isWhitespace(ch)) {
+                return false;
+            }
         }
-        String verifySetting = set[1 + M.numRotors()];
-        if (verifySetting.length() != M.numRotors() - 1) {
-            throw new EnigmaException("Verify Setting length doesnt match");
+        return false;
+    }
+
+    /** Return LINE with all whitespace removed. */
+    private static CharSequence stripWhitespace(String line) {
+        int i;
+        for (i = 0; i < line.length(); i += 1) {
+            if (Character.isWhitespace(line.charAt(i))) {
+                break;
+            }
         }
-        String stecker = "";
-        for (int i = 7; i < set.length; i++) {
-            stecker = stecker.concat(set[i] + " ");
+        if (i == line.length()) {
+            return line;
         }
-        for (int i = 0; i < M.numRotors(); i++) {
-            if (!M.rotorStore().containsKey((rotors[i]).toUpperCase())) {
-                throw new EnigmaException("No such rotor exist");
+        StringBuilder result = new StringBuilder(line.length());
+        for (i = 0; i < line.length(); i += 1) {
+            char ch = line.charAt(i);
+            if (!Character.isWhitespace(ch)) {
+                result.append(ch);
             }
         }
-        M.insertRotors(rotors);
-        if (set[M.numRotors() + 1].length() != M.numRotors() - 1) {
-            throw new EnigmaException("Wrong setting length");
+        return result;
+    }
+
+    /** Check that SET, parsed for CONFIG, is a legal arrangement for M,
+     *  returning the names of its rotors, leftmost first. */
+    static String[] validate(Config config, Machine M, Settings set) {
+        if (countMovingRotor(config, set) > M.numPawls()) {
+            throw new EnigmaException("Too many MovingRotors");
         }
-        char[] testSet = set[M.numRotors() + 1].toCharArray();
-        for (char c : testSet) {
-            if (!_alphabet.contains(c)) {
-                throw new EnigmaException("Setting out of bounds");
-            }
+        checkRepeatRotors(set);
+        String[] rotors = new String[set.numRotors()];
+        for (int i = 0; i < rotors.length; i += 1) {
+            rotors[i] = config.name(set.rotor(i));
         }
-        M.setRotors(set[M.numRotors() + 1]);
-        M.setPlugboard(new Permutation(stecker, _alphabet));
+        return rotors;
     }
+
     /** Helper function to determine the # of moving rotors.
-     * @param setting as a String array.
-     * @param M as a Machine.
+     * @param config as the Config naming the rotors.
+     * @param setting as the parsed settings.
      * @return counter */
-    private int countMovingRotor(Machine M, String[] setting) {
+    private static int countMovingRotor(Config config, Settings setting) {
         int counter = 0;
-        for (String i : setting) {
-            Rotor a = M.rotorStore().get(i);
-            if (a instanceof MovingRotor) {
+        for (int i = 0; i < setting.numRotors(); i += 1) {
+            if (config.kind(setting.rotor(i)) == 'M') {
                 counter += 1;
             }
         }
         return counter;
     }
+
     /** Helper function.
-     * @param rotors is for record rotor.
+     * @param setting is for record rotor.
      * */
-    private void checkRepeatRotors(String[] rotors) {
-        for (int i = 0; i < rotors.length - 1; i++) {
-            for (int j = i + 1; j < rotors.length; j++) {
-                if (rotors[i].equals(rotors[j])) {
+    private static void checkRepeatRotors(Settings setting) {
+        for (int i = 0; i < setting.numRotors() - 1; i++) {
+            for (int j = i + 1; j < setting.numRotors(); j++) {
+                if (setting.rotor(i) == setting.rotor(j)) {
                     throw new EnigmaException("Rotors repeated");
                 }
             }
         }
     }
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        msg = msg.replaceAll(" ", "").toUpperCase();
-        for (int i = 0; i < msg.length(); i += 5) {
-            int rem = msg.length() - i;
-            if (rem > 5) {
-                _output.print(msg.substring(i, i + 5) + " ");
-            } else {
-                _output.println(msg.substring(i, i + rem));
-            }
+
+    /** Print MSG on OUTPUT in groups of five (except that the last group
+     *  may have fewer letters). */
+    static void printMessageLine(CharSequence msg, PrintStream output) {
+        int len = msg.length();
+        if (len == 0) {
+            output.println();
+            return;
         }
-    }
-    /** Helper
-     * 1. read Alphabet and nextValid
-     *  @param alpha is short of alphabets
-     *  @return new Alphabet(alpha)
-     * */
-    private Alphabet readAlphabet(String alpha) {
-        if (alpha.contains("(") || alpha.contains(")") || alpha.contains("*")) {
-            throw new EnigmaException("Wrong config in readAlphabet");
+        StringBuilder line = new StringBuilder(len + len / 5 + 1);
+        for (int i = 0; i < len; i += 1) {
+            if (i > 0 && i % 5 == 0) {
+                line.append(' ');
+            }
+            line.append(msg.charAt(i));
         }
-        return new Alphabet(alpha);
+        output.println(line);
     }
 
-    /** Temp checker for isFirst. */
-    private boolean isFirst = true;
-    /** Process the name of rotors. */
-    private String _name;
-    /** Process the notches. */
-    private String _notches;
-    /** Placeholder to record the name of rotors. */
-    private String _placeHolder;
-
-    /** ArrayList to hold rotors. */
-    private ArrayList<Rotor> rotorBuffer = new ArrayList<>();
-
-    /** Alphabet used in this machine. */
-    private Alphabet _alphabet;
+    /** Contents of the configuration file. */
+    private String _config;
 
     /** Source of input messages. */
-    private Scanner _input;
-
-    /** Source of machine configuration. */
-    private Scanner _config;
+    private BufferedReader _input;
 
     /** File for encoded/decoded messages. */
     private PrintStream _output;
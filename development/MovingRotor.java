@@ -10,16 +10,34 @@ class MovingRotor extends Rotor {
     /** A rotor named NAME whose permutation in its default setting is
      *  PERM, and whose notches are at the positions indicated in NOTCHES.
      *  The Rotor is initially in its 0 setting (first character of its
-     *  alphabet).
+     *  alphabet).  Notches are cut in the alphabet ring, so they are
+     *  positions as shown in the window and do not move with the ring
+     *  setting.
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
-        _notches = notches;
+        _notchAt = notchTable(perm, notches);
     }
-    /** Getter method for _notches.
-     *  @return _notches */
-    private String notches() {
-        return _notches;
+
+    /** A rotor as for MovingRotor(NAME, PERM, NOTCHES), reading its
+     *  conversions from entry K of TABLES. */
+    MovingRotor(String name, Permutation perm, String notches,
+                RotorTables tables, int k) {
+        super(name, perm, tables, k);
+        _notchAt = notchTable(perm, notches);
+    }
+
+    /** Return a table whose entry p is true iff NOTCHES, characters of
+     *  the alphabet of PERM, include character p. */
+    private static boolean[] notchTable(Permutation perm, String notches) {
+        boolean[] result = new boolean[perm.size()];
+        for (int i = 0; i < notches.length(); i += 1) {
+            int p = perm.alphabet().indexOf(notches.charAt(i));
+            if (p >= 0) {
+                result[p] = true;
+            }
+        }
+        return result;
     }
     @Override
     boolean rotates() {
@@ -28,20 +46,19 @@ class MovingRotor extends Rotor {
 
     @Override
     boolean atNotch() {
-        char posNow = alphabet().toChar(setting());
-        if (notches().isEmpty()) {
-            return false;
-        } else if (notches().contains(String.valueOf(posNow))) {
-            return true;
-        }
-        return false;
+        return _notchAt[setting()];
+    }
+
+    @Override
+    boolean[] notchTable() {
+        return _notchAt;
     }
 
     @Override
     void advance() {
         super.set(permutation().wrap(this.setting() + 1));
     }
-    /** Instance variable. */
-    private String _notches;
+    /** _notchAt[p] is true iff I have a notch at setting p. */
+    private final boolean[] _notchAt;
 
 }
@@ -71,4 +71,21 @@ public class MovingRotorTest {
         checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
     }
 
+    @Test
+    public void checkRotorRingCancelsSetting() {
+        setRotor("I", NAVALA, "");
+        rotor.setRing('B');
+        rotor.set('B');
+        checkRotor("Rotor I ring B at B", UPPER_STRING, NAVALA_MAP.get("I"));
+    }
+
+    @Test
+    public void checkRotorRingShiftsWiring() {
+        setRotor("I", NAVALA, "");
+        rotor.setRing(1);
+        assertEquals(1, rotor.ring());
+        assertEquals(0, rotor.setting());
+        checkRotor("Rotor I ring B at A", UPPER_STRING, NAVALZ_MAP.get("I"));
+    }
+
 }
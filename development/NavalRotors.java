@@ -0,0 +1,50 @@
+package enigma;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** The wirings and notches of the naval Enigma rotors and reflectors.
+ *  @author Kevin Li
+ */
+class NavalRotors {
+
+    /** Not instantiable. */
+    private NavalRotors() {
+    }
+
+    /** The cycles of each naval rotor and reflector in the A (0)
+     *  setting, by name. */
+    static final Map<String, String> CYCLES;
+    static {
+        HashMap<String, String> cycles = new HashMap<>();
+        cycles.put("I", "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)");
+        cycles.put("II", "(FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)");
+        cycles.put("III", "(ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)");
+        cycles.put("IV", "(AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)");
+        cycles.put("V", "(AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)");
+        cycles.put("VI", "(AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK) ");
+        cycles.put("VII", "(ANOUPFRIMBZTLWKSVEGCJYDHXQ) ");
+        cycles.put("VIII", "(AFLSETWUNDHOZVICQ) (BKJ) (GXY) (MPR)");
+        cycles.put("Beta", "(ALBEVFCYODJWUGNMQTZSKPR) (HIX)");
+        cycles.put("Gamma", "(AFNIRLBSQWVXGUZDKMTPCOYJHE)");
+        cycles.put("B",
+                   "(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) "
+                   + "(MP) (RX) (SZ) (TV)");
+        cycles.put("C",
+                   "(AR) (BD) (CO) (EJ) (FN) (GT) (HK) (IV) (LM) "
+                   + "(PW) (QZ) (SX) (UY)");
+        CYCLES = Map.copyOf(cycles);
+    }
+
+    /** The names of the naval moving rotors, each with its notches. */
+    static final String[][] MOVING = {
+        { "I", "Q" }, { "II", "E" }, { "III", "V" }, { "IV", "J" },
+        { "V", "Z" }, { "VI", "ZM" }, { "VII", "ZM" }, { "VIII", "ZM" },
+    };
+
+    /** The names of the naval thin (fixed) rotors. */
+    static final String[] THIN = { "Beta", "Gamma" };
+
+    /** The names of the naval thin reflectors. */
+    static final String[] REFLECTORS = { "B", "C" };
+}
@@ -0,0 +1,262 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Computes the rotor positions of a Machine any number of steps ahead
+ *  without stepping through the ones in between.
+ *
+ *  Machine.step makes each rotor a counter driven by the one to its
+ *  right.  Rotor i moves on a step either because rotor i + 1 starts it
+ *  at a notch (a carry), or because rotor i itself starts it at a notch
+ *  and rotor i - 1 rotates (the double step, which also carries into
+ *  rotor i - 1).  So a rotor's moves are of two kinds, told apart by the
+ *  position they start from: an immediate move from a double-stepping
+ *  notch, made on the step after the move that reached it, and a carried
+ *  move from any other position, made on the first carry after the
+ *  previous move.  The carries into rotor i are exactly the moves of
+ *  rotor i + 1 from its notches.  Counting through these rules rotor by
+ *  rotor, from the right, the number of moves each rotor makes in T
+ *  steps, and the step of a rotor's K-th move, take arithmetic on notch
+ *  counts per revolution and a constant number of queries to the rotor
+ *  on the right, so the whole computation costs O(rotors^2) whatever T.
+ *
+ *  This counting assumes that no carry arrives while a rotor is making
+ *  immediate moves, except at the start: that is, that notches on the
+ *  rotor to its right are further apart than the longest run of adjacent
+ *  double-stepping notches on it.  All historical rotors satisfy this.
+ *  For machines that do not, advance falls back to stepping, and so
+ *  refuses to go more than MAX_STEPPED steps.
+ *  @author Kevin Li
+ */
+class Odometer {
+
+    /** The most steps advance takes one at a time on a machine whose
+     *  counting is not exact. */
+    static final long MAX_STEPPED = 1L << 24;
+
+    /** An odometer for the rotors of M at their current positions. */
+    Odometer(Machine M) {
+        _machine = M;
+        int slots = M.numRotors();
+        _n = M.alphabet().size();
+        _levels = new Level[slots];
+        for (int i = slots - 1; i > 0; i -= 1) {
+            _levels[i] = new Level(M, i, i == slots - 1 ? null
+                                   : _levels[i + 1]);
+        }
+        boolean exact = true;
+        for (int i = 1; i < slots - 1; i += 1) {
+            exact &= _levels[i].exact();
+        }
+        _exact = exact;
+    }
+
+    /** Return true iff I can advance any number of steps in constant
+     *  time (see class comment). */
+    boolean exact() {
+        return _exact;
+    }
+
+    /** Set the rotors of my Machine as STEPS calls of its step method
+     *  would, from the positions it had when I was made.  Unless exact(),
+     *  STEPS may be at most MAX_STEPPED. */
+    void advance(long steps) {
+        if (!_exact) {
+            if (steps > MAX_STEPPED) {
+                throw error("cannot skip %d steps: this machine's notches"
+                            + " are too close together to count, and at"
+                            + " most %d steps are taken one at a time",
+                            steps, MAX_STEPPED);
+            }
+            for (long t = 0; t < steps; t += 1) {
+                _machine.step();
+            }
+            return;
+        }
+        int[] positions = new int[_levels.length];
+        for (int i = 1; i < _levels.length; i += 1) {
+            positions[i] = _levels[i].position(steps);
+        }
+        for (int i = 1; i < _levels.length; i += 1) {
+            _machine.rotor(i).set(positions[i]);
+        }
+    }
+
+    /** The counting state of the rotor in one slot. */
+    private class Level {
+
+        /** The level for slot I of M, whose right neighbor's level is
+         *  RIGHT (null for the rightmost slot). */
+        Level(Machine M, int i, Level right) {
+            Rotor rotor = M.rotor(i);
+            _right = right;
+            _start = rotor.setting();
+            _rotates = rotor.rotates();
+            boolean[] notches = rotor.notchTable();
+            boolean doubles = _rotates && i >= 2 && M.rotor(i - 1).rotates();
+            _fed = right != null && _rotates;
+            boolean[] immediate = new boolean[_n];
+            int numNotches = 0, numCarried = 0;
+            for (int x = 0; x < _n; x += 1) {
+                int p = (_start + x) % _n;
+                boolean notch = notches != null && notches[p];
+                immediate[x] = notch && doubles;
+                numNotches += notch ? 1 : 0;
+                numCarried += immediate[x] ? 0 : 1;
+            }
+            _notchOffsets = new int[numNotches];
+            _carriedOffsets = new int[numCarried];
+            _notchesBefore = new int[_n + 1];
+            _carriedBefore = new int[_n + 1];
+            int a = 0, b = 0;
+            for (int x = 0; x < _n; x += 1) {
+                int p = (_start + x) % _n;
+                _notchesBefore[x] = a;
+                _carriedBefore[x] = b;
+                if (notches != null && notches[p]) {
+                    _notchOffsets[a++] = x;
+                }
+                if (!immediate[x]) {
+                    _carriedOffsets[b++] = x;
+                }
+            }
+            _notchesBefore[_n] = a;
+            _carriedBefore[_n] = b;
+            _runs = new int[_n];
+            int longest = 0;
+            if (numCarried > 0) {
+                for (int x = 2 * _n - 1; x >= 0; x -= 1) {
+                    int k = x % _n;
+                    _runs[k] = immediate[k] ? 1 + _runs[(k + 1) % _n] : 0;
+                    longest = Math.max(longest, _runs[k]);
+                }
+            }
+            _always = _rotates && (right == null || numCarried == 0);
+            _exact = _always || right == null
+                || right.minGap() > longest;
+            _absorbed = _always || !_fed ? 0 : right.carries(_runs[0]);
+        }
+
+        /** Return my rotor's position after T steps. */
+        int position(long t) {
+            return (int) ((_start + moves(t)) % _n);
+        }
+
+        /** Return true iff my counting is exact (see class comment). */
+        boolean exact() {
+            return _exact;
+        }
+
+        /** Return the number of moves my rotor makes in the first T
+         *  steps. */
+        long moves(long t) {
+            if (t != _lastSteps) {
+                _lastSteps = t;
+                _lastMoves = computeMoves(t);
+            }
+            return _lastMoves;
+        }
+
+        /** Return moves(T), uncached. */
+        private long computeMoves(long t) {
+            if (_always) {
+                return t;
+            }
+            long c = _fed ? _right.carries(t) - _absorbed : 0;
+            if (c <= 0) {
+                return Math.min(t, _runs[0]);
+            }
+            long k = nth(_carriedOffsets, c) + 1;
+            long tau = _right.carryStep(_absorbed + c);
+            int run = _runs[(int) (k % _n)];
+            return k + Math.min(run, t - 1 - tau);
+        }
+
+        /** Return the step (counting from 0) on which my rotor makes its
+         *  K-th move (K >= 1), which must happen. */
+        long step(long k) {
+            if (_always || k <= _runs[0]) {
+                return k - 1;
+            }
+            long c = count(_carriedBefore, _carriedOffsets.length, k);
+            long kc = nth(_carriedOffsets, c) + 1;
+            return _right.carryStep(_absorbed + c) + (k - kc);
+        }
+
+        /** Return the number of carries into the rotor on my left in the
+         *  first T steps: my moves from notches. */
+        long carries(long t) {
+            return count(_notchesBefore, _notchOffsets.length, moves(t));
+        }
+
+        /** Return the step of the C-th carry (C >= 1) into the rotor on my
+         *  left. */
+        long carryStep(long c) {
+            return step(nth(_notchOffsets, c) + 1);
+        }
+
+        /** Return the least number of moves between two of my notches. */
+        int minGap() {
+            int k = _notchOffsets.length;
+            if (k == 0) {
+                return Integer.MAX_VALUE;
+            }
+            int gap = _notchOffsets[0] + _n - _notchOffsets[k - 1];
+            for (int j = 1; j < k; j += 1) {
+                gap = Math.min(gap, _notchOffsets[j] - _notchOffsets[j - 1]);
+            }
+            return gap;
+        }
+
+        /** Return how many of my first M moves start from an offset
+         *  counted in BEFORE, which has PERTURN entries per
+         *  revolution. */
+        private long count(int[] before, int perTurn, long m) {
+            return m / _n * perTurn + before[(int) (m % _n)];
+        }
+
+        /** Return the move offset (from 0) of the C-th (C >= 1) move
+         *  starting from one of OFFSETS. */
+        private long nth(int[] offsets, long c) {
+            return (c - 1) / offsets.length * _n
+                + offsets[(int) ((c - 1) % offsets.length)];
+        }
+
+        /** Level of the rotor on my right, or null. */
+        private final Level _right;
+        /** Starting position. */
+        private final int _start;
+        /** True iff my rotor rotates. */
+        private final boolean _rotates;
+        /** True iff my rotor takes carries from the rotor on its right. */
+        private final boolean _fed;
+        /** True iff my rotor moves on every step. */
+        private final boolean _always;
+        /** True iff my counting is exact. */
+        private final boolean _exact;
+        /** Offsets from _start, in one revolution, of my notches and of
+         *  the positions from which my moves are carried. */
+        private final int[] _notchOffsets, _carriedOffsets;
+        /** Number of entries of _notchOffsets and _carriedOffsets less
+         *  than each offset 0 .. _n. */
+        private final int[] _notchesBefore, _carriedBefore;
+        /** _runs[x] is the number of consecutive immediate moves starting
+         *  at offset x. */
+        private final int[] _runs;
+        /** Carries that arrive during my initial immediate moves. */
+        private final long _absorbed;
+        /** Argument and result of the last call of moves, which is
+         *  asked for the same number of steps by every level to my
+         *  left. */
+        private long _lastSteps = -1, _lastMoves;
+    }
+
+    /** The machine whose rotors I set. */
+    private final Machine _machine;
+    /** Alphabet size. */
+    private final int _n;
+    /** Level of each slot, from 1. */
+    private final Level[] _levels;
+    /** True iff counting is exact for every rotor (see class comment). */
+    private final boolean _exact;
+}
@@ -0,0 +1,160 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Odometer class.
+ *  @author Kevin Li
+ */
+public class OdometerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A naval configuration, with single- and double-notched rotors. */
+    private static final String CONFIG =
+        navalConfig(5, 3, "I MQ", "II ME", "VI MZM", "VII MZM", "Beta N",
+                    "B R");
+
+    /** Return a machine for CONFIG set up by SETTINGS. */
+    private static Machine navalMachine(String settings) {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        Machine machine = config.newMachine();
+        new SettingsCache(config, 1).apply(machine, settings, 1);
+        return machine;
+    }
+
+    /** Return a machine with NUMROTORS slots, all but the reflector and
+     *  the leftmost FIXED moving, over an alphabet of N characters, with
+     *  random wirings, random notches drawn from NOTCHES (characters
+     *  of the alphabet, for each rotor a random nonempty subset, or
+     *  none), random positions and rings, from RANDOM. */
+    private static Machine randomMachine(int n, int numRotors, int fixed,
+                                         String notches, Random random) {
+        Alphabet alpha = new Alphabet(UPPER_STRING.substring(0, n));
+        List<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[numRotors];
+        for (int i = 0; i < numRotors; i += 1) {
+            names[i] = "R" + i;
+            int[] perm = Permutation.identity(n);
+            for (int j = n - 1; j > 0; j -= 1) {
+                int k = random.nextInt(j + 1), tmp = perm[j];
+                perm[j] = perm[k];
+                perm[k] = tmp;
+            }
+            Permutation p = new Permutation(alpha, "", perm);
+            if (i == 0) {
+                rotors.add(new Reflector(names[i], p));
+            } else if (i <= fixed) {
+                rotors.add(new FixedRotor(names[i], p));
+            } else {
+                StringBuilder cut = new StringBuilder();
+                for (char ch : notches.toCharArray()) {
+                    if (random.nextInt(3) == 0) {
+                        cut.append(ch);
+                    }
+                }
+                rotors.add(new MovingRotor(names[i], p, cut.toString()));
+            }
+        }
+        Machine machine = new Machine(alpha, numRotors, numRotors - 1 - fixed,
+                                      rotors);
+        machine.insertRotors(names);
+        int[] positions = new int[numRotors - 1];
+        for (int i = 0; i < positions.length; i += 1) {
+            positions[i] = random.nextInt(n);
+            machine.rotor(i + 1).setRing(random.nextInt(n));
+        }
+        machine.setRotors(positions);
+        return machine;
+    }
+
+    /** Return the positions of M's rotors. */
+    private static int[] positions(Machine M) {
+        int[] result = new int[M.numRotors() - 1];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = M.rotor(i + 1).setting();
+        }
+        return result;
+    }
+
+    /** Check that skipping agrees with stepping on M for up to STEPS
+     *  steps. */
+    private static void checkSkip(Machine M, int steps) {
+        int[] start = positions(M);
+        for (int t = 0; t <= steps; t += 1) {
+            int[] expected = positions(M);
+            M.setRotors(start);
+            M.skip(t);
+            assertArrayEquals("after " + t + " steps", expected,
+                              positions(M));
+            M.step();
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testNavalMachine() {
+        for (String rotors : new String[] { "I II VI", "VI VII I",
+                                            "II VI VII" }) {
+            for (String setting : new String[] { "AAAA", "AAEQ", "AAMZ",
+                                                 "AZLY", "BEQU" }) {
+                checkSkip(navalMachine("* B Beta " + rotors + " "
+                                       + setting + " BCDE"), 2000);
+            }
+        }
+    }
+
+    @Test
+    public void testRandomMachines() {
+        Random random = new Random(7);
+        for (int trial = 0; trial < 60; trial += 1) {
+            int n = 4 + random.nextInt(5);
+            Machine machine =
+                randomMachine(n, 3 + random.nextInt(4), random.nextInt(2),
+                              trial % 2 == 0 ? "AC" : "ACDF", random);
+            checkSkip(machine, 400);
+        }
+    }
+
+    @Test
+    public void testLongSkip() {
+        String settings = "* B Beta VI II VII AXLE QRST";
+        Machine machine = navalMachine(settings);
+        Machine stepped = navalMachine(settings);
+        long steps = 20_000_000L;
+        for (long t = 0; t < steps; t += 1) {
+            stepped.step();
+        }
+        machine.skip(steps);
+        assertArrayEquals(positions(stepped), positions(machine));
+    }
+
+    @Test
+    public void testRefusesLongStepping() {
+        Random random = new Random(11);
+        Machine machine;
+        do {
+            machine = randomMachine(6, 4, 0, "ABCDE", random);
+        } while (new Odometer(machine).exact());
+        checkSkip(machine, 400);
+        try {
+            machine.skip(Odometer.MAX_STEPPED + 1);
+            fail("stepped past MAX_STEPPED");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("cannot skip"));
+        }
+    }
+}
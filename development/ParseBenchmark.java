@@ -0,0 +1,240 @@
+package enigma;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.Scanner;
+
+/** Compares ConfigParser against the Scanner/split/replaceAll parsing that
+ *  Main used previously, on a large generated configuration and on many
+ *  short settings lines, and the compiled plugboards that parsing yields
+ *  against the former cycle-searching Permutation.  Usage:
+ *      java enigma.ParseBenchmark [NUMROTORS [NUMLINES]]
+ *  @author Kevin Li
+ */
+class ParseBenchmark {
+
+    /** Run the benchmark as described by ARGS. */
+    public static void main(String... args) {
+        int numRotors = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int numLines = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        Random random = new Random(42);
+        String configText = makeConfig(numRotors, random);
+        String[] lines = makeSettings(numRotors, numLines, random);
+        Config config = ConfigParser.parseConfig(configText);
+
+        String chars = config.alphabet().chars();
+
+        long t = Bench.best(20, 30, () ->
+            Bench.sink += legacyConfig(configText).size());
+        Bench.report("config/scanner", t, numRotors, "rotors");
+        t = Bench.best(20, 30, () ->
+            Bench.sink += ConfigParser.parseConfig(configText).size());
+        Bench.report("config/lexer", t, numRotors, "rotors");
+
+        HashMap<String, LegacyPermutation> store = legacyConfig(configText);
+        t = Bench.best(20, 30, () -> {
+            for (String line : lines) {
+                Bench.sink += legacySettings(line, config.numRotors(), store,
+                                             chars).chars().length();
+            }
+        });
+        Bench.report("settings/split", t, numLines, "lines");
+        t = Bench.best(20, 30, () -> {
+            for (String line : lines) {
+                Bench.sink += ConfigParser.parseSettings(line, 1, config)
+                    .numRotors();
+            }
+        });
+        Bench.report("settings/lexer", t, numLines, "lines");
+
+        LegacyPermutation[] legacyPlugs = new LegacyPermutation[numLines];
+        Permutation[] plugs = new Permutation[numLines];
+        for (int i = 0; i < numLines; i += 1) {
+            legacyPlugs[i] =
+                legacySettings(lines[i], config.numRotors(), store, chars);
+            plugs[i] = ConfigParser.parseSettings(lines[i], 1, config)
+                .plugboard();
+        }
+        t = Bench.best(5, 10, () -> {
+            for (LegacyPermutation plug : legacyPlugs) {
+                for (int c = 0; c < chars.length(); c += 1) {
+                    Bench.sink += plug.permute(chars.charAt(c));
+                }
+            }
+        });
+        Bench.report("plugboard/cycles", t, numLines * chars.length(),
+                     "chars");
+        t = Bench.best(5, 10, () -> {
+            for (Permutation plug : plugs) {
+                for (int c = 0; c < chars.length(); c += 1) {
+                    Bench.sink += plug.permute(c);
+                }
+            }
+        });
+        Bench.report("plugboard/table", t, numLines * chars.length(),
+                     "chars");
+    }
+
+    /** Return a configuration text with NUMROTORS random rotors over the
+     *  upper-case alphabet, using RANDOM. */
+    static String makeConfig(int numRotors, Random random) {
+        StringBuilder text = new StringBuilder("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        text.append("\n5 3\n");
+        for (int k = 0; k < numRotors; k += 1) {
+            char kind = k < 2 ? 'R' : k < 4 ? 'N' : 'M';
+            text.append("R").append(k).append(' ').append(kind);
+            if (kind == 'M') {
+                text.append((char) ('A' + random.nextInt(26)));
+            }
+            text.append(' ');
+            int[] perm = Permutation.identity(26);
+            for (int i = 25; i > 0; i -= 1) {
+                int j = random.nextInt(i + 1), tmp = perm[i];
+                perm[i] = perm[j];
+                perm[j] = tmp;
+            }
+            if (kind == 'R') {
+                for (int i = 0; i < 26; i += 2) {
+                    text.append('(').append((char) ('A' + perm[i]))
+                        .append((char) ('A' + perm[i + 1])).append(") ");
+                }
+            } else {
+                text.append('(');
+                for (int i = 0; i < 26; i += 1) {
+                    text.append((char) ('A' + perm[i]));
+                }
+                text.append(')');
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    /** Return NUMLINES random settings lines for a configuration made by
+     *  makeConfig(NUMROTORS, ...), using RANDOM. */
+    static String[] makeSettings(int numRotors, int numLines, Random random) {
+        String[] lines = new String[numLines];
+        for (int i = 0; i < numLines; i += 1) {
+            int m = 4 + random.nextInt(numRotors - 7);
+            lines[i] = String.format("* R%d R%d R%d R%d R%d %c%c%c%c"
+                                     + " (AB) (CD)",
+                                     random.nextInt(2), 2 + random.nextInt(2),
+                                     m, m + 1, m + 2,
+                                     'A' + random.nextInt(26),
+                                     'A' + random.nextInt(26),
+                                     'A' + random.nextInt(26),
+                                     'A' + random.nextInt(26));
+        }
+        return lines;
+    }
+
+    /** Parse CONFIGTEXT the way Main used to, with a token Scanner and
+     *  String concatenation, returning the rotors' permutations by name as
+     *  Machine's rotor store held them. */
+    static HashMap<String, LegacyPermutation> legacyConfig(String configText) {
+        Scanner config = new Scanner(configText);
+        String chars = config.next();
+        config.nextInt();
+        config.nextInt();
+        HashMap<String, LegacyPermutation> rotors = new HashMap<>();
+        String name = config.next().toUpperCase();
+        String placeHolder = null;
+        while (config.hasNext()) {
+            name = placeHolder == null ? name : placeHolder;
+            String notches = config.next().toUpperCase();
+            String cycles = "";
+            placeHolder = config.next().toUpperCase();
+            while (placeHolder.contains("(") && config.hasNext()) {
+                cycles = cycles.concat(placeHolder + " ");
+                placeHolder = config.next().toUpperCase();
+            }
+            if (!config.hasNext()) {
+                cycles = cycles.concat(placeHolder + " ");
+            }
+            if ("MNR".indexOf(notches.charAt(0)) < 0) {
+                throw new EnigmaException("Invalid rotor identifier");
+            }
+            rotors.put(name, new LegacyPermutation(cycles, chars));
+        }
+        return rotors;
+    }
+
+    /** Parse settings LINE for a machine of NUMROTORS rotors from STORE
+     *  the way Main used to, with split and concat, returning the
+     *  plugboard. */
+    static LegacyPermutation legacySettings(String line, int numRotors,
+                                            HashMap<String,
+                                                    LegacyPermutation> store,
+                                            String chars) {
+        String[] set = line.split(" ");
+        String[] rotors = new String[numRotors];
+        System.arraycopy(set, 1, rotors, 0, numRotors);
+        for (String rotor : rotors) {
+            if (!store.containsKey(rotor.toUpperCase())) {
+                throw new EnigmaException("No such rotor exist");
+            }
+        }
+        String stecker = "";
+        for (int i = numRotors + 2; i < set.length; i += 1) {
+            stecker = stecker.concat(set[i] + " ");
+        }
+        return new LegacyPermutation(stecker, chars);
+    }
+
+    /** The Permutation class as it was before ConfigParser: it keeps its
+     *  cycles as text and searches them on every character. */
+    static class LegacyPermutation {
+
+        /** The permutation given by CYCLES over the characters CHARS. */
+        LegacyPermutation(String cycles, String chars) {
+            _cycles = cycles;
+            _chars = chars;
+        }
+
+        /** Return the result of applying this permutation to P. */
+        char permute(char p) {
+            String[] convert = processCycle(_cycles);
+            String buffer = "";
+            for (String i : convert) {
+                if (i.contains(String.valueOf(p))) {
+                    buffer = i;
+                }
+            }
+            if (buffer.isEmpty()) {
+                return p;
+            } else if (buffer.charAt(buffer.length() - 1) == p) {
+                return buffer.charAt(0);
+            } else {
+                return buffer.charAt(buffer.indexOf(p) + 1);
+            }
+        }
+
+        /** Return the characters permuted. */
+        String chars() {
+            return _chars;
+        }
+
+        /** Return the cycles of CYCLES, without parentheses. */
+        static String[] processCycle(String cycles) {
+            if (cycles.contains(" ")) {
+                cycles = cycles.replaceAll(" ", "");
+                String[] result = cycles.split("\\)\\(");
+                result[0] = result[0].substring(1);
+                int last = result.length - 1;
+                result[last] =
+                    result[last].substring(0, result[last].length() - 1);
+                return result;
+            } else {
+                cycles = cycles.replaceAll("\\(", "");
+                cycles = cycles.replaceAll("\\)", "");
+                String[] result = {cycles};
+                return result;
+            }
+        }
+
+        /** My cycles. */
+        private final String _cycles;
+        /** The characters I permute. */
+        private final String _chars;
+    }
+}
@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
@@ -14,14 +16,85 @@ class Permutation {
      *  alphabet that are not included in any cycle map to themselves.
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
+        this(alphabet, cycles, identity(alphabet.size()),
+             identity(alphabet.size()));
+        ConfigLexer lexer = new ConfigLexer(cycles);
+        while (lexer.next() != ConfigLexer.EOF) {
+            if (lexer.kind() != ConfigLexer.CYCLE) {
+                throw lexer.error("expected a cycle");
+            }
+            addCycle(lexer, alphabet, _forward, _inverse);
+        }
+    }
+
+    /** A permutation of ALPHABET whose cycle notation is CYCLES and whose
+     *  mapping of index k is FORWARD[k].  FORWARD is used directly and
+     *  must not be modified afterwards. */
+    Permutation(Alphabet alphabet, String cycles, int[] forward) {
+        this(alphabet, cycles, forward, new int[forward.length]);
+        for (int i = 0; i < forward.length; i += 1) {
+            _inverse[forward[i]] = i;
+        }
+    }
+
+    /** A permutation of ALPHABET whose cycle notation is CYCLES, whose
+     *  mapping of index k is FORWARD[k] and whose inverse mapping is
+     *  INVERSE[k].  Both arrays are used directly. */
+    Permutation(Alphabet alphabet, String cycles, int[] forward,
+                int[] inverse) {
         _alphabet = alphabet;
         _cycles = cycles;
+        _forward = forward;
+        _inverse = inverse;
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
      *  c0c1...cm. */
     private void addCycle(String cycle) {
-        _cycles += cycle;
+        ConfigLexer lexer = new ConfigLexer("(" + cycle + ")");
+        lexer.next();
+        addCycle(lexer, _alphabet, _forward, _inverse);
+        _cycles += " (" + cycle + ")";
+    }
+
+    /** Compile the cycle that is LEXER's current token, whose characters
+     *  come from ALPHABET, into the tables FORWARD and INVERSE, which must
+     *  map each of those characters to itself beforehand. */
+    static void addCycle(ConfigLexer lexer, Alphabet alphabet,
+                         int[] forward, int[] inverse) {
+        int first = -1, prev = -1;
+        for (int k = 0; k < lexer.length(); k += 1) {
+            char ch = lexer.charAt(k);
+            if (Character.isWhitespace(ch)) {
+                continue;
+            }
+            int index = alphabet.indexOf(ch);
+            if (index < 0) {
+                throw lexer.error("'%c' is not in the alphabet", ch);
+            } else if (forward[index] != index || index == first) {
+                throw lexer.error("'%c' appears in more than one cycle", ch);
+            }
+            if (first < 0) {
+                first = index;
+            } else {
+                forward[prev] = index;
+                inverse[index] = prev;
+            }
+            prev = index;
+        }
+        if (first >= 0) {
+            forward[prev] = first;
+            inverse[first] = prev;
+        }
+    }
+
+    /** Return the identity mapping on 0 .. SIZE-1. */
+    static int[] identity(int size) {
+        int[] result = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            result[i] = i;
+        }
+        return result;
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -35,60 +108,30 @@ class Permutation {
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return _alphabet.size();
+        return _forward.length;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        int x = wrap(p);
-        char convertChar = alphabet().toChar(x);
-        return alphabet().toInt(permute(convertChar));
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        int x = wrap(c);
-        char convertChar = alphabet().toChar(x);
-        return alphabet().toInt(invert(convertChar));
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        String[] convert = processCycle(_cycles);
-        String buffer = "";
-        for (String i : convert) {
-            if (i.contains(String.valueOf(p))) {
-                buffer = i;
-            }
-        }
-        if (buffer.isEmpty()) {
-            return p;
-        } else if (buffer.charAt(buffer.length() - 1) == p) {
-            return buffer.charAt(0);
-        } else {
-            return buffer.charAt(buffer.indexOf(p) + 1);
-        }
+        return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        String[] convert = processCycle(_cycles);
-        String buffer = "";
-        for (String i : convert) {
-            if (i.contains(String.valueOf(c))) {
-                buffer = i;
-            }
-        }
-        if (buffer.isEmpty()) {
-            return c;
-        } else if (buffer.charAt(0) == c) {
-            return buffer.charAt(buffer.length() - 1);
-        } else {
-            return buffer.charAt(buffer.indexOf(c) - 1);
-        }
+        return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -104,39 +147,31 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        String[] storeCycles = processCycle(_cycles);
-        int cyclesLen = 0;
-        for (String i : storeCycles) {
-            if (i.length() == 1) {
+        for (int i = 0; i < _forward.length; i += 1) {
+            if (_forward[i] == i) {
                 return false;
-            } else {
-                cyclesLen += i.length();
             }
         }
-        return cyclesLen == alphabet().size();
-    }
-
-    /** Helper function: processCycle.
-     * @param cycles which is the cycles of a Permutation.
-     * @return result
-     * */
-    public static String[] processCycle(String cycles) {
-        if (cycles.contains(" ")) {
-            cycles = cycles.replaceAll(" ", "");
-            String[] result = cycles.split("\\)\\(");
-            result[0] = result[0].substring(1);
-            int last = result.length - 1;
-            result[last] = result[last].substring(0, result[last].length() - 1);
-            return result;
-        } else {
-            cycles = cycles.replaceAll("\\(", "");
-            cycles = cycles.replaceAll("\\)", "");
-            String[] result = {cycles};
-            return result;
-        }
+        return true;
+    }
+
+    /** Return a hash code of my mapping, the same for all permutations
+     *  that map alike. */
+    int mappingHash() {
+        return Arrays.hashCode(_forward);
+    }
+
+    /** Return true iff I map every index as OTHER does. */
+    boolean sameMapping(Permutation other) {
+        return Arrays.equals(_forward, other._forward);
     }
+
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
     /** Cycles of this permutation. */
     private String _cycles;
+    /** Image of each index under this permutation. */
+    private final int[] _forward;
+    /** Image of each index under the inverse of this permutation. */
+    private final int[] _inverse;
 }
@@ -87,10 +87,4 @@ public class PermutationTest {
         assertFalse(perm1.derangement());
         assertTrue(perm2.derangement());
     }
-    @Test
-    public void testProcessCycle() {
-        String cycles = "(ABCDE) (GH) (F)";
-        String[] expected = {"ABCDE", "GH", "F"};
-        assertArrayEquals(expected, Permutation.processCycle(cycles));
-    }
 }
@@ -0,0 +1,43 @@
+package enigma;
+
+import java.util.Random;
+
+/** Measures the time to set a machine's rotors for a given offset into
+ *  a message with Machine.skip, at offsets from a thousand to a
+ *  trillion characters, against stepping there where that is feasible.
+ *  Usage:
+ *      java enigma.RangeBenchmark
+ *  @author Kevin Li
+ */
+class RangeBenchmark {
+
+    /** Run the benchmark. */
+    public static void main(String... args) {
+        Random random = new Random(42);
+        Config config =
+            ConfigParser.parseConfig(ParseBenchmark.makeConfig(12, random));
+        Machine machine = config.newMachine();
+        SettingsCache cache = new SettingsCache(config, 1);
+        String settings = "* R0 R2 R4 R5 R6 AXLE QEVJ (AB)";
+        for (long offset = 1000; offset <= 1_000_000_000_000L;
+             offset *= 1000) {
+            long steps = offset;
+            long t = Bench.best(1000, 1000, () -> {
+                cache.apply(machine, settings, 1);
+                machine.skip(steps);
+                Bench.sink += machine.rotor(1).setting();
+            });
+            Bench.report("skip " + offset, t, 1, "ranges");
+            if (offset <= 1_000_000) {
+                t = Bench.best(3, 5, () -> {
+                    cache.apply(machine, settings, 1);
+                    for (long s = 0; s < steps; s += 1) {
+                        machine.step();
+                    }
+                    Bench.sink += machine.rotor(1).setting();
+                });
+                Bench.report("step " + offset, t, 1, "ranges");
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package enigma;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static enigma.EnigmaException.*;
+
+/** Converts a slice of a long single-key message held in a file, without
+ *  converting what precedes it.  The file holds the message one byte per
+ *  character with no whitespace, so that character k is at offset k.
+ *  Only the slice is mapped and read, and the machine's rotors are
+ *  set for the slice's start by Machine.skip, so the cost depends on the
+ *  slice's length and not on where it lies.  Machines whose notches
+ *  Machine.skip cannot count are refused slices starting past
+ *  Odometer.MAX_STEPPED rather than stepped there one at a time.  A
+ *  slice is converted by FlatEngine: calibrating engines would cost more
+ *  than a single slice gains from the choice.
+ *  @author Kevin Li
+ */
+class RangeDecoder {
+
+    /** Not instantiable. */
+    private RangeDecoder() {
+    }
+
+    /** Return the conversion of characters START (inclusive) to END
+     *  (exclusive) of the message in FILE, encrypted on a machine for
+     *  CONFIG set up by the settings line SETTINGS.  Refuses a START that
+     *  the machine would take too long to reach (see Odometer). */
+    static String convert(Config config, String settings, Path file,
+                          long start, long end) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            if (start < 0 || start > end || end > channel.size()) {
+                throw error("range %d-%d is outside the %d characters of %s",
+                            start, end, channel.size(), file);
+            } else if (end - start > Integer.MAX_VALUE) {
+                throw error("range too long");
+            }
+            Machine machine = config.newMachine();
+            new SettingsCache(config, 1).apply(machine, settings, 1);
+            machine.setEngine(new FlatEngine());
+            machine.skip(start);
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY,
+                                           start, end - start);
+            Alphabet alphabet = config.alphabet();
+            int[] text = new int[(int) (end - start)];
+            for (int i = 0; i < text.length; i += 1) {
+                char ch = (char) (bytes.get(i) & 0xff);
+                text[i] = alphabet.indexOf(Character.toUpperCase(ch));
+                if (text[i] < 0) {
+                    throw error("'%c' at offset %d is not in the alphabet",
+                                ch, start + i);
+                }
+            }
+            machine.convert(text, 0, text.length);
+            StringBuilder result = new StringBuilder(text.length);
+            for (int c : text) {
+                result.append(alphabet.toChar(c));
+            }
+            return result.toString();
+        }
+    }
+}
@@ -13,11 +13,24 @@ class Reflector extends FixedRotor {
         super(name, perm);
     }
 
+    /** A reflector named NAME with permutation PERM, reading its
+     *  conversions from entry K of TABLES. */
+    Reflector(String name, Permutation perm, RotorTables tables, int k) {
+        super(name, perm, tables, k);
+    }
+
     @Override
     boolean reflecting() {
         return true;
     }
 
+    @Override
+    void setRing(int ring) {
+        if (ring != 0) {
+            throw error("reflector has no ring setting");
+        }
+    }
+
     @Override
     void set(int posn) {
         if (posn != 0) {
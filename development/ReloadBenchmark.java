@@ -0,0 +1,138 @@
+package enigma;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** Measures configuration hot reload in a Daemon: the cost of looking up
+ *  a Config through a ConfigWatcher against a plain map, the time from
+ *  replacing a configuration file to the new Config being served, and the
+ *  latency of 1 KB jobs while nothing changes and while the file is
+ *  replaced every RELOADMILLIS milliseconds.  Usage:
+ *      java enigma.ReloadBenchmark [RELOADS [RELOADMILLIS]]
+ *  @author Kevin Li
+ */
+class ReloadBenchmark {
+
+    /** Run the benchmark as described by ARGS. */
+    public static void main(String... args) throws Exception {
+        int reloads = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        long every = args.length > 1 ? Long.parseLong(args[1]) : 100;
+        Path dir = Files.createTempDirectory("enigma-reload");
+        Random random = new Random(42);
+        String[] texts = {
+            ParseBenchmark.makeConfig(1000, random),
+            ParseBenchmark.makeConfig(1000, random),
+        };
+        Path config = dir.resolve("bench.conf");
+        Files.writeString(config, texts[0]);
+        String configId = "bench.conf", file = config.toString();
+        StringBuilder job = new StringBuilder();
+        while (job.length() < 1024) {
+            for (int i = 0; i < 60; i += 1) {
+                job.append((char) ('A' + random.nextInt(26)));
+            }
+            job.append('\n');
+        }
+        String settings = "* R0 R2 R4 R5 R6 AAAA (AB)";
+        String payload = job.toString();
+
+        Daemon daemon = new Daemon(dir.resolve("enigma.sock"), dir, 1);
+        ConfigWatcher watcher = daemon.configs();
+        ConcurrentHashMap<String, Config> plain = new ConcurrentHashMap<>();
+        plain.put(configId, watcher.get(file));
+        int lookups = 1_000_000;
+        for (int rep = 0; rep < 2; rep += 1) {
+            long t = Bench.best(3, 5, () -> {
+                for (int i = 0; i < lookups; i += 1) {
+                    Bench.sink += watcher.get(file).size();
+                }
+            });
+            Bench.report("watcher lookup", t, lookups, "lookups");
+            t = Bench.best(3, 5, () -> {
+                for (int i = 0; i < lookups; i += 1) {
+                    Bench.sink += plain.get(configId).size();
+                }
+            });
+            Bench.report("plain map lookup", t, lookups, "lookups");
+        }
+
+        for (int i = 0; i < 2000; i += 1) {
+            daemon.run(configId, settings, payload);
+        }
+        report("jobs, no reloads", jobs(daemon, configId, settings, payload,
+                                        reloads * every, null));
+        AtomicBoolean stop = new AtomicBoolean();
+        long[] visible = new long[reloads];
+        long[] published = new long[reloads];
+        Thread editor = new Thread(() -> {
+            try {
+                for (int r = 0; r < reloads; r += 1) {
+                    Thread.sleep(every);
+                    Config before = watcher.get(file);
+                    Path temp = dir.resolve("bench.conf.new");
+                    Files.writeString(temp, texts[(r + 1) % 2]);
+                    long start = System.nanoTime();
+                    Files.move(temp, config,
+                               StandardCopyOption.ATOMIC_MOVE,
+                               StandardCopyOption.REPLACE_EXISTING);
+                    while (watcher.get(file) == before) {
+                        Thread.onSpinWait();
+                    }
+                    visible[r] = System.nanoTime() - start;
+                    published[r] = watcher.lastReloadNanos();
+                }
+            } catch (Exception excp) {
+                throw new RuntimeException(excp);
+            } finally {
+                stop.set(true);
+            }
+        });
+        editor.start();
+        report("jobs, reloading", jobs(daemon, configId, settings, payload,
+                                       Long.MAX_VALUE, stop));
+        editor.join();
+        report("replace to visible", visible);
+        report("notice to published", published);
+        System.out.printf("%d reloads, %d failures%n", watcher.reloads(),
+                          watcher.failures());
+        daemon.close();
+    }
+
+    /** Return the latencies of jobs (CONFIGID, SETTINGS, PAYLOAD) run on
+     *  DAEMON for MILLIS milliseconds or until STOP (if not null) is
+     *  set. */
+    private static long[] jobs(Daemon daemon, String configId,
+                               String settings, String payload, long millis,
+                               AtomicBoolean stop) {
+        long[] latencies = new long[1024];
+        int n = 0;
+        long end = System.nanoTime() + Math.min(millis, 1L << 40) * 1000000;
+        while (stop == null ? System.nanoTime() < end : !stop.get()) {
+            long start = System.nanoTime();
+            daemon.run(configId, settings, payload);
+            if (n == latencies.length) {
+                latencies = Arrays.copyOf(latencies, 2 * n);
+            }
+            latencies[n] = System.nanoTime() - start;
+            n += 1;
+        }
+        return Arrays.copyOf(latencies, n);
+    }
+
+    /** Print the median, 99th-percentile and maximum of LATENCIES, in
+     *  nanoseconds, labelled NAME. */
+    private static void report(String name, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-22s p50 %8.3f ms  p99 %8.3f ms  max %8.3f ms"
+                          + "  (%d)%n", name,
+                          sorted[sorted.length / 2] / 1e6,
+                          sorted[(int) (sorted.length * 0.99)] / 1e6,
+                          sorted[sorted.length - 1] / 1e6, sorted.length);
+    }
+}
@@ -0,0 +1,37 @@
+package enigma;
+
+import java.util.Random;
+
+/** Measures encryption throughput with ring settings "AAAA" against other
+ *  ring settings, to show that rings cost nothing per character.  Usage:
+ *      java enigma.RingBenchmark [CHARS]
+ *  @author Kevin Li
+ */
+class RingBenchmark {
+
+    /** Run the benchmark as described by ARGS. */
+    public static void main(String... args) {
+        int chars = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 22;
+        Random random = new Random(42);
+        Config config =
+            ConfigParser.parseConfig(ParseBenchmark.makeConfig(12, random));
+        StringBuilder text = new StringBuilder(chars);
+        for (int i = 0; i < chars; i += 1) {
+            text.append((char) ('A' + random.nextInt(26)));
+        }
+        String msg = text.toString();
+        StringBuilder out = new StringBuilder(chars);
+        for (String rings : new String[] {"AAAA", "QEVJ", "AAAA", "ZYXW"}) {
+            Machine machine = config.newMachine();
+            SettingsCache cache = new SettingsCache(config, 1);
+            cache.apply(machine, "* R0 R2 R4 R5 R6 AAAA " + rings + " (AB)",
+                        1);
+            long t = Bench.best(3, 5, () -> {
+                out.setLength(0);
+                machine.convert(msg, out);
+                Bench.sink += out.charAt(0);
+            });
+            Bench.report("rings " + rings, t, chars, "chars");
+        }
+    }
+}
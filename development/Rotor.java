@@ -1,5 +1,7 @@
 package enigma;
 
+import java.nio.CharBuffer;
+
 import static enigma.EnigmaException.*;
 
 /** Superclass that represents a rotor in the enigma machine.
@@ -12,6 +14,20 @@ class Rotor {
         _name = name;
         _permutation = perm;
         _offset = 0;
+        _wiring = new HeapWiring(perm);
+    }
+
+    /** A rotor named NAME whose permutation is PERM, which is rotor #K of
+     *  the Config TABLES was made for.  I read my conversions from TABLES
+     *  rather than compiling my own. */
+    Rotor(String name, Permutation perm, RotorTables tables, int k) {
+        if (tables.size() != perm.size()) {
+            throw error("rotor tables are for another alphabet");
+        }
+        _name = name;
+        _permutation = perm;
+        _offset = 0;
+        _wiring = new MappedWiring(perm, tables, k);
     }
 
     /** Return my name. */
@@ -59,20 +75,72 @@ class Rotor {
         _offset = alphabet().toInt(cposn);
     }
 
+    /** Return my ring setting (Ringstellung). */
+    int ring() {
+        return _ring;
+    }
+
+    /** Set ring() to RING, the offset of my wiring relative to my
+     *  alphabet ring.  The ring is folded into my conversion tables here,
+     *  so it costs nothing per character. */
+    void setRing(int ring) {
+        ring = _permutation.wrap(ring);
+        if (ring != _ring) {
+            _ring = ring;
+            _wiring.setRing(ring);
+        }
+    }
+
+    /** Set ring() to character CRING. */
+    void setRing(char cring) {
+        setRing(alphabet().toInt(cring));
+    }
+
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int codeEnter = permutation().permute(p + setting());
+        int q = permutation().wrap(p + setting());
+        int codeEnter = _wiring.forward(q);
         return permutation().wrap(codeEnter - setting());
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int codeEnter = permutation().invert(e + setting());
+        int q = permutation().wrap(e + setting());
+        int codeEnter = _wiring.backward(q);
         return permutation().wrap(codeEnter - setting());
     }
 
+    /** Return my forward conversion table at setting 0: the wiring shifted
+     *  by my ring setting. */
+    int[] forwardTable() {
+        return _wiring.forwardTable();
+    }
+
+    /** Return my backward conversion table at setting 0. */
+    int[] backwardTable() {
+        return _wiring.backwardTable();
+    }
+
+    /** Fill FORWARD and BACKWARD with the conversion tables of PERM at
+     *  ring setting RING. */
+    static void compile(Permutation perm, int ring, int[] forward,
+                        int[] backward) {
+        for (int x = 0; x < forward.length; x += 1) {
+            int y = perm.wrap(perm.permute(x - ring) + ring);
+            forward[x] = y;
+            backward[y] = x;
+        }
+    }
+
+    /** Return a table whose entry p is true iff I have a notch at setting
+     *  p, or null if I have no notches.  The table must not be
+     *  modified. */
+    boolean[] notchTable() {
+        return null;
+    }
+
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
@@ -95,5 +163,146 @@ class Rotor {
     private Permutation _permutation;
     /** _offset is for _setting. */
     private int _offset;
+    /** My ring setting. */
+    private int _ring;
+    /** Where I read my conversions. */
+    private final Wiring _wiring;
+
+    /** The conversion tables of a rotor at its current ring setting.  The
+     *  heap and mapped sources are separate classes so that a rotor's
+     *  conversions carry no test of which one it has; a process that
+     *  never maps tables loads only HeapWiring. */
+    private abstract static class Wiring {
+
+        /** Return the forward conversion of Q at setting 0. */
+        abstract int forward(int q);
+
+        /** Return the backward conversion of Q at setting 0. */
+        abstract int backward(int q);
+
+        /** Bring my tables up to date with ring setting RING. */
+        abstract void setRing(int ring);
+
+        /** Return my forward table at setting 0. */
+        abstract int[] forwardTable();
+
+        /** Return my backward table at setting 0. */
+        abstract int[] backwardTable();
+    }
+
+    /** Conversion tables compiled on the heap. */
+    private static final class HeapWiring extends Wiring {
+
+        /** Tables for PERM at ring setting 0. */
+        HeapWiring(Permutation perm) {
+            _perm = perm;
+            _forward = new int[perm.size()];
+            _backward = new int[perm.size()];
+            compile(perm, 0, _forward, _backward);
+        }
+
+        @Override
+        int forward(int q) {
+            return _forward[q];
+        }
+
+        @Override
+        int backward(int q) {
+            return _backward[q];
+        }
+
+        @Override
+        void setRing(int ring) {
+            compile(_perm, ring, _forward, _backward);
+        }
+
+        @Override
+        int[] forwardTable() {
+            return _forward;
+        }
+
+        @Override
+        int[] backwardTable() {
+            return _backward;
+        }
+
+        /** The permutation compiled. */
+        private final Permutation _perm;
+        /** Permutation shifted by the ring setting. */
+        private final int[] _forward;
+        /** Inverse of _forward. */
+        private final int[] _backward;
+    }
+
+    /** Conversion tables read from a RotorTables mapping.  Heap copies
+     *  are made only for callers of forwardTable and backwardTable, which
+     *  include every engine but RotorEngine, and are kept up to date from
+     *  then on. */
+    private static final class MappedWiring extends Wiring {
+
+        /** Tables of PERM, rotor #K of the Config TABLES was made for, at
+         *  ring setting 0. */
+        MappedWiring(Permutation perm, RotorTables tables, int k) {
+            _size = perm.size();
+            _mapped = tables.tables();
+            _base = tables.offset(k, 0);
+            _at = _base;
+        }
+
+        @Override
+        int forward(int q) {
+            return _mapped.get(_at + q);
+        }
+
+        @Override
+        int backward(int q) {
+            return _mapped.get(_at + _size + q);
+        }
+
+        @Override
+        void setRing(int ring) {
+            _at = _base + 2 * _size * ring;
+            if (_forward != null) {
+                copy();
+            }
+        }
+
+        @Override
+        int[] forwardTable() {
+            if (_forward == null) {
+                _forward = new int[_size];
+                _backward = new int[_size];
+                copy();
+            }
+            return _forward;
+        }
+
+        @Override
+        int[] backwardTable() {
+            forwardTable();
+            return _backward;
+        }
+
+        /** Copy my current tables from _mapped to the heap. */
+        private void copy() {
+            for (int x = 0; x < _size; x += 1) {
+                _forward[x] = _mapped.get(_at + x);
+                _backward[x] = _mapped.get(_at + _size + x);
+            }
+        }
+
+        /** Alphabet size. */
+        private final int _size;
+        /** Shared mapped tables. */
+        private final CharBuffer _mapped;
+        /** Index in _mapped of my forward table at ring setting 0. */
+        private final int _base;
+        /** Index in _mapped of my forward table at my ring setting. */
+        private int _at;
+        /** Heap copy of my forward table, made on first request. */
+        private int[] _forward;
+        /** Heap copy of my backward table. */
+        private int[] _backward;
+    }
 
 }
@@ -0,0 +1,23 @@
+package enigma;
+
+/** The reference engine: Machine.convert(int) on each character, going
+ *  through each rotor's ring-shifted tables in turn.
+ *  @author Kevin Li
+ */
+class RotorEngine implements EncryptionEngine {
+
+    /** The one instance. */
+    static final RotorEngine INSTANCE = new RotorEngine();
+
+    @Override
+    public String name() {
+        return "rotor";
+    }
+
+    @Override
+    public void convert(Machine M, int[] text, int from, int to) {
+        for (int i = from; i < to; i += 1) {
+            text[i] = M.convert(text[i]);
+        }
+    }
+}
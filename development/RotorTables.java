@@ -0,0 +1,167 @@
+package enigma;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** The compiled conversion tables of every rotor of a Config, for every
+ *  ring setting, in a read-only memory-mapped file.  Any number of
+ *  processes on a host can map the same file, sharing one copy of the
+ *  tables through the page cache, and rotors built with a RotorTables
+ *  (see Config.setTables) read their conversions straight from the
+ *  mapping instead of compiling heap copies.  The file is big-endian:
+ *
+ *      header:  int MAGIC, short VERSION, short 0,
+ *               long Config.fingerprint(), int alphabet size n,
+ *               int number of rotors
+ *      tables:  for each rotor k and ring setting r, char[n] forward
+ *               table then char[n] backward table (see
+ *               Rotor.forwardTable), at table index (k * n + r) * 2n.
+ *
+ *  Alphabets are limited to 65536 characters and a file to 2^31 table
+ *  entries.  Only RotorEngine converts straight from the mapping.  The
+ *  other built-in engines work on int[] tables (Rotor.forwardTable), so
+ *  under them each rotor in a machine's slots still gets a heap copy of
+ *  its two tables, 8n bytes; what the mapping saves is the tables of the
+ *  rest of the catalog.  TablesBenchmark measures both.
+ *  @author Kevin Li
+ */
+class RotorTables {
+
+    /** Identifies a rotor table file: "ENGT". */
+    static final int MAGIC = 0x454e4754;
+    /** Current format version. */
+    static final short VERSION = 1;
+    /** Size of the header in bytes. */
+    static final int HEADER = 24;
+
+    /** Return the tables for CONFIG in FILE, first writing FILE if it
+     *  does not exist.  Several processes may race to write it; each
+     *  writes a private temporary file and links it into place, which
+     *  fails rather than replace a FILE another process linked first, so
+     *  FILE is always either absent or complete and is never rewritten
+     *  under a process that has it mapped. */
+    static RotorTables map(Config config, Path file) throws IOException {
+        try {
+            return open(config, file);
+        } catch (NoSuchFileException excp) {
+            /* Write it below. */
+        }
+        Path dir = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, ".tables", ".tmp");
+        try {
+            write(config, temp);
+            Files.createLink(file, temp);
+        } catch (FileAlreadyExistsException excp) {
+            /* Another process got there first. */
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return open(config, file);
+    }
+
+    /** Write the tables of every rotor of CONFIG to FILE. */
+    static void write(Config config, Path file) throws IOException {
+        int n = config.alphabet().size();
+        long entries = 2L * n * n * config.size();
+        if (n > Character.MAX_VALUE + 1 || entries > Integer.MAX_VALUE) {
+            throw error("configuration too large for a rotor table file");
+        }
+        try (FileChannel channel = FileChannel.open(file,
+                 StandardOpenOption.CREATE, StandardOpenOption.READ,
+                 StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+                                            0, HEADER + 2 * entries);
+            buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0)
+                .putLong(config.fingerprint()).putInt(n)
+                .putInt(config.size());
+            CharBuffer tables = buffer.asCharBuffer();
+            int[] forward = new int[n], backward = new int[n];
+            for (int k = 0; k < config.size(); k += 1) {
+                Permutation perm = config.permutation(k);
+                for (int ring = 0; ring < n; ring += 1) {
+                    Rotor.compile(perm, ring, forward, backward);
+                    for (int x = 0; x < n; x += 1) {
+                        tables.put((char) forward[x]);
+                    }
+                    for (int x = 0; x < n; x += 1) {
+                        tables.put((char) backward[x]);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Return the tables in FILE, which must have been written for
+     *  CONFIG. */
+    static RotorTables open(Config config, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            int n = config.alphabet().size();
+            long size = HEADER + 4L * n * n * config.size();
+            if (channel.size() != size) {
+                throw error("%s is not a rotor table file for this"
+                            + " configuration", file);
+            }
+            ByteBuffer buffer =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC) {
+                throw error("%s is not a rotor table file", file);
+            } else if (buffer.getShort() != VERSION) {
+                throw error("unsupported rotor table file version");
+            }
+            buffer.getShort();
+            if (buffer.getLong() != config.fingerprint()
+                || buffer.getInt() != n || buffer.getInt() != config.size()) {
+                throw error("%s was made for another configuration", file);
+            }
+            return new RotorTables(config, buffer.asCharBuffer());
+        }
+    }
+
+    /** Tables for CONFIG held in TABLES. */
+    private RotorTables(Config config, CharBuffer tables) {
+        _fingerprint = config.fingerprint();
+        _size = config.alphabet().size();
+        _tables = tables;
+    }
+
+    /** Return the fingerprint of the Config I was made for. */
+    long fingerprint() {
+        return _fingerprint;
+    }
+
+    /** Return the size of my alphabet. */
+    int size() {
+        return _size;
+    }
+
+    /** Return all my tables.  Only absolute gets may be used on the
+     *  result, which is shared. */
+    CharBuffer tables() {
+        return _tables;
+    }
+
+    /** Return the index in tables() of the forward table of rotor #K at
+     *  ring setting RING.  Its backward table follows at index
+     *  offset(K, RING) + size(). */
+    int offset(int k, int ring) {
+        return (k * _size + ring) * 2 * _size;
+    }
+
+    /** Fingerprint of my Config. */
+    private final long _fingerprint;
+    /** Alphabet size. */
+    private final int _size;
+    /** The mapped tables. */
+    private final CharBuffer _tables;
+}
@@ -0,0 +1,85 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/** The suite of all JUnit tests for the RotorTables class.
+ *  @author Kevin Li
+ */
+public class RotorTablesTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Temporary files, deleted after each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testMappedRotorsAgree() throws IOException {
+        WorkloadGenerator gen = new WorkloadGenerator(
+            "messages=20,naval=false,slots=6,pawls=3,alphabet=40");
+        Config plain = ConfigParser.parseConfig(gen.config());
+        Config mapped = ConfigParser.parseConfig(gen.config());
+        Path file = tmp.newFolder("tables").toPath().resolve("t");
+        mapped.setTables(RotorTables.map(mapped, file));
+        assertEquals(RotorTables.HEADER + 4L * 40 * 40 * mapped.size(),
+                     Files.size(file));
+        RotorTables again = RotorTables.map(plain, file);
+        assertEquals(plain.fingerprint(), again.fingerprint());
+        String input = gen.input();
+        for (EncryptionEngine engine : Engines.available()) {
+            Machine expected = plain.newMachine();
+            Machine actual = mapped.newMachine();
+            actual.setEngine(engine);
+            for (String line : input.split("\n")) {
+                if (Main.isSettingsLine(line)) {
+                    new SettingsCache(plain, 1).apply(expected, line, 1);
+                    new SettingsCache(mapped, 1).apply(actual, line, 1);
+                } else {
+                    String msg = line.replace(" ", "");
+                    assertEquals(engine.name(), expected.convert(msg),
+                                 actual.convert(msg));
+                }
+            }
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testOtherConfig() throws IOException {
+        WorkloadGenerator gen = new WorkloadGenerator("messages=1");
+        Config config = ConfigParser.parseConfig(gen.config());
+        Path file = tmp.newFolder("tables").toPath().resolve("t");
+        RotorTables.map(config, file);
+        Config other = ConfigParser.parseConfig(
+            gen.config().replaceFirst(" M", " MA"));
+        RotorTables.open(other, file);
+    }
+
+    @Test
+    public void testDoesNotReplaceExistingFile() throws IOException {
+        WorkloadGenerator gen = new WorkloadGenerator("messages=1");
+        Config config = ConfigParser.parseConfig(gen.config());
+        Path dir = tmp.newFolder("tables").toPath();
+        Path file = dir.resolve("t");
+        Files.writeString(file, "not tables");
+        try {
+            RotorTables.map(config, file);
+            fail("mapped a file that is not a rotor table file");
+        } catch (EnigmaException excp) {
+            assertEquals("not tables", Files.readString(file));
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package enigma;
+
+/** An engine for machines with very many rotors.  It keeps a segment
+ *  tree over the rotors between the reflector and the rightmost rotor:
+ *  each leaf holds the forward and inverse mapping of one rotor at its
+ *  current setting and each inner node the composition of its children,
+ *  so the root maps a character through all of them in one lookup.  When
+ *  one of those rotors advances, only its leaf and the leaf's ancestors
+ *  are recomputed.  The rightmost rotor, which advances on every
+ *  character, is applied directly, as is the reflector.
+ *
+ *  Stepping also avoids looking at every rotor: the engine keeps the set
+ *  of rotors that are at a notch with a rotating left neighbor, and
+ *  updates it only for the rotors that move.  Per character, the cost is
+ *  then independent of the number of rotors except when a rotor other
+ *  than the rightmost moves, which costs O(alphabet size * log(number
+ *  of rotors)).
+ *
+ *  The tree is kept with the Machine (see Machine.engineState) and
+ *  checked against the machine's rotors, settings and rings at the start
+ *  of each call, so only what changed between calls is recomputed.
+ *  @author Kevin Li
+ */
+class SegmentTreeEngine implements EncryptionEngine {
+
+    @Override
+    public String name() {
+        return "tree";
+    }
+
+    @Override
+    public boolean supports(Machine M) {
+        return M.numRotors() > 2;
+    }
+
+    @Override
+    public void convert(Machine M, int[] text, int from, int to) {
+        Tree tree = M.engineState() instanceof Tree ? (Tree) M.engineState()
+            : null;
+        if (tree == null || tree._slots != M.numRotors()) {
+            tree = new Tree(M);
+            M.setEngineState(tree);
+        }
+        tree.sync(M);
+        tree.convert(M.plugboard(), text, from, to);
+        tree.store(M);
+    }
+
+    /** A segment tree over the middle rotors of one Machine, with the
+     *  stepping state of all its rotors. */
+    private static class Tree {
+
+        /** An empty tree for the rotors of M; sync fills it. */
+        Tree(Machine M) {
+            _slots = M.numRotors();
+            _n = M.alphabet().size();
+            _leaves = _slots - 2;
+            int m = 1;
+            while (m < _leaves) {
+                m *= 2;
+            }
+            _m = m;
+            _forward = new int[2 * m * _n];
+            _inverse = new int[2 * m * _n];
+            for (int p = 1; p < 2 * m; p += 1) {
+                for (int x = 0; x < _n; x += 1) {
+                    _forward[p * _n + x] = _inverse[p * _n + x] = x;
+                }
+            }
+            _rotors = new Rotor[_slots];
+            _rings = new int[_slots];
+            _pos = new int[_slots];
+            _tables = new int[_slots][];
+            _backTables = new int[_slots][];
+            _notch = new boolean[_slots][];
+            _rotates = new boolean[_slots];
+            _armed = new boolean[_slots];
+            _armedList = new int[_slots];
+            _moved = new int[2 * _slots + 1];
+        }
+
+        /** Bring me up to date with the rotors of M, recomputing the
+         *  leaves whose rotor, setting or ring changed. */
+        void sync(Machine M) {
+            boolean changed = false;
+            for (int i = 0; i < _slots; i += 1) {
+                Rotor r = M.rotor(i);
+                if (r != _rotors[i] || r.setting() != _pos[i]
+                    || r.ring() != _rings[i]) {
+                    _rotors[i] = r;
+                    _pos[i] = r.setting();
+                    _rings[i] = r.ring();
+                    _tables[i] = r.forwardTable();
+                    _backTables[i] = r.backwardTable();
+                    _notch[i] = r.notchTable();
+                    _rotates[i] = r.rotates();
+                    if (i > 0 && i < _slots - 1) {
+                        setLeaf(i);
+                    }
+                    changed = true;
+                }
+            }
+            if (changed) {
+                _armedCount = 0;
+                for (int i = 2; i < _slots; i += 1) {
+                    _armed[i] = false;
+                    arm(i);
+                }
+            }
+        }
+
+        /** Write my rotor settings back to M. */
+        void store(Machine M) {
+            for (int i = 1; i < _slots; i += 1) {
+                M.rotor(i).set(_pos[i]);
+            }
+        }
+
+        /** Convert TEXT[FROM .. TO-1] in place with plugboard PLUGBOARD. */
+        void convert(Permutation plugboard, int[] text, int from, int to) {
+            int last = _slots - 1, n = _n;
+            int root = _n;
+            for (int k = from; k < to; k += 1) {
+                step();
+                int[] right = _tables[last];
+                int[] refl = _tables[0];
+                int s = _pos[last], r = _pos[0];
+                int x = plugboard.permute(text[k]);
+                x = wrap(right[wrap(x + s, n)] - s, n);
+                x = _forward[root + x];
+                x = wrap(refl[wrap(x + r, n)] - r, n);
+                x = _inverse[root + x];
+                x = wrap(_backTables[last][wrap(x + s, n)] - s, n);
+                text[k] = plugboard.permute(x);
+            }
+        }
+
+        /** Advance the rotors as Machine.step does, updating the tree for
+         *  any middle rotor that moves. */
+        private void step() {
+            int last = _slots - 1;
+            int moved = 0;
+            _moved[moved++] = last;
+            for (int a = 0; a < _armedCount; a += 1) {
+                int i = _armedList[a];
+                if (i != last) {
+                    _moved[moved++] = i;
+                }
+                _moved[moved++] = i - 1;
+            }
+            for (int j = 0; j < moved; j += 1) {
+                int i = _moved[j];
+                boolean dup = false;
+                for (int q = 0; q < j && !dup; q += 1) {
+                    dup = _moved[q] == i;
+                }
+                if (dup || !_rotates[i]) {
+                    continue;
+                }
+                _pos[i] = _pos[i] + 1 == _n ? 0 : _pos[i] + 1;
+                if (i > 0 && i < last) {
+                    setLeaf(i);
+                }
+            }
+            for (int j = 0; j < moved; j += 1) {
+                int i = _moved[j];
+                if (i >= 2) {
+                    arm(i);
+                }
+            }
+        }
+
+        /** Update whether rotor I is armed: at a notch with a rotating left
+         *  neighbor, so that it and that neighbor advance on the next
+         *  step. */
+        private void arm(int i) {
+            boolean armed = _notch[i] != null && _notch[i][_pos[i]]
+                && _rotates[i - 1];
+            if (armed == _armed[i]) {
+                return;
+            }
+            _armed[i] = armed;
+            if (armed) {
+                _armedList[_armedCount++] = i;
+            } else {
+                for (int a = 0; a < _armedCount; a += 1) {
+                    if (_armedList[a] == i) {
+                        _armedList[a] = _armedList[--_armedCount];
+                        break;
+                    }
+                }
+            }
+        }
+
+        /** Recompute the leaf for the rotor in slot I (0 < I < _slots - 1)
+         *  and its ancestors. */
+        private void setLeaf(int i) {
+            int n = _n, s = _pos[i];
+            int[] table = _tables[i];
+            int p = _m + i - 1;
+            int base = p * n;
+            for (int x = 0; x < n; x += 1) {
+                int y = wrap(table[wrap(x + s, n)] - s, n);
+                _forward[base + x] = y;
+                _inverse[base + y] = x;
+            }
+            for (p >>= 1; p > 0; p >>= 1) {
+                int left = 2 * p * n, right = left + n;
+                base = p * n;
+                for (int x = 0; x < n; x += 1) {
+                    int y = _forward[left + _forward[right + x]];
+                    _forward[base + x] = y;
+                    _inverse[base + y] = x;
+                }
+            }
+        }
+
+        /** Return P modulo N, for -N < P < 2N. */
+        private static int wrap(int p, int n) {
+            return p < 0 ? p + n : p >= n ? p - n : p;
+        }
+
+        /** Number of slots, alphabet size, number of leaves in use and
+         *  number of leaves in the tree (a power of two). */
+        private final int _slots, _n, _leaves, _m;
+        /** Forward and inverse mapping of each tree node p, at
+         *  [p * _n, (p + 1) * _n); node 1 is the root and node _m + k the
+         *  leaf for slot k + 1. */
+        private final int[] _forward, _inverse;
+        /** Rotor in each slot when last synchronized. */
+        private final Rotor[] _rotors;
+        /** Ring setting and current setting of each slot's rotor. */
+        private final int[] _rings, _pos;
+        /** Ring-shifted forward and backward tables of each slot's
+         *  rotor. */
+        private final int[][] _tables, _backTables;
+        /** Notch table of each slot's rotor, or null. */
+        private final boolean[][] _notch;
+        /** True for slots whose rotor rotates. */
+        private final boolean[] _rotates;
+        /** True for armed slots (see arm). */
+        private final boolean[] _armed;
+        /** The armed slots, in _armedList[0 .. _armedCount-1]. */
+        private final int[] _armedList;
+        /** Number of armed slots. */
+        private int _armedCount;
+        /** Scratch list of the slots moving in a step. */
+        private final int[] _moved;
+    }
+}
@@ -0,0 +1,53 @@
+package enigma;
+
+/** The parsed form of a settings line: which rotors go in which slots,
+ *  their initial positions and ring settings, and the plugboard.
+ *  @author Kevin Li
+ */
+class Settings {
+
+    /** Settings placing rotors ROTORS (indices into a Config, leftmost
+     *  first) at POSITIONS with ring settings RINGS, with plugboard
+     *  PLUGBOARD. */
+    Settings(int[] rotors, String positions, String rings,
+             Permutation plugboard) {
+        _rotors = rotors;
+        _positions = positions;
+        _rings = rings;
+        _plugboard = plugboard;
+    }
+
+    /** Return the Config index of the rotor in slot K. */
+    int rotor(int k) {
+        return _rotors[k];
+    }
+
+    /** Return the number of slots named. */
+    int numRotors() {
+        return _rotors.length;
+    }
+
+    /** Return the initial positions of the non-reflector rotors. */
+    String positions() {
+        return _positions;
+    }
+
+    /** Return the ring settings of the non-reflector rotors. */
+    String rings() {
+        return _rings;
+    }
+
+    /** Return the plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Config indices of the rotors, by slot. */
+    private final int[] _rotors;
+    /** Initial positions, as characters of the alphabet. */
+    private final String _positions;
+    /** Ring settings, as characters of the alphabet. */
+    private final String _rings;
+    /** Plugboard permutation. */
+    private final Permutation _plugboard;
+}
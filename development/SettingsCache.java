@@ -0,0 +1,199 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded, least-recently-used cache of validated settings lines for
+ *  machines built from one Config.  Lines are keyed by their normalized
+ *  text without the rotor positions, so the same rotor arrangement, ring
+ *  settings and plugboard with different starting positions share an
+ *  entry.  On a hit, setting up a machine costs one hash lookup plus
+ *  setting the rotor positions; the rotor names are not looked up or
+ *  checked again and the plugboard is not recompiled.  Not thread-safe:
+ *  use one cache per thread.
+ *  @author Kevin Li
+ */
+class SettingsCache {
+
+    /** Default maximum number of entries. */
+    static final int DEFAULT_CAPACITY = 1024;
+
+    /** A cache for machines built from CONFIG holding at most CAPACITY
+     *  entries. */
+    SettingsCache(Config config, int capacity) {
+        _config = config;
+        _capacity = capacity;
+        _entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> e) {
+                if (size() > _capacity) {
+                    _evictions += 1;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** Set M, built from my Config, according to LINE, which is line
+     *  LINENUMBER of the input. */
+    void apply(Machine M, String line, int lineNumber) {
+        _key.setLength(0);
+        int positions = normalize(line);
+        Entry entry = positions < 0 ? null : _entries.get(_key.toString());
+        if (entry == null) {
+            _misses += 1;
+            Settings settings =
+                ConfigParser.parseSettings(line, lineNumber, _config);
+            entry = new Entry(Main.validate(_config, M, settings),
+                              settings.rings(), settings.plugboard());
+            if (positions >= 0) {
+                _entries.put(_key.toString(), entry);
+            }
+            M.insertFrozenRotors(entry._rotors);
+            M.setRings(entry._rings);
+            M.setRotors(settings.positions());
+        } else {
+            _hits += 1;
+            M.insertFrozenRotors(entry._rotors);
+            M.setRings(entry._rings);
+            M.setRotors(checkPositions(line, positions, lineNumber));
+        }
+        M.setPlugboard(entry._plugboard);
+    }
+
+    /** Return the number of lookups that found an entry. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that did not. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Return the number of entries dropped to respect the capacity. */
+    long evictions() {
+        return _evictions;
+    }
+
+    /** Return the fraction of lookups that found an entry. */
+    double hitRate() {
+        long total = _hits + _misses;
+        return total == 0 ? 0.0 : (double) _hits / total;
+    }
+
+    /** Return the number of entries. */
+    int size() {
+        return _entries.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("settings cache: %d hits, %d misses (%.1f%%),"
+                             + " %d entries, %d evictions", _hits, _misses,
+                             100 * hitRate(), size(), _evictions);
+    }
+
+    /** Append the normalized form of LINE, without its positions token, to
+     *  _key: words are upper-cased, cycles lose their whitespace and
+     *  tokens are separated by single blanks.  Returns the index in LINE of
+     *  the positions token, or -1 if LINE is too short to have one or is
+     *  malformed, leaving ConfigParser to report the error.  Tokens are
+     *  as ConfigLexer defines them, but are scanned here directly so that
+     *  a hit allocates nothing but the key. */
+    private int normalize(String line) {
+        int positions = -1, n = line.length(), i = 0;
+        for (int k = 0; true; k += 1) {
+            while (i < n && Character.isWhitespace(line.charAt(i))) {
+                i += 1;
+            }
+            if (i == n) {
+                return positions;
+            }
+            char ch = line.charAt(i);
+            if (ch == ')') {
+                return -1;
+            } else if (ch == '(') {
+                _key.append('(');
+                for (i += 1; i < n && line.charAt(i) != ')'; i += 1) {
+                    ch = line.charAt(i);
+                    if (ch == '(' || ch == '\n') {
+                        return -1;
+                    } else if (!Character.isWhitespace(ch)) {
+                        _key.append(ch);
+                    }
+                }
+                if (i == n) {
+                    return -1;
+                }
+                _key.append(')');
+                i += 1;
+            } else {
+                int start = i;
+                while (i < n && !ConfigLexer.isDelimiter(line.charAt(i))) {
+                    i += 1;
+                }
+                if (k == _config.numRotors() + 1) {
+                    positions = start;
+                    continue;
+                }
+                _key.append(' ');
+                for (int j = start; j < i; j += 1) {
+                    _key.append(Character.toUpperCase(line.charAt(j)));
+                }
+            }
+        }
+    }
+
+    /** Return the positions token starting at index START of LINE, which is
+     *  line LINENUMBER of the input, after checking it. */
+    private String checkPositions(String line, int start, int lineNumber) {
+        int end = start;
+        while (end < line.length() && line.charAt(end) != '('
+               && !Character.isWhitespace(line.charAt(end))) {
+            end += 1;
+        }
+        if (end - start != _config.numRotors() - 1) {
+            throw EnigmaException.error("%d:%d: Wrong setting length",
+                                        lineNumber, start + 1);
+        }
+        for (int i = start; i < end; i += 1) {
+            if (!_config.alphabet().contains(line.charAt(i))) {
+                throw EnigmaException.error("%d:%d: Setting out of bounds",
+                                            lineNumber, start + 1);
+            }
+        }
+        return line.substring(start, end);
+    }
+
+    /** A validated rotor arrangement with its ring settings and its
+     *  compiled plugboard. */
+    private static class Entry {
+        /** An entry for rotors named ROTORS with ring settings RINGS and
+         *  plugboard PLUGBOARD. */
+        Entry(String[] rotors, String rings, Permutation plugboard) {
+            _rotors = rotors;
+            _rings = rings;
+            _plugboard = plugboard;
+        }
+
+        /** Rotor names, leftmost first. */
+        private final String[] _rotors;
+        /** Ring settings. */
+        private final String _rings;
+        /** Compiled plugboard. */
+        private final Permutation _plugboard;
+    }
+
+    /** Configuration of the machines I set up. */
+    private final Config _config;
+    /** Maximum number of entries. */
+    private final int _capacity;
+    /** Entries by normalized key, in access order. */
+    private final LinkedHashMap<String, Entry> _entries;
+    /** Scratch buffer for keys. */
+    private final StringBuilder _key = new StringBuilder();
+    /** Lookup counters. */
+    private long _hits, _misses, _evictions;
+}
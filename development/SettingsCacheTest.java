@@ -0,0 +1,128 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SettingsCache class.
+ *  @author Kevin Li
+ */
+public class SettingsCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A naval configuration. */
+    private static final String CONFIG =
+        navalConfig(5, 3, "I MQ", "II ME", "III MV", "IV MJ", "Beta N",
+                    "Gamma N", "B R");
+
+    /** Message converted to compare machines. */
+    private static final String MSG = "FROMHISSHOULDERHIAWATHATOOK";
+
+    /** Return MSG converted by a machine for CONFIG set up from LINE
+     *  without a cache, or the message of the error doing so. */
+    private static String direct(Config config, String line) {
+        Machine M = config.newMachine();
+        try {
+            Settings settings = ConfigParser.parseSettings(line, 3, config);
+            M.insertRotors(Main.validate(config, M, settings));
+            M.setRings(settings.rings());
+            M.setRotors(settings.positions());
+            M.setPlugboard(settings.plugboard());
+            return M.convert(MSG);
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        }
+    }
+
+    /** Return MSG converted by M set up from LINE through CACHE, or the
+     *  message of the error doing so. */
+    private static String cached(SettingsCache cache, Machine M,
+                                 String line) {
+        try {
+            cache.apply(M, line, 3);
+            return M.convert(MSG);
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testCountsHitsAndMisses() {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        Machine M = config.newMachine();
+        SettingsCache cache = new SettingsCache(config, 8);
+        cache.apply(M, "* B Beta I II III AXLE (AQ) (EP)", 1);
+        cache.apply(M, "* B Beta I II III QWER (AQ) (EP)", 2);
+        cache.apply(M, "*  b  beta i ii iii ZZZZ (A Q)(EP)", 3);
+        cache.apply(M, "* B Beta I II IV AXLE (AQ) (EP)", 4);
+        cache.apply(M, "* B Beta I II III AXLE BBBB (AQ) (EP)", 5);
+        assertEquals(2, cache.hits());
+        assertEquals(3, cache.misses());
+        assertEquals(3, cache.size());
+        assertEquals(0.4, cache.hitRate(), 1e-9);
+        assertEquals(0, cache.evictions());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        Machine M = config.newMachine();
+        SettingsCache cache = new SettingsCache(config, 2);
+        String a = "* B Beta I II III AAAA",
+            b = "* B Beta I II IV AAAA",
+            c = "* B Gamma I II IV AAAA";
+        cache.apply(M, a, 1);
+        cache.apply(M, b, 2);
+        cache.apply(M, a, 3);
+        cache.apply(M, c, 4);
+        assertEquals(1, cache.evictions());
+        assertEquals(2, cache.size());
+        cache.apply(M, a, 5);
+        assertEquals(2, cache.hits());
+        cache.apply(M, b, 6);
+        assertEquals(2, cache.hits());
+        assertEquals(4, cache.misses());
+        assertEquals(2, cache.evictions());
+    }
+
+    @Test
+    public void testMatchesUncachedSetup() {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        Machine M = config.newMachine();
+        SettingsCache cache = new SettingsCache(config, 4);
+        String[] lines = {
+            "* B Beta I II III AXLE (AQ) (EP)",
+            "* B Beta I II III QRST (AQ) (EP)",
+            "* b beta i ii iii QRST (aq) (ep)",
+            "* B Beta I II III QRST BCDE (AQ) (EP)",
+            "* B Gamma IV II I ZZZZ",
+            "* B Beta I II III AXL (AQ) (EP)",
+            "* B Beta I II III AXL3 (AQ) (EP)",
+            "* B Beta I II III AXLEE (AQ) (EP)",
+            "* B Beta I II I AXLE (AQ) (EP)",
+            "* B Beta I II V AXLE",
+            "* Beta B I II III AXLE",
+            "* B Beta I II III AXLE (AQ (EP)",
+            "* B Beta I II III AXLE (AQ) (EP) X",
+            "* B Beta I II",
+            "* B Beta I II III AXLE (AQ) (EP)",
+        };
+        for (int pass = 0; pass < 2; pass += 1) {
+            for (String line : lines) {
+                assertEquals(line, direct(config, line),
+                             cached(cache, M, line));
+            }
+        }
+        assertTrue(cache.hits() > 0);
+    }
+}
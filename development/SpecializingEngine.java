@@ -0,0 +1,437 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+/** An engine that compiles a class specialized to each rotor arrangement
+ *  it sees often.  Once rotors, wirings and ring settings are fixed,
+ *  everything about a conversion but the rotor positions and the
+ *  plugboard is constant.  The generated class has the rotor loop
+ *  unrolled into one local variable per position, the notch checks as
+ *  comparisons with constants (dropping those that can never apply), and
+ *  the ring-shifted tables, doubled so that no index needs wrapping, as
+ *  static finals.  It is compiled in memory with the system Java compiler
+ *  and loaded as a hidden class, so the JIT sees a small method with no
+ *  virtual calls and no loops over slots.
+ *
+ *  Compiling takes tens of milliseconds, so an arrangement is converted
+ *  by FlatEngine until it has converted THRESHOLD characters, and only
+ *  the LIMIT arrangements most recently seen are remembered.  Where no
+ *  compiler is available (a bare runtime rather than a JDK) or a compile
+ *  fails, FlatEngine is used throughout.  Engines never picks this
+ *  engine by calibration; it is used only when enigma.engine names it.
+ *  @author Kevin Li
+ */
+class SpecializingEngine implements EncryptionEngine {
+
+    /** Characters an arrangement converts before it is compiled. */
+    static final long THRESHOLD = 1 << 16;
+    /** Number of arrangements remembered; the least recently seen beyond
+     *  these are forgotten, with their kernels. */
+    static final int LIMIT = 4096;
+
+    @Override
+    public String name() {
+        return "specialized";
+    }
+
+    /** I am never calibrated: a sample too short to compile a kernel
+     *  would time only FlatEngine, and one long enough would run the
+     *  compiler at every start. */
+    @Override
+    public boolean calibrated() {
+        return false;
+    }
+
+    @Override
+    public void convert(Machine M, int[] text, int from, int to) {
+        Arrangement arr = arrangement(M);
+        MethodHandle kernel = arr.kernel(M, to - from);
+        if (kernel == null) {
+            FALLBACK.convert(M, text, from, to);
+            return;
+        }
+        int slots = M.numRotors();
+        int[] pos = arr._pos;
+        for (int i = 0; i < slots; i += 1) {
+            pos[i] = M.rotor(i).setting();
+        }
+        try {
+            kernel.invokeExact(pos, arr.plugboard(M), text, from, to);
+        } catch (Throwable excp) {
+            throw new IllegalStateException(excp);
+        }
+        for (int i = 0; i < slots; i += 1) {
+            M.rotor(i).set(pos[i]);
+        }
+    }
+
+    /** Return the number of arrangements compiled so far. */
+    static int compiled() {
+        return NUM_COMPILED.get();
+    }
+
+    /** Return the arrangement of M, kept as its engine state. */
+    private static Arrangement arrangement(Machine M) {
+        Arrangement arr = M.engineState() instanceof Arrangement
+            ? (Arrangement) M.engineState() : null;
+        if (arr == null || !arr.matches(M)) {
+            arr = new Arrangement(M);
+            M.setEngineState(arr);
+        }
+        return arr;
+    }
+
+    /** The rotors, ring settings and plugboard of a Machine when last
+     *  seen, with the compiled kernel for them once there is one. */
+    private static class Arrangement {
+
+        /** The arrangement of M. */
+        Arrangement(Machine M) {
+            int slots = M.numRotors();
+            _rotors = new Rotor[slots];
+            _rings = new int[slots];
+            _pos = new int[slots];
+            for (int i = 0; i < slots; i += 1) {
+                _rotors[i] = M.rotor(i);
+                _rings[i] = M.rotor(i).ring();
+            }
+            _compiled = COMPILED.computeIfAbsent(new Key(M),
+                                                 k -> new Compiled());
+        }
+
+        /** Return true iff M still has my rotors and ring settings. */
+        boolean matches(Machine M) {
+            for (int i = 0; i < _rotors.length; i += 1) {
+                if (M.rotor(i) != _rotors[i]
+                    || M.rotor(i).ring() != _rings[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Return the kernel for me, or null if it should not be used
+         *  for a conversion of LENGTH characters on M yet. */
+        MethodHandle kernel(Machine M, long length) {
+            return _compiled.kernel(M, length);
+        }
+
+        /** Return the table of M's plugboard. */
+        int[] plugboard(Machine M) {
+            Permutation plugboard = M.plugboard();
+            if (plugboard != _plugboard) {
+                _plugboard = plugboard;
+                _plugTable = new int[plugboard.size()];
+                for (int x = 0; x < _plugTable.length; x += 1) {
+                    _plugTable[x] = plugboard.permute(x);
+                }
+            }
+            return _plugTable;
+        }
+
+        /** Rotor in each slot. */
+        private final Rotor[] _rotors;
+        /** Ring setting of each slot. */
+        private final int[] _rings;
+        /** Scratch positions passed to the kernel. */
+        private final int[] _pos;
+        /** The shared compilation for my source. */
+        private final Compiled _compiled;
+        /** Plugboard whose table is _plugTable. */
+        private Permutation _plugboard;
+        /** Table of _plugboard. */
+        private int[] _plugTable;
+    }
+
+    /** What determines the generated source for a Machine: the
+     *  permutation, ring setting, notches and ratchet of each slot's
+     *  rotor. */
+    private static class Key {
+
+        /** The key for M's current arrangement. */
+        Key(Machine M) {
+            int slots = M.numRotors();
+            _perms = new Permutation[slots];
+            _rings = new int[slots];
+            _notches = new boolean[slots][];
+            _rotates = new boolean[slots];
+            for (int i = 0; i < slots; i += 1) {
+                Rotor r = M.rotor(i);
+                _perms[i] = r.permutation();
+                _rings[i] = r.ring();
+                _notches[i] = r.notchTable();
+                _rotates[i] = r.rotates();
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return Arrays.equals(_perms, other._perms)
+                && Arrays.equals(_rings, other._rings)
+                && Arrays.equals(_rotates, other._rotates)
+                && Arrays.deepEquals(_notches, other._notches);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(_perms) + Arrays.hashCode(_rings);
+        }
+
+        /** Permutation of each slot's rotor, compared by identity. */
+        private final Permutation[] _perms;
+        /** Ring setting of each slot. */
+        private final int[] _rings;
+        /** Notch table of each slot, or null. */
+        private final boolean[][] _notches;
+        /** True for each slot whose rotor rotates. */
+        private final boolean[] _rotates;
+    }
+
+    /** The compilation for one Key, shared by all machines with that
+     *  arrangement. */
+    private static class Compiled {
+
+        /** Count LENGTH more characters converted on M and return the
+         *  kernel, compiling it if this crosses THRESHOLD, or null if there
+         *  is none yet or it cannot be compiled. */
+        MethodHandle kernel(Machine M, long length) {
+            MethodHandle kernel = _kernel;
+            if (kernel != null || _failed) {
+                return kernel;
+            }
+            if (_converted.addAndGet(length) < THRESHOLD) {
+                return null;
+            }
+            synchronized (this) {
+                if (_kernel == null && !_failed) {
+                    _kernel = compile(source(M));
+                    _failed = _kernel == null;
+                    if (!_failed) {
+                        NUM_COMPILED.incrementAndGet();
+                    }
+                }
+                return _kernel;
+            }
+        }
+
+        /** Characters converted before compilation. */
+        private final AtomicLong _converted = new AtomicLong();
+        /** The compiled kernel, or null. */
+        private volatile MethodHandle _kernel;
+        /** True iff compilation was tried and failed. */
+        private volatile boolean _failed;
+    }
+
+    /** Return the source of a class KERNEL with a method
+     *      static void convert(int[] pos, int[] plug, int[] text,
+     *                          int from, int to)
+     *  that converts TEXT[FROM .. TO-1] with M's rotors and ring settings,
+     *  starting at the positions POS (indexed by slot) and leaving the
+     *  final positions there, and the plugboard whose table is PLUG. */
+    static String source(Machine M) {
+        int slots = M.numRotors(), last = slots - 1;
+        int n = M.alphabet().size();
+        boolean[] rotates = new boolean[slots];
+        String[] notch = new String[slots];
+        StringBuilder src = new StringBuilder();
+        src.append("package enigma;\n\nfinal class ").append(KERNEL)
+            .append(" {\n");
+        for (int i = 0; i < slots; i += 1) {
+            Rotor r = M.rotor(i);
+            rotates[i] = r.rotates();
+            table(src, "F" + i, r.forwardTable());
+            table(src, "B" + i, r.backwardTable());
+            notch[i] = notchTest(src, i, r.notchTable());
+        }
+        src.append("    static void convert(int[] pos, int[] plug,"
+                   + " int[] text, int from, int to) {\n");
+        for (int i = 0; i < slots; i += 1) {
+            src.append("        int p").append(i).append(" = pos[")
+                .append(i).append("];\n");
+        }
+        src.append("        for (int k = from; k < to; k += 1) {\n");
+        boolean[] moves = new boolean[slots];
+        moves[last] = rotates[last];
+        for (int i = 1; i < last; i += 1) {
+            String cond = null;
+            if (rotates[i] && notch[i + 1] != null) {
+                cond = notch[i + 1];
+            }
+            if (rotates[i] && i >= 2 && rotates[i - 1]
+                && notch[i] != null) {
+                cond = cond == null ? notch[i] : cond + " || " + notch[i];
+            }
+            if (cond != null) {
+                moves[i] = true;
+                src.append("            boolean a").append(i).append(" = ")
+                    .append(cond).append(";\n");
+            }
+        }
+        for (int i = 1; i <= last; i += 1) {
+            if (moves[i]) {
+                String inc = String.format("p%d = p%d == %d ? 0 : p%d + 1;",
+                                           i, i, n - 1, i);
+                src.append(i == last ? "            " + inc
+                           : "            if (a" + i + ") { " + inc + " }")
+                    .append('\n');
+            }
+        }
+        src.append("            int x = plug[text[k]];\n");
+        for (int i = last; i >= 0; i -= 1) {
+            convertThrough(src, "F" + i, i, n);
+        }
+        for (int i = 1; i <= last; i += 1) {
+            convertThrough(src, "B" + i, i, n);
+        }
+        src.append("            text[k] = plug[x];\n        }\n");
+        for (int i = 1; i <= last; i += 1) {
+            src.append("        pos[").append(i).append("] = p").append(i)
+                .append(";\n");
+        }
+        src.append("    }\n}\n");
+        return src.toString();
+    }
+
+    /** Append to SRC a static final doubled copy of TABLE named NAME. */
+    private static void table(StringBuilder src, String name, int[] table) {
+        src.append("    static final int[] ").append(name).append(" = {");
+        for (int j = 0; j < 2 * table.length; j += 1) {
+            src.append(j % 16 == 0 ? "\n        " : " ")
+                .append(table[j % table.length]).append(',');
+        }
+        src.append("\n    };\n");
+    }
+
+    /** Return a Java expression true iff the rotor in slot I, with notch
+     *  table NOTCHES, is at a notch, appending any table it needs to SRC,
+     *  or null if it has no notches. */
+    private static String notchTest(StringBuilder src, int i,
+                                    boolean[] notches) {
+        if (notches == null) {
+            return null;
+        }
+        StringBuilder test = new StringBuilder();
+        int count = 0;
+        for (int p = 0; p < notches.length; p += 1) {
+            if (notches[p]) {
+                test.append(count == 0 ? "" : " || ").append("p").append(i)
+                    .append(" == ").append(p);
+                count += 1;
+            }
+        }
+        if (count == 0) {
+            return null;
+        } else if (count <= 4) {
+            return "(" + test + ")";
+        }
+        src.append("    static final boolean[] N").append(i).append(" = {");
+        for (int p = 0; p < notches.length; p += 1) {
+            src.append(p % 8 == 0 ? "\n        " : " ").append(notches[p])
+                .append(',');
+        }
+        src.append("\n    };\n");
+        return "N" + i + "[p" + i + "]";
+    }
+
+    /** Append to SRC the conversion of x through doubled table TABLE of
+     *  slot I, over an alphabet of N characters. */
+    private static void convertThrough(StringBuilder src, String table,
+                                       int i, int n) {
+        src.append(String.format("            x = %s[x + p%d] - p%d;"
+                                 + " if (x < 0) { x += %d; }%n",
+                                 table, i, i, n));
+    }
+
+    /** Return a handle on the convert method of the class compiled from
+     *  SOURCE and loaded as a hidden class, or null if that fails. */
+    private static MethodHandle compile(String source) {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JavaFileObject input = new SimpleJavaFileObject(
+            URI.create("string:///enigma/" + KERNEL + ".java"),
+            JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreErrors) {
+                return source;
+            }
+        };
+        try (JavaFileManager files = new ForwardingJavaFileManager<>(
+                 javac.getStandardFileManager(null, null, null)) {
+                @Override
+                public JavaFileObject getJavaFileForOutput(
+                    Location location, String className,
+                    JavaFileObject.Kind kind, FileObject sibling) {
+                    return new SimpleJavaFileObject(
+                        URI.create("bytes:///" + className), kind) {
+                        @Override
+                        public OutputStream openOutputStream() {
+                            return bytes;
+                        }
+                    };
+                }
+            }) {
+            if (!javac.getTask(null, files, d -> { }, List.of("-g:none"),
+                               null, List.of(input)).call()) {
+                return null;
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                .defineHiddenClass(bytes.toByteArray(), true);
+            return lookup.findStatic(lookup.lookupClass(), "convert",
+                                     MethodType.methodType(void.class,
+                                         int[].class, int[].class,
+                                         int[].class, int.class,
+                                         int.class));
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            return null;
+        }
+    }
+
+    /** Simple name of generated classes. */
+    private static final String KERNEL = "SpecializedKernel";
+    /** Engine used before and instead of compilation. */
+    private static final EncryptionEngine FALLBACK = new FlatEngine();
+    /** Compilations by arrangement, least recently seen first. */
+    private static final Map<Key, Compiled> COMPILED =
+        Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                    Map.Entry<Key, Compiled> e) {
+                    return size() > LIMIT;
+                }
+            });
+    /** Number of arrangements compiled. */
+    private static final AtomicInteger NUM_COMPILED = new AtomicInteger();
+}
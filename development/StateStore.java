@@ -0,0 +1,217 @@
+package enigma;
+
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** A compact store for very many machine states built from one Config,
+ *  laid out as parallel primitive arrays rather than as Machine and Rotor
+ *  objects.  For each state it holds the Config index, window position
+ *  and ring setting of the rotor in every slot (one byte each) and the
+ *  number of its plugboard (an int), for 3 * numRotors() + 4 bytes per
+ *  state.  The rotor wirings, notches and plugboards themselves are
+ *  shared by all states.
+ *
+ *  Bulk operations work on ranges of states and follow exactly the
+ *  stepping and conversion rules of Machine.convert.  The alphabet and
+ *  the number of rotors in the Config are limited to 256, and the number
+ *  of slots to 64.
+ *  @author Kevin Li
+ */
+class StateStore {
+
+    /** A store of CAPACITY states for machines built from CONFIG. */
+    StateStore(Config config, int capacity) {
+        int n = config.alphabet().size();
+        if (n > 256 || config.size() > 256 || config.numRotors() > 64) {
+            throw error("configuration too large for a StateStore");
+        }
+        if (capacity < 0
+            || capacity > Integer.MAX_VALUE / config.numRotors()) {
+            throw error("bad StateStore capacity: %d", capacity);
+        }
+        _config = config;
+        _size = n;
+        _slots = config.numRotors();
+        _capacity = capacity;
+        _forward = new int[config.size()][];
+        _backward = new int[config.size()][];
+        _notch = new boolean[config.size()][];
+        _rotates = new boolean[config.size()];
+        for (int k = 0; k < config.size(); k += 1) {
+            Permutation perm = config.permutation(k);
+            _forward[k] = new int[n];
+            _backward[k] = new int[n];
+            _notch[k] = new boolean[n];
+            for (int x = 0; x < n; x += 1) {
+                _forward[k][x] = perm.permute(x);
+                _backward[k][x] = perm.invert(x);
+            }
+            _rotates[k] = config.kind(k) == 'M';
+            for (char ch : config.notches(k).toCharArray()) {
+                _notch[k][config.alphabet().toInt(ch)] = true;
+            }
+        }
+        _rotors = new byte[capacity * _slots];
+        _positions = new byte[capacity * _slots];
+        _rings = new byte[capacity * _slots];
+        _plugs = new int[capacity];
+        addPlugboard(new Permutation("", config.alphabet()));
+    }
+
+    /** Return the configuration of my states. */
+    Config config() {
+        return _config;
+    }
+
+    /** Return the number of states I can hold. */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** Return the number of bytes of per-state storage. */
+    int bytesPerState() {
+        return 3 * _slots + Integer.BYTES;
+    }
+
+    /** Register plugboard PLUGBOARD and return its number.  Plugboard 0 is
+     *  the identity. */
+    int addPlugboard(Permutation plugboard) {
+        int[] table = new int[_size];
+        for (int x = 0; x < _size; x += 1) {
+            table[x] = plugboard.permute(x);
+        }
+        _plugboards.add(table);
+        return _plugboards.size() - 1;
+    }
+
+    /** Set state STATE to the rotors ROTORS (Config indices, reflector
+     *  first), POSITIONS and RINGS (alphabet indices of the non-reflector
+     *  rotors) and plugboard number PLUGBOARD.  RINGS may be null for all
+     *  rings at 0.  The arrangement is assumed to have been validated, as
+     *  by Main.validate or KeySpace. */
+    void set(int state, int[] rotors, int[] positions, int[] rings,
+             int plugboard) {
+        int base = state * _slots;
+        _rotors[base] = (byte) rotors[0];
+        _positions[base] = 0;
+        _rings[base] = 0;
+        for (int i = 1; i < _slots; i += 1) {
+            _rotors[base + i] = (byte) rotors[i];
+            _positions[base + i] = (byte) positions[i - 1];
+            _rings[base + i] = (byte) (rings == null ? 0 : rings[i - 1]);
+        }
+        if (plugboard < 0 || plugboard >= _plugboards.size()) {
+            throw error("no plugboard numbered %d", plugboard);
+        }
+        _plugs[state] = plugboard;
+    }
+
+    /** Store the positions of the non-reflector rotors of STATE in
+     *  POSITIONS. */
+    void positions(int state, int[] positions) {
+        int base = state * _slots;
+        for (int i = 1; i < _slots; i += 1) {
+            positions[i - 1] = _positions[base + i] & 0xff;
+        }
+    }
+
+    /** Advance every state from FROM (inclusive) to TO (exclusive) one
+     *  step, as Machine.convert does before converting a character. */
+    void step(int from, int to) {
+        for (int state = from; state < to; state += 1) {
+            step(state * _slots);
+        }
+    }
+
+    /** Advance each state FROM + k for 0 <= k < TO - FROM and convert the
+     *  character with index IN[k] on it, storing the result in OUT[k]. */
+    void encrypt(int from, int to, byte[] in, byte[] out) {
+        for (int state = from; state < to; state += 1) {
+            int base = state * _slots;
+            step(base);
+            out[state - from] =
+                (byte) convert(base, _plugboards.get(_plugs[state]),
+                               in[state - from] & 0xff);
+        }
+    }
+
+    /** Convert the characters with indices in MSG, in order, on state
+     *  STATE, storing the results in OUT. */
+    void encrypt(int state, byte[] msg, byte[] out) {
+        int base = state * _slots;
+        int[] plug = _plugboards.get(_plugs[state]);
+        for (int i = 0; i < msg.length; i += 1) {
+            step(base);
+            out[i] = (byte) convert(base, plug, msg[i] & 0xff);
+        }
+    }
+
+    /** Advance the state whose slots start at BASE one step. */
+    private void step(int base) {
+        int last = _slots - 1;
+        long advance = 1L << last;
+        for (int i = last; i > 1; i -= 1) {
+            int rotor = _rotors[base + i] & 0xff;
+            if (_notch[rotor][_positions[base + i] & 0xff]
+                && _rotates[rotor]
+                && _rotates[_rotors[base + i - 1] & 0xff]) {
+                advance |= 3L << (i - 1);
+            }
+        }
+        for (int i = 1; advance != 0 && i <= last; i += 1) {
+            if ((advance & (1L << i)) != 0
+                && _rotates[_rotors[base + i] & 0xff]) {
+                int p = (_positions[base + i] & 0xff) + 1;
+                _positions[base + i] = (byte) (p == _size ? 0 : p);
+            }
+        }
+    }
+
+    /** Return the conversion of C through the plugboard PLUG and the rotors
+     *  of the state whose slots start at BASE, without stepping. */
+    private int convert(int base, int[] plug, int c) {
+        int x = plug[c];
+        for (int i = _slots - 1; i > 0; i -= 1) {
+            int d = (_positions[base + i] & 0xff) - (_rings[base + i] & 0xff);
+            x = wrap(_forward[_rotors[base + i] & 0xff][wrap(x + d)] - d);
+        }
+        x = _forward[_rotors[base] & 0xff][x];
+        for (int i = 1; i < _slots; i += 1) {
+            int d = (_positions[base + i] & 0xff) - (_rings[base + i] & 0xff);
+            x = wrap(_backward[_rotors[base + i] & 0xff][wrap(x + d)] - d);
+        }
+        return plug[x];
+    }
+
+    /** Return the value P modulo the alphabet size, for -size() < P <
+     *  2 * size(). */
+    private int wrap(int p) {
+        return p < 0 ? p + _size : p >= _size ? p - _size : p;
+    }
+
+    /** Configuration of my states. */
+    private final Config _config;
+    /** Alphabet size. */
+    private final int _size;
+    /** Number of rotor slots, including the reflector's. */
+    private final int _slots;
+    /** Number of states. */
+    private final int _capacity;
+    /** Wiring of each Config rotor, and its inverse. */
+    private final int[][] _forward, _backward;
+    /** _notch[k][p] is true iff Config rotor k has a notch at position p. */
+    private final boolean[][] _notch;
+    /** _rotates[k] is true iff Config rotor k is a moving rotor. */
+    private final boolean[] _rotates;
+    /** Config index of the rotor in each slot of each state. */
+    private final byte[] _rotors;
+    /** Window position of the rotor in each slot of each state. */
+    private final byte[] _positions;
+    /** Ring setting of the rotor in each slot of each state. */
+    private final byte[] _rings;
+    /** Plugboard number of each state. */
+    private final int[] _plugs;
+    /** Registered plugboards, as tables. */
+    private final ArrayList<int[]> _plugboards = new ArrayList<>();
+}
@@ -0,0 +1,80 @@
+package enigma;
+
+import java.util.Random;
+
+/** Measures the memory used per machine state and the rate at which
+ *  states are stepped and encrypt a character, for a StateStore against
+ *  one Machine object per state.  Usage:
+ *      java enigma.StateStoreBenchmark [STATES]
+ *  @author Kevin Li
+ */
+class StateStoreBenchmark {
+
+    /** Run the benchmark as described by ARGS. */
+    public static void main(String... args) {
+        int states = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 21;
+        Random random = new Random(42);
+        Config config =
+            ConfigParser.parseConfig(ParseBenchmark.makeConfig(12, random));
+        KeySpace keys = new KeySpace(config);
+        int[] rotors = new int[config.numRotors()];
+        int[] positions = new int[config.numRotors() - 1];
+        int[] rings = new int[config.numRotors() - 1];
+
+        long before = usedMemory();
+        StateStore store = new StateStore(config, states);
+        for (int s = 0; s < states; s += 1) {
+            keys.decode(Math.floorMod(random.nextLong(), keys.count()),
+                        rotors, positions);
+            for (int i = 0; i < rings.length; i += 1) {
+                rings[i] = random.nextInt(26);
+            }
+            store.set(s, rotors, positions, rings, 0);
+        }
+        long storeBytes = usedMemory() - before;
+        System.out.printf("store: %d states, %d bytes/state nominal,"
+                          + " %.1f bytes/state measured%n", states,
+                          store.bytesPerState(), (double) storeBytes / states);
+
+        byte[] in = new byte[states], out = new byte[states];
+        for (int i = 0; i < states; i += 1) {
+            in[i] = (byte) random.nextInt(26);
+        }
+        long t = Bench.best(3, 5, () -> store.step(0, states));
+        Bench.report("store step", t, states, "states");
+        t = Bench.best(3, 5, () -> {
+            store.encrypt(0, states, in, out);
+            Bench.sink += out[0];
+        });
+        Bench.report("store encrypt", t, states, "states");
+
+        int objects = Math.min(states, 1 << 17);
+        before = usedMemory();
+        Machine[] machines = new Machine[objects];
+        Permutation plugboard = new Permutation("", config.alphabet());
+        for (int s = 0; s < objects; s += 1) {
+            machines[s] = config.newMachine();
+            keys.apply(Math.floorMod(random.nextLong(), keys.count()),
+                       machines[s], rotors, positions);
+            machines[s].setPlugboard(plugboard);
+        }
+        long objectBytes = usedMemory() - before;
+        System.out.printf("objects: %d machines, %.1f bytes/state measured%n",
+                          objects, (double) objectBytes / objects);
+        t = Bench.best(3, 5, () -> {
+            for (int s = 0; s < objects; s += 1) {
+                Bench.sink += machines[s].convert(in[s]);
+            }
+        });
+        Bench.report("objects encrypt", t, objects, "states");
+    }
+
+    /** Return the heap in use after a garbage collection. */
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i += 1) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,117 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the StateStore class.
+ *  @author Kevin Li
+ */
+public class StateStoreTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A naval configuration with notches placed so that double steps
+     *  happen often. */
+    private static final String CONFIG =
+        navalConfig(5, 3, "I MQ", "II MEV", "III MVZ", "IV MJ", "Beta N",
+                    "B R");
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesMachine() {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        KeySpace keys = new KeySpace(config);
+        StateStore store = new StateStore(config, 50);
+        int plug = store.addPlugboard(new Permutation("(AQ) (EP) (TX)",
+                                                      config.alphabet()));
+        Random random = new Random(7);
+        int[][] rotors = new int[50][5], positions = new int[50][4];
+        int[][] rings = new int[50][4];
+        for (int s = 0; s < 50; s += 1) {
+            keys.decode(Math.floorMod(random.nextLong(), keys.count()),
+                        rotors[s], positions[s]);
+            for (int i = 0; i < 4; i += 1) {
+                rings[s][i] = random.nextInt(26);
+            }
+            store.set(s, rotors[s], positions[s], rings[s], s % 2 * plug);
+        }
+        byte[] msg = new byte[700], out = new byte[700];
+        for (int i = 0; i < msg.length; i += 1) {
+            msg[i] = (byte) random.nextInt(26);
+        }
+        for (int s = 0; s < 50; s += 1) {
+            Machine machine = config.newMachine();
+            String[] names = new String[5];
+            for (int i = 0; i < 5; i += 1) {
+                names[i] = config.name(rotors[s][i]);
+            }
+            machine.insertRotors(names);
+            machine.setRotors(positions[s]);
+            machine.setRings(rings[s]);
+            machine.setPlugboard(new Permutation(s % 2 == 0 ? ""
+                                                 : "(AQ) (EP) (TX)",
+                                                 config.alphabet()));
+            store.encrypt(s, msg, out);
+            for (int i = 0; i < msg.length; i += 1) {
+                assertEquals(msg("testMatchesMachine", "state %d, char %d",
+                                 s, i), machine.convert(msg[i]), out[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testBulkMatchesSingle() {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        KeySpace keys = new KeySpace(config);
+        StateStore bulk = new StateStore(config, 1000),
+            single = new StateStore(config, 1000);
+        int[] rotors = new int[5], positions = new int[4];
+        for (int s = 0; s < 1000; s += 1) {
+            keys.decode(s * 3001L, rotors, positions);
+            bulk.set(s, rotors, positions, null, 0);
+            single.set(s, rotors, positions, null, 0);
+        }
+        byte[] in = new byte[1000], out = new byte[1000];
+        byte[] one = new byte[1];
+        for (int step = 0; step < 30; step += 1) {
+            bulk.step(0, 500);
+            bulk.encrypt(500, 1000, in, out);
+            for (int s = 0; s < 1000; s += 1) {
+                single.encrypt(s, one, one);
+                if (s >= 500) {
+                    assertEquals(one[0], out[s - 500]);
+                }
+                one[0] = 0;
+            }
+        }
+        int[] a = new int[4], b = new int[4];
+        for (int s = 0; s < 1000; s += 1) {
+            bulk.positions(s, a);
+            single.positions(s, b);
+            assertArrayEquals(a, b);
+        }
+    }
+
+    @Test
+    public void testRejectsHugeCapacity() {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        try {
+            new StateStore(config, Integer.MAX_VALUE / 4);
+            fail("allocated more state than an array holds");
+        } catch (EnigmaException excp) {
+            assertEquals("bad StateStore capacity: "
+                         + Integer.MAX_VALUE / 4, excp.getMessage());
+        }
+    }
+}
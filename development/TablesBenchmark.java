@@ -0,0 +1,86 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/** Measures the heap used by, and the time to build, machines over a
+ *  large rotor catalog whose tables are compiled per rotor against ones
+ *  reading shared RotorTables, and encryption throughput with each.  It
+ *  also measures the heap each machine grows by once set up and run
+ *  under FlatEngine, which copies the tables of the rotors in its slots
+ *  to the heap even when they are mapped.
+ *  Usage:
+ *      java enigma.TablesBenchmark [ROTORS [MACHINES]]
+ *  @author Kevin Li
+ */
+class TablesBenchmark {
+
+    /** Run the benchmark as described by ARGS. */
+    public static void main(String... args) throws IOException {
+        int rotors = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int machines = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        Random random = new Random(42);
+        String text = ParseBenchmark.makeConfig(rotors, random);
+        Path file = Files.createTempDirectory("tables").resolve("t");
+        Config plain = ConfigParser.parseConfig(text);
+        Config mapped = ConfigParser.parseConfig(text);
+        long start = System.nanoTime();
+        mapped.setTables(RotorTables.map(mapped, file));
+        System.out.printf("tables: %d bytes, written in %.1f ms%n",
+                          Files.size(file),
+                          (System.nanoTime() - start) / 1e6);
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 1 << 20; i += 1) {
+            msg.append((char) ('A' + random.nextInt(26)));
+        }
+        for (Config config : new Config[] { plain, mapped, plain, mapped }) {
+            String name = config.tables() == null ? "compiled" : "mapped";
+            Machine[] built = new Machine[machines];
+            long before = usedMemory();
+            long t = System.nanoTime();
+            for (int m = 0; m < machines; m += 1) {
+                built[m] = config.newMachine();
+            }
+            t = System.nanoTime() - t;
+            long bytes = usedMemory() - before;
+            System.out.printf("%-8s %8.1f KB/machine %8.2f ms/machine%n",
+                              name, bytes / 1024.0 / machines,
+                              t / 1e6 / machines);
+            SettingsCache cache = new SettingsCache(config, 1);
+            before = usedMemory();
+            for (Machine m : built) {
+                cache.apply(m, SETTINGS, 1);
+                m.setEngine(new FlatEngine());
+                m.convert("A");
+            }
+            bytes = usedMemory() - before;
+            System.out.printf("  %-6s %8.1f KB/machine more under flat%n",
+                              name, bytes / 1024.0 / machines);
+            Machine machine = built[0];
+            machine.setEngine(RotorEngine.INSTANCE);
+            StringBuilder out = new StringBuilder(msg.length());
+            long best = Bench.best(2, 3, () -> {
+                out.setLength(0);
+                machine.convert(msg, out);
+                Bench.sink += out.charAt(0);
+            });
+            Bench.report("  " + name + " convert", best, msg.length(),
+                         "chars");
+            Bench.sink += built.length;
+        }
+    }
+
+    /** Settings line for every machine. */
+    private static final String SETTINGS = "* R0 R2 R4 R5 R6 AAAA QEVJ (AB)";
+
+    /** Return the heap in use after a garbage collection. */
+    static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i += 1) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
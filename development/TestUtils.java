@@ -19,26 +19,30 @@ class TestUtils {
     }
 
     /** The naval rotors in the A (0) setting. */
-    static final HashMap<String, String> NAVALA = new HashMap<>();
-    static {
-        NAVALA.put("I", "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)");
-        NAVALA.put("II", "(FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)");
-        NAVALA.put("III", "(ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)");
-        NAVALA.put("IV", "(AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)");
-        NAVALA.put("V", "(AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)");
-        NAVALA.put("VI", "(AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK) ");
-        NAVALA.put("VII", "(ANOUPFRIMBZTLWKSVEGCJYDHXQ) ");
-        NAVALA.put("VIII", "(AFLSETWUNDHOZVICQ) (BKJ) (GXY) (MPR)");
-        NAVALA.put("Beta", "(ALBEVFCYODJWUGNMQTZSKPR) (HIX)");
-        NAVALA.put("Gamma", "(AFNIRLBSQWVXGUZDKMTPCOYJHE)");
-        NAVALA.put("B",
-                  "(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) "
-                  + "(MP) (RX) (SZ) (TV)");
-        NAVALA.put("C",
-                  "(AR) (BD) (CO) (EJ) (FN) (GT) (HK) (IV) (LM) "
-                  + "(PW) (QZ) (SX) (UY)");
+    static final HashMap<String, String> NAVALA =
+        new HashMap<>(NavalRotors.CYCLES);
+
+    /** Return the text of a configuration over UPPER_STRING with SLOTS
+     *  slots and PAWLS pawls, whose rotors are given by ROTORS: each a
+     *  naval rotor's name and its type and notches (as "I MQ"), followed
+     *  in the text by the rotor's NAVALA wiring. */
+    static String navalConfig(int slots, int pawls, String... rotors) {
+        StringBuilder text = new StringBuilder(UPPER_STRING);
+        text.append(' ').append(slots).append(' ').append(pawls)
+            .append('\n');
+        for (String rotor : rotors) {
+            String name = rotor.substring(0, rotor.indexOf(' '));
+            text.append(rotor).append(' ').append(NAVALA.get(name))
+                .append('\n');
+        }
+        return text.toString();
     }
 
+    /** A naval configuration with five slots, three pawls and the rotors
+     *  I, II, III, Beta and B. */
+    static final String NAVAL_CONFIG =
+        navalConfig(5, 3, "I MQ", "II ME", "III MV", "Beta N", "B R");
+
     /** The mapping of the upper-case alphabet by NAVALA. */
     static final HashMap<String, String> NAVALA_MAP = new HashMap<>();
     static {
@@ -0,0 +1,387 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** A record of what a Machine did to each of the last characters it
+ *  converted, for finding out why a message did not decrypt as expected.
+ *
+ *  While a Trace is set on a Machine (see Machine.setTrace), each call of
+ *  Machine.convert(int) stores one fixed-size record in a ring of ints
+ *  allocated when the Trace is made, overwriting the oldest once the ring
+ *  is full, so tracing allocates nothing per character.  A record holds
+ *  a mask of the slots whose rotors advanced on the keypress, a mask of
+ *  those whose rotors were at a notch before it, the rotor positions
+ *  after advancing, the value of the character after each
+ *  stage (the input, the plugboard, each rotor from the rightmost in,
+ *  the reflector, each rotor from the leftmost out, and the plugboard
+ *  again, which is the output), and the number of the arrangement of
+ *  rotors in the slots.  The rotor names of an arrangement are recorded
+ *  only when the rotors in the slots change, and forgotten once no
+ *  record held refers to them.  A Machine with no Trace pays one null
+ *  test per character.  Bulk conversions go through convert(int) while a
+ *  Trace is set, whatever the Machine's engine.
+ *
+ *  dump writes the records to a file, read reads one back, and
+ *  TraceViewer prints one.  The file is big-endian:
+ *
+ *      header:  int MAGIC, short VERSION, short numRotors,
+ *               UTF alphabet, long characters traced, int m,
+ *               m arrangements of numRotors UTF rotor names (reflector
+ *               first), int n
+ *      record:  int mask of the slots advanced (bit k for slot k),
+ *               int mask of the slots at a notch before advancing,
+ *               int index of the arrangement among the m,
+ *               byte[numRotors - 1] positions, leftmost rotor first,
+ *               byte[2 * numRotors + 2] stage values, as above.
+ *
+ *  The records are the last n characters traced, oldest first.  Positions
+ *  and values are alphabet indices, so alphabets are limited to 256
+ *  characters, and masks limit machines to 32 slots.
+ *  @author Kevin Li
+ */
+class Trace {
+
+    /** Identifies a trace file: "ENGR". */
+    static final int MAGIC = 0x454e4752;
+    /** Current format version. */
+    static final short VERSION = 2;
+    /** Records kept by default. */
+    static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /** A trace of the last CAPACITY characters converted by M. */
+    Trace(Machine M, int capacity) {
+        this(M, M.alphabet(), M.numRotors(), capacity);
+    }
+
+    /** A trace of the last CAPACITY characters converted by M (null for
+     *  one read from a file), with alphabet ALPHA and NUMROTORS slots. */
+    private Trace(Machine M, Alphabet alpha, int numRotors, int capacity) {
+        if (alpha.size() > 256) {
+            throw error("cannot trace alphabets of over 256 characters");
+        } else if (numRotors > Integer.SIZE) {
+            throw error("cannot trace machines of over %d slots",
+                        Integer.SIZE);
+        } else if (capacity <= 0) {
+            throw error("trace capacity must be positive");
+        }
+        _machine = M;
+        _alphabet = alpha;
+        _numRotors = numRotors;
+        _capacity = capacity;
+        _width = 3 * numRotors + 4;
+        _ring = new int[capacity * _width];
+    }
+
+    /** Return the Machine I trace, or null if I was read from a file. */
+    Machine machine() {
+        return _machine;
+    }
+
+    /** Return the alphabet of my Machine. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of slots of my Machine. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the name of the rotor that was in slot K for record R. */
+    String name(int r, int k) {
+        return _arrangements.get(firstHeld() + arrangement(r))[k];
+    }
+
+    /** Return the number of the arrangement of rotors in the slots for
+     *  record R, counting from 0 for that of record 0.  Records with the
+     *  same number had the same rotors. */
+    int arrangement(int r) {
+        return _ring[offset(r) + _width - 1] - _ring[offset(0) + _width - 1];
+    }
+
+    /** Return the number of records I can hold. */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** Return the number of characters traced since I was made or
+     *  cleared, including those whose records have been overwritten. */
+    long count() {
+        return _count;
+    }
+
+    /** Return the number of records I hold: min(count(), capacity()). */
+    int size() {
+        return (int) Math.min(_count, _capacity);
+    }
+
+    /** Forget all records. */
+    void clear() {
+        _count = 0;
+        _arrangements.clear();
+        _rotors = null;
+    }
+
+    /** Return the mask of slots advanced for record R, where 0 is the
+     *  oldest record I hold. */
+    int advanced(int r) {
+        return _ring[offset(r)];
+    }
+
+    /** Return the mask of slots whose rotors were at a notch before the
+     *  keypress of record R. */
+    int atNotch(int r) {
+        return _ring[offset(r) + _width - 2];
+    }
+
+    /** Return the position of the rotor in slot K (1 <= K < numRotors())
+     *  after advancing, for record R. */
+    int position(int r, int k) {
+        return _ring[offset(r) + k];
+    }
+
+    /** Return the number of stage values in each record. */
+    int stages() {
+        return 2 * _numRotors + 2;
+    }
+
+    /** Return stage value K (0 <= K < stages()) of record R. */
+    int stage(int r, int k) {
+        return _ring[offset(r) + _numRotors + k];
+    }
+
+    /** Return the result of _machine.convert(C), recording what it did.
+     *  This is Machine.convert(int) with stores between the stages. */
+    int convert(int c) {
+        Machine M = _machine;
+        int last = _numRotors - 1;
+        int base = (int) (_count % _capacity) * _width;
+        int[] ring = _ring;
+        if (!sameRotors()) {
+            arranged();
+        }
+        ring[base + _width - 1] = _arrangementId;
+        int notches = 0;
+        for (int k = 1; k <= last; k += 1) {
+            ring[base + k] = M.rotor(k).setting();
+            if (M.rotor(k).atNotch()) {
+                notches |= 1 << k;
+            }
+        }
+        ring[base + _width - 2] = notches;
+        M.step();
+        int mask = 0;
+        for (int k = 1; k <= last; k += 1) {
+            int posn = M.rotor(k).setting();
+            if (posn != ring[base + k]) {
+                mask |= 1 << k;
+            }
+            ring[base + k] = posn;
+        }
+        ring[base] = mask;
+        int s = base + _numRotors;
+        ring[s++] = c;
+        int input = M.plugboard().permute(c);
+        ring[s++] = input;
+        for (int i = last; i > 0; i -= 1) {
+            input = M.rotor(i).convertForward(input);
+            ring[s++] = input;
+        }
+        int output = M.rotor(0).convertForward(input);
+        ring[s++] = output;
+        for (int j = 1; j <= last; j += 1) {
+            output = M.rotor(j).convertBackward(output);
+            ring[s++] = output;
+        }
+        output = M.plugboard().permute(output);
+        ring[s] = output;
+        _count += 1;
+        return output;
+    }
+
+    /** Return true iff my Machine has the rotors it had for my last
+     *  record. */
+    private boolean sameRotors() {
+        if (_rotors == null) {
+            return false;
+        }
+        for (int k = 0; k < _numRotors; k += 1) {
+            if (_machine.rotor(k) != _rotors[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Start a new arrangement for the rotors now in my Machine, and
+     *  forget those no record held, once the next is written, refers
+     *  to. */
+    private void arranged() {
+        _rotors = new Rotor[_numRotors];
+        String[] names = new String[_numRotors];
+        for (int k = 0; k < _numRotors; k += 1) {
+            _rotors[k] = _machine.rotor(k);
+            names[k] = _rotors[k] == null ? "?" : _rotors[k].name();
+        }
+        _arrangementId += 1;
+        if (_arrangements.isEmpty()) {
+            _firstArrangementId = _arrangementId;
+        }
+        _arrangements.add(names);
+        if (_count >= _capacity) {
+            int oldest = (int) ((_count + 1) % _capacity) * _width;
+            int keep = _capacity == 1 ? _arrangementId
+                : _ring[oldest + _width - 1];
+            while (keep - _firstArrangementId > 0) {
+                _arrangements.remove(0);
+                _firstArrangementId += 1;
+            }
+        }
+    }
+
+    /** Write my records to FILE in the format described above. */
+    void dump(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(_numRotors);
+            out.writeUTF(alphabetString(_alphabet));
+            out.writeLong(tracedCount());
+            int n = size();
+            int m = n == 0 ? 0 : arrangement(n - 1) + 1;
+            out.writeInt(m);
+            for (int a = 0; a < m; a += 1) {
+                for (String name : _arrangements.get(a + firstHeld())) {
+                    out.writeUTF(name);
+                }
+            }
+            out.writeInt(n);
+            for (int r = 0; r < n; r += 1) {
+                int base = offset(r);
+                out.writeInt(_ring[base]);
+                out.writeInt(_ring[base + _width - 2]);
+                out.writeInt(arrangement(r));
+                for (int i = 1; i < _width - 2; i += 1) {
+                    out.writeByte(_ring[base + i]);
+                }
+            }
+        }
+    }
+
+    /** Return the trace dumped to FILE. */
+    static Trace read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw error("%s is not a trace file", file);
+            } else if (in.readShort() != VERSION) {
+                throw error("unsupported trace file version");
+            }
+            int numRotors = in.readShort();
+            Alphabet alpha = new Alphabet(in.readUTF());
+            long count = in.readLong();
+            int m = in.readInt();
+            List<String[]> arrangements = new ArrayList<>();
+            for (int a = 0; a < m; a += 1) {
+                String[] names = new String[numRotors];
+                for (int k = 0; k < numRotors; k += 1) {
+                    names[k] = in.readUTF();
+                }
+                arrangements.add(names);
+            }
+            int n = in.readInt();
+            Trace trace = new Trace(null, alpha, numRotors, Math.max(n, 1));
+            trace._arrangements.addAll(arrangements);
+            for (int r = 0; r < n; r += 1) {
+                int base = r * trace._width;
+                trace._ring[base] = in.readInt();
+                trace._ring[base + trace._width - 2] = in.readInt();
+                int a = in.readInt();
+                if (a < 0 || a >= m) {
+                    throw error("trace file %s is corrupt", file);
+                }
+                trace._ring[base + trace._width - 1] = a;
+                for (int i = 1; i < trace._width - 2; i += 1) {
+                    trace._ring[base + i] = in.readUnsignedByte();
+                }
+            }
+            trace._count = n;
+            trace._dumpedCount = count;
+            trace._read = true;
+            return trace;
+        } catch (EOFException excp) {
+            throw error("trace file %s is truncated", file);
+        }
+    }
+
+    /** Return the number of characters traced before the dump I was read
+     *  from, or count() if I was not read from a file. */
+    long tracedCount() {
+        return _read ? _dumpedCount : _count;
+    }
+
+    /** Return the index in _arrangements of the arrangement of record
+     *  0. */
+    private int firstHeld() {
+        return _ring[offset(0) + _width - 1] - _firstArrangementId;
+    }
+
+    /** Return the index in _ring of record R. */
+    private int offset(int r) {
+        if (r < 0 || r >= size()) {
+            throw new IndexOutOfBoundsException("no trace record " + r);
+        }
+        long index = _count - size() + r;
+        return (int) (index % _capacity) * _width;
+    }
+
+    /** Return the characters of ALPHA in order. */
+    private static String alphabetString(Alphabet alpha) {
+        StringBuilder result = new StringBuilder(alpha.size());
+        for (int i = 0; i < alpha.size(); i += 1) {
+            result.append(alpha.toChar(i));
+        }
+        return result.toString();
+    }
+
+    /** The Machine traced, or null. */
+    private final Machine _machine;
+    /** The alphabet of _machine. */
+    private final Alphabet _alphabet;
+    /** Number of slots of _machine. */
+    private final int _numRotors;
+    /** Number of records in _ring. */
+    private final int _capacity;
+    /** Ints per record. */
+    private final int _width;
+    /** The records, record i of all those traced at (i % _capacity) *
+     *  _width. */
+    private final int[] _ring;
+    /** Number of characters traced. */
+    private long _count;
+    /** Rotor names of each arrangement that a record held may refer to,
+     *  oldest first. */
+    private final List<String[]> _arrangements = new ArrayList<>();
+    /** Number of the first of _arrangements. */
+    private int _firstArrangementId;
+    /** Number of the last arrangement started. */
+    private int _arrangementId;
+    /** Rotors in the slots for the last record, or null. */
+    private Rotor[] _rotors;
+    /** True iff I was read from a file. */
+    private boolean _read;
+    /** Characters traced before the dump I was read from. */
+    private long _dumpedCount;
+}
@@ -0,0 +1,44 @@
+package enigma;
+
+import java.util.Random;
+
+/** Measures encryption throughput without a Trace, on the reference
+ *  engine and on the engine Engines chooses, against throughput with one,
+ *  to show what tracing costs when on and when off.  Usage:
+ *      java enigma.TraceBenchmark [CHARS]
+ *  @author Kevin Li
+ */
+class TraceBenchmark {
+
+    /** Run the benchmark as described by ARGS. */
+    public static void main(String... args) {
+        int chars = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 22;
+        Random random = new Random(42);
+        Config config =
+            ConfigParser.parseConfig(ParseBenchmark.makeConfig(12, random));
+        StringBuilder text = new StringBuilder(chars);
+        for (int i = 0; i < chars; i += 1) {
+            text.append((char) ('A' + random.nextInt(26)));
+        }
+        String msg = text.toString();
+        StringBuilder out = new StringBuilder(chars);
+        String[] names = { "rotor, untraced", "chosen, untraced",
+                           "traced", "rotor, untraced" };
+        for (String name : names) {
+            Machine machine = config.newMachine();
+            SettingsCache cache = new SettingsCache(config, 1);
+            cache.apply(machine, "* R0 R2 R4 R5 R6 AAAA (AB)", 1);
+            if (name.startsWith("chosen")) {
+                machine.setEngine(Engines.choose(config).engine());
+            } else if (name.equals("traced")) {
+                machine.setTrace(new Trace(machine, Trace.DEFAULT_CAPACITY));
+            }
+            long t = Bench.best(3, 5, () -> {
+                out.setLength(0);
+                machine.convert(msg, out);
+                Bench.sink += out.charAt(0);
+            });
+            Bench.report(name, t, chars, "chars");
+        }
+    }
+}
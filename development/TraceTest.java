@@ -0,0 +1,172 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Trace and TraceViewer classes.
+ *  @author Kevin Li
+ */
+public class TraceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Temporary files, deleted after each test. */
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A three-rotor naval configuration. */
+    private static final String CONFIG =
+        navalConfig(4, 3, "I MQ", "II ME", "III MV", "B R");
+
+    /** Return a machine for CONFIG set up by SETTINGS, with the engine
+     *  Engines chooses. */
+    private static Machine machine(String settings) {
+        Config config = ConfigParser.parseConfig(CONFIG);
+        Machine machine = config.newMachine();
+        machine.setEngine(Engines.choose(config).engine());
+        new SettingsCache(config, 1).apply(machine, settings, 1);
+        return machine;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testTracingKeepsResults() {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        Machine plain = machine("* B I II III ADU (AQ) (EP)"),
+            traced = machine("* B I II III ADU (AQ) (EP)");
+        traced.setTrace(new Trace(traced, 8));
+        assertEquals(plain.convert(msg), traced.convert(msg));
+        assertEquals(msg.length(), traced.trace().count());
+        assertEquals(8, traced.trace().size());
+        traced.setTrace(null);
+        assertEquals(plain.convert(msg), traced.convert(msg));
+    }
+
+    @Test
+    public void testRecordsStagesAndDoubleStep() {
+        Machine M = machine("* B I II III ADU (AQ) (EP)");
+        Trace trace = new Trace(M, 3);
+        M.setTrace(trace);
+        String out = M.convert("AAA");
+        assertEquals(3, trace.size());
+        assertEquals(1 << 3, trace.advanced(0));
+        assertEquals((1 << 2) | (1 << 3), trace.advanced(1));
+        assertEquals((1 << 1) | (1 << 2) | (1 << 3), trace.advanced(2));
+        String[] positions = { "ADV", "AEW", "BFX" };
+        for (int r = 0; r < 3; r += 1) {
+            for (int k = 1; k <= 3; k += 1) {
+                assertEquals(UPPER.toInt(positions[r].charAt(k - 1)),
+                             trace.position(r, k));
+            }
+            assertEquals(0, trace.stage(r, 0));
+            assertEquals(UPPER.toInt('Q'), trace.stage(r, 1));
+            assertEquals(UPPER.toInt(out.charAt(r)),
+                         trace.stage(r, trace.stages() - 1));
+        }
+        String line = TraceViewer.line(trace, 2, 3);
+        assertTrue(line, line.contains("BFX"));
+        assertTrue(line, line.contains(" I II* III "));
+    }
+
+    @Test
+    public void testMarksOnlyDoubleSteps() {
+        Config config = ConfigParser.parseConfig(
+            navalConfig(5, 4, "I MQ", "II ME", "III MV", "IV MJ", "B R"));
+        Machine M = config.newMachine();
+        new SettingsCache(config, 1).apply(M, "* B I II III IV AEAJ", 1);
+        Trace trace = new Trace(M, 1);
+        M.setTrace(trace);
+        M.convert("A");
+        assertEquals((1 << 2) | (1 << 4), trace.atNotch(0));
+        String line = TraceViewer.line(trace, 0, 1);
+        assertTrue(line, line.contains(" I II* III IV "));
+    }
+
+    @Test
+    public void testRingKeepsLatest() {
+        Machine M = machine("* B I II III AAA");
+        M.setTrace(new Trace(M, 4));
+        M.convert("ABCDEFGHIJ");
+        Trace trace = M.trace();
+        assertEquals(10, trace.count());
+        assertEquals(4, trace.size());
+        for (int r = 0; r < 4; r += 1) {
+            assertEquals(6 + r, trace.stage(r, 0));
+            assertEquals(UPPER.toInt('A'), trace.position(r, 2));
+            assertEquals(7 + r, trace.position(r, 3));
+        }
+        trace.clear();
+        assertEquals(0, trace.size());
+    }
+
+    @Test
+    public void testDumpAndRead() throws IOException {
+        Machine M = machine("* B I II III ADU (AQ) (EP)");
+        Trace trace = new Trace(M, 16);
+        M.setTrace(trace);
+        M.convert("HELLOWORLDHELLOWORLD");
+        Path file = tmp.newFile("enigma.trace").toPath();
+        trace.dump(file);
+        Trace copy = Trace.read(file);
+        assertEquals(20, copy.tracedCount());
+        assertEquals(16, copy.size());
+        assertEquals("III", copy.name(0, 3));
+        for (int r = 0; r < 16; r += 1) {
+            assertEquals(TraceViewer.line(trace, r, r + 5),
+                         TraceViewer.line(copy, r, r + 5));
+        }
+    }
+
+    @Test
+    public void testRecordsRotorsPerRecord() throws IOException {
+        Machine M = machine("* B I II III AAA");
+        Trace trace = new Trace(M, 6);
+        M.setTrace(trace);
+        M.convert("ABCD");
+        M.insertRotors(new String[] {"B", "III", "II", "I"});
+        M.setRotors("AAA");
+        M.convert("EF");
+        assertEquals("I", trace.name(0, 1));
+        assertEquals("III", trace.name(5, 1));
+        assertEquals(0, trace.arrangement(3));
+        assertEquals(1, trace.arrangement(4));
+        M.insertRotors(new String[] {"B", "I", "II", "III"});
+        M.setRotors("AAA");
+        M.convert("GHIJ");
+        assertEquals("III", trace.name(0, 1));
+        assertEquals("I", trace.name(2, 1));
+        assertEquals(0, trace.arrangement(1));
+        assertEquals(1, trace.arrangement(2));
+        String line = TraceViewer.line(trace, 0, 1);
+        assertTrue(line, line.contains(" I "));
+
+        Path file = tmp.newFile("enigma.trace").toPath();
+        trace.dump(file);
+        Trace copy = Trace.read(file);
+        for (int r = 0; r < 6; r += 1) {
+            assertEquals(trace.arrangement(r), copy.arrangement(r));
+            for (int k = 0; k < 4; k += 1) {
+                assertEquals(trace.name(r, k), copy.name(r, k));
+            }
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testRejectsOtherMachine() {
+        Machine M = machine("* B I II III AAA");
+        machine("* B I II III AAA").setTrace(new Trace(M, 4));
+    }
+}
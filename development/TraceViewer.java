@@ -0,0 +1,90 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/** Prints a Trace dumped to a file (see Trace and Main), one line per
+ *  character, oldest first.  Usage:
+ *      java enigma.TraceViewer TRACE [LAST]
+ *  prints the last LAST characters of TRACE (default all).  A line
+ *  naming the rotors in the slots comes first and again wherever they
+ *  change.  Each other line gives the character's number in the whole
+ *  trace, the rotor positions after the keypress (leftmost first), the
+ *  rotors that advanced on it (leftmost first, with * after a rotor that
+ *  moved from its own notch, carrying the rotor to its left: a double
+ *  step), and the character after each stage:
+ *
+ *      input plugboard | rotors in | reflector | rotors out | output
+ *
+ *  @author Kevin Li
+ */
+class TraceViewer {
+
+    /** Print the trace named by ARGS[0] as described above. */
+    public static void main(String... args) {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java enigma.TraceViewer TRACE"
+                               + " [LAST]");
+            System.exit(1);
+        }
+        try {
+            Trace trace = Trace.read(Paths.get(args[0]));
+            int n = trace.size();
+            int first = args.length > 1
+                ? Math.max(0, n - Integer.parseInt(args[1])) : 0;
+            System.out.printf("%d characters traced, last %d shown%n",
+                              trace.tracedCount(), n - first);
+            long base = trace.tracedCount() - n;
+            for (int r = first; r < n; r += 1) {
+                if (r == first
+                    || trace.arrangement(r) != trace.arrangement(r - 1)) {
+                    StringBuilder slots = new StringBuilder("slots:");
+                    for (int k = 0; k < trace.numRotors(); k += 1) {
+                        slots.append(' ').append(trace.name(r, k));
+                    }
+                    System.out.println(slots);
+                }
+                System.out.println(line(trace, r, base + r + 1));
+            }
+        } catch (IOException | EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return the line describing record R of TRACE, numbered NUMBER. */
+    static String line(Trace trace, int r, long number) {
+        Alphabet alpha = trace.alphabet();
+        int slots = trace.numRotors(), last = slots - 1;
+        StringBuilder result = new StringBuilder(String.format("%8d  ",
+                                                               number));
+        for (int k = 1; k <= last; k += 1) {
+            result.append(alpha.toChar(trace.position(r, k)));
+        }
+        int mask = trace.advanced(r), notches = trace.atNotch(r);
+        StringBuilder moved = new StringBuilder();
+        for (int k = 1; k <= last; k += 1) {
+            if ((mask & (1 << k)) != 0) {
+                moved.append(' ').append(trace.name(r, k));
+                if (k > 1 && k < last && (notches & (1 << k)) != 0
+                    && (mask & (1 << (k - 1))) != 0) {
+                    moved.append('*');
+                }
+            }
+        }
+        result.append(String.format("  %-" + (6 * last) + "s ", moved));
+        int s = 0;
+        result.append(alpha.toChar(trace.stage(r, s++))).append(' ')
+            .append(alpha.toChar(trace.stage(r, s++))).append(" |");
+        for (int k = 0; k < last; k += 1) {
+            result.append(' ').append(alpha.toChar(trace.stage(r, s++)));
+        }
+        result.append(" | ").append(alpha.toChar(trace.stage(r, s++)))
+            .append(" |");
+        for (int k = 0; k < last; k += 1) {
+            result.append(' ').append(alpha.toChar(trace.stage(r, s++)));
+        }
+        result.append(" | ").append(alpha.toChar(trace.stage(r, s)));
+        return result.toString();
+    }
+}
@@ -0,0 +1,44 @@
+package enigma;
+
+/** Measures each engine's throughput on machines with 3, 30, 300 and
+ *  3000 rotor slots, to show the segment-tree engine's cost staying
+ *  nearly flat as the others grow linearly.  Usage:
+ *      java enigma.TreeBenchmark [CHARS]
+ *  @author Kevin Li
+ */
+class TreeBenchmark {
+
+    /** Run the benchmark as described by ARGS. */
+    public static void main(String... args) {
+        int chars = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+        int[] text = new int[chars];
+        for (int i = 0; i < chars; i += 1) {
+            text[i] = i * 7 % 26;
+        }
+        for (int slots : new int[] { 3, 30, 300, 3000 }) {
+            WorkloadGenerator gen = new WorkloadGenerator(String.format(
+                "slots=%d,pawls=%d,naval=false,messages=1", slots,
+                Math.max(1, slots / 2)));
+            Config config = ConfigParser.parseConfig(gen.config());
+            String settings = gen.input().split("\n")[0];
+            System.out.printf("%d slots: %s%n", slots,
+                              Engines.calibrate(config, Engines.SAMPLE));
+            for (EncryptionEngine engine : Engines.available()) {
+                Machine machine = config.newMachine();
+                new SettingsCache(config, 1).apply(machine, settings, 1);
+                if (!engine.supports(machine)) {
+                    continue;
+                }
+                machine.setEngine(engine);
+                int n = slots >= 30 && !engine.name().equals("tree")
+                    ? chars / 16 : chars;
+                long t = Bench.best(1, 3, () -> {
+                    machine.convert(text, 0, n);
+                    Bench.sink += text[0];
+                });
+                Bench.report(String.format("  %-10s", engine.name()), t, n,
+                             "chars");
+            }
+        }
+    }
+}
@@ -11,7 +11,27 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
-                                      MovingRotorTest.class));
+                                      MovingRotorTest.class,
+                                      ConfigParserTest.class,
+                                      KeySpaceTest.class,
+                                      StateStoreTest.class,
+                                      BatchFileTest.class,
+                                      EnginesTest.class,
+                                      CribFinderTest.class,
+                                      WorkloadGeneratorTest.class,
+                                      RotorTablesTest.class,
+                                      OdometerTest.class,
+                                      KeySearchTest.class,
+                                      DepthAnalyzerTest.class,
+                                      ConfigWatcherTest.class,
+                                      DirectoryBatchTest.class,
+                                      TraceTest.class,
+                                      InterceptArchiveTest.class,
+                                      MachineProcessorTest.class,
+                                      SettingsCacheTest.class,
+                                      DaemonTest.class,
+                                      CipherStatsTest.class,
+                                      LoadTestRunnerTest.class));
     }
 
 }
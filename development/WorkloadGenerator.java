@@ -0,0 +1,295 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Generates valid configuration and input files for Main from a seed
+ *  and a scenario description, a comma-separated list of KEY=VALUE pairs:
+ *
+ *      name      label for reports                     (default "default")
+ *      seed      random seed                           (1)
+ *      alphabet  alphabet size, even, at most 60       (26)
+ *      slots     rotor slots                           (5)
+ *      pawls     pawls, and moving rotors per machine  (3)
+ *      spare     rotors of each kind beyond the needed (2)
+ *      length    mean message length in characters     (100)
+ *      every     messages per settings line            (1)
+ *      plugs     plugboard pairs                       (10)
+ *      messages  number of messages                    (10000)
+ *      naval     use the naval rotors (NavalRotors) when they fit (true)
+ *
+ *  Otherwise rotors get random wirings and notches.  Every generated
+ *  settings line is legal, with random rotor choices, positions and
+ *  rings.  As a program, writes one workload:
+ *      java enigma.WorkloadGenerator SPEC CONFIG INPUT
+ *  @author Kevin Li
+ */
+class WorkloadGenerator {
+
+    /** Characters from which alphabets are drawn, in order. */
+    static final String CHARS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789!#$%&+,-./:;<=>?@[]^_{|}~";
+
+    /** A generator for the scenario described by SPEC (see class
+     *  comment). */
+    WorkloadGenerator(String spec) {
+        Map<String, String> params = new LinkedHashMap<>();
+        for (String pair : spec.split(",")) {
+            if (pair.isBlank()) {
+                continue;
+            }
+            String[] kv = pair.split("=", 2);
+            if (kv.length != 2) {
+                throw error("expected KEY=VALUE: %s", pair);
+            }
+            params.put(kv[0].trim(), kv[1].trim());
+        }
+        _name = params.getOrDefault("name", "default");
+        String seed = params.getOrDefault("seed", "1");
+        try {
+            _seed = Long.parseLong(seed);
+        } catch (NumberFormatException excp) {
+            throw error("bad value for seed: %s", seed);
+        }
+        _alphabet = intParam(params, "alphabet", 26);
+        _slots = intParam(params, "slots", 5);
+        _pawls = intParam(params, "pawls", 3);
+        _spare = intParam(params, "spare", 2);
+        _length = intParam(params, "length", 100);
+        _every = intParam(params, "every", 1);
+        _plugs = intParam(params, "plugs", 10);
+        _messages = intParam(params, "messages", 10000);
+        _naval = Boolean.parseBoolean(params.getOrDefault("naval", "true"))
+            && _alphabet == 26
+            && _pawls + _spare <= NavalRotors.MOVING.length
+            && _slots - 1 - _pawls + _spare <= NavalRotors.THIN.length
+            && _spare <= 2;
+        params.keySet().removeAll(List.of("name", "seed", "alphabet",
+                                          "slots", "pawls", "spare",
+                                          "length", "every", "plugs",
+                                          "messages", "naval"));
+        if (!params.isEmpty()) {
+            throw error("unknown scenario keys: %s", params.keySet());
+        } else if (_alphabet < 2 || _alphabet % 2 != 0
+                   || _alphabet > CHARS.length()) {
+            throw error("alphabet size must be even and at most %d",
+                        CHARS.length() - 1);
+        } else if (_pawls < 1 || _pawls >= _slots || _every < 1
+                   || 2 * _plugs > _alphabet || _length < 1) {
+            throw error("inconsistent scenario: %s", spec);
+        }
+        _chars = CHARS.substring(0, _alphabet);
+        _random = new Random(_seed);
+        _config = makeConfig();
+    }
+
+    /** Return the scenario's name. */
+    String name() {
+        return _name;
+    }
+
+    /** Return the generated configuration file's contents. */
+    String config() {
+        return _config;
+    }
+
+    /** Return the number of messages generated by input(). */
+    int messages() {
+        return _messages;
+    }
+
+    /** Return a generated input file's contents.  Successive calls give
+     *  different inputs for the same configuration. */
+    String input() {
+        StringBuilder input = new StringBuilder();
+        for (int m = 0; m < _messages; m += 1) {
+            if (m % _every == 0) {
+                input.append(settingsLine()).append('\n');
+            }
+            int len = 1 + _random.nextInt(2 * _length - 1);
+            for (int i = 0; i < len; i += 1) {
+                if (i > 0 && _random.nextInt(6) == 0) {
+                    input.append(' ');
+                }
+                input.append(_chars.charAt(_random.nextInt(_alphabet)));
+            }
+            input.append('\n');
+        }
+        return input.toString();
+    }
+
+    /** Return a configuration with the rotors the scenario needs. */
+    private String makeConfig() {
+        StringBuilder config = new StringBuilder();
+        config.append(_chars).append('\n');
+        config.append(_slots).append(' ').append(_pawls).append('\n');
+        int fixed = _slots - 1 - _pawls;
+        if (_naval) {
+            for (int k = 0; k < _pawls + _spare; k += 1) {
+                String[] rotor = NavalRotors.MOVING[k];
+                addRotor(config, rotor[0], "M" + rotor[1],
+                         NavalRotors.CYCLES.get(rotor[0]));
+            }
+            for (int k = 0; k < fixed + _spare; k += 1) {
+                String name = NavalRotors.THIN[k];
+                addRotor(config, name, "N", NavalRotors.CYCLES.get(name));
+            }
+            for (String name : NavalRotors.REFLECTORS) {
+                addRotor(config, name, "R", NavalRotors.CYCLES.get(name));
+            }
+            return config.toString();
+        }
+        for (int k = 0; k < _pawls + _spare; k += 1) {
+            String notches = "M" + _chars.charAt(_random.nextInt(_alphabet));
+            addRotor(config, "M" + k, notches, randomCycles());
+        }
+        for (int k = 0; k < fixed + _spare; k += 1) {
+            addRotor(config, "N" + k, "N", randomCycles());
+        }
+        for (int k = 0; k < 2; k += 1) {
+            addRotor(config, "R" + k, "R", randomPairs(_alphabet / 2));
+        }
+        return config.toString();
+    }
+
+    /** Append a line describing a rotor NAME of KIND (and notches) with
+     *  permutation CYCLES to CONFIG. */
+    private void addRotor(StringBuilder config, String name, String kind,
+                          String cycles) {
+        config.append(name).append(' ').append(kind).append(' ')
+            .append(cycles).append('\n');
+        (kind.charAt(0) == 'M' ? _moving
+         : kind.charAt(0) == 'N' ? _fixed : _reflectors).add(name);
+    }
+
+    /** Return a random permutation of the alphabet in cycle notation. */
+    private String randomCycles() {
+        List<Character> perm = shuffled();
+        StringBuilder cycles = new StringBuilder();
+        int start = 0;
+        while (start < perm.size()) {
+            int len = 1 + _random.nextInt(perm.size() - start);
+            cycles.append('(');
+            for (int i = start; i < start + len; i += 1) {
+                cycles.append(perm.get(i));
+            }
+            cycles.append(") ");
+            start += len;
+        }
+        return cycles.toString().trim();
+    }
+
+    /** Return N disjoint random pairs of alphabet characters in cycle
+     *  notation. */
+    private String randomPairs(int n) {
+        List<Character> perm = shuffled();
+        StringBuilder pairs = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            pairs.append(i == 0 ? "(" : " (").append(perm.get(2 * i))
+                .append(perm.get(2 * i + 1)).append(')');
+        }
+        return pairs.toString();
+    }
+
+    /** Return the alphabet's characters in random order. */
+    private List<Character> shuffled() {
+        List<Character> chars = new ArrayList<>();
+        for (char ch : _chars.toCharArray()) {
+            chars.add(ch);
+        }
+        Collections.shuffle(chars, _random);
+        return chars;
+    }
+
+    /** Return a random legal settings line. */
+    private String settingsLine() {
+        StringBuilder line = new StringBuilder("*");
+        line.append(' ').append(pick(_reflectors, 1).get(0));
+        for (String name : pick(_fixed, _slots - 1 - _pawls)) {
+            line.append(' ').append(name);
+        }
+        for (String name : pick(_moving, _pawls)) {
+            line.append(' ').append(name);
+        }
+        line.append(' ');
+        for (int i = 1; i < _slots; i += 1) {
+            line.append(_chars.charAt(_random.nextInt(_alphabet)));
+        }
+        line.append(' ');
+        for (int i = 1; i < _slots; i += 1) {
+            line.append(_chars.charAt(_random.nextInt(_alphabet)));
+        }
+        if (_plugs > 0) {
+            line.append(' ').append(randomPairs(_plugs));
+        }
+        return line.toString();
+    }
+
+    /** Return N distinct random elements of NAMES. */
+    private List<String> pick(List<String> names, int n) {
+        List<String> copy = new ArrayList<>(names);
+        Collections.shuffle(copy, _random);
+        return copy.subList(0, n);
+    }
+
+    /** Return the integer value of parameter KEY in PARAMS, or DFLT. */
+    private static int intParam(Map<String, String> params, String key,
+                                int dflt) {
+        String value = params.get(key);
+        if (value == null) {
+            return dflt;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException excp) {
+            throw error("bad value for %s: %s", key, value);
+        }
+    }
+
+    /** Write a configuration and an input file as described in the class
+     *  comment, according to ARGS. */
+    public static void main(String... args) {
+        if (args.length != 3) {
+            System.err.println("Usage: java enigma.WorkloadGenerator SPEC"
+                               + " CONFIG INPUT");
+            System.exit(1);
+        }
+        try {
+            WorkloadGenerator gen = new WorkloadGenerator(args[0]);
+            Files.writeString(Paths.get(args[1]), gen.config());
+            Files.writeString(Paths.get(args[2]), gen.input());
+        } catch (IOException | EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Scenario parameters (see class comment). */
+    private final String _name;
+    /** Random seed. */
+    private final long _seed;
+    /** Scenario parameters (see class comment). */
+    private final int _alphabet, _slots, _pawls, _spare, _length, _every,
+        _plugs, _messages;
+    /** True iff the naval rotors are used. */
+    private final boolean _naval;
+    /** Alphabet characters. */
+    private final String _chars;
+    /** Source of randomness. */
+    private final Random _random;
+    /** Names of the moving, fixed and reflector rotors in the
+     *  configuration. */
+    private final List<String> _moving = new ArrayList<>(),
+        _fixed = new ArrayList<>(), _reflectors = new ArrayList<>();
+    /** Generated configuration. */
+    private final String _config;
+}
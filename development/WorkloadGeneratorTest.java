@@ -0,0 +1,77 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+
+/** The suite of all JUnit tests for the WorkloadGenerator class.
+ *  @author Kevin Li
+ */
+public class WorkloadGeneratorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return the output of Main on the workload of GEN. */
+    private static String run(WorkloadGenerator gen) {
+        Config config = ConfigParser.parseConfig(gen.config());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream output = new PrintStream(bytes);
+        Main.process(config, config.newMachine(),
+                     new BufferedReader(new StringReader(gen.input())),
+                     output);
+        output.flush();
+        return bytes.toString();
+    }
+
+    @Test
+    public void testWorkloadsAreValid() {
+        String[] specs = {
+            "messages=50",
+            "messages=50,naval=false,slots=4,pawls=2,spare=0",
+            "messages=50,alphabet=60,slots=9,pawls=5,plugs=30,every=7",
+            "messages=50,alphabet=2,slots=2,pawls=1,plugs=0,length=3",
+        };
+        for (String spec : specs) {
+            WorkloadGenerator gen = new WorkloadGenerator(spec);
+            assertEquals(spec, 50, run(gen).split("\n").length);
+        }
+    }
+
+    @Test
+    public void testSeedDeterminesWorkload() {
+        WorkloadGenerator a = new WorkloadGenerator("seed=5,messages=20");
+        WorkloadGenerator b = new WorkloadGenerator("seed=5,messages=20");
+        assertEquals(a.config(), b.config());
+        assertEquals(a.input(), b.input());
+        assertNotEquals(a.input(), a.input());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testUnknownKey() {
+        new WorkloadGenerator("messages=5,colour=blue");
+    }
+
+    @Test
+    public void testBadNumbers() {
+        try {
+            new WorkloadGenerator("messages=5,length=ten");
+            fail("accepted a length that is not a number");
+        } catch (EnigmaException excp) {
+            assertEquals("bad value for length: ten", excp.getMessage());
+        }
+        try {
+            new WorkloadGenerator("seed=0x10");
+            fail("accepted a seed that is not a number");
+        } catch (EnigmaException excp) {
+            assertEquals("bad value for seed: 0x10", excp.getMessage());
+        }
+    }
+}